@@ -18,11 +18,16 @@
 
 package org.wso2.carbon.identity.keyrotation;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.wso2.carbon.identity.keyrotation.config.FileBasedKeyRotationConfigProvider;
 import org.wso2.carbon.identity.keyrotation.config.KeyRotationConfigProvider;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.dao.DataSourceManager;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
 import org.wso2.carbon.identity.keyrotation.service.ConfigFileKeyRotator;
+import org.wso2.carbon.identity.keyrotation.service.CryptoBenchmark;
 import org.wso2.carbon.identity.keyrotation.service.DBKeyRotator;
+import org.wso2.carbon.identity.keyrotation.service.RotationEstimator;
 import org.wso2.carbon.identity.keyrotation.service.SyncedDataKeyRotator;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
@@ -34,7 +39,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
- * This class holds the symmetric key rotation service.
+ * This class holds the symmetric key rotation service. With the --estimate option, the DB re-encryption is only
+ * estimated and nothing is written. With the --benchmark option, only the crypto backends and IV generators are timed.
  */
 public class KeyRotationService {
 
@@ -48,19 +54,40 @@ public class KeyRotationService {
         } catch (IOException e) {
             throw new KeyRotationException("Error while initializing configurations.", e);
         }
-        initService(configProvider.getKeyRotationConfig());
+        if (ArrayUtils.contains(args, KeyRotationConstants.BENCHMARK_OPTION)) {
+            CryptoBenchmark.getInstance().benchmark(configProvider.getKeyRotationConfig());
+        } else if (ArrayUtils.contains(args, KeyRotationConstants.ESTIMATE_OPTION)) {
+            estimateService(configProvider.getKeyRotationConfig());
+        } else {
+            initService(configProvider.getKeyRotationConfig());
+        }
     }
 
-    private static void initService(KeyRotationConfig config) throws KeyRotationException {
+    private static void estimateService(KeyRotationConfig config) throws KeyRotationException {
 
-        if (config.getEnableDBMigrator()) {
-            DBKeyRotator.getInstance().dbReEncryptor(config);
-        }
-        if (config.getEnableConfigMigrator()) {
-            ConfigFileKeyRotator.getInstance().configFileReEncryptor(config);
+        try {
+            RotationEstimator.getInstance().estimate(config);
+        } finally {
+            DataSourceManager.getInstance().close();
         }
-        if (config.getEnableSyncMigrator()) {
-            SyncedDataKeyRotator.getInstance().syncedDataReEncryptor(config);
+    }
+
+    private static void initService(KeyRotationConfig config) throws KeyRotationException {
+
+        try {
+            KeyRotationMetrics.getInstance().start(config);
+            if (config.getEnableDBMigrator()) {
+                DBKeyRotator.getInstance().dbReEncryptor(config);
+            }
+            if (config.getEnableConfigMigrator()) {
+                ConfigFileKeyRotator.getInstance().configFileReEncryptor(config);
+            }
+            if (config.getEnableSyncMigrator()) {
+                SyncedDataKeyRotator.getInstance().syncedDataReEncryptor(config);
+            }
+        } finally {
+            KeyRotationMetrics.getInstance().stop();
+            DataSourceManager.getInstance().close();
         }
     }
 
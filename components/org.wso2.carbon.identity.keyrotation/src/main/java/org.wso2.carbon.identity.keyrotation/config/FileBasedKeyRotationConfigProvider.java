@@ -18,6 +18,7 @@
 
 package org.wso2.carbon.identity.keyrotation.config;
 
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -79,6 +80,97 @@ public class FileBasedKeyRotationConfigProvider implements KeyRotationConfigProv
             logger.log(Level.WARN, "Not a valid number. Falling back to default chunk size.", e);
             keyRotationConfig.setChunkSize(DBConstants.DEFAULT_CHUNK_SIZE);
         }
+        int dbReEncryptionThreads = getPositiveInt(properties, KeyRotationConstants.DB_REENCRYPTION_THREADS,
+                DBConstants.DEFAULT_DB_REENCRYPTION_THREADS);
+        keyRotationConfig.setDbReEncryptionThreads(dbReEncryptionThreads);
+        keyRotationConfig.setNewIdnDBMaxConcurrency(
+                getPositiveInt(properties, KeyRotationConstants.NEW_IDN_DB_MAX_CONCURRENCY, dbReEncryptionThreads));
+        keyRotationConfig.setNewRegDBMaxConcurrency(
+                getPositiveInt(properties, KeyRotationConstants.NEW_REG_DB_MAX_CONCURRENCY, dbReEncryptionThreads));
+        keyRotationConfig.setTablePartitions(getPositiveInt(properties, KeyRotationConstants.TABLE_PARTITIONS,
+                DBConstants.DEFAULT_TABLE_PARTITIONS));
+        keyRotationConfig.setPipelineCryptoThreads(getPositiveInt(properties,
+                KeyRotationConstants.PIPELINE_CRYPTO_THREADS, DBConstants.DEFAULT_PIPELINE_CRYPTO_THREADS));
+        keyRotationConfig.setPipelineQueueSize(getPositiveInt(properties, KeyRotationConstants.PIPELINE_QUEUE_SIZE,
+                DBConstants.DEFAULT_PIPELINE_QUEUE_SIZE));
+        keyRotationConfig.setEnableStreamingRead(
+                Boolean.parseBoolean(properties.getProperty(KeyRotationConstants.ENABLE_STREAMING_READ)));
+        keyRotationConfig.setStreamFetchSize(getPositiveInt(properties, KeyRotationConstants.STREAM_FETCH_SIZE,
+                DBConstants.DEFAULT_STREAM_FETCH_SIZE));
+        keyRotationConfig.setDbPoolMinSize(getNonNegativeInt(properties, KeyRotationConstants.DB_POOL_MIN_SIZE,
+                DBConstants.DEFAULT_DB_POOL_MIN_SIZE));
+        keyRotationConfig.setDbPoolMaxSize(getPositiveInt(properties, KeyRotationConstants.DB_POOL_MAX_SIZE,
+                DBConstants.DEFAULT_DB_POOL_MAX_SIZE));
+        keyRotationConfig.setDbPoolValidationTimeout(getNonNegativeInt(properties,
+                KeyRotationConstants.DB_POOL_VALIDATION_TIMEOUT, DBConstants.DEFAULT_DB_POOL_VALIDATION_TIMEOUT));
+        keyRotationConfig.setDbPoolStatementCacheSize(getNonNegativeInt(properties,
+                KeyRotationConstants.DB_POOL_STATEMENT_CACHE_SIZE, DBConstants.DEFAULT_DB_POOL_STATEMENT_CACHE_SIZE));
+        String checkpointFile = properties.getProperty(KeyRotationConstants.CHECKPOINT_FILE);
+        keyRotationConfig.setCheckpointFile(StringUtils.isNotBlank(checkpointFile) ? checkpointFile.trim() :
+                KeyRotationConstants.DEFAULT_CHECKPOINT_FILE);
+        keyRotationConfig.setEnableResume(
+                Boolean.parseBoolean(properties.getProperty(KeyRotationConstants.ENABLE_RESUME)));
+        keyRotationConfig.setCheckpointInterval(getNonNegativeInt(properties,
+                KeyRotationConstants.CHECKPOINT_INTERVAL, DBConstants.DEFAULT_CHECKPOINT_INTERVAL));
+        String failureReportFile = properties.getProperty(KeyRotationConstants.FAILURE_REPORT_FILE);
+        keyRotationConfig.setFailureReportFile(StringUtils.isNotBlank(failureReportFile) ?
+                failureReportFile.trim() : KeyRotationConstants.DEFAULT_FAILURE_REPORT_FILE);
+        keyRotationConfig.setEnableStagingTableUpdate(
+                Boolean.parseBoolean(properties.getProperty(KeyRotationConstants.ENABLE_STAGING_TABLE_UPDATE)));
+        keyRotationConfig.setEnableCompactEnvelope(
+                Boolean.parseBoolean(properties.getProperty(KeyRotationConstants.ENABLE_COMPACT_ENVELOPE)));
+        keyRotationConfig.setIvGenerator(getOneOf(properties, KeyRotationConstants.IV_GENERATOR,
+                KeyRotationConstants.IV_GENERATOR_TIME_BASED, KeyRotationConstants.IV_GENERATOR_COUNTER,
+                KeyRotationConstants.IV_GENERATOR_RANDOM));
+        keyRotationConfig.setEncryptBackend(getOneOf(properties, KeyRotationConstants.ENCRYPT_BACKEND,
+                KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM, KeyRotationConstants.CRYPTO_BACKEND_JCE_AES_GCM,
+                KeyRotationConstants.CRYPTO_BACKEND_BC_CHACHA20_POLY1305,
+                KeyRotationConstants.CRYPTO_BACKEND_JCE_CHACHA20_POLY1305));
+        keyRotationConfig.setDecryptBackend(getOneOf(properties, KeyRotationConstants.DECRYPT_BACKEND,
+                KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM, KeyRotationConstants.CRYPTO_BACKEND_JCE_AES_GCM,
+                KeyRotationConstants.CRYPTO_BACKEND_BC_CHACHA20_POLY1305,
+                KeyRotationConstants.CRYPTO_BACKEND_JCE_CHACHA20_POLY1305));
+        keyRotationConfig.setReEncryptBatchThreads(getPositiveInt(properties,
+                KeyRotationConstants.RE_ENCRYPT_BATCH_THREADS, DBConstants.DEFAULT_RE_ENCRYPT_BATCH_THREADS));
+        String retiredSecretKeys = properties.getProperty(KeyRotationConstants.RETIRED_SECRET_KEYS);
+        keyRotationConfig.setRetiredSecretKeys(StringUtils.isNotBlank(retiredSecretKeys) ?
+                retiredSecretKeys.trim() : null);
+        keyRotationConfig.setDataKeyEnvelope(getOneOf(properties, KeyRotationConstants.DATA_KEY_ENVELOPE,
+                KeyRotationConstants.DATA_KEY_ENVELOPE_DISABLED, KeyRotationConstants.DATA_KEY_ENVELOPE_ENABLED,
+                KeyRotationConstants.DATA_KEY_ENVELOPE_REWRAP_ONLY));
+        // The values encrypted with the data keys are always written in the compact envelope.
+        if ((keyRotationConfig.getEnableCompactEnvelope() || !KeyRotationConstants.DATA_KEY_ENVELOPE_DISABLED
+                .equals(keyRotationConfig.getDataKeyEnvelope())) &&
+                !KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM.equals(keyRotationConfig.getEncryptBackend()) &&
+                !KeyRotationConstants.CRYPTO_BACKEND_JCE_AES_GCM.equals(keyRotationConfig.getEncryptBackend())) {
+            throw new KeyRotationException("The compact envelope doesn't record the transformation, so it can only " +
+                    "be used with an AES-GCM encrypt backend.");
+        }
+        keyRotationConfig.setEnableAdaptiveChunkSize(
+                Boolean.parseBoolean(properties.getProperty(KeyRotationConstants.ENABLE_ADAPTIVE_CHUNK_SIZE)));
+        int minChunkSize = getPositiveInt(properties, KeyRotationConstants.MIN_CHUNK_SIZE,
+                DBConstants.DEFAULT_MIN_CHUNK_SIZE);
+        keyRotationConfig.setMinChunkSize(minChunkSize);
+        keyRotationConfig.setMaxChunkSize(getIntAtLeast(properties, KeyRotationConstants.MAX_CHUNK_SIZE,
+                Math.max(minChunkSize, DBConstants.DEFAULT_MAX_CHUNK_SIZE), minChunkSize));
+        keyRotationConfig.setTargetChunkTime(getPositiveInt(properties, KeyRotationConstants.TARGET_CHUNK_TIME,
+                DBConstants.DEFAULT_TARGET_CHUNK_TIME));
+        keyRotationConfig.setEnableJmxMetrics(
+                Boolean.parseBoolean(properties.getProperty(KeyRotationConstants.ENABLE_JMX_METRICS)));
+        keyRotationConfig.setPrometheusPort(getNonNegativeInt(properties, KeyRotationConstants.PROMETHEUS_PORT, 0));
+        keyRotationConfig.setMaxRowsPerSecond(getNonNegativeInt(properties, KeyRotationConstants.MAX_ROWS_PER_SECOND,
+                0));
+        keyRotationConfig.setMaxBatchesPerSecond(getNonNegativeInt(properties,
+                KeyRotationConstants.MAX_BATCHES_PER_SECOND, 0));
+        keyRotationConfig.setMaxCommitLatency(getNonNegativeInt(properties, KeyRotationConstants.MAX_COMMIT_LATENCY,
+                0));
+        keyRotationConfig.setLatencyBackoffTime(getPositiveInt(properties, KeyRotationConstants.LATENCY_BACKOFF_TIME,
+                DBConstants.DEFAULT_LATENCY_BACKOFF_TIME));
+        String throttleProfiles = properties.getProperty(KeyRotationConstants.THROTTLE_PROFILES);
+        keyRotationConfig.setThrottleProfiles(StringUtils.isNotBlank(throttleProfiles) ? throttleProfiles.trim() :
+                null);
+        keyRotationConfig.setEstimateSampleSize(getPositiveInt(properties, KeyRotationConstants.ESTIMATE_SAMPLE_SIZE,
+                DBConstants.DEFAULT_ESTIMATE_SAMPLE_SIZE));
 
         configValidator.validateFilePath(KeyRotationConstants.NEW_IS_HOME, newISHome);
         configValidator.validateURI(KeyRotationConstants.OLD_IDN_DB_URL, oldIdnDBUrl);
@@ -105,6 +197,77 @@ public class FileBasedKeyRotationConfigProvider implements KeyRotationConfigProv
         keyRotationConfig.setEnableSyncMigrator(Boolean.parseBoolean(enableSyncMigrator));
     }
 
+    /**
+     * Read a positive integer property, falling back to the given default if it is missing or invalid.
+     *
+     * @param properties   Loaded properties.
+     * @param name         Property name.
+     * @param defaultValue Value used when the property is missing or invalid.
+     * @return Positive integer value of the property.
+     */
+    private int getPositiveInt(Properties properties, String name, int defaultValue) {
+
+        return getIntAtLeast(properties, name, defaultValue, 1);
+    }
+
+    /**
+     * Read a non-negative integer property, falling back to the given default if it is missing or invalid.
+     *
+     * @param properties   Loaded properties.
+     * @param name         Property name.
+     * @param defaultValue Value used when the property is missing or invalid.
+     * @return Non-negative integer value of the property.
+     */
+    private int getNonNegativeInt(Properties properties, String name, int defaultValue) {
+
+        return getIntAtLeast(properties, name, defaultValue, 0);
+    }
+
+    /**
+     * Read an integer property with a lower bound, falling back to the given default if it is missing or invalid.
+     *
+     * @param properties   Loaded properties.
+     * @param name         Property name.
+     * @param defaultValue Value used when the property is missing or invalid.
+     * @param minValue     Lowest valid value.
+     * @return Integer value of the property.
+     */
+    private int getIntAtLeast(Properties properties, String name, int defaultValue, int minValue) {
+
+        String value = properties.getProperty(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            int intValue = Integer.parseInt(value.trim());
+            return (intValue < minValue) ? defaultValue : intValue;
+        } catch (NumberFormatException e) {
+            logger.log(Level.WARN, "Not a valid number for " + name + ". Falling back to " + defaultValue + ".", e);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read a property with a fixed set of values, falling back to the first of them if it is missing or unknown.
+     *
+     * @param properties Loaded properties.
+     * @param name       Property name.
+     * @param values     Valid values, starting with the default.
+     * @return Value of the property.
+     */
+    private String getOneOf(Properties properties, String name, String... values) {
+
+        String value = properties.getProperty(name);
+        if (StringUtils.isBlank(value)) {
+            return values[0];
+        }
+        if (ArrayUtils.contains(values, value.trim())) {
+            return value.trim();
+        }
+        logger.log(Level.WARN, "Not a valid value for " + name + ". Falling back to " + values[0] + ".");
+        return values[0];
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -19,6 +19,7 @@
 package org.wso2.carbon.identity.keyrotation.config.model;
 
 import org.apache.axiom.om.util.Base64;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 
 /**
  * This class holds implementations needed to load the configurations in the properties.yaml file.
@@ -39,6 +40,42 @@ public class KeyRotationConfig {
     private String newRegUsername;
     private String newRegPassword;
     private int chunkSize;
+    private int dbReEncryptionThreads = 1;
+    private int newIdnDBMaxConcurrency = 1;
+    private int newRegDBMaxConcurrency = 1;
+    private int tablePartitions = 1;
+    private int pipelineCryptoThreads = 1;
+    private int pipelineQueueSize = 2;
+    private boolean enableStreamingRead;
+    private int streamFetchSize = 1000;
+    private int dbPoolMinSize = 1;
+    private int dbPoolMaxSize = 10;
+    private int dbPoolValidationTimeout = 5;
+    private int dbPoolStatementCacheSize = 20;
+    private String checkpointFile = KeyRotationConstants.DEFAULT_CHECKPOINT_FILE;
+    private boolean enableResume;
+    private int checkpointInterval = 1000;
+    private String failureReportFile = KeyRotationConstants.DEFAULT_FAILURE_REPORT_FILE;
+    private boolean enableStagingTableUpdate;
+    private boolean enableCompactEnvelope;
+    private String ivGenerator = KeyRotationConstants.IV_GENERATOR_TIME_BASED;
+    private String encryptBackend = KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM;
+    private String decryptBackend = KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM;
+    private int reEncryptBatchThreads = 1;
+    private String retiredSecretKeys;
+    private String dataKeyEnvelope = KeyRotationConstants.DATA_KEY_ENVELOPE_DISABLED;
+    private boolean enableAdaptiveChunkSize;
+    private int minChunkSize = 1;
+    private int maxChunkSize = 10000;
+    private int targetChunkTime = 1000;
+    private boolean enableJmxMetrics;
+    private int prometheusPort;
+    private int maxRowsPerSecond;
+    private int maxBatchesPerSecond;
+    private int maxCommitLatency;
+    private int latencyBackoffTime = 1000;
+    private String throttleProfiles;
+    private int estimateSampleSize = 2000;
     private boolean enableDBMigrator;
     private boolean enableConfigMigrator;
     private boolean enableSyncMigrator;
@@ -308,6 +345,729 @@ public class KeyRotationConfig {
         this.chunkSize = chunkSize;
     }
 
+    /**
+     * Get for the number of worker threads used to re-encrypt the DB tables concurrently.
+     *
+     * @return Number of DB re-encryption worker threads.
+     */
+    public int getDbReEncryptionThreads() {
+
+        return dbReEncryptionThreads;
+    }
+
+    /**
+     * Set for the number of worker threads used to re-encrypt the DB tables concurrently.
+     *
+     * @param dbReEncryptionThreads Number of DB re-encryption worker threads.
+     */
+    public void setDbReEncryptionThreads(int dbReEncryptionThreads) {
+
+        this.dbReEncryptionThreads = dbReEncryptionThreads;
+    }
+
+    /**
+     * Get for the maximum number of concurrent re-encryption workers on the new identity database.
+     *
+     * @return Maximum concurrent workers on the new identity database.
+     */
+    public int getNewIdnDBMaxConcurrency() {
+
+        return newIdnDBMaxConcurrency;
+    }
+
+    /**
+     * Set for the maximum number of concurrent re-encryption workers on the new identity database.
+     *
+     * @param newIdnDBMaxConcurrency Maximum concurrent workers on the new identity database.
+     */
+    public void setNewIdnDBMaxConcurrency(int newIdnDBMaxConcurrency) {
+
+        this.newIdnDBMaxConcurrency = newIdnDBMaxConcurrency;
+    }
+
+    /**
+     * Get for the maximum number of concurrent re-encryption workers on the registry database.
+     *
+     * @return Maximum concurrent workers on the registry database.
+     */
+    public int getNewRegDBMaxConcurrency() {
+
+        return newRegDBMaxConcurrency;
+    }
+
+    /**
+     * Set for the maximum number of concurrent re-encryption workers on the registry database.
+     *
+     * @param newRegDBMaxConcurrency Maximum concurrent workers on the registry database.
+     */
+    public void setNewRegDBMaxConcurrency(int newRegDBMaxConcurrency) {
+
+        this.newRegDBMaxConcurrency = newRegDBMaxConcurrency;
+    }
+
+    /**
+     * Get for the number of key ranges the large single key tables are split into for concurrent re-encryption.
+     *
+     * @return Number of key ranges per table.
+     */
+    public int getTablePartitions() {
+
+        return tablePartitions;
+    }
+
+    /**
+     * Set for the number of key ranges the large single key tables are split into for concurrent re-encryption.
+     *
+     * @param tablePartitions Number of key ranges per table.
+     */
+    public void setTablePartitions(int tablePartitions) {
+
+        this.tablePartitions = tablePartitions;
+    }
+
+    /**
+     * Get for the number of crypto threads re-encrypting the chunks of a table.
+     *
+     * @return Number of crypto threads per table.
+     */
+    public int getPipelineCryptoThreads() {
+
+        return pipelineCryptoThreads;
+    }
+
+    /**
+     * Set for the number of crypto threads re-encrypting the chunks of a table.
+     *
+     * @param pipelineCryptoThreads Number of crypto threads per table.
+     */
+    public void setPipelineCryptoThreads(int pipelineCryptoThreads) {
+
+        this.pipelineCryptoThreads = pipelineCryptoThreads;
+    }
+
+    /**
+     * Get for the number of chunks buffered between the read, crypto and write stages of a table.
+     *
+     * @return Number of buffered chunks per stage.
+     */
+    public int getPipelineQueueSize() {
+
+        return pipelineQueueSize;
+    }
+
+    /**
+     * Set for the number of chunks buffered between the read, crypto and write stages of a table.
+     *
+     * @param pipelineQueueSize Number of buffered chunks per stage.
+     */
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
+    /**
+     * Get for the enable streaming read property value.
+     *
+     * @return True if the tables are read through a single streaming cursor instead of paged queries.
+     */
+    public boolean getEnableStreamingRead() {
+
+        return enableStreamingRead;
+    }
+
+    /**
+     * Set for the enable streaming read property value.
+     *
+     * @param enableStreamingRead True if the tables are read through a single streaming cursor.
+     */
+    public void setEnableStreamingRead(boolean enableStreamingRead) {
+
+        this.enableStreamingRead = enableStreamingRead;
+    }
+
+    /**
+     * Get for the number of rows fetched per round-trip by a streaming cursor.
+     *
+     * @return Fetch size of the streaming cursor.
+     */
+    public int getStreamFetchSize() {
+
+        return streamFetchSize;
+    }
+
+    /**
+     * Set for the number of rows fetched per round-trip by a streaming cursor.
+     *
+     * @param streamFetchSize Fetch size of the streaming cursor.
+     */
+    public void setStreamFetchSize(int streamFetchSize) {
+
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    /**
+     * Get for the number of connections opened upfront by each DB connection pool.
+     *
+     * @return Minimum pool size.
+     */
+    public int getDbPoolMinSize() {
+
+        return dbPoolMinSize;
+    }
+
+    /**
+     * Set for the number of connections opened upfront by each DB connection pool.
+     *
+     * @param dbPoolMinSize Minimum pool size.
+     */
+    public void setDbPoolMinSize(int dbPoolMinSize) {
+
+        this.dbPoolMinSize = dbPoolMinSize;
+    }
+
+    /**
+     * Get for the maximum number of connections of each DB connection pool.
+     *
+     * @return Maximum pool size.
+     */
+    public int getDbPoolMaxSize() {
+
+        return dbPoolMaxSize;
+    }
+
+    /**
+     * Set for the maximum number of connections of each DB connection pool.
+     *
+     * @param dbPoolMaxSize Maximum pool size.
+     */
+    public void setDbPoolMaxSize(int dbPoolMaxSize) {
+
+        this.dbPoolMaxSize = dbPoolMaxSize;
+    }
+
+    /**
+     * Get for the timeout in seconds of validating an idle pooled connection before reuse.
+     *
+     * @return Validation timeout, 0 if validation is disabled.
+     */
+    public int getDbPoolValidationTimeout() {
+
+        return dbPoolValidationTimeout;
+    }
+
+    /**
+     * Set for the timeout in seconds of validating an idle pooled connection before reuse.
+     *
+     * @param dbPoolValidationTimeout Validation timeout, 0 if validation is disabled.
+     */
+    public void setDbPoolValidationTimeout(int dbPoolValidationTimeout) {
+
+        this.dbPoolValidationTimeout = dbPoolValidationTimeout;
+    }
+
+    /**
+     * Get for the number of prepared statements cached per pooled connection.
+     *
+     * @return Statement cache size, 0 if caching is disabled.
+     */
+    public int getDbPoolStatementCacheSize() {
+
+        return dbPoolStatementCacheSize;
+    }
+
+    /**
+     * Set for the number of prepared statements cached per pooled connection.
+     *
+     * @param dbPoolStatementCacheSize Statement cache size, 0 if caching is disabled.
+     */
+    public void setDbPoolStatementCacheSize(int dbPoolStatementCacheSize) {
+
+        this.dbPoolStatementCacheSize = dbPoolStatementCacheSize;
+    }
+
+    /**
+     * Get for the path of the file holding the DB re-encryption progress.
+     *
+     * @return Path of the checkpoint file.
+     */
+    public String getCheckpointFile() {
+
+        return checkpointFile;
+    }
+
+    /**
+     * Set for the path of the file holding the DB re-encryption progress.
+     *
+     * @param checkpointFile Path of the checkpoint file.
+     */
+    public void setCheckpointFile(String checkpointFile) {
+
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Get for the enable resume property value.
+     *
+     * @return True if the DB re-encryption continues from the checkpoint of the previous run.
+     */
+    public boolean getEnableResume() {
+
+        return enableResume;
+    }
+
+    /**
+     * Set for the enable resume property value.
+     *
+     * @param enableResume True if the DB re-encryption continues from the checkpoint of the previous run.
+     */
+    public void setEnableResume(boolean enableResume) {
+
+        this.enableResume = enableResume;
+    }
+
+    /**
+     * Get for the checkpoint interval property value.
+     *
+     * @return Interval in milliseconds between the writes of the checkpoint file, 0 to write it after every chunk.
+     */
+    public int getCheckpointInterval() {
+
+        return checkpointInterval;
+    }
+
+    /**
+     * Set for the checkpoint interval property value.
+     *
+     * @param checkpointInterval Interval in milliseconds between the writes of the checkpoint file.
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Get for the enable adaptive chunk size property value.
+     *
+     * @return True if the chunk size of each table is adjusted to the measured latency of its chunks.
+     */
+    public boolean getEnableAdaptiveChunkSize() {
+
+        return enableAdaptiveChunkSize;
+    }
+
+    /**
+     * Set for the enable adaptive chunk size property value.
+     *
+     * @param enableAdaptiveChunkSize True if the chunk size of each table is adjusted to the measured latency of its
+     *                                chunks.
+     */
+    public void setEnableAdaptiveChunkSize(boolean enableAdaptiveChunkSize) {
+
+        this.enableAdaptiveChunkSize = enableAdaptiveChunkSize;
+    }
+
+    /**
+     * Get for the lowest chunk size the adaptive chunk size can shrink to.
+     *
+     * @return Minimum chunk size.
+     */
+    public int getMinChunkSize() {
+
+        return minChunkSize;
+    }
+
+    /**
+     * Set for the lowest chunk size the adaptive chunk size can shrink to.
+     *
+     * @param minChunkSize Minimum chunk size.
+     */
+    public void setMinChunkSize(int minChunkSize) {
+
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Get for the highest chunk size the adaptive chunk size can grow to.
+     *
+     * @return Maximum chunk size.
+     */
+    public int getMaxChunkSize() {
+
+        return maxChunkSize;
+    }
+
+    /**
+     * Set for the highest chunk size the adaptive chunk size can grow to.
+     *
+     * @param maxChunkSize Maximum chunk size.
+     */
+    public void setMaxChunkSize(int maxChunkSize) {
+
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * Get for the time in milliseconds the adaptive chunk size aims to spend reading, re-encrypting and writing a
+     * chunk.
+     *
+     * @return Target chunk time in milliseconds.
+     */
+    public int getTargetChunkTime() {
+
+        return targetChunkTime;
+    }
+
+    /**
+     * Set for the time in milliseconds the adaptive chunk size aims to spend reading, re-encrypting and writing a
+     * chunk.
+     *
+     * @param targetChunkTime Target chunk time in milliseconds.
+     */
+    public void setTargetChunkTime(int targetChunkTime) {
+
+        this.targetChunkTime = targetChunkTime;
+    }
+
+    /**
+     * Get for the enable JMX metrics property value.
+     *
+     * @return True if the re-encryption metrics of each table are registered as MBeans.
+     */
+    public boolean getEnableJmxMetrics() {
+
+        return enableJmxMetrics;
+    }
+
+    /**
+     * Set for the enable JMX metrics property value.
+     *
+     * @param enableJmxMetrics True if the re-encryption metrics of each table are registered as MBeans.
+     */
+    public void setEnableJmxMetrics(boolean enableJmxMetrics) {
+
+        this.enableJmxMetrics = enableJmxMetrics;
+    }
+
+    /**
+     * Get for the port of the local Prometheus metrics endpoint.
+     *
+     * @return Prometheus port, or 0 if the endpoint is disabled.
+     */
+    public int getPrometheusPort() {
+
+        return prometheusPort;
+    }
+
+    /**
+     * Set for the port of the local Prometheus metrics endpoint.
+     *
+     * @param prometheusPort Prometheus port, or 0 to disable the endpoint.
+     */
+    public void setPrometheusPort(int prometheusPort) {
+
+        this.prometheusPort = prometheusPort;
+    }
+
+    /**
+     * Get for the budget of rows written per second by the DB re-encryption.
+     *
+     * @return Rows per second, or 0 if unlimited.
+     */
+    public int getMaxRowsPerSecond() {
+
+        return maxRowsPerSecond;
+    }
+
+    /**
+     * Set for the budget of rows written per second by the DB re-encryption.
+     *
+     * @param maxRowsPerSecond Rows per second, or 0 for unlimited.
+     */
+    public void setMaxRowsPerSecond(int maxRowsPerSecond) {
+
+        this.maxRowsPerSecond = maxRowsPerSecond;
+    }
+
+    /**
+     * Get for the budget of batches written per second by the DB re-encryption.
+     *
+     * @return Batches per second, or 0 if unlimited.
+     */
+    public int getMaxBatchesPerSecond() {
+
+        return maxBatchesPerSecond;
+    }
+
+    /**
+     * Set for the budget of batches written per second by the DB re-encryption.
+     *
+     * @param maxBatchesPerSecond Batches per second, or 0 for unlimited.
+     */
+    public void setMaxBatchesPerSecond(int maxBatchesPerSecond) {
+
+        this.maxBatchesPerSecond = maxBatchesPerSecond;
+    }
+
+    /**
+     * Get for the commit latency above which the DB re-encryption backs off.
+     *
+     * @return Commit latency in milliseconds, or 0 if the latency guard is disabled.
+     */
+    public int getMaxCommitLatency() {
+
+        return maxCommitLatency;
+    }
+
+    /**
+     * Set for the commit latency above which the DB re-encryption backs off.
+     *
+     * @param maxCommitLatency Commit latency in milliseconds, or 0 to disable the latency guard.
+     */
+    public void setMaxCommitLatency(int maxCommitLatency) {
+
+        this.maxCommitLatency = maxCommitLatency;
+    }
+
+    /**
+     * Get for the first pause of the DB re-encryption after a slow commit.
+     *
+     * @return Backoff time in milliseconds.
+     */
+    public int getLatencyBackoffTime() {
+
+        return latencyBackoffTime;
+    }
+
+    /**
+     * Set for the first pause of the DB re-encryption after a slow commit.
+     *
+     * @param latencyBackoffTime Backoff time in milliseconds.
+     */
+    public void setLatencyBackoffTime(int latencyBackoffTime) {
+
+        this.latencyBackoffTime = latencyBackoffTime;
+    }
+
+    /**
+     * Get for the time-of-day profiles scaling the throttle budgets.
+     *
+     * @return Throttle profiles, or null if the budgets apply all day.
+     */
+    public String getThrottleProfiles() {
+
+        return throttleProfiles;
+    }
+
+    /**
+     * Set for the time-of-day profiles scaling the throttle budgets.
+     *
+     * @param throttleProfiles Throttle profiles, or null for the budgets to apply all day.
+     */
+    public void setThrottleProfiles(String throttleProfiles) {
+
+        this.throttleProfiles = throttleProfiles;
+    }
+
+    /**
+     * Get for the number of rows of each table sampled by the estimate mode.
+     *
+     * @return Sample size.
+     */
+    public int getEstimateSampleSize() {
+
+        return estimateSampleSize;
+    }
+
+    /**
+     * Set for the number of rows of each table sampled by the estimate mode.
+     *
+     * @param estimateSampleSize Sample size.
+     */
+    public void setEstimateSampleSize(int estimateSampleSize) {
+
+        this.estimateSampleSize = estimateSampleSize;
+    }
+
+    /**
+     * Get for the path of the file reporting the records which could not be re-encrypted.
+     *
+     * @return Path of the failure report.
+     */
+    public String getFailureReportFile() {
+
+        return failureReportFile;
+    }
+
+    /**
+     * Set for the path of the file reporting the records which could not be re-encrypted.
+     *
+     * @param failureReportFile Path of the failure report.
+     */
+    public void setFailureReportFile(String failureReportFile) {
+
+        this.failureReportFile = failureReportFile;
+    }
+
+    /**
+     * Get for the enable staging table update property value.
+     *
+     * @return True if the re-encrypted chunks are applied through a staging table.
+     */
+    public boolean getEnableStagingTableUpdate() {
+
+        return enableStagingTableUpdate;
+    }
+
+    /**
+     * Set for the enable staging table update property value.
+     *
+     * @param enableStagingTableUpdate True if the re-encrypted chunks are applied through a staging table.
+     */
+    public void setEnableStagingTableUpdate(boolean enableStagingTableUpdate) {
+
+        this.enableStagingTableUpdate = enableStagingTableUpdate;
+    }
+
+    /**
+     * Get for the enable compact envelope property value.
+     *
+     * @return True if the values are re-encrypted into the compact binary envelope.
+     */
+    public boolean getEnableCompactEnvelope() {
+
+        return enableCompactEnvelope;
+    }
+
+    /**
+     * Set for the enable compact envelope property value.
+     *
+     * @param enableCompactEnvelope True if the values are re-encrypted into the compact binary envelope.
+     */
+    public void setEnableCompactEnvelope(boolean enableCompactEnvelope) {
+
+        this.enableCompactEnvelope = enableCompactEnvelope;
+    }
+
+    /**
+     * Get for the IV generator property value.
+     *
+     * @return Name of the generator of the initialization vectors.
+     */
+    public String getIvGenerator() {
+
+        return ivGenerator;
+    }
+
+    /**
+     * Set for the IV generator property value.
+     *
+     * @param ivGenerator Name of the generator of the initialization vectors.
+     */
+    public void setIvGenerator(String ivGenerator) {
+
+        this.ivGenerator = ivGenerator;
+    }
+
+    /**
+     * Get for the encrypt backend property value.
+     *
+     * @return Name of the crypto backend the values are encrypted with.
+     */
+    public String getEncryptBackend() {
+
+        return encryptBackend;
+    }
+
+    /**
+     * Set for the encrypt backend property value.
+     *
+     * @param encryptBackend Name of the crypto backend the values are encrypted with.
+     */
+    public void setEncryptBackend(String encryptBackend) {
+
+        this.encryptBackend = encryptBackend;
+    }
+
+    /**
+     * Get for the decrypt backend property value.
+     *
+     * @return Name of the crypto backend the values are decrypted with.
+     */
+    public String getDecryptBackend() {
+
+        return decryptBackend;
+    }
+
+    /**
+     * Set for the decrypt backend property value.
+     *
+     * @param decryptBackend Name of the crypto backend the values are decrypted with.
+     */
+    public void setDecryptBackend(String decryptBackend) {
+
+        this.decryptBackend = decryptBackend;
+    }
+
+    /**
+     * Get for the re-encrypt batch threads property value.
+     *
+     * @return Number of threads a batch of values is re-encrypted with.
+     */
+    public int getReEncryptBatchThreads() {
+
+        return reEncryptBatchThreads;
+    }
+
+    /**
+     * Set for the re-encrypt batch threads property value.
+     *
+     * @param reEncryptBatchThreads Number of threads a batch of values is re-encrypted with.
+     */
+    public void setReEncryptBatchThreads(int reEncryptBatchThreads) {
+
+        this.reEncryptBatchThreads = reEncryptBatchThreads;
+    }
+
+    /**
+     * Get for the retired secret keys property value.
+     *
+     * @return Comma separated label=key entries of the retired keys, or null.
+     */
+    public String getRetiredSecretKeys() {
+
+        return retiredSecretKeys;
+    }
+
+    /**
+     * Set for the retired secret keys property value.
+     *
+     * @param retiredSecretKeys Comma separated label=key entries of the retired keys, or null.
+     */
+    public void setRetiredSecretKeys(String retiredSecretKeys) {
+
+        this.retiredSecretKeys = retiredSecretKeys;
+    }
+
+    /**
+     * Get for the data key envelope property value.
+     *
+     * @return Mode of the data key envelope, one of disabled, enabled and rewrapOnly.
+     */
+    public String getDataKeyEnvelope() {
+
+        return dataKeyEnvelope;
+    }
+
+    /**
+     * Set for the data key envelope property value.
+     *
+     * @param dataKeyEnvelope Mode of the data key envelope, one of disabled, enabled and rewrapOnly.
+     */
+    public void setDataKeyEnvelope(String dataKeyEnvelope) {
+
+        this.dataKeyEnvelope = dataKeyEnvelope;
+    }
+
     /**
      * Get for the enable database migrator property value.
      *
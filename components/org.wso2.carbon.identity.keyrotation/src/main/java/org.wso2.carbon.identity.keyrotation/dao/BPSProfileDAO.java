@@ -20,17 +20,20 @@ package org.wso2.carbon.identity.keyrotation.dao;
 
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
 import org.wso2.carbon.identity.keyrotation.model.BPSPassword;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class holds implementations needed to re-encrypt the BPS Profile data in DB.
@@ -39,8 +42,17 @@ public class BPSProfileDAO {
 
     private static final Logger log = Logger.getLogger(BPSProfileDAO.class);
     private static final BPSProfileDAO instance = new BPSProfileDAO();
-    public static int updateCount = 0;
-    public static int failedUpdateCount = 0;
+    private static final String[] BPS_PASSWORD_KEY_COLUMNS = {KeyRotationConstants.PROFILE_NAME,
+            KeyRotationConstants.TENANT_ID};
+    public static final AtomicInteger updateCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateCount = new AtomicInteger();
+    private static final RecordBinder<BPSPassword> BPS_PASSWORD_BINDER = (preparedStatement, bpsPassword) -> {
+        preparedStatement.setString(1, bpsPassword.getPassword());
+        preparedStatement.setString(2, bpsPassword.getProfileName());
+        preparedStatement.setInt(3, Integer.parseInt(bpsPassword.getTenantId()));
+    };
+    public static final Function<BPSPassword, String> BPS_PASSWORD_KEY_OF = bpsPassword -> "profile name: " +
+            bpsPassword.getProfileName() + " , tenant id: " + bpsPassword.getTenantId();
 
     public BPSProfileDAO() {
 
@@ -51,32 +63,99 @@ public class BPSProfileDAO {
         return instance;
     }
 
+    /**
+     * To open a streaming cursor over the data in WF_BPS_PROFILE.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on WF_BPS_PROFILE.
+     */
+    public ChunkCursor<BPSPassword> openBpsPasswordCursor(KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewIdnDialect(keyRotationConfig),
+                    dataSourceManager.getNewIdnConnection(keyRotationConfig),
+                    DBConstants.GET_BPS_PASSWORD,
+                    resultSet -> new BPSPassword(resultSet.getString(KeyRotationConstants.PROFILE_NAME),
+                            resultSet.getString(KeyRotationConstants.USERNAME),
+                            resultSet.getString(KeyRotationConstants.TENANT_ID),
+                            resultSet.getString(KeyRotationConstants.PASSWORD)), keyRotationConfig);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of data in WF_BPS_PROFILE, seeking past the last record of the previous chunk
+     * instead of skipping an offset.
+     *
+     * @param lastRecord        The last record of the previous chunk, or null to retrieve the first chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from WF_BPS_PROFILE.
+     */
+    public List<BPSPassword> getBpsPasswordChunks(BPSPassword lastRecord, int chunkSize,
+                                                  KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (lastRecord == null) {
+            return getBpsPasswordChunks(0, chunkSize, keyRotationConfig);
+        }
+        List<BPSPassword> bpsPasswordList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            String query = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig)
+                    .keysetQuery(DBConstants.GET_BPS_PASSWORD, true, false, BPS_PASSWORD_KEY_COLUMNS);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                preparedStatement.setString(1, lastRecord.getProfileName());
+                preparedStatement.setString(2, lastRecord.getProfileName());
+                preparedStatement.setInt(3, Integer.parseInt(lastRecord.getTenantId()));
+                preparedStatement.setInt(4, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    bpsPasswordList.add(new BPSPassword(resultSet.getString(KeyRotationConstants.PROFILE_NAME),
+                            resultSet.getString(KeyRotationConstants.USERNAME),
+                            resultSet.getString(KeyRotationConstants.TENANT_ID),
+                            resultSet.getString(KeyRotationConstants.PASSWORD)));
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving passwords from WF_BPS_PROFILE.", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+        return bpsPasswordList;
+    }
+
     /**
      * To retrieve the list of data in WF_BPS_PROFILE as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from WF_BPS_PROFILE.
      */
-    public List<BPSPassword> getBpsPasswordChunks(int startIndex, KeyRotationConfig keyRotationConfig) throws
-            KeyRotationException {
+    private List<BPSPassword> getBpsPasswordChunks(int startIndex, int chunkSize, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         List<BPSPassword> bpsPasswordList = new ArrayList<>();
         String query = DBConstants.GET_BPS_PASSWORD;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_BPS_PASSWORD_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_BPS_PASSWORD, BPS_PASSWORD_KEY_COLUMNS);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_BPS_PASSWORD_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setInt(1, firstIndex);
@@ -109,24 +188,20 @@ public class BPSProfileDAO {
     public void updateBpsPasswordChunks(List<BPSPassword> updateBPSPasswordsList, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_BPS_PASSWORD)) {
-                for (BPSPassword bpsPassword : updateBPSPasswordsList) {
-                    preparedStatement.setString(1, bpsPassword.getPassword());
-                    preparedStatement.setString(2, bpsPassword.getProfileName());
-                    preparedStatement.setInt(3, Integer.parseInt(bpsPassword.getTenantId()));
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+                ChunkUpdate.BPS_PASSWORD.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateBPSPasswordsList, BPS_PASSWORD_BINDER);
                 connection.commit();
-                updateCount += updateBPSPasswordsList.size();
-            } catch (SQLException e) {
+                updateCount.addAndGet(updateBPSPasswordsList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.WF_BPS_PROFILE)
+                        .addRowsRotated(updateBPSPasswordsList.size());
+            } catch (SQLException | IOException e) {
                 connection.rollback();
-                log.error("Error while updating passwords in WF_BPS_PROFILE, trying the chunk row by row " +
-                        "again. ", e);
+                log.error("Error while updating passwords in WF_BPS_PROFILE, retrying the chunk in halves. ", e);
                 retryOnBpsUpdate(updateBPSPasswordsList, connection);
             }
         } catch (SQLException e) {
@@ -135,7 +210,8 @@ public class BPSProfileDAO {
     }
 
     /**
-     * To retry upon a failure in updating the BPS chunk in WF_BPS_PROFILE.
+     * To retry upon a failure in updating the BPS chunk in WF_BPS_PROFILE. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateBPSPasswordsList The list containing records that should be re-encrypted.
      * @param connection             Connection with the new identity DB.
@@ -144,26 +220,8 @@ public class BPSProfileDAO {
     private void retryOnBpsUpdate(List<BPSPassword> updateBPSPasswordsList, Connection connection)
             throws KeyRotationException {
 
-        BPSPassword faulty = null;
-        try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_BPS_PASSWORD)) {
-            for (BPSPassword bpsPassword : updateBPSPasswordsList) {
-                try {
-                    faulty = bpsPassword;
-                    preparedStatement.setString(1, bpsPassword.getPassword());
-                    preparedStatement.setString(2, bpsPassword.getProfileName());
-                    preparedStatement.setInt(3, Integer.parseInt(bpsPassword.getTenantId()));
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateCount++;
-                } catch (SQLException err) {
-                    connection.rollback();
-                    log.error("Error while updating password in WF_BPS_PROFILE of record with profile name: " +
-                            faulty.getProfileName() + " , tenant id: " + faulty.getTenantId() + " ," + err);
-                    failedUpdateCount++;
-                }
-            }
-        } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
-        }
+        new BisectingBatchRetry<BPSPassword>(connection, DBConstants.UPDATE_BPS_PASSWORD,
+                DBConstants.WF_BPS_PROFILE, BPS_PASSWORD_BINDER, BPS_PASSWORD_KEY_OF,
+                updateCount, failedUpdateCount).retry(updateBPSPasswordsList);
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * This class holds the retry of a chunk whose batch update failed. Instead of committing the chunk row by row, it is
+ * split in halves and each half is written as a batch of its own, splitting the halves which fail again until the
+ * failing rows are isolated. A single failing row in a chunk of n rows then costs about 2 log2(n) batches instead of
+ * n single row commits. The isolated rows are counted as failed and recorded in the failure report.
+ *
+ * @param <T> Type of the records of the table.
+ */
+public class BisectingBatchRetry<T> {
+
+    private static final Logger log = Logger.getLogger(BisectingBatchRetry.class);
+    private final Connection connection;
+    private final String query;
+    private final String table;
+    private final RecordBinder<T> binder;
+    private final Function<T, String> keyOf;
+    private final AtomicInteger updateCount;
+    private final AtomicInteger failedUpdateCount;
+
+    /**
+     * Create the retry of the failed chunks of a table.
+     *
+     * @param connection        Connection with the DB, with auto commit disabled.
+     * @param query             The update statement.
+     * @param table             Name of the table.
+     * @param binder            Binds a record to the update statement.
+     * @param keyOf             Describes the key of a record in the logs and the failure report.
+     * @param updateCount       Counter of the updated records.
+     * @param failedUpdateCount Counter of the failed records.
+     */
+    public BisectingBatchRetry(Connection connection, String query, String table, RecordBinder<T> binder,
+                               Function<T, String> keyOf, AtomicInteger updateCount,
+                               AtomicInteger failedUpdateCount) {
+
+        this.connection = connection;
+        this.query = query;
+        this.table = table;
+        this.binder = binder;
+        this.keyOf = keyOf;
+        this.updateCount = updateCount;
+        this.failedUpdateCount = failedUpdateCount;
+    }
+
+    /**
+     * Retry a chunk whose batch update failed and was rolled back.
+     *
+     * @param records The records of the chunk.
+     * @throws KeyRotationException Exception thrown while accessing the DB.
+     */
+    public void retry(List<T> records) throws KeyRotationException {
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            split(preparedStatement, records);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while accessing the DB of " + table + ".", e);
+        }
+    }
+
+    /**
+     * Update the two halves of the records separately, or the single record on its own.
+     *
+     * @param preparedStatement The update statement.
+     * @param records           The records to be updated.
+     * @throws SQLException Exception thrown while rolling back a failed batch.
+     */
+    private void split(PreparedStatement preparedStatement, List<T> records) throws SQLException {
+
+        if (records.size() == 1) {
+            update(preparedStatement, records);
+            return;
+        }
+        int middle = records.size() / 2;
+        update(preparedStatement, records.subList(0, middle));
+        update(preparedStatement, records.subList(middle, records.size()));
+    }
+
+    /**
+     * Update the records in a single batch, splitting them again if the batch fails.
+     *
+     * @param preparedStatement The update statement.
+     * @param records           The records to be updated.
+     * @throws SQLException Exception thrown while rolling back a failed batch.
+     */
+    private void update(PreparedStatement preparedStatement, List<T> records) throws SQLException {
+
+        try {
+            for (T record : records) {
+                binder.bind(preparedStatement, record);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            connection.commit();
+            updateCount.addAndGet(records.size());
+            KeyRotationMetrics.getInstance().getTableMetrics(table).addRowsRotated(records.size());
+        } catch (SQLException | IOException e) {
+            preparedStatement.clearBatch();
+            connection.rollback();
+            if (records.size() > 1) {
+                split(preparedStatement, records);
+                return;
+            }
+            String key = keyOf.apply(records.get(0));
+            log.error("Error while updating " + table + " of record with " + key + " ," + e);
+            FailureReport.getInstance().recordFailure(table, key, e, failedUpdateCount);
+        }
+    }
+}
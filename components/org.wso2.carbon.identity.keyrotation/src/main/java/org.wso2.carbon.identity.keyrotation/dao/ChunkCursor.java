@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds a forward-only, read-only cursor over a whole table which hands out the records in chunks. The
+ * rows are streamed from the DB instead of being fetched page by page.
+ *
+ * @param <T> Type of the records of the table.
+ */
+public class ChunkCursor<T> implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(ChunkCursor.class);
+    private final Connection connection;
+    private final PreparedStatement preparedStatement;
+    private final ResultSet resultSet;
+    private final RowMapper<T> rowMapper;
+
+    /**
+     * Maps the current row of a result set to a record.
+     *
+     * @param <T> Type of the records of the table.
+     */
+    public interface RowMapper<T> {
+
+        /**
+         * Map the current row to a record.
+         *
+         * @param resultSet Result set positioned on the row.
+         * @return The record.
+         * @throws SQLException         Exception thrown while reading the row.
+         * @throws KeyRotationException Exception thrown while mapping the row.
+         */
+        T mapRow(ResultSet resultSet) throws SQLException, KeyRotationException;
+    }
+
+    private ChunkCursor(Connection connection, PreparedStatement preparedStatement, ResultSet resultSet,
+                        RowMapper<T> rowMapper) {
+
+        this.connection = connection;
+        this.preparedStatement = preparedStatement;
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+    }
+
+    /**
+     * Open a cursor on its own connection, which is closed along with the cursor. PostgreSQL only uses a server side
+     * cursor inside a transaction with a fetch size.
+     *
+     * @param dialect           SQL dialect of the DB.
+     * @param connection        Connection of the cursor.
+     * @param query             Query selecting the records.
+     * @param rowMapper         Maps the rows to records.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param parameters        String parameters of the query.
+     * @param <T>               Type of the records of the table.
+     * @return The open cursor.
+     * @throws KeyRotationException Exception thrown while opening the cursor.
+     */
+    static <T> ChunkCursor<T> open(SqlDialect dialect, Connection connection, String query, RowMapper<T> rowMapper,
+                                   KeyRotationConfig keyRotationConfig, String... parameters)
+            throws KeyRotationException {
+
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement preparedStatement =
+                    connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(dialect.getStreamFetchSize(keyRotationConfig.getStreamFetchSize()));
+            for (int i = 0; i < parameters.length; i++) {
+                preparedStatement.setString(i + 1, parameters[i]);
+            }
+            ResultSet resultSet = preparedStatement.executeQuery();
+            return new ChunkCursor<>(connection, preparedStatement, resultSet, rowMapper);
+        } catch (SQLException e) {
+            try {
+                connection.close();
+            } catch (SQLException err) {
+                log.error("Error while closing the DB connection.", err);
+            }
+            throw new KeyRotationException("Error while opening the cursor.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of records.
+     *
+     * @param chunkSize Maximum number of records of the chunk.
+     * @return List comprising of the next records, empty once the cursor is exhausted.
+     * @throws KeyRotationException Exception thrown while reading from the cursor.
+     */
+    public List<T> next(int chunkSize) throws KeyRotationException {
+
+        List<T> chunk = new ArrayList<>();
+        try {
+            while (chunk.size() < chunkSize && resultSet.next()) {
+                chunk.add(rowMapper.mapRow(resultSet));
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while reading from the cursor.", e);
+        }
+        return chunk;
+    }
+
+    /**
+     * Close the cursor and its connection.
+     *
+     * @throws KeyRotationException Exception thrown while closing the cursor.
+     */
+    @Override
+    public void close() throws KeyRotationException {
+
+        try {
+            resultSet.close();
+            preparedStatement.close();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while closing the cursor.", e);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.error("Error while closing the DB connection.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This enum holds the update of a re-encrypted chunk of each table. A chunk is either written as a JDBC batch of
+ * single row updates by primary key, or bulk inserted into a session scoped staging table and applied to the table
+ * with one set-based update. The staging table is created per connection from the columns of the table, so it has
+ * the same column types without hard coding them per dialect. The staging statements of each dialect are built by
+ * SqlDialect.
+ */
+public enum ChunkUpdate {
+
+    TOTP_SECRET(DBConstants.IDN_IDENTITY_USER_DATA, DBConstants.UPDATE_TOTP_SECRET,
+            new String[]{"DATA_VALUE"}, "TENANT_ID", "USER_NAME", "DATA_KEY"),
+    OAUTH_CODE(DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE, DBConstants.UPDATE_OAUTH_AUTHORIZATION_CODE,
+            new String[]{"AUTHORIZATION_CODE"}, "CODE_ID"),
+    OAUTH_TOKEN(DBConstants.IDN_OAUTH2_ACCESS_TOKEN, DBConstants.UPDATE_OAUTH_ACCESS_TOKEN,
+            new String[]{"ACCESS_TOKEN", "REFRESH_TOKEN"}, "TOKEN_ID"),
+    OAUTH_SECRET(DBConstants.IDN_OAUTH_CONSUMER_APPS, DBConstants.UPDATE_OAUTH_SECRET,
+            new String[]{"CONSUMER_SECRET"}, "ID", new String[]{"ID"}),
+    BPS_PASSWORD(DBConstants.WF_BPS_PROFILE, DBConstants.UPDATE_BPS_PASSWORD,
+            new String[]{"PASSWORD"}, "PROFILE_NAME", "TENANT_ID"),
+    WF_REQUEST(DBConstants.WF_REQUEST, DBConstants.UPDATE_WF_REQUEST,
+            new String[]{"REQUEST"}, "UUID"),
+    REG_PROPERTY(DBConstants.REG_PROPERTY, DBConstants.UPDATE_REG_PROPERTY_DATA,
+            new String[]{"REG_VALUE"}, "REG_ID", new String[]{"REG_ID", "REG_TENANT_ID"});
+
+    private static final Logger log = Logger.getLogger(ChunkUpdate.class);
+    private static final Set<SqlDialect> warnedDialects = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final String table;
+    private final String updateQuery;
+    private final String[] valueColumns;
+    private final String[] keyColumns;
+    private final String identityColumn;
+
+    ChunkUpdate(String table, String updateQuery, String[] valueColumns, String... keyColumns) {
+
+        this(table, updateQuery, valueColumns, null, keyColumns);
+    }
+
+    ChunkUpdate(String table, String updateQuery, String[] valueColumns, String identityColumn, String[] keyColumns) {
+
+        this.table = table;
+        this.updateQuery = updateQuery;
+        this.valueColumns = valueColumns;
+        this.identityColumn = identityColumn;
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Get for the name of the updated table.
+     *
+     * @return Name of the table.
+     */
+    public String getTable() {
+
+        return table;
+    }
+
+    /**
+     * Get for the single row update statement, whose parameters are the new values followed by the key columns.
+     *
+     * @return The update statement.
+     */
+    public String getUpdateQuery() {
+
+        return updateQuery;
+    }
+
+    /**
+     * Write a chunk of re-encrypted records without committing it. The staging table is only used if it's enabled
+     * and the dialect supports session scoped tables, and the chunk is written as a batch otherwise.
+     *
+     * @param connection   Connection with the DB, with auto commit disabled.
+     * @param dialect      SQL dialect of the DB.
+     * @param stagingTable Whether to apply the chunk through a staging table.
+     * @param records      The records of the chunk.
+     * @param binder       Binds a record to the update statement.
+     * @param <T>          Type of the records of the table.
+     * @throws SQLException Exception thrown while accessing the DB.
+     * @throws IOException  Exception thrown while serializing a record.
+     */
+    public <T> void write(Connection connection, SqlDialect dialect, boolean stagingTable, List<T> records,
+                          RecordBinder<T> binder) throws SQLException, IOException {
+
+        if (stagingTable && isStagingSupported(dialect)) {
+            writeToStagingTable(connection, dialect, records, binder);
+            return;
+        }
+        try (PreparedStatement preparedStatement = connection.prepareStatement(updateQuery)) {
+            for (T record : records) {
+                binder.bind(preparedStatement, record);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+    }
+
+    /**
+     * Bulk insert the chunk into the staging table and apply it to the table with a single update. The update has to
+     * match every staged row, otherwise the chunk fails and is retried in halves as single row updates, so a staged
+     * row the join misses is never reported as rotated.
+     *
+     * @param connection Connection with the DB, with auto commit disabled.
+     * @param dialect    SQL dialect of the DB.
+     * @param records    The records of the chunk.
+     * @param binder     Binds a record to the insert statement.
+     * @param <T>        Type of the records of the table.
+     * @throws SQLException Exception thrown while accessing the DB, or if the update didn't match every staged row.
+     * @throws IOException  Exception thrown while serializing a record.
+     */
+    private <T> void writeToStagingTable(Connection connection, SqlDialect dialect, List<T> records,
+                                         RecordBinder<T> binder) throws SQLException, IOException {
+
+        String stagingTable = dialect.getStagingTable(table);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(dialect.getCreateStagingQuery(table, stagingTable, valueColumns, keyColumns,
+                    identityColumn));
+            statement.executeUpdate("DELETE FROM " + stagingTable);
+        }
+        try (PreparedStatement preparedStatement = connection.prepareStatement(getInsertStagingQuery(stagingTable))) {
+            for (T record : records) {
+                binder.bind(preparedStatement, record);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            int appliedCount = statement.executeUpdate(dialect.getApplyStagingQuery(table, stagingTable, valueColumns,
+                    keyColumns));
+            if (appliedCount != records.size()) {
+                throw new SQLException("Updated " + appliedCount + " rows of " + table + " from " + records.size() +
+                        " staged rows.");
+            }
+        }
+    }
+
+    /**
+     * Whether the dialect supports the staging table, warning once per dialect which doesn't.
+     *
+     * @param dialect SQL dialect of the DB.
+     * @return True if the staging table can be used.
+     */
+    private static boolean isStagingSupported(SqlDialect dialect) {
+
+        if (dialect.isStagingSupported()) {
+            return true;
+        }
+        if (warnedDialects.add(dialect)) {
+            log.warn("Staging table updates are not supported on " + dialect + ", updating the chunks in batches.");
+        }
+        return false;
+    }
+
+    /**
+     * Get the statement inserting a record into the staging table, with the same parameters as the update statement.
+     *
+     * @param stagingTable Name of the staging table.
+     * @return The insert statement.
+     */
+    private String getInsertStagingQuery(String stagingTable) {
+
+        int columnCount = valueColumns.length + keyColumns.length;
+        return "INSERT INTO " + stagingTable + " (" + String.join(", ", valueColumns) + ", " +
+                String.join(", ", keyColumns) + ") VALUES (" + String.join(", ", Collections.nCopies(columnCount,
+                "?")) + ")";
+    }
+}
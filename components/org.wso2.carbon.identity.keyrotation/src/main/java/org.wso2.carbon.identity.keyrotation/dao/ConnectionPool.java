@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds a pool of JDBC connections to a single database. Closing a connection handed out by the pool
+ * returns it to the pool, and the prepared statements of each connection are cached and reused. A connection is only
+ * validated before reuse if it has been idle for longer than POOL_VALIDATION_BYPASS_MILLIS, as one returned just now
+ * was used successfully moments ago.
+ */
+public class ConnectionPool {
+
+    private static final Logger log = Logger.getLogger(ConnectionPool.class);
+    private final String name;
+    private final String url;
+    private final int validationTimeout;
+    private final int statementCacheSize;
+    private final SqlDialect dialect;
+    private final Properties connectionProperties;
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * Create a pool and open its minimum number of connections.
+     *
+     * @param name               Name of the database, used in log messages.
+     * @param url                DB URL.
+     * @param username           DB username.
+     * @param password           DB password.
+     * @param minSize            Number of connections opened upfront.
+     * @param maxSize            Maximum number of connections handed out at the same time.
+     * @param validationTimeout  Timeout in seconds of the validation of idle connections before reuse, 0 to skip.
+     * @param statementCacheSize Maximum number of prepared statements cached per connection, 0 to disable.
+     * @throws SQLException Exception thrown while opening the connections.
+     */
+    public ConnectionPool(String name, String url, String username, String password, int minSize, int maxSize,
+                          int validationTimeout, int statementCacheSize) throws SQLException {
+
+        this.name = name;
+        this.url = url;
+        this.validationTimeout = validationTimeout;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(Math.max(1, maxSize), true);
+        SqlDialect urlDialect = SqlDialect.fromUrl(url);
+        if (urlDialect == null) {
+            Connection connection = DriverManager.getConnection(url, username, password);
+            urlDialect = SqlDialect.fromProductName(connection.getMetaData().getDatabaseProductName());
+            idleConnections.offer(new PooledConnection(connection));
+        }
+        this.dialect = urlDialect;
+        log.debug("Using the " + dialect + " dialect for the " + name + ".");
+        this.connectionProperties = dialect.getBatchProperties(url);
+        if (username != null) {
+            connectionProperties.setProperty(DBConstants.JDBC_USER, username);
+        }
+        if (password != null) {
+            connectionProperties.setProperty(DBConstants.JDBC_PASSWORD, password);
+        }
+        while (idleConnections.size() < Math.min(minSize, maxSize)) {
+            idleConnections.offer(new PooledConnection(DriverManager.getConnection(url, connectionProperties)));
+        }
+    }
+
+    /**
+     * Get the SQL dialect of the database, resolved once from the URL, or from the driver metadata if the URL doesn't
+     * identify it.
+     *
+     * @return The SQL dialect.
+     */
+    public SqlDialect getDialect() {
+
+        return dialect;
+    }
+
+    /**
+     * Borrow a connection, waiting for one to be returned if the pool is exhausted.
+     *
+     * @return Connection which is returned to the pool when closed.
+     * @throws SQLException Exception thrown if no connection could be obtained.
+     */
+    public Connection getConnection() throws SQLException {
+
+        if (closed) {
+            throw new SQLException("The connection pool of the " + name + " is closed.");
+        }
+        try {
+            if (!permits.tryAcquire(DBConstants.POOL_BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for a connection to the " + name + ".");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to the " + name + ".", e);
+        }
+        try {
+            PooledConnection pooledConnection;
+            while ((pooledConnection = idleConnections.pollFirst()) != null) {
+                if (validationTimeout <= 0 || pooledConnection.isRecentlyReturned() ||
+                        pooledConnection.connection.isValid(validationTimeout)) {
+                    return pooledConnection.borrow();
+                }
+                log.debug("Discarding an invalid connection to the " + name + ".");
+                pooledConnection.closePhysical();
+            }
+            return new PooledConnection(DriverManager.getConnection(url, connectionProperties)).borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the idle connections and refuse further borrowing. Connections still in use are closed when they are
+     * returned.
+     */
+    public void close() {
+
+        closed = true;
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleConnections.pollFirst()) != null) {
+            pooledConnection.closePhysical();
+        }
+    }
+
+    /**
+     * Return a borrowed connection to the pool.
+     *
+     * @param pooledConnection The returned connection.
+     */
+    private void release(PooledConnection pooledConnection) {
+
+        try {
+            pooledConnection.reset();
+            pooledConnection.lastReturned = System.nanoTime();
+            if (closed) {
+                pooledConnection.closePhysical();
+            } else {
+                idleConnections.offerFirst(pooledConnection);
+            }
+        } catch (SQLException e) {
+            log.warn("Discarding a connection to the " + name + " which could not be reset.", e);
+            pooledConnection.closePhysical();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Unwrap the exception thrown by a reflectively invoked method.
+     *
+     * @param target The invoked object.
+     * @param method The invoked method.
+     * @param args   The arguments.
+     * @return The result of the invocation.
+     * @throws Throwable The exception thrown by the method.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * This class holds a physical connection of the pool together with its statement cache. Every borrowing hands
+     * out a new proxy, so a proxy closed once can't affect a later borrower of the same connection. The read only
+     * flag and transaction isolation set by a borrower are tracked, so they are only restored if they were changed.
+     */
+    private class PooledConnection {
+
+        private final Connection connection;
+        private final Map<String, CachedStatement> statements;
+        private final boolean defaultReadOnly;
+        private final int defaultTransactionIsolation;
+        private int generation;
+        private boolean borrowed;
+        private boolean readOnlyChanged;
+        private boolean transactionIsolationChanged;
+        private long lastReturned = System.nanoTime();
+
+        PooledConnection(Connection connection) throws SQLException {
+
+            this.connection = connection;
+            this.defaultReadOnly = connection.isReadOnly();
+            this.defaultTransactionIsolation = connection.getTransactionIsolation();
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+
+                    if (size() > statementCacheSize) {
+                        eldest.getValue().closePhysical();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Connection borrow() {
+
+            int borrowGeneration = ++generation;
+            borrowed = true;
+            Connection[] proxy = new Connection[1];
+            proxy[0] = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (target, method, args) -> {
+                        boolean current = borrowed && borrowGeneration == generation;
+                        switch (method.getName()) {
+                            case "close":
+                                if (current) {
+                                    borrowed = false;
+                                    release(this);
+                                }
+                                return null;
+                            case "isClosed":
+                                return !current || connection.isClosed();
+                            default:
+                                if (!current) {
+                                    throw new SQLException("The connection is already returned to the pool.");
+                                }
+                        }
+                        if ("setReadOnly".equals(method.getName())) {
+                            readOnlyChanged = true;
+                        } else if ("setTransactionIsolation".equals(method.getName())) {
+                            transactionIsolationChanged = true;
+                        }
+                        if ("prepareStatement".equals(method.getName()) && args.length == 1 &&
+                                statementCacheSize > 0) {
+                            return prepareCachedStatement((String) args[0], proxy[0]);
+                        }
+                        return ConnectionPool.invoke(connection, method, args);
+                    });
+            return proxy[0];
+        }
+
+        PreparedStatement prepareCachedStatement(String sql, Connection proxy) throws SQLException {
+
+            CachedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = new CachedStatement(connection.prepareStatement(sql));
+                statements.put(sql, statement);
+            } else if (statement.inUse) {
+                return connection.prepareStatement(sql);
+            }
+            return statement.borrow(proxy);
+        }
+
+        void reset() throws SQLException {
+
+            for (CachedStatement statement : statements.values()) {
+                statement.release();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (readOnlyChanged) {
+                connection.setReadOnly(defaultReadOnly);
+                readOnlyChanged = false;
+            }
+            if (transactionIsolationChanged) {
+                connection.setTransactionIsolation(defaultTransactionIsolation);
+                transactionIsolationChanged = false;
+            }
+        }
+
+        boolean isRecentlyReturned() {
+
+            return System.nanoTime() - lastReturned < TimeUnit.MILLISECONDS.toNanos(
+                    DBConstants.POOL_VALIDATION_BYPASS_MILLIS);
+        }
+
+        void closePhysical() {
+
+            for (Iterator<CachedStatement> iterator = statements.values().iterator(); iterator.hasNext(); ) {
+                iterator.next().closePhysical();
+                iterator.remove();
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Error while closing a connection to the " + name + ".", e);
+            }
+        }
+    }
+
+    /**
+     * This class holds a cached prepared statement. Closing a statement handed out releases it for reuse.
+     */
+    private static class CachedStatement {
+
+        private final PreparedStatement statement;
+        private ResultSet resultSet;
+        private int generation;
+        private boolean inUse;
+
+        CachedStatement(PreparedStatement statement) {
+
+            this.statement = statement;
+        }
+
+        PreparedStatement borrow(Connection connection) {
+
+            int borrowGeneration = ++generation;
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (target, method, args) -> {
+                        boolean current = inUse && borrowGeneration == generation;
+                        switch (method.getName()) {
+                            case "close":
+                                if (current) {
+                                    release();
+                                }
+                                return null;
+                            case "isClosed":
+                                return !current;
+                            default:
+                                if (!current) {
+                                    throw new SQLException("The statement is already closed.");
+                                }
+                        }
+                        switch (method.getName()) {
+                            case "getConnection":
+                                return connection;
+                            case "executeQuery":
+                                closeResultSet();
+                                resultSet = (ResultSet) ConnectionPool.invoke(statement, method, args);
+                                return resultSet;
+                            default:
+                                return ConnectionPool.invoke(statement, method, args);
+                        }
+                    });
+        }
+
+        void release() throws SQLException {
+
+            if (inUse) {
+                closeResultSet();
+                statement.clearParameters();
+                statement.clearBatch();
+                inUse = false;
+            }
+        }
+
+        void closeResultSet() throws SQLException {
+
+            if (resultSet != null) {
+                resultSet.close();
+                resultSet = null;
+            }
+        }
+
+        void closePhysical() {
+
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.debug("Error while closing a cached statement.", e);
+            }
+        }
+    }
+}
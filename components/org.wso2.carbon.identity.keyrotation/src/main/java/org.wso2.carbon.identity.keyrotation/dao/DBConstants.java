@@ -24,22 +24,47 @@ package org.wso2.carbon.identity.keyrotation.dao;
 public class DBConstants {
 
     public static final int DEFAULT_CHUNK_SIZE = 2;
+    public static final int DEFAULT_DB_REENCRYPTION_THREADS = 1;
+    public static final int DEFAULT_TABLE_PARTITIONS = 1;
+    public static final int DEFAULT_PIPELINE_CRYPTO_THREADS = 1;
+    public static final int DEFAULT_PIPELINE_QUEUE_SIZE = 2;
+    public static final int DEFAULT_RE_ENCRYPT_BATCH_THREADS = 1;
+    public static final int DEFAULT_STREAM_FETCH_SIZE = 1000;
+    public static final int DEFAULT_DB_POOL_MIN_SIZE = 1;
+    public static final int DEFAULT_DB_POOL_MAX_SIZE = 10;
+    public static final int DEFAULT_DB_POOL_VALIDATION_TIMEOUT = 5;
+    public static final int DEFAULT_DB_POOL_STATEMENT_CACHE_SIZE = 20;
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 1;
+    public static final int DEFAULT_MAX_CHUNK_SIZE = 10000;
+    public static final int DEFAULT_TARGET_CHUNK_TIME = 1000;
+    public static final int DEFAULT_LATENCY_BACKOFF_TIME = 1000;
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+    public static final int DEFAULT_ESTIMATE_SAMPLE_SIZE = 2000;
+    public static final int POOL_BORROW_TIMEOUT_SECONDS = 300;
+    public static final long POOL_VALIDATION_BYPASS_MILLIS = 500;
+    public static final String OLD_IDN_DB = "old identity DB";
+    public static final String NEW_IDN_DB = "new identity DB";
+    public static final String NEW_REG_DB = "new registry DB";
+    public static final String IDN_IDENTITY_USER_DATA = "IDN_IDENTITY_USER_DATA";
+    public static final String IDN_OAUTH2_AUTHORIZATION_CODE = "IDN_OAUTH2_AUTHORIZATION_CODE";
+    public static final String IDN_OAUTH2_ACCESS_TOKEN = "IDN_OAUTH2_ACCESS_TOKEN";
+    public static final String IDN_OAUTH_CONSUMER_APPS = "IDN_OAUTH_CONSUMER_APPS";
+    public static final String WF_BPS_PROFILE = "WF_BPS_PROFILE";
+    public static final String WF_REQUEST = "WF_REQUEST";
+    public static final String REG_PROPERTY = "REG_PROPERTY";
+    public static final String IDN_KEY_ROTATION_DATA_KEY = "IDN_KEY_ROTATION_DATA_KEY";
+    public static final String UUID = "UUID";
     public static final String CREDENTIAL = "Credential";
     public static final String REQUEST = "REQUEST";
-    public static final String POSTGRESQL = "PostgreSQL";
-    public static final String MSSQL = "SQL Server";
-    public static final String ORACLE = "Oracle";
+    public static final String JDBC_USER = "user";
+    public static final String JDBC_PASSWORD = "password";
+    public static final String REWRITE_BATCHED_STATEMENTS = "rewriteBatchedStatements";
+    public static final String REWRITE_BATCHED_INSERTS = "reWriteBatchedInserts";
+    public static final String STAGING_TABLE_PREFIX = "KR_STAGE_";
     public static final String SECRET_KEY = "http://wso2.org/claims/identity/secretkey";
     public static final String VERIFIED_SECRET_KEY = "http://wso2.org/claims/identity/verifySecretkey";
     public static final String GET_TOTP_SECRET = "SELECT TENANT_ID, USER_NAME, DATA_KEY, DATA_VALUE " +
-            "FROM IDN_IDENTITY_USER_DATA WHERE DATA_KEY=? OR DATA_KEY=? ORDER BY TENANT_ID, USER_NAME, DATA_KEY LIMIT" +
-            " ?, ?";
-    public static final String GET_TOTP_SECRET_POSTGRE = "SELECT TENANT_ID, USER_NAME, DATA_VALUE, DATA_KEY FROM " +
-            "IDN_IDENTITY_USER_DATA WHERE DATA_KEY=? OR DATA_KEY=? ORDER BY TENANT_ID, USER_NAME, DATA_KEY LIMIT ? " +
-            "OFFSET ?";
-    public static final String GET_TOTP_SECRET_OTHER = "SELECT TENANT_ID, USER_NAME, DATA_VALUE, DATA_KEY FROM " +
-            "IDN_IDENTITY_USER_DATA WHERE DATA_KEY=? OR DATA_KEY=? ORDER BY TENANT_ID, USER_NAME, DATA_KEY OFFSET ? " +
-            "ROWS FETCH NEXT ? ROWS ONLY";
+            "FROM IDN_IDENTITY_USER_DATA WHERE (DATA_KEY=? OR DATA_KEY=?)";
     public static final String UPDATE_TOTP_SECRET =
             "UPDATE IDN_IDENTITY_USER_DATA SET DATA_VALUE=? WHERE TENANT_ID=? AND USER_NAME=? AND DATA_KEY=?";
     public static final String UPDATE_TEMP_TOTP_SECRET =
@@ -59,14 +84,7 @@ public class DBConstants {
     public static final String DELETE_TOTP_SECRET =
             "DELETE FROM IDN_IDENTITY_USER_DATA WHERE TENANT_ID=? AND USER_NAME=? AND DATA_KEY=?";
     public static final String GET_OAUTH_AUTHORIZATION_CODE =
-            "SELECT CODE_ID, AUTHORIZATION_CODE, CONSUMER_KEY_ID FROM IDN_OAUTH2_AUTHORIZATION_CODE " +
-                    "ORDER BY CODE_ID LIMIT ?, ?";
-    public static final String GET_OAUTH_AUTHORIZATION_CODE_POSTGRE =
-            "SELECT CODE_ID, AUTHORIZATION_CODE, CONSUMER_KEY_ID FROM IDN_OAUTH2_AUTHORIZATION_CODE ORDER BY " +
-                    "CODE_ID LIMIT ? OFFSET ?";
-    public static final String GET_OAUTH_AUTHORIZATION_CODE_OTHER =
-            "SELECT CODE_ID, AUTHORIZATION_CODE, CONSUMER_KEY_ID FROM IDN_OAUTH2_AUTHORIZATION_CODE ORDER BY " +
-                    "CODE_ID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+            "SELECT CODE_ID, AUTHORIZATION_CODE, CONSUMER_KEY_ID FROM IDN_OAUTH2_AUTHORIZATION_CODE";
     public static final String UPDATE_OAUTH_AUTHORIZATION_CODE =
             "UPDATE IDN_OAUTH2_AUTHORIZATION_CODE SET AUTHORIZATION_CODE=? WHERE CODE_ID=?";
     public static final String GET_TEMP_OAUTH_AUTHORIZATION_CODE = "SELECT SYNC_ID, CODE_ID, AUTHORIZATION_CODE, " +
@@ -100,11 +118,7 @@ public class DBConstants {
     public static final String DELETE_OAUTH_AUTHORIZATION_CODE =
             "DELETE FROM IDN_OAUTH2_AUTHORIZATION_CODE WHERE CODE_ID=?";
     public static final String GET_OAUTH_ACCESS_TOKEN = "SELECT TOKEN_ID, ACCESS_TOKEN, REFRESH_TOKEN, " +
-            "CONSUMER_KEY_ID FROM IDN_OAUTH2_ACCESS_TOKEN ORDER BY TOKEN_ID LIMIT ?, ?";
-    public static final String GET_OAUTH_ACCESS_TOKEN_POSTGRE = "SELECT TOKEN_ID, ACCESS_TOKEN, REFRESH_TOKEN, " +
-            "CONSUMER_KEY_ID FROM IDN_OAUTH2_ACCESS_TOKEN ORDER BY TOKEN_ID LIMIT ? OFFSET ?";
-    public static final String GET_OAUTH_ACCESS_TOKEN_OTHER = "SELECT TOKEN_ID, ACCESS_TOKEN, REFRESH_TOKEN, " +
-            "CONSUMER_KEY_ID FROM IDN_OAUTH2_ACCESS_TOKEN ORDER BY TOKEN_ID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+            "CONSUMER_KEY_ID FROM IDN_OAUTH2_ACCESS_TOKEN";
     public static final String UPDATE_OAUTH_ACCESS_TOKEN =
             "UPDATE IDN_OAUTH2_ACCESS_TOKEN SET ACCESS_TOKEN=?, REFRESH_TOKEN=? WHERE TOKEN_ID=?";
     public static final String GET_TEMP_OAUTH_ACCESS_TOKEN = "SELECT SYNC_ID, TOKEN_ID, ACCESS_TOKEN, REFRESH_TOKEN, " +
@@ -143,11 +157,7 @@ public class DBConstants {
                     "REFRESH_TOKEN_HASH=?, IDP_ID=?, TOKEN_BINDING_REF=? WHERE TOKEN_ID=?";
     public static final String DELETE_OAUTH_ACCESS_TOKEN = "DELETE FROM IDN_OAUTH2_ACCESS_TOKEN WHERE TOKEN_ID=?";
     public static final String GET_OAUTH_SECRET = "SELECT ID, CONSUMER_SECRET, APP_NAME " +
-            "FROM IDN_OAUTH_CONSUMER_APPS ORDER BY ID LIMIT ?, ?";
-    public static final String GET_OAUTH_SECRET_POSTGRE = "SELECT ID, CONSUMER_SECRET, APP_NAME " +
-            "FROM IDN_OAUTH_CONSUMER_APPS ORDER BY ID LIMIT ? OFFSET ?";
-    public static final String GET_OAUTH_SECRET_OTHER = "SELECT ID, CONSUMER_SECRET, APP_NAME " +
-            "FROM IDN_OAUTH_CONSUMER_APPS ORDER BY ID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+            "FROM IDN_OAUTH_CONSUMER_APPS";
     public static final String UPDATE_OAUTH_SECRET = "UPDATE IDN_OAUTH_CONSUMER_APPS SET CONSUMER_SECRET=? WHERE ID=?";
     public static final String GET_TEMP_OAUTH_SCOPE = "SELECT SYNC_ID, TOKEN_ID, TOKEN_SCOPE, TENANT_ID, " +
             "AVAILABILITY, SYNCED FROM IDN_OAUTH2_ACCESS_TOKEN_SCOPE_TEMP WHERE SYNC_ID=?";
@@ -168,25 +178,24 @@ public class DBConstants {
     public static final String DELETE_OAUTH_SCOPE = "DELETE FROM IDN_OAUTH2_ACCESS_TOKEN_SCOPE WHERE TOKEN_ID=? AND " +
             "TOKEN_SCOPE=?";
     public static final String GET_BPS_PASSWORD = "SELECT PROFILE_NAME, USERNAME, TENANT_ID, PASSWORD " +
-            "FROM WF_BPS_PROFILE ORDER BY PROFILE_NAME, TENANT_ID LIMIT ?, ?";
-    public static final String GET_BPS_PASSWORD_POSTGRE = "SELECT PROFILE_NAME, USERNAME, TENANT_ID, PASSWORD " +
-            "FROM WF_BPS_PROFILE ORDER BY PROFILE_NAME, TENANT_ID LIMIT ? OFFSET ?";
-    public static final String GET_BPS_PASSWORD_OTHER = "SELECT PROFILE_NAME, USERNAME, TENANT_ID, PASSWORD " +
-            "FROM WF_BPS_PROFILE ORDER BY PROFILE_NAME, TENANT_ID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+            "FROM WF_BPS_PROFILE";
     public static final String UPDATE_BPS_PASSWORD = "UPDATE WF_BPS_PROFILE SET PASSWORD=? WHERE PROFILE_NAME=? AND " +
             "TENANT_ID=?";
-    public static final String GET_WF_REQUEST = "SELECT UUID, REQUEST FROM WF_REQUEST ORDER BY UUID LIMIT ?, ?";
-    public static final String GET_WF_REQUEST_POSTGRE = "SELECT UUID, REQUEST FROM WF_REQUEST ORDER BY UUID LIMIT ? " +
-            "OFFSET ?";
-    public static final String GET_WF_REQUEST_OTHER =
-            "SELECT UUID, REQUEST FROM WF_REQUEST ORDER BY UUID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+    public static final String GET_WF_REQUEST = "SELECT UUID, REQUEST FROM WF_REQUEST";
     public static final String UPDATE_WF_REQUEST = "UPDATE WF_REQUEST SET REQUEST=? WHERE UUID=?";
+    public static final String COUNT_ROWS = "SELECT COUNT(*) FROM %s";
+    public static final String COUNT_TOTP_SECRET = "SELECT COUNT(*) FROM IDN_IDENTITY_USER_DATA WHERE DATA_KEY=? OR " +
+            "DATA_KEY=?";
+    public static final String COUNT_REG_PROPERTY_DATA = "SELECT COUNT(*) FROM REG_PROPERTY WHERE REG_NAME=?";
+    public static final String GET_KEY_COLUMN = "SELECT %s FROM %s";
     public static final String GET_REG_PROPERTY_DATA = "SELECT REG_ID, REG_NAME, REG_VALUE, REG_TENANT_ID " +
-            "FROM REG_PROPERTY WHERE REG_NAME=? ORDER BY REG_ID, REG_TENANT_ID LIMIT ?, ?";
-    public static final String GET_REG_PROPERTY_DATA_POSTGRE = "SELECT REG_ID, REG_NAME, REG_VALUE, REG_TENANT_ID " +
-            "FROM REG_PROPERTY WHERE REG_NAME=? ORDER BY REG_ID, REG_TENANT_ID LIMIT ? OFFSET ?";
-    public static final String GET_REG_PROPERTY_DATA_OTHER = "SELECT REG_ID, REG_NAME, REG_VALUE, REG_TENANT_ID " +
-            "FROM REG_PROPERTY WHERE REG_NAME=? ORDER BY REG_ID, REG_TENANT_ID OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+            "FROM REG_PROPERTY WHERE REG_NAME=?";
     public static final String UPDATE_REG_PROPERTY_DATA =
             "UPDATE REG_PROPERTY SET REG_VALUE=? WHERE REG_ID=? AND REG_TENANT_ID=?";
+    public static final String GET_DATA_KEYS =
+            "SELECT KEY_ID, SCOPE, WRAPPED_KEY, KEK_ID FROM IDN_KEY_ROTATION_DATA_KEY";
+    public static final String INSERT_DATA_KEY =
+            "INSERT INTO IDN_KEY_ROTATION_DATA_KEY (KEY_ID, SCOPE, WRAPPED_KEY, KEK_ID) VALUES (?, ?, ?, ?)";
+    public static final String UPDATE_DATA_KEY =
+            "UPDATE IDN_KEY_ROTATION_DATA_KEY SET WRAPPED_KEY=?, KEK_ID=? WHERE KEY_ID=?";
 }
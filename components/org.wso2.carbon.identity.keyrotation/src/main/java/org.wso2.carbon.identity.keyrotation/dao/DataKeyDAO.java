@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.model.DataKey;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds implementations needed to read and write the wrapped data keys in IDN_KEY_ROTATION_DATA_KEY.
+ */
+public class DataKeyDAO {
+
+    private static final Logger log = Logger.getLogger(DataKeyDAO.class);
+    private static final DataKeyDAO instance = new DataKeyDAO();
+
+    public DataKeyDAO() {
+
+    }
+
+    public static DataKeyDAO getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * To retrieve all the data keys in IDN_KEY_ROTATION_DATA_KEY.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from IDN_KEY_ROTATION_DATA_KEY.
+     */
+    public List<DataKey> getDataKeys(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        List<DataKey> dataKeyList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance().getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.GET_DATA_KEYS);
+                 ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    dataKeyList.add(new DataKey(resultSet.getString(KeyRotationConstants.KEY_ID),
+                            resultSet.getString(KeyRotationConstants.SCOPE),
+                            resultSet.getString(KeyRotationConstants.WRAPPED_KEY),
+                            resultSet.getString(KeyRotationConstants.KEK_ID)));
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving data keys from " +
+                        DBConstants.IDN_KEY_ROTATION_DATA_KEY + ". Make sure the table is created with the scripts " +
+                        "of the dataKeys directory.", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+        return dataKeyList;
+    }
+
+    /**
+     * To insert a new data key into IDN_KEY_ROTATION_DATA_KEY.
+     *
+     * @param dataKey           The data key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return True if the data key was inserted, false if it conflicts with a data key inserted meanwhile.
+     * @throws KeyRotationException Exception thrown while connecting to the new identity DB.
+     */
+    public boolean insertDataKey(DataKey dataKey, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        try (Connection connection = DataSourceManager.getInstance().getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.INSERT_DATA_KEY)) {
+                preparedStatement.setString(1, dataKey.getKeyId());
+                preparedStatement.setString(2, dataKey.getScope());
+                preparedStatement.setString(3, dataKey.getWrappedKey());
+                preparedStatement.setString(4, dataKey.getKekId());
+                preparedStatement.executeUpdate();
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                log.warn("Error while inserting the data key of " + dataKey.getScope() + " into " +
+                        DBConstants.IDN_KEY_ROTATION_DATA_KEY + ", reloading the data keys. ", e);
+                return false;
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To update the wrapped keys of the given data keys in IDN_KEY_ROTATION_DATA_KEY in a single transaction, so
+     * either all or none of them are rewrapped.
+     *
+     * @param dataKeys          The data keys holding the new wrapped keys.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while updating data of IDN_KEY_ROTATION_DATA_KEY.
+     */
+    public void updateDataKeys(List<DataKey> dataKeys, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try (Connection connection = DataSourceManager.getInstance().getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_DATA_KEY)) {
+                for (DataKey dataKey : dataKeys) {
+                    preparedStatement.setString(1, dataKey.getWrappedKey());
+                    preparedStatement.setString(2, dataKey.getKekId());
+                    preparedStatement.setString(3, dataKey.getKeyId());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while updating data keys in " +
+                        DBConstants.IDN_KEY_ROTATION_DATA_KEY + ".", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+}
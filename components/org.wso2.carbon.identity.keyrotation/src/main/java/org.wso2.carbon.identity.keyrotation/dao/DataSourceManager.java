@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * This class holds the connection pools of the old identity DB, the new identity DB and the new registry DB which are
+ * shared by all the DAOs.
+ */
+public class DataSourceManager {
+
+    private static final Logger log = Logger.getLogger(DataSourceManager.class);
+    private static final DataSourceManager instance = new DataSourceManager();
+    private ConnectionPool oldIdnPool;
+    private ConnectionPool newIdnPool;
+    private ConnectionPool newRegPool;
+
+    public static DataSourceManager getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Borrow a connection to the old identity DB.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Connection which is returned to the pool when closed.
+     * @throws SQLException Exception thrown while obtaining the connection.
+     */
+    public Connection getOldIdnConnection(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        return getOldIdnPool(keyRotationConfig).getConnection();
+    }
+
+    /**
+     * Get the SQL dialect of the old identity DB.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The SQL dialect.
+     * @throws SQLException Exception thrown while creating the connection pool.
+     */
+    public SqlDialect getOldIdnDialect(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        return getOldIdnPool(keyRotationConfig).getDialect();
+    }
+
+    private synchronized ConnectionPool getOldIdnPool(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        if (oldIdnPool == null) {
+            oldIdnPool = createPool(DBConstants.OLD_IDN_DB, keyRotationConfig.getOldIdnDBUrl(),
+                    keyRotationConfig.getOldIdnUsername(), keyRotationConfig.getOldIdnPassword(), keyRotationConfig);
+        }
+        return oldIdnPool;
+    }
+
+    /**
+     * Borrow a connection to the new identity DB.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Connection which is returned to the pool when closed.
+     * @throws SQLException Exception thrown while obtaining the connection.
+     */
+    public Connection getNewIdnConnection(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        return getNewIdnPool(keyRotationConfig).getConnection();
+    }
+
+    /**
+     * Get the SQL dialect of the new identity DB.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The SQL dialect.
+     * @throws SQLException Exception thrown while creating the connection pool.
+     */
+    public SqlDialect getNewIdnDialect(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        return getNewIdnPool(keyRotationConfig).getDialect();
+    }
+
+    private synchronized ConnectionPool getNewIdnPool(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        if (newIdnPool == null) {
+            newIdnPool = createPool(DBConstants.NEW_IDN_DB, keyRotationConfig.getNewIdnDBUrl(),
+                    keyRotationConfig.getNewIdnUsername(), keyRotationConfig.getNewIdnPassword(), keyRotationConfig);
+        }
+        return newIdnPool;
+    }
+
+    /**
+     * Borrow a connection to the new registry DB.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Connection which is returned to the pool when closed.
+     * @throws SQLException Exception thrown while obtaining the connection.
+     */
+    public Connection getNewRegConnection(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        return getNewRegPool(keyRotationConfig).getConnection();
+    }
+
+    /**
+     * Get the SQL dialect of the new registry DB.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The SQL dialect.
+     * @throws SQLException Exception thrown while creating the connection pool.
+     */
+    public SqlDialect getNewRegDialect(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        return getNewRegPool(keyRotationConfig).getDialect();
+    }
+
+    private synchronized ConnectionPool getNewRegPool(KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        if (newRegPool == null) {
+            newRegPool = createPool(DBConstants.NEW_REG_DB, keyRotationConfig.getNewRegDBUrl(),
+                    keyRotationConfig.getNewRegUsername(), keyRotationConfig.getNewRegPassword(), keyRotationConfig);
+        }
+        return newRegPool;
+    }
+
+    /**
+     * Close all the pools. Pools are created again on the next connection request.
+     */
+    public synchronized void close() {
+
+        for (ConnectionPool pool : new ConnectionPool[]{oldIdnPool, newIdnPool, newRegPool}) {
+            if (pool != null) {
+                pool.close();
+            }
+        }
+        oldIdnPool = null;
+        newIdnPool = null;
+        newRegPool = null;
+    }
+
+    private ConnectionPool createPool(String name, String url, String username, String password,
+                                      KeyRotationConfig keyRotationConfig) throws SQLException {
+
+        log.debug("Creating the connection pool of the " + name + ".");
+        return new ConnectionPool(name, url, username, password, keyRotationConfig.getDbPoolMinSize(),
+                keyRotationConfig.getDbPoolMaxSize(), keyRotationConfig.getDbPoolValidationTimeout(),
+                keyRotationConfig.getDbPoolStatementCacheSize());
+    }
+}
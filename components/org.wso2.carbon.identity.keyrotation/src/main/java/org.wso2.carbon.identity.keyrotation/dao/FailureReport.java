@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the report of the records which could not be re-encrypted or updated by the DB re-encryption. A
+ * record failing to re-encrypt is left as it is, and one failing to update is rolled back. Each failed record
+ * is appended to a CSV file with its table, key and error as soon as it is isolated, so that the report survives a
+ * crash. The file is only created once a record fails.
+ */
+public class FailureReport {
+
+    private static final Logger log = Logger.getLogger(FailureReport.class);
+    private static final FailureReport instance = new FailureReport();
+    private static final String HEADER = "time,table,key,error";
+    private Path file;
+    private BufferedWriter writer;
+    private int failures;
+
+    public FailureReport() {
+
+    }
+
+    public static FailureReport getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Open the failure report of a DB re-encryption run.
+     *
+     * @param file   Path of the failure report.
+     * @param resume True to keep the failures of the previous run, otherwise a previous report is discarded.
+     * @throws KeyRotationException Exception thrown while discarding the previous report.
+     */
+    public synchronized void open(String file, boolean resume) throws KeyRotationException {
+
+        this.file = Paths.get(file);
+        failures = 0;
+        if (!resume) {
+            try {
+                Files.deleteIfExists(this.file);
+            } catch (IOException e) {
+                throw new KeyRotationException("Error while discarding the failure report " + file + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Record a record which could not be re-encrypted or updated, counting it in the given counter and in the failed
+     * rows metric of its table.
+     *
+     * @param table             Name of the table.
+     * @param key               Key of the record.
+     * @param error             Error of the re-encryption or update.
+     * @param failedUpdateCount Counter of the failed records.
+     */
+    public void recordFailure(String table, String key, Throwable error, AtomicInteger failedUpdateCount) {
+
+        failedUpdateCount.incrementAndGet();
+        KeyRotationMetrics.getInstance().getTableMetrics(table).addRowsFailed(1);
+        recordFailure(table, key, error);
+    }
+
+    /**
+     * Record a record which could not be re-encrypted or updated. Failures to write the report are logged, as the
+     * failed record itself is logged as well.
+     *
+     * @param table Name of the table.
+     * @param key   Key of the record.
+     * @param error Error of the update.
+     */
+    public synchronized void recordFailure(String table, String key, Throwable error) {
+
+        failures++;
+        if (file == null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                boolean exists = Files.isRegularFile(file);
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+                if (!exists) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                }
+            }
+            writer.write(String.join(",", quote(Instant.now().toString()), quote(table), quote(key),
+                    quote(String.valueOf(error))));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            log.error("Error while writing the failure report " + file + ".", e);
+        }
+    }
+
+    /**
+     * Close the failure report, logging the number of failed records.
+     */
+    public synchronized void close() {
+
+        if (failures > 0) {
+            log.warn(failures + " records could not be re-encrypted. See the failure report " + file + ".");
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.error("Error while closing the failure report " + file + ".", e);
+            }
+            writer = null;
+        }
+        file = null;
+    }
+
+    /**
+     * Quote a CSV field.
+     *
+     * @param value The field value.
+     * @return The quoted field.
+     */
+    private static String quote(String value) {
+
+        return "\"" + value.replace("\"", "\"\"").replaceAll("[\\r\\n]+", " ") + "\"";
+    }
+}
@@ -20,18 +20,21 @@ package org.wso2.carbon.identity.keyrotation.dao;
 
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
 import org.wso2.carbon.identity.keyrotation.model.TOTPSecret;
 import org.wso2.carbon.identity.keyrotation.model.TempTOTPSecret;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class holds implementations needed to re-encrypt the TOTP data in DB.
@@ -40,10 +43,21 @@ public class IdentityDAO {
 
     private static final Logger log = Logger.getLogger(IdentityDAO.class);
     private static final IdentityDAO instance = new IdentityDAO();
-    public static int updateCount = 0;
-    public static int failedUpdateCount = 0;
-    public static int insertCount = 0;
-    public static int failedInsertCount = 0;
+    private static final String[] TOTP_SECRET_KEY_COLUMNS = {KeyRotationConstants.TENANT_ID,
+            KeyRotationConstants.USER_NAME, KeyRotationConstants.DATA_KEY};
+    public static final AtomicInteger updateCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateCount = new AtomicInteger();
+    public static final AtomicInteger insertCount = new AtomicInteger();
+    public static final AtomicInteger failedInsertCount = new AtomicInteger();
+    private static final RecordBinder<TOTPSecret> TOTP_SECRET_BINDER = (preparedStatement, totpSecret) -> {
+        preparedStatement.setString(1, totpSecret.getDataValue());
+        preparedStatement.setInt(2, Integer.parseInt(totpSecret.getTenantId()));
+        preparedStatement.setString(3, totpSecret.getUsername());
+        preparedStatement.setString(4, totpSecret.getDataKey());
+    };
+    public static final Function<TOTPSecret, String> TOTP_SECRET_KEY_OF = totpSecret -> "tenant id: " +
+            totpSecret.getTenantId() + " username: " + totpSecret.getUsername() + " data key: " +
+            totpSecret.getDataKey();
 
     public IdentityDAO() {
 
@@ -54,32 +68,107 @@ public class IdentityDAO {
         return instance;
     }
 
+    /**
+     * To open a streaming cursor over the data in IDN_IDENTITY_USER_DATA.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on IDN_IDENTITY_USER_DATA.
+     */
+    public ChunkCursor<TOTPSecret> openTOTPSecretsCursor(KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewIdnDialect(keyRotationConfig),
+                    dataSourceManager.getNewIdnConnection(keyRotationConfig),
+                    DBConstants.GET_TOTP_SECRET,
+                    resultSet -> new TOTPSecret(resultSet.getString(KeyRotationConstants.TENANT_ID),
+                            resultSet.getString(KeyRotationConstants.USER_NAME),
+                            resultSet.getString(KeyRotationConstants.DATA_KEY),
+                            resultSet.getString(KeyRotationConstants.DATA_VALUE)), keyRotationConfig,
+                    DBConstants.SECRET_KEY, DBConstants.VERIFIED_SECRET_KEY);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of data in IDN_IDENTITY_USER_DATA, seeking past the last record of the previous
+     * chunk instead of skipping an offset.
+     *
+     * @param lastRecord        The last record of the previous chunk, or null to retrieve the first chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from IDN_IDENTITY_USER_DATA.
+     */
+    public List<TOTPSecret> getTOTPSecretsChunks(TOTPSecret lastRecord, int chunkSize,
+                                                 KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (lastRecord == null) {
+            return getTOTPSecretsChunks(0, chunkSize, keyRotationConfig);
+        }
+        List<TOTPSecret> totpSecretList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            String query = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig)
+                    .keysetQuery(DBConstants.GET_TOTP_SECRET, true, false, TOTP_SECRET_KEY_COLUMNS);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                int tenantId = Integer.parseInt(lastRecord.getTenantId());
+                preparedStatement.setString(1, DBConstants.SECRET_KEY);
+                preparedStatement.setString(2, DBConstants.VERIFIED_SECRET_KEY);
+                preparedStatement.setInt(3, tenantId);
+                preparedStatement.setInt(4, tenantId);
+                preparedStatement.setString(5, lastRecord.getUsername());
+                preparedStatement.setInt(6, tenantId);
+                preparedStatement.setString(7, lastRecord.getUsername());
+                preparedStatement.setString(8, lastRecord.getDataKey());
+                preparedStatement.setInt(9, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    totpSecretList
+                            .add(new TOTPSecret(resultSet.getString(KeyRotationConstants.TENANT_ID),
+                                    resultSet.getString(KeyRotationConstants.USER_NAME),
+                                    resultSet.getString(KeyRotationConstants.DATA_KEY),
+                                    resultSet.getString(KeyRotationConstants.DATA_VALUE)));
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving TOTP secrets from IDN_IDENTITY_USER_DATA.", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+        return totpSecretList;
+    }
+
     /**
      * To retrieve the list of data in IDN_IDENTITY_USER_DATA as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from IDN_IDENTITY_USER_DATA.
      */
-    public List<TOTPSecret> getTOTPSecretsChunks(int startIndex, KeyRotationConfig keyRotationConfig)
+    private List<TOTPSecret> getTOTPSecretsChunks(int startIndex, int chunkSize, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
         List<TOTPSecret> totpSecretList = new ArrayList<>();
         String query = DBConstants.GET_TOTP_SECRET;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_TOTP_SECRET_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_TOTP_SECRET, TOTP_SECRET_KEY_COLUMNS);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_TOTP_SECRET_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setString(1, DBConstants.SECRET_KEY);
@@ -97,7 +186,7 @@ public class IdentityDAO {
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                log.error("Error while retrieving TOTP secrets from IDN_IDENTITY_USER_DATA.", e);
+                throw new KeyRotationException("Error while retrieving TOTP secrets from IDN_IDENTITY_USER_DATA.", e);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new identity DB.", e);
@@ -115,25 +204,21 @@ public class IdentityDAO {
     public void updateTOTPSecretsChunks(List<TOTPSecret> updateTOTPSecretList,
                                         KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_TOTP_SECRET)) {
-                for (TOTPSecret totpSecret : updateTOTPSecretList) {
-                    preparedStatement.setString(1, totpSecret.getDataValue());
-                    preparedStatement.setInt(2, Integer.parseInt(totpSecret.getTenantId()));
-                    preparedStatement.setString(3, totpSecret.getUsername());
-                    preparedStatement.setString(4, totpSecret.getDataKey());
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+                ChunkUpdate.TOTP_SECRET.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateTOTPSecretList, TOTP_SECRET_BINDER);
                 connection.commit();
-                updateCount += updateTOTPSecretList.size();
-            } catch (SQLException e) {
+                updateCount.addAndGet(updateTOTPSecretList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.IDN_IDENTITY_USER_DATA)
+                        .addRowsRotated(updateTOTPSecretList.size());
+            } catch (SQLException | IOException e) {
                 connection.rollback();
-                log.error("Error while updating TOTP secrets in IDN_IDENTITY_USER_DATA, trying the chunk " +
-                        "row by row again. ", e);
+                log.error("Error while updating TOTP secrets in IDN_IDENTITY_USER_DATA, retrying the chunk in " +
+                        "halves. ", e);
                 retryOnTOTOUpdate(updateTOTPSecretList, connection);
             }
         } catch (SQLException e) {
@@ -142,7 +227,8 @@ public class IdentityDAO {
     }
 
     /**
-     * To retry upon a failure in updating the TOTP chunk in IDN_IDENTITY_USER_DATA.
+     * To retry upon a failure in updating the TOTP chunk in IDN_IDENTITY_USER_DATA. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateTOTPSecretList The list containing records that should be re-encrypted.
      * @param connection           Connection with the new identity DB.
@@ -151,29 +237,9 @@ public class IdentityDAO {
     private void retryOnTOTOUpdate(List<TOTPSecret> updateTOTPSecretList, Connection connection)
             throws KeyRotationException {
 
-        TOTPSecret faulty = null;
-        try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_TOTP_SECRET)) {
-            for (TOTPSecret totpSecret : updateTOTPSecretList) {
-                try {
-                    faulty = totpSecret;
-                    preparedStatement.setString(1, totpSecret.getDataValue());
-                    preparedStatement.setInt(2, Integer.parseInt(totpSecret.getTenantId()));
-                    preparedStatement.setString(3, totpSecret.getUsername());
-                    preparedStatement.setString(4, totpSecret.getDataKey());
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateCount++;
-                } catch (SQLException err) {
-                    connection.rollback();
-                    log.error("Error while updating TOTP secret in IDN_IDENTITY_USER_DATA of record with tenant" +
-                            " id: " + faulty.getTenantId() + " username: " + faulty.getUsername() + " data key: " +
-                            faulty.getDataKey() + " ," + err);
-                    failedUpdateCount++;
-                }
-            }
-        } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
-        }
+        new BisectingBatchRetry<TOTPSecret>(connection, DBConstants.UPDATE_TOTP_SECRET,
+                DBConstants.IDN_IDENTITY_USER_DATA, TOTP_SECRET_BINDER, TOTP_SECRET_KEY_OF,
+                updateCount, failedUpdateCount).retry(updateTOTPSecretList);
     }
 
     /**
@@ -188,9 +254,8 @@ public class IdentityDAO {
             throws KeyRotationException {
 
         List<TempTOTPSecret> totpSecretList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.GET_TEMP_TOTP_SECRET)) {
                 preparedStatement.setInt(1, syncId);
@@ -228,9 +293,8 @@ public class IdentityDAO {
             throws KeyRotationException {
 
         List<TempTOTPSecret> totpSecretList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_TOTP_SECRET_LATEST)) {
@@ -271,9 +335,8 @@ public class IdentityDAO {
             throws KeyRotationException {
 
         List<TempTOTPSecret> totpSecretList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_TOTP_SECRET_PREVIOUS)) {
@@ -314,9 +377,8 @@ public class IdentityDAO {
     public void updateTOTPPreviousSimilarRecords(List<TempTOTPSecret> updateTOTPSecretList,
                                                  KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.UPDATE_TEMP_TOTP_SECRET)) {
@@ -348,9 +410,8 @@ public class IdentityDAO {
                                 KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
         int records = 0;
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_TOTP_SECRET)) {
                 preparedStatement.setString(1, updateTOTPSecret.getDataValue());
@@ -360,11 +421,11 @@ public class IdentityDAO {
                 records = preparedStatement.executeUpdate();
                 connection.commit();
                 if (records > 0) {
-                    insertCount++;
+                    insertCount.incrementAndGet();
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertCount++;
+                failedInsertCount.incrementAndGet();
                 log.error("Error while updating TOTP secret in IDN_IDENTITY_USER_DATA. ", e);
             }
         } catch (SQLException e) {
@@ -383,9 +444,8 @@ public class IdentityDAO {
     public void insertTOTPSecret(TempTOTPSecret insertTOTPSecret,
                                  KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.INSERT_TOTP_SECRET)) {
                 preparedStatement.setInt(1, Integer.parseInt(insertTOTPSecret.getTenantId()));
@@ -394,10 +454,10 @@ public class IdentityDAO {
                 preparedStatement.setString(4, insertTOTPSecret.getDataValue());
                 preparedStatement.executeUpdate();
                 connection.commit();
-                insertCount++;
+                insertCount.incrementAndGet();
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertCount++;
+                failedInsertCount.incrementAndGet();
                 log.error("Error while inserting TOTP secret into IDN_IDENTITY_USER_DATA. ", e);
             }
         } catch (SQLException e) {
@@ -415,9 +475,8 @@ public class IdentityDAO {
     public void deleteTOTPSecret(TempTOTPSecret deleteTOTPSecret, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.DELETE_TOTP_SECRET)) {
                 preparedStatement.setInt(1, Integer.parseInt(deleteTOTPSecret.getTenantId()));
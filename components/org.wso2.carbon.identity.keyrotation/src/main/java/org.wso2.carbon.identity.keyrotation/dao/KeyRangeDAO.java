@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds implementations needed to split a table of the new identity DB into key ranges.
+ */
+public class KeyRangeDAO {
+
+    private static final KeyRangeDAO instance = new KeyRangeDAO();
+
+    public KeyRangeDAO() {
+
+    }
+
+    public static KeyRangeDAO getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * To sample the key boundaries which split a table into ranges of roughly the same number of records. Each
+     * boundary is the inclusive upper key of a range, and the last range has no upper bound.
+     *
+     * @param table             Name of the table.
+     * @param keyColumn         Name of the single column primary key of the table.
+     * @param partitions        Number of ranges needed.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Ordered list of range boundaries, empty if the table can't be split.
+     * @throws KeyRotationException Exception thrown while retrieving the range boundaries.
+     */
+    public List<String> getKeyRangeBoundaries(String table, String keyColumn, int partitions,
+                                              KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        List<String> boundaries = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            String query = dialect.pageQuery(String.format(DBConstants.GET_KEY_COLUMN, keyColumn, table), keyColumn);
+            int offsetIndex = 1;
+            int countIndex = 2;
+            if (dialect.isLimitBeforeOffset()) {
+                offsetIndex = 2;
+                countIndex = 1;
+            }
+            try (PreparedStatement countStatement = connection
+                    .prepareStatement(String.format(DBConstants.COUNT_ROWS, table));
+                 PreparedStatement keyStatement = connection.prepareStatement(query)) {
+                long rowCount = 0;
+                try (ResultSet resultSet = countStatement.executeQuery()) {
+                    if (resultSet.next()) {
+                        rowCount = resultSet.getLong(1);
+                    }
+                }
+                if (rowCount < partitions) {
+                    connection.commit();
+                    return boundaries;
+                }
+                keyStatement.setInt(countIndex, 1);
+                for (int i = 1; i < partitions; i++) {
+                    keyStatement.setLong(offsetIndex, (rowCount * i / partitions) - 1);
+                    try (ResultSet resultSet = keyStatement.executeQuery()) {
+                        if (resultSet.next()) {
+                            String boundary = resultSet.getString(1);
+                            if (boundaries.isEmpty() || !boundaries.get(boundaries.size() - 1).equals(boundary)) {
+                                boundaries.add(boundary);
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving key range boundaries from " + table + ".", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+        return boundaries;
+    }
+}
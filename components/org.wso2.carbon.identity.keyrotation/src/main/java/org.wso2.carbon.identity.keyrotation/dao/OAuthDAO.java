@@ -20,6 +20,7 @@ package org.wso2.carbon.identity.keyrotation.dao;
 
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
 import org.wso2.carbon.identity.keyrotation.model.OAuthCode;
 import org.wso2.carbon.identity.keyrotation.model.OAuthSecret;
 import org.wso2.carbon.identity.keyrotation.model.OAuthToken;
@@ -29,14 +30,16 @@ import org.wso2.carbon.identity.keyrotation.model.TempOAuthToken;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class holds implementations needed to re-encrypt the OAuth data in DB.
@@ -45,18 +48,37 @@ public class OAuthDAO {
 
     private static final Logger log = Logger.getLogger(OAuthDAO.class);
     private static final OAuthDAO instance = new OAuthDAO();
-    public static int updateCodeCount = 0;
-    public static int updateTokenCount = 0;
-    public static int updateSecretCount = 0;
-    public static int insertCodeCount = 0;
-    public static int insertTokenCount = 0;
-    public static int insertScopeCount = 0;
-    public static int failedUpdateCodeCount = 0;
-    public static int failedUpdateTokenCount = 0;
-    public static int failedUpdateSecretCount = 0;
-    public static int failedInsertCodeCount = 0;
-    public static int failedInsertTokenCount = 0;
-    public static int failedInsertScopeCount = 0;
+    public static final AtomicInteger updateCodeCount = new AtomicInteger();
+    public static final AtomicInteger updateTokenCount = new AtomicInteger();
+    public static final AtomicInteger updateSecretCount = new AtomicInteger();
+    public static final AtomicInteger insertCodeCount = new AtomicInteger();
+    public static final AtomicInteger insertTokenCount = new AtomicInteger();
+    public static final AtomicInteger insertScopeCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateCodeCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateTokenCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateSecretCount = new AtomicInteger();
+    public static final AtomicInteger failedInsertCodeCount = new AtomicInteger();
+    public static final AtomicInteger failedInsertTokenCount = new AtomicInteger();
+    public static final AtomicInteger failedInsertScopeCount = new AtomicInteger();
+    private static final RecordBinder<OAuthCode> OAUTH_CODE_BINDER = (preparedStatement, oAuthCode) -> {
+        preparedStatement.setString(1, oAuthCode.getAuthorizationCode());
+        preparedStatement.setString(2, oAuthCode.getCodeId());
+    };
+    private static final RecordBinder<OAuthToken> OAUTH_TOKEN_BINDER = (preparedStatement, oAuthToken) -> {
+        preparedStatement.setString(1, oAuthToken.getAccessToken());
+        preparedStatement.setString(2, oAuthToken.getRefreshToken());
+        preparedStatement.setString(3, oAuthToken.getTokenId());
+    };
+    private static final RecordBinder<OAuthSecret> OAUTH_SECRET_BINDER = (preparedStatement, oAuthSecret) -> {
+        preparedStatement.setString(1, oAuthSecret.getConsumerSecret());
+        preparedStatement.setInt(2, Integer.parseInt(oAuthSecret.getId()));
+    };
+    public static final Function<OAuthCode, String> OAUTH_CODE_KEY_OF = oAuthCode -> "code id: " +
+            oAuthCode.getCodeId();
+    public static final Function<OAuthToken, String> OAUTH_TOKEN_KEY_OF = oAuthToken -> "token id: " +
+            oAuthToken.getTokenId();
+    public static final Function<OAuthSecret, String> OAUTH_SECRET_KEY_OF = oAuthSecret -> "id: " +
+            oAuthSecret.getId();
 
     public OAuthDAO() {
 
@@ -67,32 +89,104 @@ public class OAuthDAO {
         return instance;
     }
 
+    /**
+     * To open a streaming cursor over the data in IDN_OAUTH2_AUTHORIZATION_CODE.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on IDN_OAUTH2_AUTHORIZATION_CODE.
+     */
+    public ChunkCursor<OAuthCode> openOAuthCodeCursor(KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewIdnDialect(keyRotationConfig),
+                    dataSourceManager.getNewIdnConnection(keyRotationConfig),
+                    DBConstants.GET_OAUTH_AUTHORIZATION_CODE,
+                    resultSet -> new OAuthCode(resultSet.getString(KeyRotationConstants.CODE_ID),
+                            resultSet.getString(KeyRotationConstants.AUTHORIZATION_CODE),
+                            resultSet.getString(KeyRotationConstants.CONSUMER_KEY_ID)), keyRotationConfig);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of data in IDN_OAUTH2_AUTHORIZATION_CODE within a CODE_ID range, seeking past the
+     * last record of the previous chunk instead of skipping an offset.
+     *
+     * @param lowerKey          Exclusive lower CODE_ID of the chunk, or null to start from the beginning of the table.
+     * @param upperKey          Inclusive upper CODE_ID of the range, or null to read up to the end of the table.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from IDN_OAUTH2_AUTHORIZATION_CODE.
+     */
+    public List<OAuthCode> getOAuthCodeChunks(String lowerKey, String upperKey, int chunkSize,
+                                              KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (lowerKey == null && upperKey == null) {
+            return getOAuthCodeChunks(0, chunkSize, keyRotationConfig);
+        }
+        List<OAuthCode> oAuthCodeList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            String query = dialect.keysetQuery(DBConstants.GET_OAUTH_AUTHORIZATION_CODE, lowerKey != null,
+                    upperKey != null, KeyRotationConstants.CODE_ID);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                int index = 1;
+                if (lowerKey != null) {
+                    preparedStatement.setString(index++, lowerKey);
+                }
+                if (upperKey != null) {
+                    preparedStatement.setString(index++, upperKey);
+                }
+                preparedStatement.setInt(index, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    oAuthCodeList.add(new OAuthCode(resultSet.getString(KeyRotationConstants.CODE_ID),
+                            resultSet.getString(KeyRotationConstants.AUTHORIZATION_CODE),
+                            resultSet.getString(KeyRotationConstants.CONSUMER_KEY_ID)));
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving OAuth codes from " +
+                        "IDN_OAUTH2_AUTHORIZATION_CODE.", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+        return oAuthCodeList;
+    }
+
     /**
      * To retrieve the list of data in IDN_OAUTH2_AUTHORIZATION_CODE as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from IDN_OAUTH2_AUTHORIZATION_CODE.
      */
-    public List<OAuthCode> getOAuthCodeChunks(int startIndex, KeyRotationConfig keyRotationConfig) throws
-            KeyRotationException {
+    private List<OAuthCode> getOAuthCodeChunks(int startIndex, int chunkSize, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         List<OAuthCode> oAuthCodeList = new ArrayList<>();
         String query = DBConstants.GET_OAUTH_AUTHORIZATION_CODE;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_OAUTH_AUTHORIZATION_CODE_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_OAUTH_AUTHORIZATION_CODE, KeyRotationConstants.CODE_ID);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_OAUTH_AUTHORIZATION_CODE_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setInt(1, firstIndex);
@@ -106,7 +200,8 @@ public class OAuthDAO {
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                log.error("Error while retrieving OAuth codes from IDN_OAUTH2_AUTHORIZATION_CODE.", e);
+                throw new KeyRotationException("Error while retrieving OAuth codes from " +
+                        "IDN_OAUTH2_AUTHORIZATION_CODE.", e);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new identity DB.", e);
@@ -124,25 +219,22 @@ public class OAuthDAO {
     public void updateOAuthCodeChunks(List<OAuthCode> updateAuthCodeList, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement =
-                         connection.prepareStatement(DBConstants.UPDATE_OAUTH_AUTHORIZATION_CODE)) {
-                for (OAuthCode oAuthCode : updateAuthCodeList) {
-                    preparedStatement.setString(1, oAuthCode.getAuthorizationCode());
-                    preparedStatement.setString(2, oAuthCode.getCodeId());
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+                ChunkUpdate.OAUTH_CODE.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateAuthCodeList, OAUTH_CODE_BINDER);
                 connection.commit();
-                updateCodeCount += updateAuthCodeList.size();
-            } catch (SQLException e) {
+                updateCodeCount.addAndGet(updateAuthCodeList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE)
+                        .addRowsRotated(updateAuthCodeList.size());
+            } catch (SQLException | IOException e) {
                 connection.rollback();
                 log.error(
-                        "Error while updating OAuth codes in IDN_OAUTH2_AUTHORIZATION_CODE, trying the " +
-                                "chunk row by row again. ", e);
+                        "Error while updating OAuth codes in IDN_OAUTH2_AUTHORIZATION_CODE, retrying the " +
+                                "chunk in halves. ", e);
                 retryOnCodeUpdate(updateAuthCodeList, connection);
             }
         } catch (SQLException e) {
@@ -151,7 +243,8 @@ public class OAuthDAO {
     }
 
     /**
-     * To retry upon a failure in updating OAuth code chunk in IDN_OAUTH2_AUTHORIZATION_CODE.
+     * To retry upon a failure in updating OAuth code chunk in IDN_OAUTH2_AUTHORIZATION_CODE. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateAuthCodeList The list containing records that should be re-encrypted.
      * @param connection         Connection with the new identity DB.
@@ -160,55 +253,110 @@ public class OAuthDAO {
     private void retryOnCodeUpdate(List<OAuthCode> updateAuthCodeList, Connection connection)
             throws KeyRotationException {
 
-        OAuthCode faulty = null;
-        try (PreparedStatement preparedStatement =
-                     connection.prepareStatement(DBConstants.UPDATE_OAUTH_AUTHORIZATION_CODE)) {
-            for (OAuthCode oAuthCode : updateAuthCodeList) {
-                try {
-                    faulty = oAuthCode;
-                    preparedStatement.setString(1, oAuthCode.getAuthorizationCode());
-                    preparedStatement.setString(2, oAuthCode.getCodeId());
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateCodeCount++;
-                } catch (SQLException err) {
-                    connection.rollback();
-                    log.error("Error while updating OAuth code in IDN_OAUTH2_AUTHORIZATION_CODE of record with " +
-                            "code id: " + faulty.getCodeId() + " ," + err);
-                    failedUpdateCodeCount++;
+        new BisectingBatchRetry<OAuthCode>(connection, DBConstants.UPDATE_OAUTH_AUTHORIZATION_CODE,
+                DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE, OAUTH_CODE_BINDER, OAUTH_CODE_KEY_OF,
+                updateCodeCount, failedUpdateCodeCount).retry(updateAuthCodeList);
+    }
+
+    /**
+     * To open a streaming cursor over the data in IDN_OAUTH2_ACCESS_TOKEN.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on IDN_OAUTH2_ACCESS_TOKEN.
+     */
+    public ChunkCursor<OAuthToken> openOAuthTokenCursor(KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewIdnDialect(keyRotationConfig),
+                    dataSourceManager.getNewIdnConnection(keyRotationConfig),
+                    DBConstants.GET_OAUTH_ACCESS_TOKEN,
+                    resultSet -> new OAuthToken(resultSet.getString(KeyRotationConstants.TOKEN_ID),
+                            resultSet.getString(KeyRotationConstants.ACCESS_TOKEN),
+                            resultSet.getString(KeyRotationConstants.REFRESH_TOKEN),
+                            resultSet.getString(KeyRotationConstants.CONSUMER_KEY_ID)), keyRotationConfig);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of data in IDN_OAUTH2_ACCESS_TOKEN within a TOKEN_ID range, seeking past the last
+     * record of the previous chunk instead of skipping an offset.
+     *
+     * @param lowerKey          Exclusive lower TOKEN_ID of the chunk, or null to start from the beginning of the table.
+     * @param upperKey          Inclusive upper TOKEN_ID of the range, or null to read up to the end of the table.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from IDN_OAUTH2_ACCESS_TOKEN.
+     */
+    public List<OAuthToken> getOAuthTokenChunks(String lowerKey, String upperKey, int chunkSize,
+                                                KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (lowerKey == null && upperKey == null) {
+            return getOAuthTokenChunks(0, chunkSize, keyRotationConfig);
+        }
+        List<OAuthToken> oAuthTokenList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            String query = dialect.keysetQuery(DBConstants.GET_OAUTH_ACCESS_TOKEN, lowerKey != null, upperKey != null,
+                    KeyRotationConstants.TOKEN_ID);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                int index = 1;
+                if (lowerKey != null) {
+                    preparedStatement.setString(index++, lowerKey);
+                }
+                if (upperKey != null) {
+                    preparedStatement.setString(index++, upperKey);
+                }
+                preparedStatement.setInt(index, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    oAuthTokenList.add(new OAuthToken(resultSet.getString(KeyRotationConstants.TOKEN_ID),
+                            resultSet.getString(KeyRotationConstants.ACCESS_TOKEN),
+                            resultSet.getString(KeyRotationConstants.REFRESH_TOKEN),
+                            resultSet.getString(KeyRotationConstants.CONSUMER_KEY_ID)));
                 }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving OAuth tokens from IDN_OAUTH2_ACCESS_TOKEN.", e);
             }
         } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
         }
+        return oAuthTokenList;
     }
 
     /**
      * To retrieve the list of data in IDN_OAUTH2_ACCESS_TOKEN as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from IDN_OAUTH2_ACCESS_TOKEN.
      */
-    public List<OAuthToken> getOAuthTokenChunks(int startIndex, KeyRotationConfig keyRotationConfig) throws
-            KeyRotationException {
+    private List<OAuthToken> getOAuthTokenChunks(int startIndex, int chunkSize, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         List<OAuthToken> oAuthTokenList = new ArrayList<>();
         String query = DBConstants.GET_OAUTH_ACCESS_TOKEN;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_OAUTH_ACCESS_TOKEN_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_OAUTH_ACCESS_TOKEN, KeyRotationConstants.TOKEN_ID);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_OAUTH_ACCESS_TOKEN_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setInt(1, firstIndex);
@@ -223,7 +371,7 @@ public class OAuthDAO {
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                log.error("Error while retrieving OAuth tokens from IDN_OAUTH2_ACCESS_TOKEN.", e);
+                throw new KeyRotationException("Error while retrieving OAuth tokens from IDN_OAUTH2_ACCESS_TOKEN.", e);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new identity DB.", e);
@@ -241,26 +389,22 @@ public class OAuthDAO {
     public void updateOAuthTokenChunks(List<OAuthToken> updateAuthTokensList, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement =
-                         connection.prepareStatement(DBConstants.UPDATE_OAUTH_ACCESS_TOKEN)) {
-                for (OAuthToken oAuthToken : updateAuthTokensList) {
-                    preparedStatement.setString(1, oAuthToken.getAccessToken());
-                    preparedStatement.setString(2, oAuthToken.getRefreshToken());
-                    preparedStatement.setString(3, oAuthToken.getTokenId());
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+                ChunkUpdate.OAUTH_TOKEN.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateAuthTokensList, OAUTH_TOKEN_BINDER);
                 connection.commit();
-                updateTokenCount += updateAuthTokensList.size();
-            } catch (SQLException e) {
+                updateTokenCount.addAndGet(updateAuthTokensList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.IDN_OAUTH2_ACCESS_TOKEN)
+                        .addRowsRotated(updateAuthTokensList.size());
+            } catch (SQLException | IOException e) {
                 connection.rollback();
                 log.error(
-                        "Error while updating access and refresh tokens in IDN_OAUTH2_ACCESS_TOKEN, trying " +
-                                "the chunk row by row again. ", e);
+                        "Error while updating access and refresh tokens in IDN_OAUTH2_ACCESS_TOKEN, retrying " +
+                                "the chunk in halves. ", e);
                 retryOnTokenUpdate(updateAuthTokensList, connection);
             }
         } catch (SQLException e) {
@@ -269,7 +413,8 @@ public class OAuthDAO {
     }
 
     /**
-     * To retry upon a failure in updating OAuth token chunk in IDN_OAUTH2_ACCESS_TOKEN.
+     * To retry upon a failure in updating OAuth token chunk in IDN_OAUTH2_ACCESS_TOKEN. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateAuthTokensList The list containing records that should be re-encrypted.
      * @param connection           Connection with the new identity DB.
@@ -278,56 +423,100 @@ public class OAuthDAO {
     private void retryOnTokenUpdate(List<OAuthToken> updateAuthTokensList, Connection connection)
             throws KeyRotationException {
 
-        OAuthToken faulty = null;
-        try (PreparedStatement preparedStatement =
-                     connection.prepareStatement(DBConstants.UPDATE_OAUTH_ACCESS_TOKEN)) {
-            for (OAuthToken oAuthToken : updateAuthTokensList) {
-                try {
-                    faulty = oAuthToken;
-                    preparedStatement.setString(1, oAuthToken.getAccessToken());
-                    preparedStatement.setString(2, oAuthToken.getRefreshToken());
-                    preparedStatement.setString(3, oAuthToken.getTokenId());
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateTokenCount++;
-                } catch (SQLException err) {
-                    connection.rollback();
-                    log.error("Error while updating access and refresh tokens in IDN_OAUTH2_ACCESS_TOKEN of " +
-                            "record with token id: " + faulty.getTokenId() + " ," + err);
-                    failedUpdateTokenCount++;
+        new BisectingBatchRetry<OAuthToken>(connection, DBConstants.UPDATE_OAUTH_ACCESS_TOKEN,
+                DBConstants.IDN_OAUTH2_ACCESS_TOKEN, OAUTH_TOKEN_BINDER, OAUTH_TOKEN_KEY_OF,
+                updateTokenCount, failedUpdateTokenCount).retry(updateAuthTokensList);
+    }
+
+    /**
+     * To open a streaming cursor over the data in IDN_OAUTH_CONSUMER_APPS.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on IDN_OAUTH_CONSUMER_APPS.
+     */
+    public ChunkCursor<OAuthSecret> openOAuthSecretCursor(KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewIdnDialect(keyRotationConfig),
+                    dataSourceManager.getNewIdnConnection(keyRotationConfig),
+                    DBConstants.GET_OAUTH_SECRET,
+                    resultSet -> new OAuthSecret(resultSet.getString(KeyRotationConstants.ID),
+                            resultSet.getString(KeyRotationConstants.CONSUMER_SECRET),
+                            resultSet.getString(KeyRotationConstants.APP_NAME)), keyRotationConfig);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of data in IDN_OAUTH_CONSUMER_APPS, seeking past the last record of the previous
+     * chunk instead of skipping an offset.
+     *
+     * @param lastRecord        The last record of the previous chunk, or null to retrieve the first chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from IDN_OAUTH_CONSUMER_APPS.
+     */
+    public List<OAuthSecret> getOAuthSecretChunks(OAuthSecret lastRecord, int chunkSize,
+                                                  KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (lastRecord == null) {
+            return getOAuthSecretChunks(0, chunkSize, keyRotationConfig);
+        }
+        List<OAuthSecret> oAuthSecretList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            String query = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig)
+                    .keysetQuery(DBConstants.GET_OAUTH_SECRET, true, false, KeyRotationConstants.ID);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                preparedStatement.setInt(1, Integer.parseInt(lastRecord.getId()));
+                preparedStatement.setInt(2, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    oAuthSecretList.add(new OAuthSecret(resultSet.getString(KeyRotationConstants.ID),
+                            resultSet.getString(KeyRotationConstants.CONSUMER_SECRET),
+                            resultSet.getString(KeyRotationConstants.APP_NAME)));
                 }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving secrets from IDN_OAUTH_CONSUMER_APPS.", e);
             }
         } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
         }
+        return oAuthSecretList;
     }
 
     /**
      * To retrieve the list of data in IDN_OAUTH_CONSUMER_APPS as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from IDN_OAUTH_CONSUMER_APPS.
      */
-    public List<OAuthSecret> getOAuthSecretChunks(int startIndex, KeyRotationConfig keyRotationConfig) throws
-            KeyRotationException {
+    private List<OAuthSecret> getOAuthSecretChunks(int startIndex, int chunkSize, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         List<OAuthSecret> oAuthSecretList = new ArrayList<>();
         String query = DBConstants.GET_OAUTH_SECRET;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_OAUTH_SECRET_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_OAUTH_SECRET, KeyRotationConstants.ID);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_OAUTH_SECRET_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setInt(1, firstIndex);
@@ -341,7 +530,7 @@ public class OAuthDAO {
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                log.error("Error while retrieving secrets from IDN_OAUTH_CONSUMER_APPS.", e);
+                throw new KeyRotationException("Error while retrieving secrets from IDN_OAUTH_CONSUMER_APPS.", e);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new identity DB.", e);
@@ -360,24 +549,22 @@ public class OAuthDAO {
             throws
             KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_OAUTH_SECRET)) {
-                for (OAuthSecret oAuthSecret : updateOAuthSecretList) {
-                    preparedStatement.setString(1, oAuthSecret.getConsumerSecret());
-                    preparedStatement.setInt(2, Integer.parseInt(oAuthSecret.getId()));
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+                ChunkUpdate.OAUTH_SECRET.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateOAuthSecretList, OAUTH_SECRET_BINDER);
                 connection.commit();
-                updateSecretCount += updateOAuthSecretList.size();
-            } catch (SQLException e) {
+                updateSecretCount.addAndGet(updateOAuthSecretList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.IDN_OAUTH_CONSUMER_APPS)
+                        .addRowsRotated(updateOAuthSecretList.size());
+            } catch (SQLException | IOException e) {
                 connection.rollback();
                 log.error(
-                        "Error while updating OAuth secrets in IDN_OAUTH_CONSUMER_APPS, trying the chunk " +
-                                "row by row again. ", e);
+                        "Error while updating OAuth secrets in IDN_OAUTH_CONSUMER_APPS, retrying the chunk " +
+                                "in halves. ", e);
                 retryOnSecretUpdate(updateOAuthSecretList, connection);
             }
         } catch (SQLException e) {
@@ -386,7 +573,8 @@ public class OAuthDAO {
     }
 
     /**
-     * To retry upon a failure in updating OAuth secret chunk in IDN_OAUTH_CONSUMER_APPS.
+     * To retry upon a failure in updating OAuth secret chunk in IDN_OAUTH_CONSUMER_APPS. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateOAuthSecretList The list containing records that should be re-encrypted.
      * @param connection            Connection with the new identity DB.
@@ -395,26 +583,9 @@ public class OAuthDAO {
     private void retryOnSecretUpdate(List<OAuthSecret> updateOAuthSecretList, Connection connection)
             throws KeyRotationException {
 
-        OAuthSecret faulty = null;
-        try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_OAUTH_SECRET)) {
-            for (OAuthSecret oAuthSecret : updateOAuthSecretList) {
-                try {
-                    faulty = oAuthSecret;
-                    preparedStatement.setString(1, oAuthSecret.getConsumerSecret());
-                    preparedStatement.setInt(2, Integer.parseInt(oAuthSecret.getId()));
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateSecretCount++;
-                } catch (SQLException err) {
-                    connection.rollback();
-                    log.error("Error while updating OAuth secrets in IDN_OAUTH_CONSUMER_APPS of " +
-                            "record with id: " + faulty.getId() + " ," + err);
-                    failedUpdateSecretCount++;
-                }
-            }
-        } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
-        }
+        new BisectingBatchRetry<OAuthSecret>(connection, DBConstants.UPDATE_OAUTH_SECRET,
+                DBConstants.IDN_OAUTH_CONSUMER_APPS, OAUTH_SECRET_BINDER, OAUTH_SECRET_KEY_OF,
+                updateSecretCount, failedUpdateSecretCount).retry(updateOAuthSecretList);
     }
 
     /**
@@ -429,9 +600,8 @@ public class OAuthDAO {
             KeyRotationException {
 
         List<TempOAuthCode> oAuthCodeList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.GET_TEMP_OAUTH_AUTHORIZATION_CODE)) {
@@ -483,9 +653,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         List<TempOAuthCode> oAuthCodeList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_OAUTH_AUTHORIZATION_CODE_LATEST)) {
@@ -539,9 +708,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         List<TempOAuthCode> oAuthCodeList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_OAUTH_AUTHORIZATION_CODE_PREVIOUS)) {
@@ -594,9 +762,8 @@ public class OAuthDAO {
                                                  KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(
                     DBConstants.UPDATE_TEMP_OAUTH_AUTHORIZATION_CODE)) {
@@ -628,9 +795,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         int records = 0;
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.OAUTH_AUTHORIZATION_CODE_UPDATE)) {
@@ -638,11 +804,11 @@ public class OAuthDAO {
                 records = preparedStatement.executeUpdate();
                 connection.commit();
                 if (records > 0) {
-                    insertCodeCount++;
+                    insertCodeCount.incrementAndGet();
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertCodeCount++;
+                failedInsertCodeCount.incrementAndGet();
                 log.error("Error while updating OAuth codes in IDN_OAUTH2_AUTHORIZATION_CODE. ", e);
             }
         } catch (SQLException e) {
@@ -661,19 +827,18 @@ public class OAuthDAO {
     public void insertOAuthCode(TempOAuthCode insertAuthCode, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.INSERT_OAUTH_AUTHORIZATION_CODE)) {
                 codeDuplicatedCode(preparedStatement, insertAuthCode);
                 preparedStatement.executeUpdate();
                 connection.commit();
-                insertCodeCount++;
+                insertCodeCount.incrementAndGet();
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertCodeCount++;
+                failedInsertCodeCount.incrementAndGet();
                 log.error("Error while inserting OAuth codes into IDN_OAUTH2_AUTHORIZATION_CODE. ", e);
             }
         } catch (SQLException e) {
@@ -691,9 +856,8 @@ public class OAuthDAO {
     public void deleteOAuthCode(TempOAuthCode deleteAuthCode, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.DELETE_OAUTH_AUTHORIZATION_CODE)) {
@@ -721,9 +885,8 @@ public class OAuthDAO {
             KeyRotationException {
 
         List<TempOAuthToken> oAuthTokenList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.GET_TEMP_OAUTH_ACCESS_TOKEN)) {
@@ -778,9 +941,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         List<TempOAuthToken> oAuthTokenList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_OAUTH_ACCESS_TOKEN_LATEST)) {
@@ -836,9 +998,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         List<TempOAuthToken> oAuthTokenList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_OAUTH_ACCESS_TOKEN_PREVIOUS)) {
@@ -895,9 +1056,8 @@ public class OAuthDAO {
                                                   KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(
                     DBConstants.UPDATE_TEMP_OAUTH_ACCESS_TOKEN)) {
@@ -929,9 +1089,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         int records = 0;
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.OAUTH_ACCESS_TOKEN_UPDATE)) {
@@ -939,11 +1098,11 @@ public class OAuthDAO {
                 records = preparedStatement.executeUpdate();
                 connection.commit();
                 if (records > 0) {
-                    insertTokenCount++;
+                    insertTokenCount.incrementAndGet();
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertTokenCount++;
+                failedInsertTokenCount.incrementAndGet();
                 log.error("Error while updating access and refresh tokens in IDN_OAUTH2_ACCESS_TOKEN. ", e);
             }
         } catch (SQLException e) {
@@ -962,19 +1121,18 @@ public class OAuthDAO {
     public void insertOAuthToken(TempOAuthToken insertAuthToken, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.INSERT_OAUTH_ACCESS_TOKEN)) {
                 tokenDuplicatedCode(preparedStatement, insertAuthToken);
                 preparedStatement.executeUpdate();
                 connection.commit();
-                insertTokenCount++;
+                insertTokenCount.incrementAndGet();
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertTokenCount++;
+                failedInsertTokenCount.incrementAndGet();
                 log.error("Error while inserting access and refresh tokens into IDN_OAUTH2_ACCESS_TOKEN. ", e);
             }
         } catch (SQLException e) {
@@ -992,9 +1150,8 @@ public class OAuthDAO {
     public void deleteOAuthToken(TempOAuthToken deleteAuthToken, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.DELETE_OAUTH_ACCESS_TOKEN)) {
@@ -1022,9 +1179,8 @@ public class OAuthDAO {
             KeyRotationException {
 
         List<TempOAuthScope> tempOAuthScopeList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.GET_TEMP_OAUTH_SCOPE)) {
                 preparedStatement.setInt(1, syncId);
@@ -1060,9 +1216,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         List<TempOAuthScope> tempOAuthScopeList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.GET_TEMP_OAUTH_SCOPE_LATEST)) {
@@ -1103,9 +1258,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         List<TempOAuthScope> tempOAuthScopeList = new ArrayList<>();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.GET_TEMP_OAUTH_SCOPE_PREVIOUS)) {
@@ -1144,9 +1298,8 @@ public class OAuthDAO {
     public void updateScopePreviousSimilarRecords(List<TempOAuthScope> updateAuthScopesList,
                                                   KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getOldIdnDBUrl(), keyRotationConfig.getOldIdnUsername(),
-                        keyRotationConfig.getOldIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getOldIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement = connection
                     .prepareStatement(DBConstants.UPDATE_TEMP_OAUTH_SCOPE)) {
@@ -1178,9 +1331,8 @@ public class OAuthDAO {
             throws KeyRotationException {
 
         int records = 0;
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.OAUTH_SCOPE_UPDATE)) {
@@ -1190,11 +1342,11 @@ public class OAuthDAO {
                 records = preparedStatement.executeUpdate();
                 connection.commit();
                 if (records > 0) {
-                    insertScopeCount++;
+                    insertScopeCount.incrementAndGet();
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertScopeCount++;
+                failedInsertScopeCount.incrementAndGet();
                 log.error("Error while updating OAuth scope in IDN_OAUTH2_ACCESS_TOKEN_SCOPE. ", e);
             }
         } catch (SQLException e) {
@@ -1213,9 +1365,8 @@ public class OAuthDAO {
     public void insertOAuthScope(TempOAuthScope insertAuthScope, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.INSERT_OAUTH_SCOPE)) {
@@ -1224,10 +1375,10 @@ public class OAuthDAO {
                 preparedStatement.setInt(3, Integer.parseInt(insertAuthScope.getTenantId()));
                 preparedStatement.executeUpdate();
                 connection.commit();
-                insertScopeCount++;
+                insertScopeCount.incrementAndGet();
             } catch (SQLException e) {
                 connection.rollback();
-                failedInsertScopeCount++;
+                failedInsertScopeCount.incrementAndGet();
                 log.error("Error while inserting OAuth scope into IDN_OAUTH2_ACCESS_TOKEN_SCOPE. ", e);
             }
         } catch (SQLException e) {
@@ -1245,9 +1396,8 @@ public class OAuthDAO {
     public void deleteOAuthScope(TempOAuthScope deleteAuthScope, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
             try (PreparedStatement preparedStatement =
                          connection.prepareStatement(DBConstants.DELETE_OAUTH_SCOPE)) {
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds a record to the parameters of an update statement, the new values first and the key columns after them.
+ *
+ * @param <T> Type of the records of the table.
+ */
+public interface RecordBinder<T> {
+
+    /**
+     * Bind the record.
+     *
+     * @param preparedStatement The update statement.
+     * @param record            The record to be updated.
+     * @throws SQLException Exception thrown while binding the parameters.
+     * @throws IOException  Exception thrown while serializing the record.
+     */
+    void bind(PreparedStatement preparedStatement, T record) throws SQLException, IOException;
+}
@@ -20,17 +20,20 @@ package org.wso2.carbon.identity.keyrotation.dao;
 
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
 import org.wso2.carbon.identity.keyrotation.model.RegistryProperty;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class holds implementations needed to re-encrypt keystore properties within REG_PROPERTY in DB.
@@ -39,8 +42,18 @@ public class RegistryDAO {
 
     private static final Logger log = Logger.getLogger(RegistryDAO.class);
     private static final RegistryDAO instance = new RegistryDAO();
-    public static int updateCount = 0;
-    public static int failedUpdateCount = 0;
+    private static final String[] REG_PROPERTY_KEY_COLUMNS = {KeyRotationConstants.REG_ID,
+            KeyRotationConstants.REG_TENANT_ID};
+    public static final AtomicInteger updateCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateCount = new AtomicInteger();
+    private static final RecordBinder<RegistryProperty> REG_PROPERTY_BINDER = (preparedStatement, regProperty) -> {
+        preparedStatement.setString(1, regProperty.getRegValue());
+        preparedStatement.setInt(2, Integer.parseInt(regProperty.getRegId()));
+        preparedStatement.setInt(3, Integer.parseInt(regProperty.getRegTenantId()));
+    };
+    public static final Function<RegistryProperty, String> REG_PROPERTY_KEY_OF = regProperty -> "registry property: " +
+            regProperty.getRegName() + " reg id: " + regProperty.getRegId() + " reg tenant id: " +
+            regProperty.getRegTenantId();
 
     public RegistryDAO() {
 
@@ -51,33 +64,108 @@ public class RegistryDAO {
         return instance;
     }
 
+    /**
+     * To open a streaming cursor over the data in REG_PROPERTY.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param property          Registry property value.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on REG_PROPERTY.
+     */
+    public ChunkCursor<RegistryProperty> openRegPropertyDataCursor(KeyRotationConfig keyRotationConfig,
+                                                                   String property) throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewRegDialect(keyRotationConfig),
+                    dataSourceManager.getNewRegConnection(keyRotationConfig),
+                    DBConstants.GET_REG_PROPERTY_DATA,
+                    resultSet -> new RegistryProperty(resultSet.getString(KeyRotationConstants.REG_ID),
+                            resultSet.getString(KeyRotationConstants.REG_NAME),
+                            resultSet.getString(KeyRotationConstants.REG_VALUE),
+                            resultSet.getString(KeyRotationConstants.REG_TENANT_ID)), keyRotationConfig, property);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new registry DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of registry property data in REG_PROPERTY, seeking past the last record of the
+     * previous chunk instead of skipping an offset.
+     *
+     * @param lastRecord        The last record of the previous chunk, or null to retrieve the first chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param property          Registry property value.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from REG_PROPERTY.
+     */
+    public List<RegistryProperty> getRegPropertyDataChunks(RegistryProperty lastRecord, int chunkSize,
+                                                           KeyRotationConfig keyRotationConfig, String property)
+            throws KeyRotationException {
+
+        if (lastRecord == null) {
+            return getRegPropertyDataChunks(0, chunkSize, keyRotationConfig, property);
+        }
+        List<RegistryProperty> regPropertyList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewRegConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            String query = DataSourceManager.getInstance().getNewRegDialect(keyRotationConfig)
+                    .keysetQuery(DBConstants.GET_REG_PROPERTY_DATA, true, false, REG_PROPERTY_KEY_COLUMNS);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                int regId = Integer.parseInt(lastRecord.getRegId());
+                preparedStatement.setString(1, property);
+                preparedStatement.setInt(2, regId);
+                preparedStatement.setInt(3, regId);
+                preparedStatement.setInt(4, Integer.parseInt(lastRecord.getRegTenantId()));
+                preparedStatement.setInt(5, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    regPropertyList
+                            .add(new RegistryProperty(resultSet.getString(KeyRotationConstants.REG_ID),
+                                    resultSet.getString(KeyRotationConstants.REG_NAME),
+                                    resultSet.getString(KeyRotationConstants.REG_VALUE),
+                                    resultSet.getString(KeyRotationConstants.REG_TENANT_ID)));
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving registry property: " + property +
+                        " from REG_PROPERTY.", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new registry DB.", e);
+        }
+        return regPropertyList;
+    }
+
     /**
      * To retrieve the registry property data in REG_PROPERTY as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @param property          Registry property value.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from REG_PROPERTY.
      */
-    public List<RegistryProperty> getRegPropertyDataChunks(int startIndex, KeyRotationConfig keyRotationConfig,
-                                                           String property) throws KeyRotationException {
+    private List<RegistryProperty> getRegPropertyDataChunks(int startIndex, int chunkSize,
+                                                           KeyRotationConfig keyRotationConfig, String property)
+            throws KeyRotationException {
 
         List<RegistryProperty> regPropertyList = new ArrayList<>();
         String query = DBConstants.GET_REG_PROPERTY_DATA;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewRegDBUrl(), keyRotationConfig.getNewRegUsername(),
-                        keyRotationConfig.getNewRegPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewRegConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_REG_PROPERTY_DATA_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewRegDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_REG_PROPERTY_DATA, REG_PROPERTY_KEY_COLUMNS);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_REG_PROPERTY_DATA_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setString(1, property);
@@ -94,7 +182,8 @@ public class RegistryDAO {
                 }
             } catch (SQLException e) {
                 connection.rollback();
-                log.error("Error while retrieving registry property: " + property + " from REG_PROPERTY.", e);
+                throw new KeyRotationException("Error while retrieving registry property: " + property +
+                        " from REG_PROPERTY.", e);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new registry DB.", e);
@@ -114,27 +203,23 @@ public class RegistryDAO {
                                             KeyRotationConfig keyRotationConfig, String property)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewRegDBUrl(), keyRotationConfig.getNewRegUsername(),
-                        keyRotationConfig.getNewRegPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewRegConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement = connection
-                    .prepareStatement(DBConstants.UPDATE_REG_PROPERTY_DATA)) {
-                for (RegistryProperty regProperty : updateRegPropertyList) {
-                    preparedStatement.setString(1, regProperty.getRegValue());
-                    preparedStatement.setInt(2, Integer.parseInt(regProperty.getRegId()));
-                    preparedStatement.setInt(3, Integer.parseInt(regProperty.getRegTenantId()));
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewRegDialect(keyRotationConfig);
+                ChunkUpdate.REG_PROPERTY.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateRegPropertyList, REG_PROPERTY_BINDER);
                 connection.commit();
-                updateCount += updateRegPropertyList.size();
-            } catch (SQLException e) {
+                updateCount.addAndGet(updateRegPropertyList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.REG_PROPERTY)
+                        .addRowsRotated(updateRegPropertyList.size());
+            } catch (SQLException | IOException e) {
                 connection.rollback();
                 log.error(
-                        "Error while updating registry property: " + property + " in REG_PROPERTY, trying the " +
-                                "chunk row by row again. ", e);
-                retryOnRegPropertyUpdate(updateRegPropertyList, connection, property);
+                        "Error while updating registry property: " + property + " in REG_PROPERTY, retrying the " +
+                                "chunk in halves. ", e);
+                retryOnRegPropertyUpdate(updateRegPropertyList, connection);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new registry DB.", e);
@@ -142,37 +227,18 @@ public class RegistryDAO {
     }
 
     /**
-     * To retry upon a failure in updating reg property chunk in REG_PROPERTY.
+     * To retry upon a failure in updating reg property chunk in REG_PROPERTY. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateRegPropertyList The list containing records that should be re-encrypted.
      * @param connection            Connection with the new identity DB.
-     * @param property              Registry property value.
      * @throws KeyRotationException Exception thrown while accessing new identity DB data.
      */
-    private void retryOnRegPropertyUpdate(List<RegistryProperty> updateRegPropertyList, Connection connection,
-                                          String property) throws KeyRotationException {
-
-        RegistryProperty faulty = null;
-        try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_REG_PROPERTY_DATA)) {
-            for (RegistryProperty regProperty : updateRegPropertyList) {
-                try {
-                    faulty = regProperty;
-                    preparedStatement.setString(1, regProperty.getRegValue());
-                    preparedStatement.setInt(2, Integer.parseInt(regProperty.getRegId()));
-                    preparedStatement.setInt(3, Integer.parseInt(regProperty.getRegTenantId()));
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateCount++;
-                } catch (SQLException err) {
-                    connection.rollback();
-                    log.error("Error while updating registry property: " + property + " in REG_PROPERTY of " +
-                            "record with reg id: " + faulty.getRegId() + " reg tenant id: " +
-                            faulty.getRegTenantId() + " ," + err);
-                    failedUpdateCount++;
-                }
-            }
-        } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
-        }
+    private void retryOnRegPropertyUpdate(List<RegistryProperty> updateRegPropertyList, Connection connection)
+            throws KeyRotationException {
+
+        new BisectingBatchRetry<RegistryProperty>(connection, DBConstants.UPDATE_REG_PROPERTY_DATA,
+                DBConstants.REG_PROPERTY, REG_PROPERTY_BINDER, REG_PROPERTY_KEY_OF,
+                updateCount, failedUpdateCount).retry(updateRegPropertyList);
     }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This class holds implementations needed to count the rows of the tables to be re-encrypted.
+ */
+public class RowCountDAO {
+
+    private static final RowCountDAO instance = new RowCountDAO();
+
+    public RowCountDAO() {
+
+    }
+
+    public static RowCountDAO getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * To count the rows of a query in the new identity DB.
+     *
+     * @param query             Query selecting the row count.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param parameters        Parameters of the query.
+     * @return Number of rows.
+     * @throws KeyRotationException Exception thrown while counting the rows.
+     */
+    public long getIdnRowCount(String query, KeyRotationConfig keyRotationConfig, String... parameters)
+            throws KeyRotationException {
+
+        try (Connection connection = DataSourceManager.getInstance().getNewIdnConnection(keyRotationConfig)) {
+            return getRowCount(connection, query, parameters);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while counting the rows of the new identity DB.", e);
+        }
+    }
+
+    /**
+     * To count the rows of a query in the new registry DB.
+     *
+     * @param query             Query selecting the row count.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param parameters        Parameters of the query.
+     * @return Number of rows.
+     * @throws KeyRotationException Exception thrown while counting the rows.
+     */
+    public long getRegRowCount(String query, KeyRotationConfig keyRotationConfig, String... parameters)
+            throws KeyRotationException {
+
+        try (Connection connection = DataSourceManager.getInstance().getNewRegConnection(keyRotationConfig)) {
+            return getRowCount(connection, query, parameters);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while counting the rows of the new registry DB.", e);
+        }
+    }
+
+    /**
+     * To run a row count query in a read-only transaction.
+     *
+     * @param connection Connection to the DB.
+     * @param query      Query selecting the row count.
+     * @param parameters Parameters of the query.
+     * @return Number of rows.
+     * @throws SQLException Exception thrown while running the query.
+     */
+    private long getRowCount(Connection connection, String query, String... parameters) throws SQLException {
+
+        connection.setAutoCommit(false);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            for (int i = 0; i < parameters.length; i++) {
+                preparedStatement.setString(i + 1, parameters[i]);
+            }
+            long rowCount = 0;
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    rowCount = resultSet.getLong(1);
+                }
+            }
+            connection.commit();
+            return rowCount;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * This enum holds the SQL dialects of the supported databases. A dialect is resolved once per data source, so the
+ * DAOs don't look up the driver metadata on every call, and appends the ordering, keyset predicate and pagination
+ * clause of the dialect to the single base query of each table in DBConstants.
+ */
+public enum SqlDialect {
+
+    MYSQL(Pagination.LIMIT_OFFSET_COMMA, new String[]{"jdbc:mysql:", "jdbc:mariadb:"}, "MySQL", "MariaDB"),
+    POSTGRESQL(Pagination.LIMIT_OFFSET, new String[]{"jdbc:postgresql:"}, "PostgreSQL"),
+    MSSQL(Pagination.OFFSET_FETCH, new String[]{"jdbc:sqlserver:", "jdbc:jtds:sqlserver:"}, "Microsoft SQL Server"),
+    ORACLE(Pagination.OFFSET_FETCH, new String[]{"jdbc:oracle:"}, "Oracle"),
+    DB2(Pagination.OFFSET_FETCH, new String[]{"jdbc:db2:", "jdbc:as400:"}, "DB2"),
+    H2(Pagination.OFFSET_FETCH, new String[]{"jdbc:h2:"}, "H2");
+
+    private final Pagination pagination;
+    private final String[] urlPrefixes;
+    private final String[] productNames;
+
+    SqlDialect(Pagination pagination, String[] urlPrefixes, String... productNames) {
+
+        this.pagination = pagination;
+        this.urlPrefixes = urlPrefixes;
+        this.productNames = productNames;
+    }
+
+    /**
+     * The pagination syntax of a dialect.
+     */
+    private enum Pagination {
+
+        // LIMIT offset, count.
+        LIMIT_OFFSET_COMMA(" LIMIT ?, ?", " LIMIT ?"),
+        // LIMIT count OFFSET offset.
+        LIMIT_OFFSET(" LIMIT ? OFFSET ?", " LIMIT ?"),
+        // OFFSET offset ROWS FETCH NEXT count ROWS ONLY.
+        OFFSET_FETCH(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY");
+
+        private final String pageClause;
+        private final String limitClause;
+
+        Pagination(String pageClause, String limitClause) {
+
+            this.pageClause = pageClause;
+            this.limitClause = limitClause;
+        }
+    }
+
+    /**
+     * Resolve the dialect of a JDBC URL.
+     *
+     * @param url DB URL.
+     * @return The dialect, or null if the URL doesn't identify one.
+     */
+    public static SqlDialect fromUrl(String url) {
+
+        if (url == null) {
+            return null;
+        }
+        String lowerCaseUrl = url.trim().toLowerCase(Locale.ENGLISH);
+        for (SqlDialect dialect : values()) {
+            for (String urlPrefix : dialect.urlPrefixes) {
+                if (lowerCaseUrl.startsWith(urlPrefix)) {
+                    return dialect;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolve the dialect of a database product name as reported by the driver metadata. Unknown products fall back
+     * to the MySQL dialect, which the paginated queries used before the dialects were resolved.
+     *
+     * @param productName Database product name.
+     * @return The dialect.
+     */
+    public static SqlDialect fromProductName(String productName) {
+
+        if (productName != null) {
+            for (SqlDialect dialect : values()) {
+                for (String name : dialect.productNames) {
+                    if (productName.startsWith(name)) {
+                        return dialect;
+                    }
+                }
+            }
+        }
+        return MYSQL;
+    }
+
+    /**
+     * Build an offset paginated query from the base query of a table, ordered by the key columns. The offset and the
+     * row count are the last two parameters.
+     *
+     * @param query      Base query of the table, with or without a WHERE clause.
+     * @param keyColumns Primary key columns of the table.
+     * @return The query of the dialect.
+     */
+    public String pageQuery(String query, String... keyColumns) {
+
+        return query + " ORDER BY " + String.join(", ", keyColumns) + pagination.pageClause;
+    }
+
+    /**
+     * Whether the row count parameter of a query built by pageQuery comes before the offset parameter.
+     *
+     * @return True if the row count is bound first.
+     */
+    public boolean isLimitBeforeOffset() {
+
+        return pagination == Pagination.LIMIT_OFFSET;
+    }
+
+    /**
+     * Build a keyset query from the base query of a table, reading the records after an exclusive lower key and up
+     * to an inclusive upper key in the order of the key columns. The parameters of the lower key come first, then
+     * those of the upper key, and the row count is the last parameter. A base query filtering with OR has to
+     * parenthesize its WHERE clause.
+     *
+     * @param query      Base query of the table, with or without a WHERE clause.
+     * @param lowerKey   Whether the records start after a lower key.
+     * @param upperKey   Whether the records end at an upper key.
+     * @param keyColumns Primary key columns of the table.
+     * @return The query of the dialect.
+     */
+    public String keysetQuery(String query, boolean lowerKey, boolean upperKey, String... keyColumns) {
+
+        StringBuilder keysetQuery = new StringBuilder(query);
+        String conjunction = query.contains(" WHERE ") ? " AND " : " WHERE ";
+        if (lowerKey) {
+            keysetQuery.append(conjunction).append(keyPredicate(keyColumns, ">", ">"));
+            conjunction = " AND ";
+        }
+        if (upperKey) {
+            keysetQuery.append(conjunction).append(keyPredicate(keyColumns, "<", "<="));
+        }
+        return keysetQuery.append(" ORDER BY ").append(String.join(", ", keyColumns)).append(pagination.limitClause)
+                .toString();
+    }
+
+    /**
+     * Build the predicate comparing the key columns with a key in their order, e.g. (A>? OR (A=? AND B>?)) for a
+     * lower key. The key columns are bound as A, A, B.
+     *
+     * @param keyColumns   Primary key columns of the table.
+     * @param operator     Comparison of all but the last key column.
+     * @param lastOperator Comparison of the last key column.
+     * @return The predicate.
+     */
+    private static String keyPredicate(String[] keyColumns, String operator, String lastOperator) {
+
+        StringBuilder predicate = new StringBuilder("(");
+        for (int i = 0; i < keyColumns.length; i++) {
+            StringBuilder term = new StringBuilder();
+            for (int j = 0; j < i; j++) {
+                term.append(keyColumns[j]).append("=? AND ");
+            }
+            term.append(keyColumns[i]).append((i == keyColumns.length - 1) ? lastOperator : operator).append("?");
+            predicate.append((i == 0) ? "" : " OR ").append((i == 0) ? term : "(" + term + ")");
+        }
+        return predicate.append(")").toString();
+    }
+
+    /**
+     * Get the fetch size which makes the driver stream the rows of a forward-only result set. MySQL only streams with
+     * a fetch size of Integer.MIN_VALUE, while the other drivers honour the given fetch size.
+     *
+     * @param fetchSize Number of rows to fetch per round-trip.
+     * @return The fetch size of the dialect.
+     */
+    public int getStreamFetchSize(int fetchSize) {
+
+        return (this == MYSQL) ? Integer.MIN_VALUE : fetchSize;
+    }
+
+    /**
+     * Whether the dialect can create a staging table scoped to the session without a DBA defined schema object.
+     * Oracle and DB2 need a global temporary table or a user temporary table space created upfront.
+     *
+     * @return True if a staging table can be used.
+     */
+    public boolean isStagingSupported() {
+
+        return this == MYSQL || this == POSTGRESQL || this == MSSQL || this == H2;
+    }
+
+    /**
+     * Get the name of the staging table of a table.
+     *
+     * @param table Name of the table.
+     * @return Name of the staging table, with the local temporary table prefix of SQL Server.
+     */
+    public String getStagingTable(String table) {
+
+        String stagingTable = DBConstants.STAGING_TABLE_PREFIX + table;
+        return (this == MSSQL) ? "#" + stagingTable : stagingTable;
+    }
+
+    /**
+     * Get the statement creating the staging table of a table if it doesn't exist in the session yet. The staging
+     * table takes the column types of the table. SQL Server also copies the IDENTITY property of a column selected
+     * into a new table, which would reject the inserted keys, so an IDENTITY key column is cast to drop it.
+     *
+     * @param table          Name of the table.
+     * @param stagingTable   Name of the staging table.
+     * @param valueColumns   Columns holding the re-encrypted values.
+     * @param keyColumns     Primary key columns of the table.
+     * @param identityColumn Key column which is an INTEGER IDENTITY column on SQL Server, or null if there is none.
+     * @return The create statement.
+     */
+    public String getCreateStagingQuery(String table, String stagingTable, String[] valueColumns, String[] keyColumns,
+                                        String identityColumn) {
+
+        String columns = String.join(", ", valueColumns) + ", " + String.join(", ", keyColumns);
+        switch (this) {
+            case MSSQL:
+                StringBuilder selectColumns = new StringBuilder(String.join(", ", valueColumns));
+                for (String keyColumn : keyColumns) {
+                    selectColumns.append(", ").append(keyColumn.equals(identityColumn) ?
+                            "CAST(" + keyColumn + " AS INTEGER) AS " + keyColumn : keyColumn);
+                }
+                return "IF OBJECT_ID('tempdb.." + stagingTable + "') IS NULL SELECT " + selectColumns + " INTO " +
+                        stagingTable + " FROM " + table + " WHERE 1=0";
+            case H2:
+                return "CREATE LOCAL TEMPORARY TABLE IF NOT EXISTS " + stagingTable + " AS SELECT " + columns +
+                        " FROM " + table + " WHERE 1=0";
+            default:
+                return "CREATE TEMPORARY TABLE IF NOT EXISTS " + stagingTable + " AS SELECT " + columns + " FROM " +
+                        table + " WHERE 1=0";
+        }
+    }
+
+    /**
+     * Get the set-based statement updating a table from its staging table.
+     *
+     * @param table        Name of the table.
+     * @param stagingTable Name of the staging table.
+     * @param valueColumns Columns holding the re-encrypted values.
+     * @param keyColumns   Primary key columns of the table.
+     * @return The update statement.
+     */
+    public String getApplyStagingQuery(String table, String stagingTable, String[] valueColumns,
+                                       String[] keyColumns) {
+
+        StringBuilder join = new StringBuilder();
+        for (String keyColumn : keyColumns) {
+            join.append(join.length() == 0 ? "" : " AND ").append("T.").append(keyColumn).append("=S.")
+                    .append(keyColumn);
+        }
+        StringBuilder set = new StringBuilder();
+        for (String valueColumn : valueColumns) {
+            set.append(set.length() == 0 ? "" : ", ").append(this == POSTGRESQL ? "" : "T.").append(valueColumn)
+                    .append("=S.").append(valueColumn);
+        }
+        switch (this) {
+            case MYSQL:
+                return "UPDATE " + table + " T JOIN " + stagingTable + " S ON " + join + " SET " + set;
+            case POSTGRESQL:
+                return "UPDATE " + table + " T SET " + set + " FROM " + stagingTable + " S WHERE " + join;
+            case MSSQL:
+                return "UPDATE T SET " + set + " FROM " + table + " T JOIN " + stagingTable + " S ON " + join;
+            default:
+                return "MERGE INTO " + table + " T USING " + stagingTable + " S ON (" + join +
+                        ") WHEN MATCHED THEN UPDATE SET " + set;
+        }
+    }
+
+    /**
+     * Get the connection properties enabling the faster batch paths of the driver. MySQL Connector/J sends a batch of
+     * updates as a single multi-statement round-trip once rewriteBatchedStatements is set, instead of one round-trip
+     * per row, and the PostgreSQL driver turns a batch of inserts into multi-row inserts with reWriteBatchedInserts.
+     * Properties already set in the URL are left as they are.
+     *
+     * @param url DB URL.
+     * @return Connection properties, empty if the dialect has none.
+     */
+    public Properties getBatchProperties(String url) {
+
+        Properties properties = new Properties();
+        if (this == MYSQL && !url.contains(DBConstants.REWRITE_BATCHED_STATEMENTS)) {
+            properties.setProperty(DBConstants.REWRITE_BATCHED_STATEMENTS, Boolean.TRUE.toString());
+        }
+        if (this == POSTGRESQL && !url.contains(DBConstants.REWRITE_BATCHED_INSERTS)) {
+            properties.setProperty(DBConstants.REWRITE_BATCHED_INSERTS, Boolean.TRUE.toString());
+        }
+        return properties;
+    }
+}
@@ -20,6 +20,7 @@ package org.wso2.carbon.identity.keyrotation.dao;
 
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 import org.wso2.carbon.identity.workflow.mgt.dto.WorkflowRequest;
 
@@ -29,12 +30,13 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * This class holds implementations needed to re-encrypt the WorkFlow data in DB.
@@ -43,8 +45,14 @@ public class WorkFlowDAO {
 
     private static final Logger log = Logger.getLogger(WorkFlowDAO.class);
     private static final WorkFlowDAO instance = new WorkFlowDAO();
-    public static int updateCount = 0;
-    public static int failedUpdateCount = 0;
+    public static final AtomicInteger updateCount = new AtomicInteger();
+    public static final AtomicInteger failedUpdateCount = new AtomicInteger();
+    private static final RecordBinder<WorkflowRequest> WF_REQUEST_BINDER = (preparedStatement, wfRequest) -> {
+        preparedStatement.setBytes(1, serializeWFRequest(wfRequest));
+        preparedStatement.setString(2, wfRequest.getUuid());
+    };
+    public static final Function<WorkflowRequest, String> WF_REQUEST_KEY_OF = wfRequest -> "uuid: " +
+            wfRequest.getUuid();
 
     public WorkFlowDAO() {
 
@@ -55,32 +63,106 @@ public class WorkFlowDAO {
         return instance;
     }
 
+    /**
+     * To open a streaming cursor over the data in WF_REQUEST.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Cursor handing out the records in the table as chunks.
+     * @throws KeyRotationException Exception thrown while opening the cursor on WF_REQUEST.
+     */
+    public ChunkCursor<WorkflowRequest> openWFRequestCursor(KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        try {
+            DataSourceManager dataSourceManager = DataSourceManager.getInstance();
+            return ChunkCursor.open(dataSourceManager.getNewIdnDialect(keyRotationConfig),
+                    dataSourceManager.getNewIdnConnection(keyRotationConfig),
+                    DBConstants.GET_WF_REQUEST, resultSet -> {
+                        try {
+                            return deserializeWFRequest(resultSet.getBytes(DBConstants.REQUEST));
+                        } catch (IOException | ClassNotFoundException e) {
+                            throw new KeyRotationException("Error while deserializing request from WF_REQUEST.", e);
+                        }
+                    }, keyRotationConfig);
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+    }
+
+    /**
+     * To retrieve the next chunk of data in WF_REQUEST within a UUID range, seeking past the last record of
+     * the previous chunk instead of skipping an offset.
+     *
+     * @param lowerKey          Exclusive lower UUID of the chunk, or null to start from the beginning of the table.
+     * @param upperKey          Inclusive upper UUID of the range, or null to read up to the end of the table.
+     * @param chunkSize         Maximum number of records of the chunk.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return List comprising of the records in the table.
+     * @throws KeyRotationException Exception thrown while retrieving data from WF_REQUEST.
+     */
+    public List<WorkflowRequest> getWFRequestChunks(String lowerKey, String upperKey, int chunkSize,
+                                                    KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (lowerKey == null && upperKey == null) {
+            return getWFRequestChunks(0, chunkSize, keyRotationConfig);
+        }
+        List<WorkflowRequest> wfRequestList = new ArrayList<>();
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
+            connection.setAutoCommit(false);
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            String query = dialect.keysetQuery(DBConstants.GET_WF_REQUEST, lowerKey != null, upperKey != null,
+                    DBConstants.UUID);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                int index = 1;
+                if (lowerKey != null) {
+                    preparedStatement.setString(index++, lowerKey);
+                }
+                if (upperKey != null) {
+                    preparedStatement.setString(index++, upperKey);
+                }
+                preparedStatement.setInt(index, chunkSize);
+                ResultSet resultSet = preparedStatement.executeQuery();
+                connection.commit();
+                while (resultSet.next()) {
+                    byte[] requestBytes = resultSet.getBytes(DBConstants.REQUEST);
+                    WorkflowRequest wfRequest = deserializeWFRequest(requestBytes);
+                    wfRequestList.add(wfRequest);
+                }
+            } catch (SQLException | IOException | ClassNotFoundException e) {
+                connection.rollback();
+                throw new KeyRotationException("Error while retrieving requests from WF_REQUEST.", e);
+            }
+        } catch (SQLException e) {
+            throw new KeyRotationException("Error while connecting to new identity DB.", e);
+        }
+        return wfRequestList;
+    }
+
     /**
      * To retrieve the list of data in WF_REQUEST as chunks.
      *
      * @param startIndex        The start index of the data chunk.
+     * @param chunkSize         Maximum number of records of the chunk.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @return List comprising of the records in the table.
      * @throws KeyRotationException Exception thrown while retrieving data from WF_REQUEST.
      */
-    public List<WorkflowRequest> getWFRequestChunks(int startIndex, KeyRotationConfig keyRotationConfig) throws
-            KeyRotationException {
+    private List<WorkflowRequest> getWFRequestChunks(int startIndex, int chunkSize,
+                                                     KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
         List<WorkflowRequest> wfRequestList = new ArrayList<>();
         String query = DBConstants.GET_WF_REQUEST;
         int firstIndex = startIndex;
-        int secIndex = keyRotationConfig.getChunkSize();
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        int secIndex = chunkSize;
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            if (connection.getMetaData().getDriverName().contains(DBConstants.POSTGRESQL)) {
-                query = DBConstants.GET_WF_REQUEST_POSTGRE;
-                firstIndex = keyRotationConfig.getChunkSize();
+            SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+            query = dialect.pageQuery(DBConstants.GET_WF_REQUEST, DBConstants.UUID);
+            if (dialect.isLimitBeforeOffset()) {
+                firstIndex = chunkSize;
                 secIndex = startIndex;
-            } else if (connection.getMetaData().getDriverName().contains(DBConstants.MSSQL) ||
-                    connection.getMetaData().getDriverName().contains(DBConstants.ORACLE)) {
-                query = DBConstants.GET_WF_REQUEST_OTHER;
             }
             try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
                 preparedStatement.setInt(1, firstIndex);
@@ -94,7 +176,7 @@ public class WorkFlowDAO {
                 }
             } catch (SQLException | IOException | ClassNotFoundException e) {
                 connection.rollback();
-                log.error("Error while retrieving requests from WF_REQUEST.", e);
+                throw new KeyRotationException("Error while retrieving requests from WF_REQUEST.", e);
             }
         } catch (SQLException e) {
             throw new KeyRotationException("Error while connecting to new identity DB.", e);
@@ -112,22 +194,20 @@ public class WorkFlowDAO {
     public void updateWFRequestChunks(List<WorkflowRequest> updateWfRequestList, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        try (Connection connection = DriverManager
-                .getConnection(keyRotationConfig.getNewIdnDBUrl(), keyRotationConfig.getNewIdnUsername(),
-                        keyRotationConfig.getNewIdnPassword())) {
+        try (Connection connection = DataSourceManager.getInstance()
+                .getNewIdnConnection(keyRotationConfig)) {
             connection.setAutoCommit(false);
-            try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_WF_REQUEST)) {
-                for (WorkflowRequest wfRequest : updateWfRequestList) {
-                    preparedStatement.setBytes(1, serializeWFRequest(wfRequest));
-                    preparedStatement.setString(2, wfRequest.getUuid());
-                    preparedStatement.addBatch();
-                }
-                preparedStatement.executeBatch();
+            try {
+                SqlDialect dialect = DataSourceManager.getInstance().getNewIdnDialect(keyRotationConfig);
+                ChunkUpdate.WF_REQUEST.write(connection, dialect, keyRotationConfig.getEnableStagingTableUpdate(),
+                        updateWfRequestList, WF_REQUEST_BINDER);
                 connection.commit();
-                updateCount += updateWfRequestList.size();
+                updateCount.addAndGet(updateWfRequestList.size());
+                KeyRotationMetrics.getInstance().getTableMetrics(DBConstants.WF_REQUEST)
+                        .addRowsRotated(updateWfRequestList.size());
             } catch (SQLException | IOException e) {
                 connection.rollback();
-                log.error("Error while updating requests in WF_REQUEST, trying the chunk row by row again. ", e);
+                log.error("Error while updating requests in WF_REQUEST, retrying the chunk in halves. ", e);
                 retryOnRequestUpdate(updateWfRequestList, connection);
             }
         } catch (SQLException e) {
@@ -136,7 +216,8 @@ public class WorkFlowDAO {
     }
 
     /**
-     * To retry upon a failure in updating request chunk in WF_REQUEST.
+     * To retry upon a failure in updating request chunk in WF_REQUEST. The chunk is
+     * bisected to isolate the failed records.
      *
      * @param updateWfRequestList The list containing records that should be re-encrypted.
      * @param connection          Connection with the new identity DB.
@@ -145,26 +226,9 @@ public class WorkFlowDAO {
     private void retryOnRequestUpdate(List<WorkflowRequest> updateWfRequestList, Connection connection)
             throws KeyRotationException {
 
-        WorkflowRequest faulty = null;
-        try (PreparedStatement preparedStatement = connection.prepareStatement(DBConstants.UPDATE_WF_REQUEST)) {
-            for (WorkflowRequest wfRequest : updateWfRequestList) {
-                try {
-                    faulty = wfRequest;
-                    preparedStatement.setBytes(1, serializeWFRequest(wfRequest));
-                    preparedStatement.setString(2, wfRequest.getUuid());
-                    preparedStatement.executeUpdate();
-                    connection.commit();
-                    updateCount++;
-                } catch (SQLException | IOException err) {
-                    connection.rollback();
-                    log.error("Error while updating requests in WF_REQUEST of record with uuid: " +
-                            faulty.getUuid() + " ," + err);
-                    failedUpdateCount++;
-                }
-            }
-        } catch (SQLException e) {
-            throw new KeyRotationException("Error while accessing new identity DB.", e);
-        }
+        new BisectingBatchRetry<WorkflowRequest>(connection, DBConstants.UPDATE_WF_REQUEST,
+                DBConstants.WF_REQUEST, WF_REQUEST_BINDER, WF_REQUEST_KEY_OF,
+                updateCount, failedUpdateCount).retry(updateWfRequestList);
     }
 
     /**
@@ -191,7 +255,7 @@ public class WorkFlowDAO {
      * @return The byte stream.
      * @throws IOException Exception thrown during I/O operations.
      */
-    private byte[] serializeWFRequest(WorkflowRequest wfRequest) throws IOException {
+    private static byte[] serializeWFRequest(WorkflowRequest wfRequest) throws IOException {
 
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
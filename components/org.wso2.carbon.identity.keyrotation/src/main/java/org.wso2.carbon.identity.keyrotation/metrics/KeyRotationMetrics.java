@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.metrics;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class holds the metrics registry of the key rotation, with the metrics of each re-encrypted table. The
+ * metrics are always collected, and exposed over JMX and a local Prometheus endpoint if enabled.
+ */
+public class KeyRotationMetrics {
+
+    private static final Logger log = Logger.getLogger(KeyRotationMetrics.class);
+    private static final KeyRotationMetrics instance = new KeyRotationMetrics();
+    private final Map<String, TableMetrics> tableMetrics = new ConcurrentSkipListMap<>();
+    private volatile boolean jmxEnabled;
+    private PrometheusExporter prometheusExporter;
+
+    public KeyRotationMetrics() {
+
+    }
+
+    public static KeyRotationMetrics getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Get the metrics of a table, created on first use.
+     *
+     * @param table Name of the table.
+     * @return Metrics of the table.
+     */
+    public TableMetrics getTableMetrics(String table) {
+
+        return tableMetrics.computeIfAbsent(table, name -> {
+            TableMetrics metrics = new TableMetrics(name);
+            if (jmxEnabled) {
+                registerMBean(metrics);
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * Get the metrics of every table, ordered by table name.
+     *
+     * @return Metrics of the tables.
+     */
+    public Collection<TableMetrics> getTableMetrics() {
+
+        return tableMetrics.values();
+    }
+
+    /**
+     * Start exposing the metrics over JMX and the Prometheus endpoint, as configured.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while starting the Prometheus endpoint.
+     */
+    public synchronized void start(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (keyRotationConfig.getEnableJmxMetrics() && !jmxEnabled) {
+            jmxEnabled = true;
+            tableMetrics.values().forEach(this::registerMBean);
+        }
+        if (keyRotationConfig.getPrometheusPort() > 0 && prometheusExporter == null) {
+            prometheusExporter = new PrometheusExporter(this);
+            prometheusExporter.start(keyRotationConfig.getPrometheusPort());
+        }
+    }
+
+    /**
+     * Stop exposing the metrics.
+     */
+    public synchronized void stop() {
+
+        if (jmxEnabled) {
+            jmxEnabled = false;
+            tableMetrics.values().forEach(this::unregisterMBean);
+        }
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+            prometheusExporter = null;
+        }
+    }
+
+    /**
+     * Register the MBean of a table. A failure only costs the JMX view of the table, so it is logged.
+     *
+     * @param metrics Metrics of the table.
+     */
+    private void registerMBean(TableMetrics metrics) {
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(metrics);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(metrics, objectName);
+            }
+        } catch (JMException e) {
+            log.error("Error while registering the JMX metrics of " + metrics.getTable() + ".", e);
+        }
+    }
+
+    /**
+     * Unregister the MBean of a table.
+     *
+     * @param metrics Metrics of the table.
+     */
+    private void unregisterMBean(TableMetrics metrics) {
+
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(metrics);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.error("Error while unregistering the JMX metrics of " + metrics.getTable() + ".", e);
+        }
+    }
+
+    /**
+     * Get the JMX object name of the metrics of a table.
+     *
+     * @param metrics Metrics of the table.
+     * @return Object name.
+     * @throws JMException Exception thrown if the object name is malformed.
+     */
+    private ObjectName getObjectName(TableMetrics metrics) throws JMException {
+
+        return new ObjectName(KeyRotationConstants.JMX_METRICS_OBJECT_NAME + ObjectName.quote(metrics.getTable()));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds a latency histogram with fixed buckets, in the cumulative form of a Prometheus histogram.
+ */
+public class LatencyHistogram {
+
+    private static final double[] BUCKETS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private final LongAdder[] bucketCounts = new LongAdder[BUCKETS.length];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+
+        for (int i = 0; i < BUCKETS.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+
+        double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < BUCKETS.length; i++) {
+            if (seconds <= BUCKETS[i]) {
+                bucketCounts[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Get for the upper bounds of the buckets.
+     *
+     * @return Upper bounds of the buckets in seconds, excluding the implicit +Inf bucket.
+     */
+    public static double[] getBuckets() {
+
+        return BUCKETS.clone();
+    }
+
+    /**
+     * Get for the cumulative counts of the buckets.
+     *
+     * @return Number of latencies less than or equal to the upper bound of each bucket.
+     */
+    public long[] getCumulativeCounts() {
+
+        long[] cumulativeCounts = new long[BUCKETS.length];
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulativeCount += bucketCounts[i].sum();
+            cumulativeCounts[i] = cumulativeCount;
+        }
+        return cumulativeCounts;
+    }
+
+    /**
+     * Get for the number of recorded latencies.
+     *
+     * @return Number of recorded latencies.
+     */
+    public long getCount() {
+
+        return count.sum();
+    }
+
+    /**
+     * Get for the sum of the recorded latencies.
+     *
+     * @return Sum of the recorded latencies in seconds.
+     */
+    public double getSumSeconds() {
+
+        return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Get for the mean of the recorded latencies.
+     *
+     * @return Mean latency in milliseconds, or 0 if nothing was recorded.
+     */
+    public double getMeanMillis() {
+
+        long recorded = count.sum();
+        return (recorded == 0) ? 0 : sumNanos.sum() / (double) TimeUnit.MILLISECONDS.toNanos(1) / recorded;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * This class holds the local HTTP endpoint serving the key rotation metrics in the Prometheus text format. It only
+ * listens on the loopback address.
+ */
+public class PrometheusExporter {
+
+    private static final Logger log = Logger.getLogger(PrometheusExporter.class);
+    private final KeyRotationMetrics metrics;
+    private HttpServer server;
+
+    public PrometheusExporter(KeyRotationMetrics metrics) {
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start serving the metrics.
+     *
+     * @param port Port to listen on.
+     * @throws KeyRotationException Exception thrown while starting the HTTP server.
+     */
+    public void start(int port) throws KeyRotationException {
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new KeyRotationException("Error while starting the Prometheus metrics endpoint on port " + port +
+                    ".", e);
+        }
+        server.createContext(KeyRotationConstants.PROMETHEUS_METRICS_PATH, this::handle);
+        server.start();
+        log.info("Serving the key rotation metrics at http://localhost:" + port +
+                KeyRotationConstants.PROMETHEUS_METRICS_PATH);
+    }
+
+    /**
+     * Stop serving the metrics.
+     */
+    public void stop() {
+
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Serve a scrape request.
+     *
+     * @param exchange The HTTP exchange.
+     * @throws IOException Exception thrown while writing the response.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+
+        byte[] body = format().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", KeyRotationConstants.PROMETHEUS_CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    /**
+     * Format the metrics of every table in the Prometheus text format.
+     *
+     * @return The metrics.
+     */
+    String format() {
+
+        StringBuilder builder = new StringBuilder();
+        appendMetric(builder, "keyrotation_rows_scanned_total", "counter", "Rows read from the table.",
+                TableMetrics::getRowsScanned);
+        appendMetric(builder, "keyrotation_rows_rotated_total", "counter",
+                "Rows re-encrypted and written back to the table.", TableMetrics::getRowsRotated);
+        appendMetric(builder, "keyrotation_rows_skipped_total", "counter",
+                "Rows left untouched, being plaintext or already under the new key.", TableMetrics::getRowsSkipped);
+        appendMetric(builder, "keyrotation_rows_failed_total", "counter",
+                "Rows which could not be written back to the table.", TableMetrics::getRowsFailed);
+        appendMetric(builder, "keyrotation_rows_per_second", "gauge", "Average rows scanned per second.",
+                TableMetrics::getRowsPerSecond);
+        appendMetric(builder, "keyrotation_last_progress_timestamp_seconds", "gauge",
+                "Time of the last chunk written to the table.",
+                tableMetrics -> tableMetrics.getLastProgressTime() / 1000.0);
+        builder.append("# HELP keyrotation_queue_depth Chunks waiting between the pipeline stages.\n");
+        builder.append("# TYPE keyrotation_queue_depth gauge\n");
+        for (TableMetrics tableMetrics : metrics.getTableMetrics()) {
+            String table = escape(tableMetrics.getTable());
+            builder.append("keyrotation_queue_depth{table=\"").append(table).append("\",queue=\"read\"} ")
+                    .append(tableMetrics.getReadQueueDepth()).append('\n');
+            builder.append("keyrotation_queue_depth{table=\"").append(table).append("\",queue=\"write\"} ")
+                    .append(tableMetrics.getWriteQueueDepth()).append('\n');
+        }
+        appendHistogram(builder, "keyrotation_chunk_fetch_seconds", "Time to read a chunk.",
+                TableMetrics::getChunkFetchLatency);
+        appendHistogram(builder, "keyrotation_chunk_crypto_seconds", "Time to re-encrypt a chunk.",
+                TableMetrics::getChunkCryptoLatency);
+        appendHistogram(builder, "keyrotation_chunk_commit_seconds", "Time to write and commit a chunk.",
+                TableMetrics::getChunkCommitLatency);
+        return builder.toString();
+    }
+
+    /**
+     * Append a counter or gauge of every table.
+     *
+     * @param builder The output.
+     * @param name    Name of the metric.
+     * @param type    Prometheus type of the metric.
+     * @param help    Description of the metric.
+     * @param value   Value of the metric for a table.
+     */
+    private void appendMetric(StringBuilder builder, String name, String type, String help,
+                              ToDoubleFunction<TableMetrics> value) {
+
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (TableMetrics tableMetrics : metrics.getTableMetrics()) {
+            builder.append(name).append("{table=\"").append(escape(tableMetrics.getTable())).append("\"} ")
+                    .append(value.applyAsDouble(tableMetrics)).append('\n');
+        }
+    }
+
+    /**
+     * Append a latency histogram of every table.
+     *
+     * @param builder   The output.
+     * @param name      Name of the metric.
+     * @param help      Description of the metric.
+     * @param histogram Histogram of a table.
+     */
+    private void appendHistogram(StringBuilder builder, String name, String help,
+                                 Function<TableMetrics, LatencyHistogram> histogram) {
+
+        double[] buckets = LatencyHistogram.getBuckets();
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" histogram\n");
+        for (TableMetrics tableMetrics : metrics.getTableMetrics()) {
+            String table = escape(tableMetrics.getTable());
+            LatencyHistogram latencyHistogram = histogram.apply(tableMetrics);
+            long[] cumulativeCounts = latencyHistogram.getCumulativeCounts();
+            // A latency recorded while formatting may already be in its bucket but not yet in the count.
+            long count = Math.max(latencyHistogram.getCount(), cumulativeCounts[buckets.length - 1]);
+            for (int i = 0; i < buckets.length; i++) {
+                builder.append(name).append("_bucket{table=\"").append(table).append("\",le=\"").append(buckets[i])
+                        .append("\"} ").append(cumulativeCounts[i]).append('\n');
+            }
+            builder.append(name).append("_bucket{table=\"").append(table).append("\",le=\"+Inf\"} ").append(count)
+                    .append('\n');
+            builder.append(name).append("_sum{table=\"").append(table).append("\"} ")
+                    .append(latencyHistogram.getSumSeconds()).append('\n');
+            builder.append(name).append("_count{table=\"").append(table).append("\"} ").append(count).append('\n');
+        }
+    }
+
+    /**
+     * Escape a Prometheus label value.
+     *
+     * @param value The label value.
+     * @return The escaped label value.
+     */
+    private String escape(String value) {
+
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
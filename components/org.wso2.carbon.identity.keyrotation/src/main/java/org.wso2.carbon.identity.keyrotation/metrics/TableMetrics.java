@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.metrics;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds the re-encryption metrics of a table. The key ranges and registry passes of a table share its
+ * metrics.
+ */
+public class TableMetrics implements TableMetricsMBean {
+
+    private final String table;
+    private final LongAdder rowsScanned = new LongAdder();
+    private final LongAdder rowsRotated = new LongAdder();
+    private final LongAdder rowsSkipped = new LongAdder();
+    private final LongAdder rowsFailed = new LongAdder();
+    private final LatencyHistogram chunkFetchLatency = new LatencyHistogram();
+    private final LatencyHistogram chunkCryptoLatency = new LatencyHistogram();
+    private final LatencyHistogram chunkCommitLatency = new LatencyHistogram();
+    private final Set<Collection<?>> readQueues = ConcurrentHashMap.newKeySet();
+    private final Set<Collection<?>> writeQueues = ConcurrentHashMap.newKeySet();
+    private volatile long startTime;
+    private volatile long lastProgressTime;
+
+    public TableMetrics(String table) {
+
+        this.table = table;
+    }
+
+    /**
+     * Get for the table name.
+     *
+     * @return Name of the table.
+     */
+    public String getTable() {
+
+        return table;
+    }
+
+    /**
+     * Record a chunk read from the table.
+     *
+     * @param records    Number of records of the chunk.
+     * @param fetchNanos Time spent reading the chunk.
+     */
+    public void chunkRead(int records, long fetchNanos) {
+
+        if (startTime == 0) {
+            startTime = System.currentTimeMillis();
+        }
+        rowsScanned.add(records);
+        chunkFetchLatency.record(fetchNanos);
+    }
+
+    /**
+     * Record a re-encrypted chunk.
+     *
+     * @param records            Number of records of the chunk.
+     * @param reEncryptedRecords Number of records which were re-encrypted, the others being skipped.
+     * @param cryptoNanos        Time spent re-encrypting the chunk.
+     */
+    public void chunkReEncrypted(int records, int reEncryptedRecords, long cryptoNanos) {
+
+        rowsSkipped.add(records - reEncryptedRecords);
+        chunkCryptoLatency.record(cryptoNanos);
+    }
+
+    /**
+     * Record a chunk written to the table.
+     *
+     * @param commitNanos Time spent writing and committing the chunk.
+     */
+    public void chunkWritten(long commitNanos) {
+
+        lastProgressTime = System.currentTimeMillis();
+        chunkCommitLatency.record(commitNanos);
+    }
+
+    /**
+     * Record rows written back to the table.
+     *
+     * @param rows Number of rows.
+     */
+    public void addRowsRotated(int rows) {
+
+        rowsRotated.add(rows);
+    }
+
+    /**
+     * Record rows which could not be written back to the table.
+     *
+     * @param rows Number of rows.
+     */
+    public void addRowsFailed(int rows) {
+
+        rowsFailed.add(rows);
+    }
+
+    /**
+     * Track the queues of a pipeline of the table in the queue depths.
+     *
+     * @param readQueue  Queue of the chunks waiting to be re-encrypted.
+     * @param writeQueue Queue of the chunks waiting to be written.
+     */
+    public void addQueues(Collection<?> readQueue, Collection<?> writeQueue) {
+
+        readQueues.add(readQueue);
+        writeQueues.add(writeQueue);
+    }
+
+    /**
+     * Stop tracking the queues of a finished pipeline of the table.
+     *
+     * @param readQueue  Queue of the chunks waiting to be re-encrypted.
+     * @param writeQueue Queue of the chunks waiting to be written.
+     */
+    public void removeQueues(Collection<?> readQueue, Collection<?> writeQueue) {
+
+        readQueues.remove(readQueue);
+        writeQueues.remove(writeQueue);
+    }
+
+    /**
+     * Get for the chunk fetch latency histogram.
+     *
+     * @return Chunk fetch latency.
+     */
+    public LatencyHistogram getChunkFetchLatency() {
+
+        return chunkFetchLatency;
+    }
+
+    /**
+     * Get for the chunk crypto latency histogram.
+     *
+     * @return Chunk crypto latency.
+     */
+    public LatencyHistogram getChunkCryptoLatency() {
+
+        return chunkCryptoLatency;
+    }
+
+    /**
+     * Get for the chunk commit latency histogram.
+     *
+     * @return Chunk commit latency.
+     */
+    public LatencyHistogram getChunkCommitLatency() {
+
+        return chunkCommitLatency;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRowsScanned() {
+
+        return rowsScanned.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRowsRotated() {
+
+        return rowsRotated.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRowsSkipped() {
+
+        return rowsSkipped.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRowsFailed() {
+
+        return rowsFailed.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getRowsPerSecond() {
+
+        long start = startTime;
+        long end = (lastProgressTime > start) ? lastProgressTime : System.currentTimeMillis();
+        return (start == 0 || end <= start) ? 0 : rowsScanned.sum() * 1000.0 / (end - start);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getLastProgressTime() {
+
+        return lastProgressTime;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanChunkFetchTime() {
+
+        return chunkFetchLatency.getMeanMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanChunkCryptoTime() {
+
+        return chunkCryptoLatency.getMeanMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanChunkCommitTime() {
+
+        return chunkCommitLatency.getMeanMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReadQueueDepth() {
+
+        return readQueues.stream().mapToInt(Collection::size).sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWriteQueueDepth() {
+
+        return writeQueues.stream().mapToInt(Collection::size).sum();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.metrics;
+
+/**
+ * JMX view of the re-encryption metrics of a table.
+ */
+public interface TableMetricsMBean {
+
+    /**
+     * Get for the number of rows read from the table.
+     *
+     * @return Number of rows scanned.
+     */
+    long getRowsScanned();
+
+    /**
+     * Get for the number of rows re-encrypted and written back to the table.
+     *
+     * @return Number of rows rotated.
+     */
+    long getRowsRotated();
+
+    /**
+     * Get for the number of rows left untouched, being plaintext or already under the new key.
+     *
+     * @return Number of rows skipped.
+     */
+    long getRowsSkipped();
+
+    /**
+     * Get for the number of rows which could not be written back to the table.
+     *
+     * @return Number of rows failed.
+     */
+    long getRowsFailed();
+
+    /**
+     * Get for the average number of rows scanned per second, from the first chunk read up to the last chunk written.
+     *
+     * @return Rows scanned per second.
+     */
+    double getRowsPerSecond();
+
+    /**
+     * Get for the time of the last chunk written to the table.
+     *
+     * @return Epoch milliseconds of the last progress, or 0 if no chunk was written yet.
+     */
+    long getLastProgressTime();
+
+    /**
+     * Get for the mean time to read a chunk.
+     *
+     * @return Mean chunk fetch time in milliseconds.
+     */
+    double getMeanChunkFetchTime();
+
+    /**
+     * Get for the mean time to re-encrypt a chunk.
+     *
+     * @return Mean chunk crypto time in milliseconds.
+     */
+    double getMeanChunkCryptoTime();
+
+    /**
+     * Get for the mean time to write and commit a chunk.
+     *
+     * @return Mean chunk commit time in milliseconds.
+     */
+    double getMeanChunkCommitTime();
+
+    /**
+     * Get for the number of chunks waiting to be re-encrypted.
+     *
+     * @return Read queue depth.
+     */
+    int getReadQueueDepth();
+
+    /**
+     * Get for the number of chunks waiting to be written.
+     *
+     * @return Write queue depth.
+     */
+    int getWriteQueueDepth();
+}
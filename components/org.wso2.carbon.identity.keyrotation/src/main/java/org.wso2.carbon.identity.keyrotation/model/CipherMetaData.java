@@ -29,6 +29,7 @@ public class CipherMetaData {
     private String c;
     private String t = KeyRotationConstants.TRANSFORMATION;
     private String iv;
+    private String kid;
 
     /**
      * Get for the transformation.
@@ -109,4 +110,24 @@ public class CipherMetaData {
 
         return Base64.decode(iv);
     }
+
+    /**
+     * Get for the key identifier.
+     *
+     * @return Identifier of the key the cipher was encrypted with, or null if the cipher was encrypted without one.
+     */
+    public String getKeyId() {
+
+        return kid;
+    }
+
+    /**
+     * Set for the key identifier.
+     *
+     * @param keyId Identifier of the key the cipher was encrypted with.
+     */
+    public void setKeyId(String keyId) {
+
+        this.kid = keyId;
+    }
 }
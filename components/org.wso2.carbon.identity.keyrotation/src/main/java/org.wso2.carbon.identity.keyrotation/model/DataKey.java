@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.model;
+
+/**
+ * This class holds the data stored in IDN_KEY_ROTATION_DATA_KEY.
+ */
+public class DataKey {
+
+    private String keyId;
+    private String scope;
+    private String wrappedKey;
+    private String kekId;
+
+    /**
+     * DataKey class constructor.
+     *
+     * @param keyId      Key id field in IDN_KEY_ROTATION_DATA_KEY table.
+     * @param scope      Scope field in IDN_KEY_ROTATION_DATA_KEY table.
+     * @param wrappedKey Wrapped key field in IDN_KEY_ROTATION_DATA_KEY table.
+     * @param kekId      Kek id field in IDN_KEY_ROTATION_DATA_KEY table.
+     */
+    public DataKey(String keyId, String scope, String wrappedKey, String kekId) {
+
+        this.keyId = keyId;
+        this.scope = scope;
+        this.wrappedKey = wrappedKey;
+        this.kekId = kekId;
+    }
+
+    /**
+     * Get for the key id.
+     *
+     * @return Hex encoded identifier of the data key.
+     */
+    public String getKeyId() {
+
+        return keyId;
+    }
+
+    /**
+     * Set for the key id.
+     *
+     * @param keyId Hex encoded identifier of the data key.
+     */
+    public void setKeyId(String keyId) {
+
+        this.keyId = keyId;
+    }
+
+    /**
+     * Get for the scope.
+     *
+     * @return Scope the data key encrypts the values of.
+     */
+    public String getScope() {
+
+        return scope;
+    }
+
+    /**
+     * Set for the scope.
+     *
+     * @param scope Scope the data key encrypts the values of.
+     */
+    public void setScope(String scope) {
+
+        this.scope = scope;
+    }
+
+    /**
+     * Get for the wrapped key.
+     *
+     * @return Base64 encoded data key encrypted with the master key.
+     */
+    public String getWrappedKey() {
+
+        return wrappedKey;
+    }
+
+    /**
+     * Set for the wrapped key.
+     *
+     * @param wrappedKey Base64 encoded data key encrypted with the master key.
+     */
+    public void setWrappedKey(String wrappedKey) {
+
+        this.wrappedKey = wrappedKey;
+    }
+
+    /**
+     * Get for the kek id.
+     *
+     * @return Hex encoded identifier of the master key the data key is wrapped with.
+     */
+    public String getKekId() {
+
+        return kekId;
+    }
+
+    /**
+     * Set for the kek id.
+     *
+     * @param kekId Hex encoded identifier of the master key the data key is wrapped with.
+     */
+    public void setKekId(String kekId) {
+
+        this.kekId = kekId;
+    }
+}
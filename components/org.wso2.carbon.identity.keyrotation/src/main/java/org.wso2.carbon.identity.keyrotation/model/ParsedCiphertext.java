@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.model;
+
+/**
+ * This class holds the key identifier, transformation, initialization vector and cipher of a stored value, read from
+ * either the compact or the legacy JSON envelope. The key identifier of a legacy value written without one is null,
+ * and so are the IV and cipher of a legacy envelope missing them. Only the legacy envelope records the transformation.
+ */
+public class ParsedCiphertext {
+
+    private String keyId;
+    private String transformation;
+    private byte[] iv;
+    private byte[] cipherText;
+
+    /**
+     * Get for the key identifier.
+     *
+     * @return Hex encoded identifier of the key the cipher was encrypted with.
+     */
+    public String getKeyId() {
+
+        return keyId;
+    }
+
+    /**
+     * Set for the key identifier.
+     *
+     * @param keyId Hex encoded identifier of the key the cipher was encrypted with.
+     */
+    public void setKeyId(String keyId) {
+
+        this.keyId = keyId;
+    }
+
+    /**
+     * Get for the transformation.
+     *
+     * @return The transformation the cipher was encrypted with, or null if the envelope doesn't record it.
+     */
+    public String getTransformation() {
+
+        return transformation;
+    }
+
+    /**
+     * Set for the transformation.
+     *
+     * @param transformation The transformation the cipher was encrypted with.
+     */
+    public void setTransformation(String transformation) {
+
+        this.transformation = transformation;
+    }
+
+    /**
+     * Get for the initialization vector.
+     *
+     * @return The initialization vector.
+     */
+    public byte[] getIv() {
+
+        return iv;
+    }
+
+    /**
+     * Set for the initialization vector.
+     *
+     * @param iv The initialization vector.
+     */
+    public void setIv(byte[] iv) {
+
+        this.iv = iv;
+    }
+
+    /**
+     * Get for the cipher.
+     *
+     * @return The cipher, including the GCM authentication tag.
+     */
+    public byte[] getCipherText() {
+
+        return cipherText;
+    }
+
+    /**
+     * Set for the cipher.
+     *
+     * @param cipherText The cipher, including the GCM authentication tag.
+     */
+    public void setCipherText(byte[] cipherText) {
+
+        this.cipherText = cipherText;
+    }
+}
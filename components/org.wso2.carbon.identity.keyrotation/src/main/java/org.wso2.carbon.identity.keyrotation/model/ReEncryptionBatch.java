@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.model;
+
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.util.List;
+
+/**
+ * This class holds a column of stored values re-encrypted as one batch, along with the status of each value. A value
+ * which wasn't rotated keeps its stored value, and a failed one records the exception it failed with, so the other
+ * values of the batch are still re-encrypted. Every value is written by a single batch thread.
+ */
+public class ReEncryptionBatch {
+
+    private final String[] values;
+    private final Status[] statuses;
+    private final KeyRotationException[] failures;
+
+    /**
+     * The outcome of the re-encryption of a value.
+     */
+    public enum Status {
+
+        ROTATED,
+        PLAINTEXT_SKIPPED,
+        ALREADY_ROTATED,
+        FAILED
+    }
+
+    public ReEncryptionBatch(List<String> values) {
+
+        this.values = values.toArray(new String[0]);
+        this.statuses = new Status[this.values.length];
+        this.failures = new KeyRotationException[this.values.length];
+    }
+
+    /**
+     * Get the number of values of the batch.
+     *
+     * @return Number of values.
+     */
+    public int size() {
+
+        return values.length;
+    }
+
+    /**
+     * Get for the value at the given index.
+     *
+     * @param index Index of the value in the batch.
+     * @return The re-encrypted value if it was rotated, and the stored value otherwise.
+     */
+    public String getValue(int index) {
+
+        return values[index];
+    }
+
+    /**
+     * Get for the status of the value at the given index.
+     *
+     * @param index Index of the value in the batch.
+     * @return Status of the value.
+     */
+    public Status getStatus(int index) {
+
+        return statuses[index];
+    }
+
+    /**
+     * Set for the status of a value which was skipped.
+     *
+     * @param index  Index of the value in the batch.
+     * @param status Status of the value.
+     */
+    public void setStatus(int index, Status status) {
+
+        statuses[index] = status;
+    }
+
+    /**
+     * Set for the re-encrypted value at the given index.
+     *
+     * @param index Index of the value in the batch.
+     * @param value The re-encrypted value.
+     */
+    public void setRotated(int index, String value) {
+
+        values[index] = value;
+        statuses[index] = Status.ROTATED;
+    }
+
+    /**
+     * Get for the failure of the value at the given index.
+     *
+     * @param index Index of the value in the batch.
+     * @return The exception the value failed with, or null if it didn't fail.
+     */
+    public KeyRotationException getFailure(int index) {
+
+        return failures[index];
+    }
+
+    /**
+     * Set for the failure of the value at the given index.
+     *
+     * @param index   Index of the value in the batch.
+     * @param failure The exception the value failed with.
+     */
+    public void setFailed(int index, KeyRotationException failure) {
+
+        failures[index] = failure;
+        statuses[index] = Status.FAILED;
+    }
+
+    /**
+     * Get the first failure of the batch.
+     *
+     * @return The exception the first failed value failed with, or null if no value failed.
+     */
+    public KeyRotationException getFirstFailure() {
+
+        for (KeyRotationException failure : failures) {
+            if (failure != null) {
+                return failure;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.metrics.TableMetrics;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class holds the pipeline which re-encrypts a table chunk by chunk. A reader thread prefetches the chunks,
+ * a pool of crypto threads re-encrypts them and the calling thread writes them back. The stages are connected by
+ * bounded queues, so at most a fixed number of chunks are held in memory and a slow stage holds back the others.
+ * As the crypto threads may finish the chunks out of order, progress is only reported up to the last chunk before
+ * which every chunk has been written. The size of each chunk read is taken from the chunk size controller, which
+ * gets the measured read, re-encryption and write time of every written chunk. The same measurements, the number of
+ * records read and skipped, and the depth of the queues are recorded in the metrics of the table. Every chunk passes
+ * the throttle of the DB re-encryption before it is written.
+ *
+ * @param <T> Type of the records of the table.
+ */
+public class ChunkPipeline<T> {
+
+    private static final Logger log = Logger.getLogger(ChunkPipeline.class);
+    private final String name;
+    private final ChunkReader<T> reader;
+    private final ChunkReEncryptor<T> reEncryptor;
+    private final ChunkWriter<T> writer;
+    private final T startRecord;
+    private final ProgressListener<T> progressListener;
+    private final ChunkSizeController chunkSizeController;
+    private final TableMetrics tableMetrics;
+    private final ReEncryptionThrottle throttle;
+    private final int cryptoThreads;
+    private final int queueSize;
+    private final Chunk<T> endOfData = new Chunk<>(-1, null, Collections.emptyList(), 0, 0, 0);
+    private final AtomicReference<KeyRotationException> failure = new AtomicReference<>();
+
+    /**
+     * Reads the chunks of the table.
+     *
+     * @param <T> Type of the records of the table.
+     */
+    public interface ChunkReader<T> {
+
+        /**
+         * Read the chunk following the given record.
+         *
+         * @param lastRecord The last record of the previous chunk, or null to read the first chunk.
+         * @param chunkSize  Maximum number of records of the chunk.
+         * @return The next chunk, empty once the table is fully read.
+         * @throws KeyRotationException Exception thrown while reading the chunk.
+         */
+        List<T> read(T lastRecord, int chunkSize) throws KeyRotationException;
+    }
+
+    /**
+     * Re-encrypts the records of a chunk.
+     *
+     * @param <T> Type of the records of the table.
+     */
+    public interface ChunkReEncryptor<T> {
+
+        /**
+         * Re-encrypt the records in place.
+         *
+         * @param records The records to be re-encrypted.
+         * @return The records which were re-encrypted and have to be written back.
+         * @throws KeyRotationException Exception thrown while re-encrypting the records.
+         */
+        List<T> reEncrypt(List<T> records) throws KeyRotationException;
+    }
+
+    /**
+     * Writes the re-encrypted records of a chunk back to the table.
+     *
+     * @param <T> Type of the records of the table.
+     */
+    public interface ChunkWriter<T> {
+
+        /**
+         * Write the re-encrypted records.
+         *
+         * @param records The re-encrypted records.
+         * @throws KeyRotationException Exception thrown while writing the records.
+         */
+        void write(List<T> records) throws KeyRotationException;
+    }
+
+    /**
+     * Gets notified of the progress of the pipeline.
+     *
+     * @param <T> Type of the records of the table.
+     */
+    public interface ProgressListener<T> {
+
+        /**
+         * Called once every chunk up to and including the one ending with the given record has been written.
+         *
+         * @param lastRecord The last record of the chunk.
+         * @throws KeyRotationException Exception thrown while recording the progress.
+         */
+        void committed(T lastRecord) throws KeyRotationException;
+    }
+
+    /**
+     * A chunk on its way through the pipeline, tagged with its position in the table and the time spent on it.
+     *
+     * @param <T> Type of the records of the table.
+     */
+    private static class Chunk<T> {
+
+        private final long sequence;
+        private final T lastRecord;
+        private final List<T> records;
+        private final int readRecords;
+        private final long fetchNanos;
+        private final long cryptoNanos;
+
+        Chunk(long sequence, T lastRecord, List<T> records, int readRecords, long fetchNanos, long cryptoNanos) {
+
+            this.sequence = sequence;
+            this.lastRecord = lastRecord;
+            this.records = records;
+            this.readRecords = readRecords;
+            this.fetchNanos = fetchNanos;
+            this.cryptoNanos = cryptoNanos;
+        }
+    }
+
+    public ChunkPipeline(String name, ChunkReader<T> reader, ChunkReEncryptor<T> reEncryptor, ChunkWriter<T> writer,
+                         ChunkSizeController chunkSizeController, TableMetrics tableMetrics,
+                         ReEncryptionThrottle throttle, int cryptoThreads, int queueSize) {
+
+        this(name, reader, reEncryptor, writer, null, null, chunkSizeController, tableMetrics, throttle,
+                cryptoThreads, queueSize);
+    }
+
+    /**
+     * Create a pipeline which starts after the given record and reports its progress.
+     *
+     * @param name             Name of the table.
+     * @param reader           Reads the chunks of the table.
+     * @param reEncryptor      Re-encrypts the records of a chunk.
+     * @param writer           Writes the re-encrypted records back to the table.
+     * @param startRecord      Record after which reading starts, or null to start from the beginning of the table.
+     * @param progressListener    Gets notified of the written chunks, or null.
+     * @param chunkSizeController Chunk size of the table.
+     * @param tableMetrics        Metrics of the table.
+     * @param throttle            Throttle of the DB re-encryption.
+     * @param cryptoThreads       Number of crypto threads.
+     * @param queueSize           Number of chunks buffered between the stages.
+     */
+    public ChunkPipeline(String name, ChunkReader<T> reader, ChunkReEncryptor<T> reEncryptor, ChunkWriter<T> writer,
+                         T startRecord, ProgressListener<T> progressListener, ChunkSizeController chunkSizeController,
+                         TableMetrics tableMetrics, ReEncryptionThrottle throttle, int cryptoThreads,
+                         int queueSize) {
+
+        this.name = name;
+        this.reader = reader;
+        this.reEncryptor = reEncryptor;
+        this.writer = writer;
+        this.startRecord = startRecord;
+        this.progressListener = progressListener;
+        this.chunkSizeController = chunkSizeController;
+        this.tableMetrics = tableMetrics;
+        this.throttle = throttle;
+        this.cryptoThreads = Math.max(1, cryptoThreads);
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * Run the pipeline until the table is fully read. After a failure in any stage no further chunks are read,
+     * the chunks already queued are discarded and the first failure is thrown.
+     *
+     * @throws KeyRotationException Exception thrown by the first failed stage.
+     */
+    public void run() throws KeyRotationException {
+
+        BlockingQueue<Chunk<T>> readQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Chunk<T>> writeQueue = new ArrayBlockingQueue<>(queueSize);
+        tableMetrics.addQueues(readQueue, writeQueue);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(cryptoThreads + 1, runnable -> {
+            Thread thread = new Thread(runnable, name + "-pipeline-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            futures.add(executor.submit(() -> {
+                readChunks(readQueue);
+                return null;
+            }));
+            for (int i = 0; i < cryptoThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    reEncryptChunks(readQueue, writeQueue);
+                    return null;
+                }));
+            }
+            writeChunks(writeQueue);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new KeyRotationException("Interrupted while re-encrypting " + name + ".", e);
+        } catch (ExecutionException e) {
+            fail(e.getCause());
+        } finally {
+            executor.shutdown();
+            tableMetrics.removeQueues(readQueue, writeQueue);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Reader stage. Reads the chunks until the table is fully read or a stage fails, then signals the end of data
+     * to every crypto thread.
+     *
+     * @param readQueue Queue to hand the chunks over to the crypto threads.
+     * @throws InterruptedException Exception thrown if interrupted while waiting for queue space.
+     */
+    private void readChunks(BlockingQueue<Chunk<T>> readQueue) throws InterruptedException {
+
+        try {
+            long sequence = 0;
+            long startTime = System.nanoTime();
+            List<T> chunk = reader.read(startRecord, chunkSizeController.getChunkSize());
+            while (CollectionUtils.isNotEmpty(chunk) && failure.get() == null) {
+                long fetchNanos = System.nanoTime() - startTime;
+                tableMetrics.chunkRead(chunk.size(), fetchNanos);
+                T lastRecord = chunk.get(chunk.size() - 1);
+                readQueue.put(new Chunk<>(sequence++, lastRecord, chunk, chunk.size(), fetchNanos, 0));
+                startTime = System.nanoTime();
+                chunk = reader.read(lastRecord, chunkSizeController.getChunkSize());
+            }
+        } catch (KeyRotationException | RuntimeException e) {
+            fail(e);
+        } finally {
+            for (int i = 0; i < cryptoThreads; i++) {
+                readQueue.put(endOfData);
+            }
+        }
+    }
+
+    /**
+     * Crypto stage. Re-encrypts the chunks until the end of data, then signals the end of data to the writer.
+     * Chunks are discarded once a stage has failed.
+     *
+     * @param readQueue  Queue to take the chunks from.
+     * @param writeQueue Queue to hand the re-encrypted records over to the writer.
+     * @throws InterruptedException Exception thrown if interrupted while waiting for the queues.
+     */
+    private void reEncryptChunks(BlockingQueue<Chunk<T>> readQueue, BlockingQueue<Chunk<T>> writeQueue)
+            throws InterruptedException {
+
+        try {
+            Chunk<T> chunk = readQueue.take();
+            while (chunk != endOfData) {
+                if (failure.get() == null) {
+                    long startTime = System.nanoTime();
+                    List<T> reEncryptedRecords = reEncryptor.reEncrypt(chunk.records);
+                    long cryptoNanos = System.nanoTime() - startTime;
+                    tableMetrics.chunkReEncrypted(chunk.readRecords, reEncryptedRecords.size(), cryptoNanos);
+                    writeQueue.put(new Chunk<>(chunk.sequence, chunk.lastRecord, reEncryptedRecords,
+                            chunk.readRecords, chunk.fetchNanos, cryptoNanos));
+                }
+                chunk = readQueue.take();
+            }
+        } catch (KeyRotationException | RuntimeException e) {
+            fail(e);
+            Chunk<T> chunk = readQueue.take();
+            while (chunk != endOfData) {
+                chunk = readQueue.take();
+            }
+        } finally {
+            writeQueue.put(endOfData);
+        }
+    }
+
+    /**
+     * Writer stage. Writes the re-encrypted records within the throttle until every crypto thread has signalled the
+     * end of data, hands the time spent on each chunk to the chunk size controller, and reports the progress once the
+     * chunks written so far have no gap. Records are discarded once a stage has failed.
+     *
+     * @param writeQueue Queue to take the re-encrypted records from.
+     * @throws InterruptedException Exception thrown if interrupted while waiting for the queue.
+     */
+    private void writeChunks(BlockingQueue<Chunk<T>> writeQueue) throws InterruptedException {
+
+        int finishedCryptoThreads = 0;
+        long nextSequence = 0;
+        Map<Long, T> writtenChunks = new HashMap<>();
+        while (finishedCryptoThreads < cryptoThreads) {
+            Chunk<T> chunk = writeQueue.take();
+            if (chunk == endOfData) {
+                finishedCryptoThreads++;
+            } else if (failure.get() == null) {
+                try {
+                    long writeNanos = 0;
+                    if (!chunk.records.isEmpty()) {
+                        throttle.acquire(chunk.records.size());
+                        long startTime = System.nanoTime();
+                        writer.write(chunk.records);
+                        writeNanos = System.nanoTime() - startTime;
+                        throttle.chunkWritten(name, startTime, writeNanos);
+                    }
+                    tableMetrics.chunkWritten(writeNanos);
+                    chunkSizeController.chunkCompleted(chunk.readRecords, chunk.fetchNanos, chunk.cryptoNanos,
+                            writeNanos);
+                    if (progressListener != null) {
+                        writtenChunks.put(chunk.sequence, chunk.lastRecord);
+                        T committedRecord = null;
+                        while (writtenChunks.containsKey(nextSequence)) {
+                            committedRecord = writtenChunks.remove(nextSequence++);
+                        }
+                        if (committedRecord != null) {
+                            progressListener.committed(committedRecord);
+                        }
+                    }
+                } catch (KeyRotationException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record the failure of a stage, keeping only the first one.
+     *
+     * @param e The failure.
+     */
+    private void fail(Throwable e) {
+
+        KeyRotationException exception = (e instanceof KeyRotationException) ? (KeyRotationException) e :
+                new KeyRotationException("Error while re-encrypting " + name + ".", e);
+        if (failure.compareAndSet(null, exception)) {
+            log.error("Stopping the re-encryption of " + name + " due to a failure.", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds the chunk size of a table. If the adaptive chunk size is enabled, it starts from the configured
+ * chunk size and, after every chunk, moves towards the size at which reading, re-encrypting and writing a chunk takes
+ * the target chunk time. Small chunks spend most of their time on DB round-trips, while large chunks hold row locks
+ * in long transactions. The time per record is smoothed over the recent chunks, a step at most halves or doubles the
+ * size, and the size is kept while the target is within a quarter of it, so that the size does not follow the noise
+ * of the measurements.
+ */
+public class ChunkSizeController {
+
+    private static final Logger log = Logger.getLogger(ChunkSizeController.class);
+    private static final double SMOOTHING_FACTOR = 0.3;
+    private static final double DEAD_BAND = 0.25;
+    private final String name;
+    private final boolean adaptive;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long targetChunkNanos;
+    private volatile int chunkSize;
+    private double recordNanos;
+
+    /**
+     * Create the chunk size controller of a table.
+     *
+     * @param name              Name of the table or table range.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     */
+    public ChunkSizeController(String name, KeyRotationConfig keyRotationConfig) {
+
+        this.name = name;
+        this.adaptive = keyRotationConfig.getEnableAdaptiveChunkSize();
+        this.minChunkSize = keyRotationConfig.getMinChunkSize();
+        this.maxChunkSize = Math.max(minChunkSize, keyRotationConfig.getMaxChunkSize());
+        this.targetChunkNanos = TimeUnit.MILLISECONDS.toNanos(keyRotationConfig.getTargetChunkTime());
+        this.chunkSize = adaptive ? bound(keyRotationConfig.getChunkSize()) : keyRotationConfig.getChunkSize();
+    }
+
+    /**
+     * Get for the size of the next chunk to be read.
+     *
+     * @return Chunk size.
+     */
+    public int getChunkSize() {
+
+        return chunkSize;
+    }
+
+    /**
+     * Adjust the chunk size to the measured latency of a chunk. The latency is taken per record, as the chunk may
+     * have been read before the last change of the size. Only called by the writer of the table.
+     *
+     * @param records     Number of records read in the chunk.
+     * @param fetchNanos  Time spent reading the chunk.
+     * @param cryptoNanos Time spent re-encrypting the chunk.
+     * @param writeNanos  Time spent writing the chunk.
+     */
+    public void chunkCompleted(int records, long fetchNanos, long cryptoNanos, long writeNanos) {
+
+        long elapsedNanos = fetchNanos + cryptoNanos + writeNanos;
+        if (!adaptive || records == 0 || elapsedNanos <= 0) {
+            return;
+        }
+        double chunkRecordNanos = (double) elapsedNanos / records;
+        recordNanos = (recordNanos == 0) ? chunkRecordNanos :
+                SMOOTHING_FACTOR * chunkRecordNanos + (1 - SMOOTHING_FACTOR) * recordNanos;
+        int currentSize = chunkSize;
+        double targetSize = targetChunkNanos / recordNanos;
+        if (targetSize > currentSize * (1 - DEAD_BAND) && targetSize < currentSize / (1 - DEAD_BAND)) {
+            return;
+        }
+        int newSize = bound(Math.max(currentSize / 2, Math.min(2L * currentSize, Math.round(targetSize))));
+        if (newSize == currentSize) {
+            return;
+        }
+        chunkSize = newSize;
+        log.info(String.format("Chunk size of %s changed from %d to %d. A chunk of %d records took %d ms to read, " +
+                        "%d ms to re-encrypt and %d ms to write, for a target of %d ms.", name, currentSize, newSize,
+                records, TimeUnit.NANOSECONDS.toMillis(fetchNanos), TimeUnit.NANOSECONDS.toMillis(cryptoNanos),
+                TimeUnit.NANOSECONDS.toMillis(writeNanos), TimeUnit.NANOSECONDS.toMillis(targetChunkNanos)));
+    }
+
+    /**
+     * Bound a chunk size by the minimum and maximum chunk sizes.
+     *
+     * @param size The chunk size.
+     * @return The bounded chunk size.
+     */
+    private int bound(long size) {
+
+        return (int) Math.max(minChunkSize, Math.min(maxChunkSize, size));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class generates the IVs from a per-thread prefix and counter. The prefix is 8 random bytes followed by a
+ * number handed out once per thread, and the last 4 bytes count the IVs of the thread. The thread numbers keep the
+ * IVs of the threads apart within the process, and the random bytes keep the IVs of separate runs apart. A thread
+ * takes a new prefix when its counter wraps around. Apart from taking a prefix, a thread doesn't share any state
+ * with the others.
+ */
+public class CounterIvGenerator implements IvGenerator {
+
+    private static final int RANDOM_LENGTH = 8;
+    private static final int PREFIX_LENGTH = RANDOM_LENGTH + Integer.BYTES;
+    private static final long COUNTER_LIMIT = 1L << Integer.SIZE;
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static final AtomicInteger threadNumbers = new AtomicInteger();
+    private final ThreadLocal<Prefix> prefixes = new ThreadLocal<>();
+
+    /**
+     * This class holds the prefix and counter of a thread.
+     */
+    private static class Prefix {
+
+        private final byte[] bytes = new byte[PREFIX_LENGTH];
+        private long counter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] generate() {
+
+        Prefix prefix = prefixes.get();
+        if (prefix == null || prefix.counter == COUNTER_LIMIT) {
+            prefix = newPrefix();
+            prefixes.set(prefix);
+        }
+        byte[] iv = new byte[KeyRotationConstants.GCM_IV_LENGTH];
+        System.arraycopy(prefix.bytes, 0, iv, 0, PREFIX_LENGTH);
+        long counter = prefix.counter++;
+        for (int i = iv.length - 1; i >= PREFIX_LENGTH; i--) {
+            iv[i] = (byte) counter;
+            counter >>>= Byte.SIZE;
+        }
+        return iv;
+    }
+
+    /**
+     * Create a prefix with new random bytes and a thread number which wasn't handed out before.
+     *
+     * @return The prefix.
+     */
+    private Prefix newPrefix() {
+
+        Prefix prefix = new Prefix();
+        byte[] random = new byte[RANDOM_LENGTH];
+        secureRandom.nextBytes(random);
+        System.arraycopy(random, 0, prefix.bytes, 0, RANDOM_LENGTH);
+        int threadNumber = threadNumbers.getAndIncrement();
+        for (int i = PREFIX_LENGTH - 1; i >= RANDOM_LENGTH; i--) {
+            prefix.bytes[i] = (byte) threadNumber;
+            threadNumber >>>= Byte.SIZE;
+        }
+        return prefix;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This interface is a security provider and transformation the values are encrypted or decrypted with. The backends
+ * of the two directions are configured separately, so the values can be decrypted with the transformation the
+ * identity server wrote them with and re-encrypted with a faster provider or another AEAD transformation.
+ */
+public interface CryptoBackend {
+
+    /**
+     * Get the name the backend is configured with.
+     *
+     * @return Name of the backend.
+     */
+    String getName();
+
+    /**
+     * Get the transformation of the backend, which is recorded in the legacy envelope of the encrypted values.
+     *
+     * @return The transformation.
+     */
+    String getTransformation();
+
+    /**
+     * Get the cipher of the current thread for the given direction. Each direction has its own cipher, as the values
+     * are decrypted with the old key and encrypted with the new one, and re-initializing a cipher with another key
+     * recomputes the key schedule and the GCM tables. The cipher must be initialized before every use.
+     *
+     * @param opmode Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE.
+     * @return The cipher.
+     * @throws NoSuchAlgorithmException Exception thrown if the provider isn't available or doesn't support the
+     *                                  transformation.
+     * @throws NoSuchPaddingException   Exception thrown if the provider doesn't support the padding.
+     */
+    Cipher getCipher(int opmode) throws NoSuchAlgorithmException, NoSuchPaddingException;
+
+    /**
+     * Get the key spec of the given secret key for the algorithm of the backend.
+     *
+     * @param secretKey The data encryption key.
+     * @return The key spec.
+     */
+    SecretKeySpec getSecretKey(String secretKey);
+
+    /**
+     * Fit a generated initialization vector to the nonce length of the transformation.
+     *
+     * @param iv Initialization vector of KeyRotationConstants.GCM_IV_LENGTH bytes.
+     * @return The initialization vector the cipher is initialized with.
+     */
+    byte[] getIv(byte[] iv);
+
+    /**
+     * Get the parameters the cipher is initialized with.
+     *
+     * @param iv The initialization vector.
+     * @return The cipher parameters.
+     */
+    AlgorithmParameterSpec getParameterSpec(byte[] iv);
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This class holds the benchmark mode, which times the encryption and decryption of every crypto backend on the
+ * current machine with the new key, and logs the fastest backend of each direction. Only the values are encrypted
+ * and decrypted, without the envelopes, as the envelopes cost the same with every backend. The values of the identity
+ * server are AES-GCM ciphertexts, so only the AES-GCM backends are considered for decryption. The IV generators are
+ * timed on one thread and on as many threads as the DB re-encryption runs, as they differ mostly in how they hold up
+ * when the threads generate IVs at the same time.
+ */
+public class CryptoBenchmark {
+
+    private static final Logger log = Logger.getLogger(CryptoBenchmark.class);
+    private static final CryptoBenchmark instance = new CryptoBenchmark();
+
+    public CryptoBenchmark() {
+
+    }
+
+    public static CryptoBenchmark getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Time the crypto backends and the IV generators, and log the nanoseconds per value of each backend and the
+     * fastest of each direction, and the nanoseconds per IV of each generator.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     */
+    public void benchmark(KeyRotationConfig keyRotationConfig) {
+
+        byte[] value = new byte[KeyRotationConstants.BENCHMARK_VALUE_LENGTH];
+        new SecureRandom().nextBytes(value);
+        IvGenerator ivGenerator = new CounterIvGenerator();
+        CryptoBackend fastestEncryptBackend = null;
+        CryptoBackend fastestDecryptBackend = null;
+        long fastestEncryptNanos = Long.MAX_VALUE;
+        long fastestDecryptNanos = Long.MAX_VALUE;
+        for (CryptoBackend cryptoBackend : CryptoProvider.getCryptoBackends()) {
+            long encryptNanos;
+            long decryptNanos;
+            try {
+                SecretKeySpec secretKey = cryptoBackend.getSecretKey(keyRotationConfig.getNewSecretKey());
+                byte[][] ivs = new byte[2][];
+                byte[][] cipherTexts = new byte[2][];
+                for (int i = 0; i < ivs.length; i++) {
+                    ivs[i] = cryptoBackend.getIv(ivGenerator.generate());
+                    cipherTexts[i] = encrypt(cryptoBackend, secretKey, value, ivs[i]);
+                }
+                // The first round warms up the JIT compiler.
+                timeEncryption(cryptoBackend, secretKey, value, ivGenerator);
+                timeDecryption(cryptoBackend, secretKey, cipherTexts, ivs);
+                encryptNanos = timeEncryption(cryptoBackend, secretKey, value, ivGenerator);
+                decryptNanos = timeDecryption(cryptoBackend, secretKey, cipherTexts, ivs);
+            } catch (GeneralSecurityException e) {
+                log.info(String.format("Crypto backend %s isn't available: %s", cryptoBackend.getName(),
+                        e.getMessage()));
+                continue;
+            }
+            log.info(String.format("Crypto backend %s (%s): encrypt %d ns, decrypt %d ns per value.",
+                    cryptoBackend.getName(), cryptoBackend.getTransformation(), encryptNanos, decryptNanos));
+            if (encryptNanos < fastestEncryptNanos) {
+                fastestEncryptNanos = encryptNanos;
+                fastestEncryptBackend = cryptoBackend;
+            }
+            if (KeyRotationConstants.TRANSFORMATION.equals(cryptoBackend.getTransformation()) &&
+                    decryptNanos < fastestDecryptNanos) {
+                fastestDecryptNanos = decryptNanos;
+                fastestDecryptBackend = cryptoBackend;
+            }
+        }
+        if (fastestEncryptBackend != null) {
+            log.info("Fastest encrypt backend: " + fastestEncryptBackend.getName());
+        }
+        if (fastestDecryptBackend != null) {
+            log.info("Fastest decrypt backend: " + fastestDecryptBackend.getName());
+        }
+        benchmarkIvGenerators(keyRotationConfig);
+    }
+
+    /**
+     * Time the IV generators on one thread and on the DB re-encryption threads, and log the nanoseconds per IV of
+     * each of them and the fastest on the DB re-encryption threads.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     */
+    private void benchmarkIvGenerators(KeyRotationConfig keyRotationConfig) {
+
+        int threads = Math.max(1, keyRotationConfig.getDbReEncryptionThreads());
+        String fastestIvGenerator = null;
+        long fastestIvNanos = Long.MAX_VALUE;
+        for (Map.Entry<String, IvGenerator> entry : new TreeMap<>(CryptoProvider.getIvGenerators()).entrySet()) {
+            IvGenerator ivGenerator = entry.getValue();
+            long singleThreadNanos;
+            long multiThreadNanos;
+            try {
+                // The first round warms up the JIT compiler.
+                timeIvGeneration(ivGenerator, threads);
+                singleThreadNanos = timeIvGeneration(ivGenerator, 1);
+                multiThreadNanos = timeIvGeneration(ivGenerator, threads);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while timing the IV generators.");
+                return;
+            }
+            log.info(String.format("IV generator %s: %d ns per IV on 1 thread, %d ns per IV on %d threads.",
+                    entry.getKey(), singleThreadNanos, multiThreadNanos, threads));
+            if (multiThreadNanos < fastestIvNanos) {
+                fastestIvNanos = multiThreadNanos;
+                fastestIvGenerator = entry.getKey();
+            }
+        }
+        if (fastestIvGenerator != null) {
+            log.info(String.format("Fastest IV generator on %d threads: %s. Configured IV generator: %s.", threads,
+                    fastestIvGenerator, keyRotationConfig.getIvGenerator()));
+        }
+    }
+
+    /**
+     * Time the generation of IVs on the given number of threads, started together. The time per IV is the wall
+     * clock time of all the threads divided by the IVs of a thread, so it is the time a re-encryption thread spends
+     * per IV while the others generate IVs as well.
+     *
+     * @param ivGenerator The IV generator.
+     * @param threads     Number of threads.
+     * @return Nanoseconds per IV of a thread.
+     * @throws InterruptedException Exception thrown if interrupted while waiting for the threads.
+     */
+    private long timeIvGeneration(IvGenerator ivGenerator, int threads) throws InterruptedException {
+
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] generators = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            generators[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < KeyRotationConstants.BENCHMARK_ITERATIONS; j++) {
+                    ivGenerator.generate();
+                }
+            }, "iv-benchmark-" + i);
+            generators[i].start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread generator : generators) {
+            generator.join();
+        }
+        return (System.nanoTime() - startNanos) / KeyRotationConstants.BENCHMARK_ITERATIONS;
+    }
+
+    /**
+     * Time the encryption of a value with a new IV for every iteration, as a cipher can't be re-initialized for
+     * encryption with the same key and IV.
+     *
+     * @param cryptoBackend The crypto backend.
+     * @param secretKey     Key spec of the new key.
+     * @param value         The value.
+     * @param ivGenerator   The IV generator.
+     * @return Nanoseconds per value.
+     * @throws GeneralSecurityException Exception thrown while encrypting the value.
+     */
+    private long timeEncryption(CryptoBackend cryptoBackend, SecretKeySpec secretKey, byte[] value,
+                                IvGenerator ivGenerator) throws GeneralSecurityException {
+
+        long start = System.nanoTime();
+        for (int i = 0; i < KeyRotationConstants.BENCHMARK_ITERATIONS; i++) {
+            encrypt(cryptoBackend, secretKey, value, cryptoBackend.getIv(ivGenerator.generate()));
+        }
+        return (System.nanoTime() - start) / KeyRotationConstants.BENCHMARK_ITERATIONS;
+    }
+
+    /**
+     * Time the decryption of ciphertexts, taking them in turns, as some providers can't re-initialize a cipher with
+     * the same key and IV even for decryption.
+     *
+     * @param cryptoBackend The crypto backend.
+     * @param secretKey     Key spec of the new key.
+     * @param cipherTexts   The ciphertexts.
+     * @param ivs           The IVs the ciphertexts were encrypted with.
+     * @return Nanoseconds per value.
+     * @throws GeneralSecurityException Exception thrown while decrypting the ciphertexts.
+     */
+    private long timeDecryption(CryptoBackend cryptoBackend, SecretKeySpec secretKey, byte[][] cipherTexts,
+                                byte[][] ivs) throws GeneralSecurityException {
+
+        long start = System.nanoTime();
+        for (int i = 0; i < KeyRotationConstants.BENCHMARK_ITERATIONS; i++) {
+            Cipher cipher = cryptoBackend.getCipher(Cipher.DECRYPT_MODE);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, cryptoBackend.getParameterSpec(ivs[i % ivs.length]));
+            cipher.doFinal(cipherTexts[i % cipherTexts.length]);
+        }
+        return (System.nanoTime() - start) / KeyRotationConstants.BENCHMARK_ITERATIONS;
+    }
+
+    /**
+     * Encrypt a value.
+     *
+     * @param cryptoBackend The crypto backend.
+     * @param secretKey     Key spec of the new key.
+     * @param value         The value.
+     * @param iv            The IV.
+     * @return The ciphertext.
+     * @throws GeneralSecurityException Exception thrown while encrypting the value.
+     */
+    private byte[] encrypt(CryptoBackend cryptoBackend, SecretKeySpec secretKey, byte[] value, byte[] iv)
+            throws GeneralSecurityException {
+
+        Cipher cipher = cryptoBackend.getCipher(Cipher.ENCRYPT_MODE);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, cryptoBackend.getParameterSpec(iv));
+        return cipher.doFinal(value);
+    }
+}
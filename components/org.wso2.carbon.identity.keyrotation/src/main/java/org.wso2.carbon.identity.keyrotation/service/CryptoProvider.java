@@ -18,43 +18,146 @@
 
 package org.wso2.carbon.identity.keyrotation.service;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
-import org.apache.axiom.om.util.Base64;
-import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Hex;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
-import org.wso2.carbon.identity.keyrotation.model.CipherMetaData;
+import org.wso2.carbon.identity.keyrotation.model.ParsedCiphertext;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
+import org.wso2.carbon.identity.keyrotation.util.Base64Codec;
+import org.wso2.carbon.identity.keyrotation.util.EncryptionUtil;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationServiceUtils;
-import org.wso2.carbon.uuid.generator.UUIDGeneratorManager;
+import org.wso2.carbon.identity.keyrotation.util.LegacyEnvelopeParser;
+import org.wso2.carbon.identity.keyrotation.util.ReEncryptionBuffers;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
+import java.security.Provider;
 import java.security.Security;
-import java.util.UUID;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
- * This class holds implementations of the encryption and decryption tasks.
+ * This class holds implementations of the encryption and decryption tasks. The values are encrypted and decrypted
+ * with the crypto backends configured for each direction, which default to AES-GCM of the BC provider. The BC
+ * provider is registered once, and every backend keeps a cipher per thread, which is re-initialized with the key and
+ * IV of each value. A column of values can be re-encrypted as one batch, which resolves the backends and keys once
+ * and may fan the values out over several threads. With the data key envelope, the values of a scope are encrypted
+ * with the data key of the scope instead of the new key.
  */
 public class CryptoProvider {
 
     private static final Logger log = Logger.getLogger(CryptoProvider.class);
-    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private static final Provider provider = registerProvider();
+    private static final Map<String, CryptoBackend> cryptoBackends = createCryptoBackends();
+    private static final Map<String, IvGenerator> ivGenerators = createIvGenerators();
+    private static final AtomicInteger batchThreadCount = new AtomicInteger();
+    private static final ExecutorService batchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "re-encryption-batch-" + batchThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The crypto backends, keyring, key specs and IV generator of a configuration and the identifier of the key the
+     * values are encrypted with, resolved once per batch instead of once per value. With the data key envelope, the
+     * new key and the data keys can decrypt the values as well, and the values of a scope are encrypted with its data
+     * key in the compact envelope. The values recording another transformation than the one of the configured decrypt
+     * backend are decrypted with a backend of their transformation, resolved on the first such value of the batch.
+     */
+    private static class CipherSetup {
+
+        private final KeyRotationConfig keyRotationConfig;
+        private final Keyring keyring;
+        private final String newKeyId;
+        private final boolean dataKeyEnvelope;
+        private final DecryptSetup decryptSetup;
+        private final Map<String, DecryptSetup> recordedDecryptSetups = new ConcurrentHashMap<>();
+        private final CryptoBackend encryptBackend;
+        private final SecretKeySpec encryptKey;
+        private final IvGenerator ivGenerator;
+        private final String keyId;
+        private final boolean compactEnvelope;
+
+        CipherSetup(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+            this(keyRotationConfig, null);
+        }
+
+        CipherSetup(KeyRotationConfig keyRotationConfig, String scope) throws KeyRotationException {
+
+            this.keyRotationConfig = keyRotationConfig;
+            this.keyring = Keyring.getKeyring(keyRotationConfig);
+            this.newKeyId = getKeyId(keyRotationConfig.getNewSecretKey());
+            this.dataKeyEnvelope = !KeyRotationConstants.DATA_KEY_ENVELOPE_DISABLED.equals(
+                    keyRotationConfig.getDataKeyEnvelope());
+            this.decryptSetup = new DecryptSetup(getCryptoBackend(keyRotationConfig.getDecryptBackend()), this);
+            this.encryptBackend = getCryptoBackend(keyRotationConfig.getEncryptBackend());
+            this.ivGenerator = getIvGenerator(keyRotationConfig.getIvGenerator());
+            if (dataKeyEnvelope && scope != null) {
+                DataKeyStore dataKeyStore = DataKeyStore.getInstance();
+                this.keyId = dataKeyStore.getScopeKeyId(scope, keyRotationConfig);
+                this.encryptKey = encryptBackend.getSecretKey(dataKeyStore.getSecretKey(keyId, keyRotationConfig));
+                this.compactEnvelope = true;
+            } else {
+                this.keyId = newKeyId;
+                this.encryptKey = encryptBackend.getSecretKey(keyRotationConfig.getNewSecretKey());
+                this.compactEnvelope = keyRotationConfig.getEnableCompactEnvelope();
+            }
+        }
+    }
+
+    /**
+     * The crypto backend the values of a transformation are decrypted with and the key specs of the keyring and, with
+     * the data key envelope, of the new key and the data keys for that backend.
+     */
+    private static class DecryptSetup {
+
+        private final CryptoBackend cryptoBackend;
+        private final SecretKeySpec[] keys;
+        private final SecretKeySpec newKey;
+        private final Map<String, SecretKeySpec> dataKeys = new ConcurrentHashMap<>();
+
+        DecryptSetup(CryptoBackend cryptoBackend, CipherSetup cipherSetup) {
+
+            this.cryptoBackend = cryptoBackend;
+            this.keys = new SecretKeySpec[cipherSetup.keyring.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = cryptoBackend.getSecretKey(cipherSetup.keyring.getSecretKey(i));
+            }
+            this.newKey = cipherSetup.dataKeyEnvelope ?
+                    cryptoBackend.getSecretKey(cipherSetup.keyRotationConfig.getNewSecretKey()) : null;
+        }
+    }
 
     /**
      * Computes and returns the ciphertext of the given cleartext.
@@ -69,34 +172,75 @@ public class CryptoProvider {
         if (cleartext == null) {
             throw new KeyRotationException("Cleartext bytes cannot be null.");
         }
+        ReEncryptionBuffers buffers = ReEncryptionBuffers.getInstance();
+        int length = encrypt(cleartext, 0, cleartext.length, keyRotationConfig, buffers);
+        return Arrays.copyOf(buffers.get(ReEncryptionBuffers.ENVELOPE), length);
+    }
+
+    /**
+     * Computes the ciphertext of the given bytes of an array into the ENVELOPE buffer of the given buffers. The cipher
+     * is written into their CIPHER_TEXT buffer and, for the legacy envelope, the inner JSON into their INNER buffer.
+     *
+     * @param cleartext         Array holding the cleartext to be encrypted.
+     * @param offset            Offset of the cleartext.
+     * @param length            Length of the cleartext.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param buffers           Buffers of the current thread.
+     * @return Length of the encrypted cleartext in the ENVELOPE buffer.
+     * @throws KeyRotationException Exception thrown while encrypting the cleartext.
+     */
+    public int encrypt(byte[] cleartext, int offset, int length, KeyRotationConfig keyRotationConfig,
+                       ReEncryptionBuffers buffers) throws KeyRotationException {
+
+        return encrypt(cleartext, offset, length, new CipherSetup(keyRotationConfig), buffers);
+    }
+
+    /**
+     * Computes the ciphertext of the given bytes of an array into the ENVELOPE buffer of the given buffers, with an
+     * already resolved cipher setup.
+     *
+     * @param cleartext   Array holding the cleartext to be encrypted.
+     * @param offset      Offset of the cleartext.
+     * @param length      Length of the cleartext.
+     * @param cipherSetup Backends, keys and IV generator of the configuration.
+     * @param buffers     Buffers of the current thread.
+     * @return Length of the encrypted cleartext in the ENVELOPE buffer.
+     * @throws KeyRotationException Exception thrown while encrypting the cleartext.
+     */
+    private int encrypt(byte[] cleartext, int offset, int length, CipherSetup cipherSetup,
+                        ReEncryptionBuffers buffers) throws KeyRotationException {
+
         Cipher cipher;
-        byte[] cipherText;
-        byte[] iv = getInitializationVector();
+        CryptoBackend cryptoBackend = cipherSetup.encryptBackend;
+        byte[] iv = cryptoBackend.getIv(cipherSetup.ivGenerator.generate());
 
         try {
-            // Add the BC security provider for better security instead of the default provider.
-            Security.addProvider(new BouncyCastleProvider());
-            cipher = Cipher.getInstance(KeyRotationConstants.TRANSFORMATION,
-                    KeyRotationConstants.JAVA_SECURITY_API_PROVIDER);
-            cipher.init(Cipher.ENCRYPT_MODE, getSecretKey(keyRotationConfig.getNewSecretKey()),
-                    new IvParameterSpec(iv));
-            cipherText = cipher.doFinal(cleartext);
-            cipherText = createSelfContainedCiphertext(cipherText, iv);
-
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            cipher = cryptoBackend.getCipher(Cipher.ENCRYPT_MODE);
+            cipher.init(Cipher.ENCRYPT_MODE, cipherSetup.encryptKey, cryptoBackend.getParameterSpec(iv));
+            byte[] cipherText = buffers.get(ReEncryptionBuffers.CIPHER_TEXT, cipher.getOutputSize(length));
+            int cipherTextLength = cipher.doFinal(cleartext, offset, length, cipherText, 0);
+            String keyId = cipherSetup.keyId;
+            if (cipherSetup.compactEnvelope) {
+                byte[] envelope = buffers.get(ReEncryptionBuffers.ENVELOPE,
+                        KeyRotationServiceUtils.getCompactCiphertextLength(cipherTextLength, iv, keyId));
+                return KeyRotationServiceUtils.writeCompactCiphertext(cipherText, cipherTextLength, iv, keyId,
+                        envelope);
+            }
+            return KeyRotationServiceUtils.writeSelfContainedCiphertext(cipherText, cipherTextLength, iv, keyId,
+                    cryptoBackend.getTransformation(), buffers);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
             String errorMessage = String.format("Error occurred while instantiating cipher object" +
-                    " with algorithm: '%s'.", KeyRotationConstants.TRANSFORMATION);
+                    " with algorithm: '%s'.", cryptoBackend.getTransformation());
             throw new KeyRotationException(errorMessage, e);
         } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
             String errorMessage = String.format("Error occurred while initializing cipher object" +
-                    " with algorithm: '%s'.", KeyRotationConstants.TRANSFORMATION);
+                    " with algorithm: '%s'.", cryptoBackend.getTransformation());
             throw new KeyRotationException(errorMessage, e);
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
             String errorMessage = String.format("Error occurred while encrypting using cipher object" +
-                    " with algorithm: '%s'.", KeyRotationConstants.TRANSFORMATION);
+                    " with algorithm: '%s'.", cryptoBackend.getTransformation());
             throw new KeyRotationException(errorMessage, e);
         }
-        return cipherText;
     }
 
     /**
@@ -109,97 +253,560 @@ public class CryptoProvider {
      **/
     public byte[] decrypt(byte[] cipherText, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
-        if (cipherText == null) {
-            throw new KeyRotationException("Ciphertext bytes cannot be null.");
+        return decrypt(parse(cipherText), keyRotationConfig);
+    }
+
+    /**
+     * Computes and returns the cleartext of the given ciphertext using the given key. The ciphertext is either in
+     * the compact envelope or the legacy one as returned by reFactorCipherText.
+     *
+     * @param cipherText The ciphertext to be decrypted.
+     * @param secretKey  The key the ciphertext was encrypted with.
+     * @return The decrypted ciphertext.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    public byte[] decrypt(byte[] cipherText, String secretKey) throws KeyRotationException {
+
+        return decrypt(parse(cipherText), secretKey);
+    }
+
+    /**
+     * Computes and returns the cleartext of an already parsed ciphertext using the given key, so a value parsed
+     * once to classify it isn't parsed again to decrypt it.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be decrypted.
+     * @param secretKey        The key the ciphertext was encrypted with.
+     * @return The decrypted ciphertext.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    public byte[] decrypt(ParsedCiphertext parsedCiphertext, String secretKey) throws KeyRotationException {
+
+        return decrypt(parsedCiphertext, secretKey, getCryptoBackend(KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM));
+    }
+
+    /**
+     * Computes and returns the cleartext of an already parsed ciphertext of a key of the keyring, with the configured
+     * decrypt backend.
+     *
+     * @param parsedCiphertext  The parsed ciphertext to be decrypted.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The decrypted ciphertext.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    public byte[] decrypt(ParsedCiphertext parsedCiphertext, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        ReEncryptionBuffers buffers = ReEncryptionBuffers.getInstance();
+        int length = decrypt(parsedCiphertext, keyRotationConfig, buffers);
+        return Arrays.copyOf(buffers.get(ReEncryptionBuffers.PLAIN_TEXT), length);
+    }
+
+    /**
+     * Computes and returns the cleartext of an already parsed ciphertext using the given key and crypto backend.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be decrypted.
+     * @param secretKey        The key the ciphertext was encrypted with.
+     * @param cryptoBackend    The crypto backend the ciphertext was encrypted with.
+     * @return The decrypted ciphertext.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    private byte[] decrypt(ParsedCiphertext parsedCiphertext, String secretKey, CryptoBackend cryptoBackend)
+            throws KeyRotationException {
+
+        ReEncryptionBuffers buffers = ReEncryptionBuffers.getInstance();
+        int length = decrypt(parsedCiphertext, secretKey, cryptoBackend, buffers);
+        return Arrays.copyOf(buffers.get(ReEncryptionBuffers.PLAIN_TEXT), length);
+    }
+
+    /**
+     * Computes the cleartext of an already parsed ciphertext of a key of the keyring into the PLAIN_TEXT buffer of the
+     * given buffers, with the configured decrypt backend.
+     *
+     * @param parsedCiphertext  The parsed ciphertext to be decrypted.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param buffers           Buffers of the current thread.
+     * @return Length of the decrypted ciphertext in the PLAIN_TEXT buffer.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    public int decrypt(ParsedCiphertext parsedCiphertext, KeyRotationConfig keyRotationConfig,
+                       ReEncryptionBuffers buffers) throws KeyRotationException {
+
+        return decrypt(parsedCiphertext, new CipherSetup(keyRotationConfig), buffers);
+    }
+
+    /**
+     * Computes the cleartext of an already parsed ciphertext of a key of the keyring into the PLAIN_TEXT buffer of the
+     * given buffers. A ciphertext recording the identifier of its key is decrypted with that key only, which with the
+     * data key envelope may also be the new key or a data key. A ciphertext without one, as written by the identity
+     * server, is decrypted with the keys of the keyring in turn until the authentication tag of one of them matches.
+     * A ciphertext recording its transformation is decrypted with a backend of that transformation, and one without
+     * it, such as a ciphertext in the compact envelope, with the configured decrypt backend.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be decrypted.
+     * @param cipherSetup      Backends, keys and IV generator of the configuration.
+     * @param buffers          Buffers of the current thread.
+     * @return Length of the decrypted ciphertext in the PLAIN_TEXT buffer.
+     * @throws KeyRotationException Exception thrown if the key isn't in the keyring or while decrypting the ciphertext.
+     **/
+    private int decrypt(ParsedCiphertext parsedCiphertext, CipherSetup cipherSetup, ReEncryptionBuffers buffers)
+            throws KeyRotationException {
+
+        if (cipherSetup.keyring.size() == 0) {
+            throw new KeyRotationException("No key to decrypt the values with is configured.");
+        }
+        DecryptSetup decryptSetup = getDecryptSetup(parsedCiphertext, cipherSetup);
+        if (parsedCiphertext != null && parsedCiphertext.getKeyId() != null) {
+            return decrypt(parsedCiphertext, getDecryptKey(parsedCiphertext.getKeyId(), decryptSetup, cipherSetup),
+                    decryptSetup.cryptoBackend, buffers);
+        }
+        for (int i = 0; ; i++) {
+            try {
+                return decrypt(parsedCiphertext, decryptSetup.keys[i], decryptSetup.cryptoBackend, buffers);
+            } catch (KeyRotationException e) {
+                if (i == decryptSetup.keys.length - 1 || !(e.getCause() instanceof AEADBadTagException)) {
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("The value isn't encrypted with the key " + cipherSetup.keyring.getLabel(i) +
+                            ", trying the next key of the keyring.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the decrypt backend and key specs of the transformation recorded in a ciphertext. The configured decrypt
+     * backend is used for a ciphertext without a transformation and for one recording the transformation of that
+     * backend. Otherwise the first backend of the recorded transformation whose provider is available is used.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be decrypted.
+     * @param cipherSetup      Backends, keys and IV generator of the configuration.
+     * @return The decrypt backend and key specs.
+     * @throws KeyRotationException Exception thrown if no backend of the recorded transformation is available.
+     */
+    private DecryptSetup getDecryptSetup(ParsedCiphertext parsedCiphertext, CipherSetup cipherSetup)
+            throws KeyRotationException {
+
+        String transformation = (parsedCiphertext != null) ? parsedCiphertext.getTransformation() : null;
+        if (transformation == null ||
+                transformation.equals(cipherSetup.decryptSetup.cryptoBackend.getTransformation())) {
+            return cipherSetup.decryptSetup;
+        }
+        DecryptSetup decryptSetup = cipherSetup.recordedDecryptSetups.get(transformation);
+        if (decryptSetup == null) {
+            decryptSetup = new DecryptSetup(getAvailableCryptoBackend(transformation), cipherSetup);
+            cipherSetup.recordedDecryptSetups.put(transformation, decryptSetup);
+        }
+        return decryptSetup;
+    }
+
+    /**
+     * Get the first crypto backend of the given transformation whose provider is available in this JVM.
+     *
+     * @param transformation The transformation recorded in a ciphertext.
+     * @return The crypto backend.
+     * @throws KeyRotationException Exception thrown if no backend of the transformation is available.
+     */
+    private static CryptoBackend getAvailableCryptoBackend(String transformation) throws KeyRotationException {
+
+        GeneralSecurityException unavailable = null;
+        for (CryptoBackend cryptoBackend : cryptoBackends.values()) {
+            if (!cryptoBackend.getTransformation().equals(transformation)) {
+                continue;
+            }
+            try {
+                cryptoBackend.getCipher(Cipher.DECRYPT_MODE);
+                return cryptoBackend;
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                unavailable = e;
+            }
+        }
+        String errorMessage = (unavailable == null) ?
+                String.format("The value is encrypted with the transformation '%s', which no crypto backend " +
+                        "supports.", transformation) :
+                String.format("The value is encrypted with the transformation '%s', and no crypto backend of it is " +
+                        "available.", transformation);
+        throw new KeyRotationException(errorMessage, unavailable);
+    }
+
+    /**
+     * Get the key spec of the key with the given identifier. Besides the keys of the keyring, the new key and the data
+     * keys are looked up if the data key envelope is enabled.
+     *
+     * @param keyId        Hex encoded key identifier recorded in the ciphertext.
+     * @param decryptSetup The decrypt backend and key specs of the ciphertext.
+     * @param cipherSetup  Backends, keys and IV generator of the configuration.
+     * @return Key spec of the decrypt backend.
+     * @throws KeyRotationException Exception thrown if there is no key with the identifier.
+     */
+    private SecretKeySpec getDecryptKey(String keyId, DecryptSetup decryptSetup, CipherSetup cipherSetup)
+            throws KeyRotationException {
+
+        int index = cipherSetup.keyring.indexOf(keyId);
+        if (index >= 0) {
+            return decryptSetup.keys[index];
+        }
+        if (decryptSetup.newKey == null) {
+            throw new KeyRotationException("The key with identifier " + keyId + " isn't in the keyring.");
+        }
+        if (keyId.equals(cipherSetup.newKeyId)) {
+            return decryptSetup.newKey;
+        }
+        SecretKeySpec dataKey = decryptSetup.dataKeys.get(keyId);
+        if (dataKey == null) {
+            dataKey = decryptSetup.cryptoBackend.getSecretKey(DataKeyStore.getInstance().getSecretKey(keyId,
+                    cipherSetup.keyRotationConfig));
+            decryptSetup.dataKeys.put(keyId, dataKey);
+        }
+        return dataKey;
+    }
+
+    /**
+     * Computes the cleartext of an already parsed ciphertext using the given key and crypto backend into the
+     * PLAIN_TEXT buffer of the given buffers.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be decrypted.
+     * @param secretKey        The key the ciphertext was encrypted with.
+     * @param cryptoBackend    The crypto backend the ciphertext was encrypted with.
+     * @param buffers          Buffers of the current thread.
+     * @return Length of the decrypted ciphertext in the PLAIN_TEXT buffer.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    private int decrypt(ParsedCiphertext parsedCiphertext, String secretKey, CryptoBackend cryptoBackend,
+                        ReEncryptionBuffers buffers) throws KeyRotationException {
+
+        return decrypt(parsedCiphertext, cryptoBackend.getSecretKey(secretKey), cryptoBackend, buffers);
+    }
+
+    /**
+     * Computes the cleartext of an already parsed ciphertext using the given key spec and crypto backend into the
+     * PLAIN_TEXT buffer of the given buffers.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be decrypted.
+     * @param secretKey        Key spec of the key the ciphertext was encrypted with.
+     * @param cryptoBackend    The crypto backend the ciphertext was encrypted with.
+     * @param buffers          Buffers of the current thread.
+     * @return Length of the decrypted ciphertext in the PLAIN_TEXT buffer.
+     * @throws KeyRotationException Exception thrown while decrypting the ciphertext.
+     **/
+    private int decrypt(ParsedCiphertext parsedCiphertext, SecretKeySpec secretKey, CryptoBackend cryptoBackend,
+                        ReEncryptionBuffers buffers) throws KeyRotationException {
+
+        if (parsedCiphertext == null || parsedCiphertext.getCipherText() == null) {
+            throw new KeyRotationException("Ciphertext envelope doesn't hold a cipher.");
+        }
+        // This check is for empty bytes of data that was encrypted and stored.
+        if (parsedCiphertext.getCipherText().length == 0) {
+            log.debug("Bytes of length 0 found for cipher within the cipherMetaData.");
+            buffers.get(ReEncryptionBuffers.PLAIN_TEXT, 0);
+            return 0;
+        }
+        if (parsedCiphertext.getIv() == null) {
+            throw new KeyRotationException("Ciphertext envelope doesn't hold an initialization vector.");
         }
         Cipher cipher;
         try {
-            // Add the BC security provider for better security instead of the default provider.
-            Security.addProvider(new BouncyCastleProvider());
-            CipherMetaData cipherMetaData = createCipherMetaData(cipherText);
-            // This check is for empty bytes of data that was encrypted and stored.
-            if (cipherMetaData.getCipherBase64Decoded().length == 0) {
-                log.debug("Bytes of length 0 found for cipher within the cipherMetaData.");
-                return StringUtils.EMPTY.getBytes();
-            }
-            cipher = Cipher.getInstance(KeyRotationConstants.TRANSFORMATION,
-                    KeyRotationConstants.JAVA_SECURITY_API_PROVIDER);
-            cipher.init(Cipher.DECRYPT_MODE,
-                    getSecretKey(keyRotationConfig.getOldSecretKey()),
-                    new IvParameterSpec(cipherMetaData.getIvBase64Decoded()));
-            return cipher.doFinal(cipherMetaData.getCipherBase64Decoded());
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            cipher = cryptoBackend.getCipher(Cipher.DECRYPT_MODE);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, cryptoBackend.getParameterSpec(parsedCiphertext.getIv()));
+            byte[] cipherText = parsedCiphertext.getCipherText();
+            byte[] plainText = buffers.get(ReEncryptionBuffers.PLAIN_TEXT, cipher.getOutputSize(cipherText.length));
+            return cipher.doFinal(cipherText, 0, cipherText.length, plainText, 0);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
             String errorMessage = String.format("Error occurred while instantiating cipher object" +
-                    " with algorithm: '%s'.", KeyRotationConstants.TRANSFORMATION);
+                    " with algorithm: '%s'.", cryptoBackend.getTransformation());
             throw new KeyRotationException(errorMessage, e);
         } catch (InvalidKeyException | InvalidAlgorithmParameterException e) {
             String errorMessage = String.format("Error occurred while initializing cipher object" +
-                    " with algorithm: '%s'.", KeyRotationConstants.TRANSFORMATION);
+                    " with algorithm: '%s'.", cryptoBackend.getTransformation());
             throw new KeyRotationException(errorMessage, e);
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            String errorMessage = String.format("Error occurred while encrypting using cipher object" +
-                    " with algorithm: '%s'.", KeyRotationConstants.TRANSFORMATION);
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            String errorMessage = String.format("Error occurred while decrypting using cipher object" +
+                    " with algorithm: '%s'.", cryptoBackend.getTransformation());
             throw new KeyRotationException(errorMessage, e);
         }
     }
 
     /**
-     * Returns the raw secret key as a byte array.
+     * Decrypts an already parsed ciphertext of a key of the keyring and encrypts it with the new key.
      *
-     * @param secretKey The data encryption key.
-     * @return Secret key.
+     * @param parsedCiphertext  The parsed ciphertext to be re-encrypted.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Base64 encoded ciphertext of the new key.
+     * @throws KeyRotationException Exception thrown while re-encrypting the ciphertext.
      */
-    private SecretKeySpec getSecretKey(String secretKey) {
+    public String reEncrypt(ParsedCiphertext parsedCiphertext, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
-        return new SecretKeySpec(secretKey.getBytes(), 0, secretKey.getBytes().length,
-                KeyRotationConstants.ALGORITHM);
+        return reEncrypt(parsedCiphertext, new CipherSetup(keyRotationConfig), ReEncryptionBuffers.getInstance());
     }
 
     /**
-     * Creates and returns a universally unique identifier for the IV.
+     * Re-encrypts a column of stored values as one batch. The backends, key specs and IV generator are resolved once
+     * for the batch, while every value is still encrypted with its own IV. Plaintext values and values already
+     * encrypted with the new key are skipped, and a value failing to re-encrypt is recorded in the batch instead of
+     * failing the others. A batch of at least twice RE_ENCRYPT_BATCH_MIN_SLICE values is split into contiguous
+     * slices over up to reEncryptBatchThreads threads, the calling thread taking the first slice.
      *
-     * @return Initialization vector used for encryption/decryption.
+     * @param values            The stored values, of which null ones are skipped as plaintext.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The re-encrypted values along with the status of each value.
+     * @throws KeyRotationException Exception thrown while resolving the cipher setup or if interrupted.
      */
-    private byte[] getInitializationVector() {
+    public ReEncryptionBatch reEncryptBatch(List<String> values, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
-        byte[] iv = new byte[KeyRotationConstants.GCM_IV_LENGTH];
-        UUID timeBasedUUID = UUIDGeneratorManager.getTimeBasedUUIDGenerator().generate();
-        ByteBuffer byteBuffer = ByteBuffer.wrap(iv);
-        byteBuffer.putLong(timeBasedUUID.getMostSignificantBits());
-        byteBuffer.putLong(timeBasedUUID.getLeastSignificantBits());
-        return byteBuffer.array();
+        return reEncryptBatch(values, null, keyRotationConfig);
     }
 
     /**
-     * Creates and returns a self contained ciphertext with IV.
+     * Re-encrypts a column of stored values of the given scope as one batch. With the data key envelope, the values
+     * are encrypted with the data key of the scope, and values already encrypted with it are skipped.
      *
-     * @param cipherText The ciphertext.
-     * @param iv         The Initialization Vector.
-     * @return Self contained meta data comprising of the cipher, transformation and IV.
+     * @param values            The stored values, of which null ones are skipped as plaintext.
+     * @param scope             Scope of the values, or null to always encrypt them with the new key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The re-encrypted values along with the status of each value.
+     * @throws KeyRotationException Exception thrown while resolving the cipher setup or if interrupted.
+     */
+    public ReEncryptionBatch reEncryptBatch(List<String> values, String scope, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        ReEncryptionBatch batch = new ReEncryptionBatch(values);
+        CipherSetup cipherSetup = new CipherSetup(keyRotationConfig, scope);
+        int slices = Math.min(keyRotationConfig.getReEncryptBatchThreads(),
+                batch.size() / KeyRotationConstants.RE_ENCRYPT_BATCH_MIN_SLICE);
+        if (slices <= 1) {
+            reEncryptSlice(batch, 0, batch.size(), cipherSetup);
+            return batch;
+        }
+        int sliceSize = (batch.size() + slices - 1) / slices;
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int start = sliceSize; start < batch.size(); start += sliceSize) {
+                int sliceStart = start;
+                int sliceEnd = Math.min(batch.size(), start + sliceSize);
+                futures.add(batchExecutor.submit(() -> reEncryptSlice(batch, sliceStart, sliceEnd, cipherSetup)));
+            }
+            reEncryptSlice(batch, 0, sliceSize, cipherSetup);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new KeyRotationException("Interrupted while re-encrypting a batch of values.", e);
+        } catch (ExecutionException e) {
+            throw new KeyRotationException("Error occurred while re-encrypting a batch of values.", e.getCause());
+        }
+        return batch;
+    }
+
+    /**
+     * Re-encrypts a slice of a batch in the buffers of the current thread, recording the status of every value.
+     *
+     * @param batch       The batch.
+     * @param start       Index of the first value of the slice.
+     * @param end         Index after the last value of the slice.
+     * @param cipherSetup Backends, keys and IV generator of the configuration.
+     */
+    private void reEncryptSlice(ReEncryptionBatch batch, int start, int end, CipherSetup cipherSetup) {
+
+        ReEncryptionBuffers buffers = ReEncryptionBuffers.getInstance();
+        for (int i = start; i < end; i++) {
+            ParsedCiphertext parsedCiphertext = EncryptionUtil.parseCiphertext(batch.getValue(i));
+            if (parsedCiphertext == null) {
+                batch.setStatus(i, ReEncryptionBatch.Status.PLAINTEXT_SKIPPED);
+            } else if (cipherSetup.keyId.equals(parsedCiphertext.getKeyId())) {
+                batch.setStatus(i, ReEncryptionBatch.Status.ALREADY_ROTATED);
+            } else {
+                try {
+                    batch.setRotated(i, reEncrypt(parsedCiphertext, cipherSetup, buffers));
+                } catch (KeyRotationException e) {
+                    batch.setFailed(i, e);
+                } catch (RuntimeException e) {
+                    batch.setFailed(i, new KeyRotationException("Error occurred while re-encrypting a value.", e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Decrypts an already parsed ciphertext of a key of the keyring and encrypts it with the new key in the given
+     * buffers.
+     * The cleartext is cleared from the PLAIN_TEXT buffer once it is encrypted.
+     *
+     * @param parsedCiphertext The parsed ciphertext to be re-encrypted.
+     * @param cipherSetup      Backends, keys and IV generator of the configuration.
+     * @param buffers          Buffers of the current thread.
+     * @return Base64 encoded ciphertext of the new key.
+     * @throws KeyRotationException Exception thrown while re-encrypting the ciphertext.
+     */
+    private String reEncrypt(ParsedCiphertext parsedCiphertext, CipherSetup cipherSetup, ReEncryptionBuffers buffers)
+            throws KeyRotationException {
+
+        int plainTextLength = decrypt(parsedCiphertext, cipherSetup, buffers);
+        byte[] plainText = buffers.get(ReEncryptionBuffers.PLAIN_TEXT);
+        int envelopeLength;
+        try {
+            envelopeLength = encrypt(plainText, 0, plainTextLength, cipherSetup, buffers);
+        } finally {
+            Arrays.fill(plainText, 0, plainTextLength, (byte) 0);
+        }
+        byte[] encoded = buffers.get(ReEncryptionBuffers.ENCODED, Base64Codec.getEncodedLength(envelopeLength));
+        int encodedLength = Base64Codec.encode(buffers.get(ReEncryptionBuffers.ENVELOPE), 0, envelopeLength, encoded,
+                0);
+        return new String(encoded, 0, encodedLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the BC security provider, registering it if it isn't registered yet. The BC provider is used for better
+     * security instead of the default provider.
+     *
+     * @return The BC security provider.
      */
-    private byte[] createSelfContainedCiphertext(byte[] cipherText, byte[] iv) {
+    private static Provider registerProvider() {
 
-        CipherMetaData cipherMetaData = new CipherMetaData();
-        cipherMetaData.setCipherText(KeyRotationServiceUtils.getSelfContainedCiphertextWithIv(cipherText, iv));
-        cipherMetaData.setTransformation(KeyRotationConstants.TRANSFORMATION);
-        cipherMetaData.setIv(Base64.encode(iv));
-        String cipherWithMetadataStr = gson.toJson(cipherMetaData);
-        return cipherWithMetadataStr.getBytes(Charset.defaultCharset());
+        Provider bcProvider = Security.getProvider(KeyRotationConstants.JAVA_SECURITY_API_PROVIDER);
+        if (bcProvider == null) {
+            bcProvider = new BouncyCastleProvider();
+            Security.addProvider(bcProvider);
+        }
+        return bcProvider;
     }
 
     /**
-     * Returns the self contained cipherText with IV.
+     * Parses a ciphertext in either the compact envelope or the legacy one as returned by reFactorCipherText.
      *
      * @param cipherText The ciphertext.
-     * @return Self contained meta data comprising of the cipher and IV.
+     * @return The parsed ciphertext.
+     * @throws KeyRotationException Exception thrown if the ciphertext is null.
+     */
+    private ParsedCiphertext parse(byte[] cipherText) throws KeyRotationException {
+
+        if (cipherText == null) {
+            throw new KeyRotationException("Ciphertext bytes cannot be null.");
+        }
+        if (KeyRotationServiceUtils.isCompactCiphertext(cipherText)) {
+            return KeyRotationServiceUtils.parseCompactCiphertext(cipherText);
+        }
+        return LegacyEnvelopeParser.parseInner(cipherText);
+    }
+
+    /**
+     * Get the crypto backend with the given name, falling back to AES-GCM of the BC provider for an unknown name.
+     *
+     * @param name Name of the crypto backend.
+     * @return The crypto backend.
+     */
+    static CryptoBackend getCryptoBackend(String name) {
+
+        CryptoBackend cryptoBackend = cryptoBackends.get(name);
+        return (cryptoBackend != null) ? cryptoBackend :
+                cryptoBackends.get(KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM);
+    }
+
+    /**
+     * Get all the crypto backends, including the ones whose provider isn't available in this JVM.
+     *
+     * @return The crypto backends.
+     */
+    static Collection<CryptoBackend> getCryptoBackends() {
+
+        return cryptoBackends.values();
+    }
+
+    /**
+     * Create the crypto backends, keyed by their names. The BC provider must be registered before.
+     *
+     * @return Crypto backends.
      */
-    private CipherMetaData createCipherMetaData(byte[] cipherText) {
+    private static Map<String, CryptoBackend> createCryptoBackends() {
 
-        return KeyRotationServiceUtils.setIvAndOriginalCipherText(cipherText);
+        Provider jceProvider = Security.getProvider(KeyRotationConstants.JCE_SECURITY_API_PROVIDER);
+        Function<byte[], AlgorithmParameterSpec> gcmParameterSpecs =
+                iv -> new GCMParameterSpec(KeyRotationConstants.GCM_TAG_LENGTH * Byte.SIZE, iv);
+        Map<String, CryptoBackend> cryptoBackends = new LinkedHashMap<>();
+        cryptoBackends.put(KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM, new JceCryptoBackend(
+                KeyRotationConstants.CRYPTO_BACKEND_BC_AES_GCM, provider, KeyRotationConstants.TRANSFORMATION,
+                KeyRotationConstants.ALGORITHM, KeyRotationConstants.GCM_IV_LENGTH, gcmParameterSpecs));
+        cryptoBackends.put(KeyRotationConstants.CRYPTO_BACKEND_JCE_AES_GCM, new JceCryptoBackend(
+                KeyRotationConstants.CRYPTO_BACKEND_JCE_AES_GCM, jceProvider, KeyRotationConstants.TRANSFORMATION,
+                KeyRotationConstants.ALGORITHM, KeyRotationConstants.GCM_IV_LENGTH, gcmParameterSpecs));
+        cryptoBackends.put(KeyRotationConstants.CRYPTO_BACKEND_BC_CHACHA20_POLY1305, new JceCryptoBackend(
+                KeyRotationConstants.CRYPTO_BACKEND_BC_CHACHA20_POLY1305, provider,
+                KeyRotationConstants.CHACHA20_POLY1305_TRANSFORMATION, KeyRotationConstants.CHACHA20_ALGORITHM,
+                KeyRotationConstants.CHACHA20_NONCE_LENGTH, IvParameterSpec::new));
+        cryptoBackends.put(KeyRotationConstants.CRYPTO_BACKEND_JCE_CHACHA20_POLY1305, new JceCryptoBackend(
+                KeyRotationConstants.CRYPTO_BACKEND_JCE_CHACHA20_POLY1305, jceProvider,
+                KeyRotationConstants.CHACHA20_POLY1305_TRANSFORMATION, KeyRotationConstants.CHACHA20_ALGORITHM,
+                KeyRotationConstants.CHACHA20_NONCE_LENGTH, IvParameterSpec::new));
+        return cryptoBackends;
     }
 
     /**
-     * Returns the refactored encrypted ciphertext needed for the decryption method.
+     * Returns the identifier recorded in the ciphertexts encrypted with the given key. The identifier is a truncated
+     * SHA-256 digest of the key, so it tells keys apart without revealing them. The identifier isn't cached, so the
+     * key isn't kept in a long-lived map, and it is computed once per batch rather than once per value.
+     *
+     * @param secretKey The data encryption key.
+     * @return Hex encoded key identifier.
+     * @throws KeyRotationException Exception thrown while computing the key identifier.
+     */
+    public static String getKeyId(String secretKey) throws KeyRotationException {
+
+        try {
+            byte[] digest = MessageDigest.getInstance(KeyRotationConstants.KEY_ID_DIGEST_ALGORITHM)
+                    .digest(secretKey.getBytes());
+            return Hex.toHexString(Arrays.copyOf(digest, KeyRotationConstants.KEY_ID_LENGTH));
+        } catch (NoSuchAlgorithmException e) {
+            String errorMessage = String.format("Error occurred while computing the key identifier" +
+                    " with algorithm: '%s'.", KeyRotationConstants.KEY_ID_DIGEST_ALGORITHM);
+            throw new KeyRotationException(errorMessage, e);
+        }
+    }
+
+    /**
+     * Get the IV generator with the given name, falling back to the time based generator for an unknown name.
+     *
+     * @param name Name of the IV generator.
+     * @return The IV generator.
+     */
+    private static IvGenerator getIvGenerator(String name) {
+
+        IvGenerator ivGenerator = ivGenerators.get(name);
+        return (ivGenerator != null) ? ivGenerator : ivGenerators.get(KeyRotationConstants.IV_GENERATOR_TIME_BASED);
+    }
+
+    /**
+     * Get all the IV generators, keyed by their names.
+     *
+     * @return The IV generators.
+     */
+    static Map<String, IvGenerator> getIvGenerators() {
+
+        return ivGenerators;
+    }
+
+    /**
+     * Create the IV generators, keyed by their names. The generators keep their state per thread, so one instance of
+     * each is shared by all the threads.
+     *
+     * @return IV generators.
+     */
+    private static Map<String, IvGenerator> createIvGenerators() {
+
+        Map<String, IvGenerator> ivGenerators = new HashMap<>();
+        ivGenerators.put(KeyRotationConstants.IV_GENERATOR_TIME_BASED, new TimeBasedIvGenerator());
+        ivGenerators.put(KeyRotationConstants.IV_GENERATOR_COUNTER, new CounterIvGenerator());
+        ivGenerators.put(KeyRotationConstants.IV_GENERATOR_RANDOM, new RandomIvGenerator());
+        return ivGenerators;
+    }
+
+    /**
+     * Returns the refactored encrypted ciphertext needed for the decryption method. A ciphertext in the compact
+     * envelope is returned as it is.
      *
      * @param cipherText The ciphertext.
      * @return Refactored cipher The refactored ciphertext.
@@ -207,13 +814,13 @@ public class CryptoProvider {
      */
     public byte[] reFactorCipherText(byte[] cipherText) throws KeyRotationException {
 
-        try {
-            String cipherStr = new String(cipherText, Charset.defaultCharset());
-            CipherMetaData cipherMetaData = gson.fromJson(cipherStr, CipherMetaData.class);
-            cipherText = cipherMetaData.getCipherBase64Decoded();
-        } catch (JsonSyntaxException e) {
-            throw new KeyRotationException("Error occurred while converting JSON to a Java object, ", e);
+        if (KeyRotationServiceUtils.isCompactCiphertext(cipherText)) {
+            return cipherText;
+        }
+        byte[] cipherField = LegacyEnvelopeParser.parseCipherField(cipherText);
+        if (cipherField == null) {
+            throw new KeyRotationException("Error occurred while reading the cipher of the ciphertext envelope.");
         }
-        return cipherText;
+        return cipherField;
     }
 }
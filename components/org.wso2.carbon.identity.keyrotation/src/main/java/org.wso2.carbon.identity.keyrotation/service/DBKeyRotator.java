@@ -18,19 +18,24 @@
 
 package org.wso2.carbon.identity.keyrotation.service;
 
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
 import org.wso2.carbon.identity.keyrotation.dao.BPSProfileDAO;
+import org.wso2.carbon.identity.keyrotation.dao.ChunkCursor;
 import org.wso2.carbon.identity.keyrotation.dao.DBConstants;
+import org.wso2.carbon.identity.keyrotation.dao.FailureReport;
 import org.wso2.carbon.identity.keyrotation.dao.IdentityDAO;
+import org.wso2.carbon.identity.keyrotation.dao.KeyRangeDAO;
 import org.wso2.carbon.identity.keyrotation.dao.OAuthDAO;
 import org.wso2.carbon.identity.keyrotation.dao.RegistryDAO;
 import org.wso2.carbon.identity.keyrotation.dao.WorkFlowDAO;
+import org.wso2.carbon.identity.keyrotation.metrics.KeyRotationMetrics;
+import org.wso2.carbon.identity.keyrotation.metrics.TableMetrics;
 import org.wso2.carbon.identity.keyrotation.model.BPSPassword;
 import org.wso2.carbon.identity.keyrotation.model.OAuthCode;
 import org.wso2.carbon.identity.keyrotation.model.OAuthSecret;
 import org.wso2.carbon.identity.keyrotation.model.OAuthToken;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
 import org.wso2.carbon.identity.keyrotation.model.RegistryProperty;
 import org.wso2.carbon.identity.keyrotation.model.TOTPSecret;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
@@ -39,10 +44,18 @@ import org.wso2.carbon.identity.workflow.mgt.bean.RequestParameter;
 import org.wso2.carbon.identity.workflow.mgt.dto.WorkflowRequest;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.checkPlainText;
-import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.symmetricReEncryption;
+import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.reEncryptBatch;
 
 /**
  * This class holds the DB re-encryption service.
@@ -57,6 +70,22 @@ public class DBKeyRotator {
         return instance;
     }
 
+    /**
+     * Re-encryption of the records of a table within a key range.
+     */
+    private interface RangeReEncryptor {
+
+        void reEncrypt(String name, String lowerKey, String upperKey) throws KeyRotationException;
+    }
+
+    /**
+     * Opening of a streaming cursor over the records of a table.
+     */
+    private interface CursorOpener<T> {
+
+        ChunkCursor<T> open() throws KeyRotationException;
+    }
+
     /**
      * Re-encryption of the identity and registry DB data.
      *
@@ -66,343 +95,626 @@ public class DBKeyRotator {
     public void dbReEncryptor(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
         log.info("Started re-encrypting identity and registry DB data...");
-        reEncryptIdentityTOTPData(keyRotationConfig);
-        log.info("Successfully updated totp data records in IDN_IDENTITY_USER_DATA: " + IdentityDAO.updateCount);
-        log.info("Failed totp data records in IDN_IDENTITY_USER_DATA: " + IdentityDAO.failedUpdateCount);
-        reEncryptOauthAuthData(keyRotationConfig);
-        log.info("Successfully updated OAuth2 authorization code data records in IDN_OAUTH2_AUTHORIZATION_CODE: " +
-                OAuthDAO.updateCodeCount);
-        log.info("Failed OAuth2 authorization code data records in IDN_OAUTH2_AUTHORIZATION_CODE: " +
-                OAuthDAO.failedUpdateCodeCount);
-        reEncryptOauthTokenData(keyRotationConfig);
-        log.info("Successfully updated OAuth2 access and refresh tokens data records in IDN_OAUTH2_ACCESS_TOKEN: " +
-                OAuthDAO.updateTokenCount);
-        log.info("Failed OAuth2 access and refresh tokens data records in IDN_OAUTH2_ACCESS_TOKEN: " +
-                OAuthDAO.failedUpdateTokenCount);
-        reEncryptOauthConsumerData(keyRotationConfig);
-        log.info("Successfully updated OAuth consumer secret data records in IDN_OAUTH_CONSUMER_APPS: " +
-                OAuthDAO.updateSecretCount);
-        log.info("Failed OAuth consumer secret data records in IDN_OAUTH_CONSUMER_APPS: " +
-                OAuthDAO.failedUpdateSecretCount);
-        reEncryptBPSData(keyRotationConfig);
-        log.info("Successfully updated BPS profile data records in WF_BPS_PROFILE: " + BPSProfileDAO.updateCount);
-        log.info("Failed BPS profile data records in WF_BPS_PROFILE: " + BPSProfileDAO.failedUpdateCount);
-        reEncryptWFRequestData(keyRotationConfig);
-        log.info("Successfully updated WF request data records in WF_REQUEST: " + WorkFlowDAO.updateCount);
-        log.info("Failed WF request data records in WF_REQUEST: " + WorkFlowDAO.failedUpdateCount);
-        reEncryptKeystorePasswordData(keyRotationConfig);
-        log.info("Successfully updated keystore password property data records in REG_PROPERTY: " +
-                RegistryDAO.updateCount);
-        log.info("Failed keystore password property data records in REG_PROPERTY: " + RegistryDAO.failedUpdateCount);
-        reEncryptKeystorePrivatekeyPassData(keyRotationConfig);
-        log.info("Successfully updated keystore privatekeyPass property data records in REG_PROPERTY: " +
-                RegistryDAO.updateCount);
-        log.info("Failed keystore privatekeyPass property data records in REG_PROPERTY: " +
-                RegistryDAO.failedUpdateCount);
-        reEncryptSubscriberPasswordData(keyRotationConfig);
-        log.info("Successfully updated subscriber password property data records in REG_PROPERTY: " +
-                RegistryDAO.updateCount);
-        log.info("Failed subscriber password property data records in REG_PROPERTY: " + RegistryDAO.failedUpdateCount);
+        ReEncryptionThrottle.getInstance().configure(keyRotationConfig);
+        FailureReport.getInstance().open(keyRotationConfig.getFailureReportFile(),
+                keyRotationConfig.getEnableResume());
+        ReEncryptionCheckpoint checkpoint = new ReEncryptionCheckpoint(keyRotationConfig.getCheckpointFile(),
+                getCounters(), keyRotationConfig.getEnableResume(), keyRotationConfig.getCheckpointInterval());
+        List<ReEncryptionStage> stages = new ArrayList<>();
+        if (!KeyRotationConstants.DATA_KEY_ENVELOPE_DISABLED.equals(keyRotationConfig.getDataKeyEnvelope())) {
+            DataKeyStore.getInstance().rewrap(keyRotationConfig);
+        }
+        if (KeyRotationConstants.DATA_KEY_ENVELOPE_REWRAP_ONLY.equals(keyRotationConfig.getDataKeyEnvelope())) {
+            log.info("Skipping the identity DB tables, whose values are encrypted with the rewrapped data keys.");
+        } else {
+            addIdentityDBStages(stages, checkpoint, keyRotationConfig);
+        }
+        // The registry passes share the REG_PROPERTY counters, hence they run one after another in a single stage.
+        stages.add(new ReEncryptionStage("REG_PROPERTY", DBConstants.NEW_REG_DB, () -> {
+            reEncryptKeystorePasswordData(checkpoint, keyRotationConfig);
+            log.info("Successfully updated keystore password property data records in REG_PROPERTY: " +
+                    RegistryDAO.updateCount);
+            log.info("Failed keystore password property data records in REG_PROPERTY: " +
+                    RegistryDAO.failedUpdateCount);
+            reEncryptKeystorePrivatekeyPassData(checkpoint, keyRotationConfig);
+            log.info("Successfully updated keystore privatekeyPass property data records in REG_PROPERTY: " +
+                    RegistryDAO.updateCount);
+            log.info("Failed keystore privatekeyPass property data records in REG_PROPERTY: " +
+                    RegistryDAO.failedUpdateCount);
+            reEncryptSubscriberPasswordData(checkpoint, keyRotationConfig);
+            log.info("Successfully updated subscriber password property data records in REG_PROPERTY: " +
+                    RegistryDAO.updateCount);
+            log.info("Failed subscriber password property data records in REG_PROPERTY: " +
+                    RegistryDAO.failedUpdateCount);
+        }));
+        Map<String, Integer> databaseConcurrency = new HashMap<>();
+        databaseConcurrency.put(DBConstants.NEW_IDN_DB, keyRotationConfig.getNewIdnDBMaxConcurrency());
+        databaseConcurrency.put(DBConstants.NEW_REG_DB, keyRotationConfig.getNewRegDBMaxConcurrency());
+        try {
+            new ReEncryptionScheduler(keyRotationConfig.getDbReEncryptionThreads(), databaseConcurrency).run(stages);
+        } finally {
+            checkpoint.close();
+            FailureReport.getInstance().close();
+        }
+        checkpoint.delete();
         log.info("Finished re-encrypting identity and registry DB data completed...\n");
     }
 
     /**
-     * Re-encryption of the IDN_IDENTITY_USER_DATA table data.
+     * Add the stages re-encrypting the tables of the identity DB.
      *
+     * @param stages            Stages to add to.
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
-     * @throws KeyRotationException Exception thrown while re-encrypting TOTP data.
+     * @throws KeyRotationException Exception thrown while splitting a table into key ranges.
      */
-    private void reEncryptIdentityTOTPData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void addIdentityDBStages(List<ReEncryptionStage> stages, ReEncryptionCheckpoint checkpoint,
+                                     KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
-        log.debug("Started re-encryption of the TOTP data...");
-        int startIndex = 0;
-        List<TOTPSecret> chunkList =
-                IdentityDAO.getInstance().getTOTPSecretsChunks(startIndex, keyRotationConfig);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<TOTPSecret> midChunkList = new ArrayList<>();
-            for (TOTPSecret totpSecret : chunkList) {
-                if (!checkPlainText(totpSecret.getDataValue())) {
-                    log.debug("Encrypted value " + totpSecret.getDataValue());
-                    String reEncryptedValue = symmetricReEncryption(totpSecret.getDataValue(), keyRotationConfig);
-                    totpSecret.setDataValue(reEncryptedValue);
-                    log.debug("Re-encrypted value " + totpSecret.getDataValue());
-                    midChunkList.add(totpSecret);
+        stages.add(new ReEncryptionStage("IDN_IDENTITY_USER_DATA", DBConstants.NEW_IDN_DB, () -> {
+            reEncryptIdentityTOTPData(checkpoint, keyRotationConfig);
+            log.info("Successfully updated totp data records in IDN_IDENTITY_USER_DATA: " + IdentityDAO.updateCount);
+            log.info("Failed totp data records in IDN_IDENTITY_USER_DATA: " + IdentityDAO.failedUpdateCount);
+        }));
+        addRangeStages(stages, DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE, KeyRotationConstants.CODE_ID,
+                (name, lowerKey, upperKey) -> reEncryptOauthAuthData(name, lowerKey, upperKey, checkpoint,
+                        keyRotationConfig), () -> {
+            log.info("Successfully updated OAuth2 authorization code data records in IDN_OAUTH2_AUTHORIZATION_CODE: " +
+                    OAuthDAO.updateCodeCount);
+            log.info("Failed OAuth2 authorization code data records in IDN_OAUTH2_AUTHORIZATION_CODE: " +
+                    OAuthDAO.failedUpdateCodeCount);
+        }, checkpoint, keyRotationConfig);
+        addRangeStages(stages, DBConstants.IDN_OAUTH2_ACCESS_TOKEN, KeyRotationConstants.TOKEN_ID,
+                (name, lowerKey, upperKey) -> reEncryptOauthTokenData(name, lowerKey, upperKey, checkpoint,
+                        keyRotationConfig), () -> {
+            log.info("Successfully updated OAuth2 access and refresh tokens data records in IDN_OAUTH2_ACCESS_TOKEN: " +
+                    OAuthDAO.updateTokenCount);
+            log.info("Failed OAuth2 access and refresh tokens data records in IDN_OAUTH2_ACCESS_TOKEN: " +
+                    OAuthDAO.failedUpdateTokenCount);
+        }, checkpoint, keyRotationConfig);
+        stages.add(new ReEncryptionStage("IDN_OAUTH_CONSUMER_APPS", DBConstants.NEW_IDN_DB, () -> {
+            reEncryptOauthConsumerData(checkpoint, keyRotationConfig);
+            log.info("Successfully updated OAuth consumer secret data records in IDN_OAUTH_CONSUMER_APPS: " +
+                    OAuthDAO.updateSecretCount);
+            log.info("Failed OAuth consumer secret data records in IDN_OAUTH_CONSUMER_APPS: " +
+                    OAuthDAO.failedUpdateSecretCount);
+        }));
+        stages.add(new ReEncryptionStage("WF_BPS_PROFILE", DBConstants.NEW_IDN_DB, () -> {
+            reEncryptBPSData(checkpoint, keyRotationConfig);
+            log.info("Successfully updated BPS profile data records in WF_BPS_PROFILE: " + BPSProfileDAO.updateCount);
+            log.info("Failed BPS profile data records in WF_BPS_PROFILE: " + BPSProfileDAO.failedUpdateCount);
+        }));
+        addRangeStages(stages, DBConstants.WF_REQUEST, DBConstants.UUID,
+                (name, lowerKey, upperKey) -> reEncryptWFRequestData(name, lowerKey, upperKey, checkpoint,
+                        keyRotationConfig), () -> {
+            log.info("Successfully updated WF request data records in WF_REQUEST: " + WorkFlowDAO.updateCount);
+            log.info("Failed WF request data records in WF_REQUEST: " + WorkFlowDAO.failedUpdateCount);
+        }, checkpoint, keyRotationConfig);
+    }
+
+    /**
+     * Get the counters of the DB re-encryption, saved in the checkpoint along with the progress.
+     *
+     * @return Counters by name.
+     */
+    private Map<String, AtomicInteger> getCounters() {
+
+        Map<String, AtomicInteger> counters = new LinkedHashMap<>();
+        counters.put("IdentityDAO.updateCount", IdentityDAO.updateCount);
+        counters.put("IdentityDAO.failedUpdateCount", IdentityDAO.failedUpdateCount);
+        counters.put("OAuthDAO.updateCodeCount", OAuthDAO.updateCodeCount);
+        counters.put("OAuthDAO.failedUpdateCodeCount", OAuthDAO.failedUpdateCodeCount);
+        counters.put("OAuthDAO.updateTokenCount", OAuthDAO.updateTokenCount);
+        counters.put("OAuthDAO.failedUpdateTokenCount", OAuthDAO.failedUpdateTokenCount);
+        counters.put("OAuthDAO.updateSecretCount", OAuthDAO.updateSecretCount);
+        counters.put("OAuthDAO.failedUpdateSecretCount", OAuthDAO.failedUpdateSecretCount);
+        counters.put("BPSProfileDAO.updateCount", BPSProfileDAO.updateCount);
+        counters.put("BPSProfileDAO.failedUpdateCount", BPSProfileDAO.failedUpdateCount);
+        counters.put("WorkFlowDAO.updateCount", WorkFlowDAO.updateCount);
+        counters.put("WorkFlowDAO.failedUpdateCount", WorkFlowDAO.failedUpdateCount);
+        counters.put("RegistryDAO.updateCount", RegistryDAO.updateCount);
+        counters.put("RegistryDAO.failedUpdateCount", RegistryDAO.failedUpdateCount);
+        return counters;
+    }
+
+    /**
+     * Add the stages re-encrypting a table with a single column primary key. Unless the table is read through a
+     * streaming cursor, it is split into tablePartitions key ranges, each re-encrypted by its own stage, and the
+     * summary is logged once the last range is done. A resumed run keeps the ranges of the previous run.
+     *
+     * @param stages            Stages to add to.
+     * @param table             Name of the table.
+     * @param keyColumn         Name of the primary key column of the table.
+     * @param reEncryptor       Re-encryption of a single key range of the table.
+     * @param summary           Logging of the table summary.
+     * @param checkpoint        Progress of the DB re-encryption.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while splitting the table into key ranges.
+     */
+    private void addRangeStages(List<ReEncryptionStage> stages, String table, String keyColumn,
+                                RangeReEncryptor reEncryptor, ReEncryptionStage.Task summary,
+                                ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        List<String> boundaries = checkpoint.getBoundaries(table);
+        if (boundaries == null) {
+            boundaries = new ArrayList<>();
+            if (keyRotationConfig.getTablePartitions() > 1 && !keyRotationConfig.getEnableStreamingRead()) {
+                boundaries = KeyRangeDAO.getInstance().getKeyRangeBoundaries(table, keyColumn,
+                        keyRotationConfig.getTablePartitions(), keyRotationConfig);
+            }
+            checkpoint.saveBoundaries(table, boundaries);
+        }
+        int ranges = boundaries.size() + 1;
+        AtomicInteger pendingRanges = new AtomicInteger(ranges);
+        for (int i = 0; i < ranges; i++) {
+            String lowerKey = (i == 0) ? null : boundaries.get(i - 1);
+            String upperKey = (i == ranges - 1) ? null : boundaries.get(i);
+            String name = (ranges == 1) ? table : table + " range " + (i + 1) + "/" + ranges;
+            stages.add(new ReEncryptionStage(name, DBConstants.NEW_IDN_DB, () -> {
+                reEncryptor.reEncrypt(name, lowerKey, upperKey);
+                if (pendingRanges.decrementAndGet() == 0) {
+                    summary.execute();
                 }
+            }));
+        }
+    }
+
+    /**
+     * Run the re-encryption pipeline of a table. The key of the last committed record is saved in the checkpoint
+     * after every chunk, and a resumed run continues after it. A table read through a streaming cursor can't
+     * continue after a key, so it is only skipped once it is completed, and otherwise read again from the start.
+     *
+     * @param name              Name of the table or table range.
+     * @param table             Name of the table, under which the metrics are recorded.
+     * @param reader            Reads the chunks of the table page by page.
+     * @param cursorOpener      Opens a streaming cursor over the table, used instead of the reader if streaming
+     *                          reads are enabled.
+     * @param reEncryptor       Re-encrypts the records of a chunk.
+     * @param writer            Writes the re-encrypted records back to the table.
+     * @param keyOf             Gets the key columns of a record, in the order of the keyset of the reader.
+     * @param recordOf          Creates a record holding only the given key columns.
+     * @param checkpoint        Progress of the DB re-encryption.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param <T>               Type of the records of the table.
+     * @throws KeyRotationException Exception thrown while re-encrypting the table.
+     */
+    private <T> void runPipeline(String name, String table, ChunkPipeline.ChunkReader<T> reader,
+                                 CursorOpener<T> cursorOpener, ChunkPipeline.ChunkReEncryptor<T> reEncryptor,
+                                 ChunkPipeline.ChunkWriter<T> writer, Function<T, String[]> keyOf,
+                                 Function<String[], T> recordOf, ReEncryptionCheckpoint checkpoint,
+                                 KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        if (checkpoint.isCompleted(name)) {
+            log.info("Skipping " + name + " which was completed by a previous run.");
+            return;
+        }
+        ChunkSizeController chunkSizeController = new ChunkSizeController(name, keyRotationConfig);
+        TableMetrics tableMetrics = KeyRotationMetrics.getInstance().getTableMetrics(table);
+        if (keyRotationConfig.getEnableStreamingRead()) {
+            try (ChunkCursor<T> cursor = cursorOpener.open()) {
+                new ChunkPipeline<>(name, (lastRecord, chunkSize) -> cursor.next(chunkSize), reEncryptor, writer,
+                        chunkSizeController, tableMetrics, ReEncryptionThrottle.getInstance(),
+                        keyRotationConfig.getPipelineCryptoThreads(), keyRotationConfig.getPipelineQueueSize()).run();
+            }
+        } else {
+            String[] lastKey = checkpoint.getLastKey(name);
+            if (lastKey != null) {
+                log.info("Resuming " + name + " from the checkpoint of a previous run.");
+                log.debug("Resuming " + name + " after the record with key " + String.join(", ", lastKey) + ".");
+            }
+            new ChunkPipeline<>(name, reader, reEncryptor, writer, (lastKey == null) ? null : recordOf.apply(lastKey),
+                    lastRecord -> checkpoint.saveProgress(name, keyOf.apply(lastRecord)), chunkSizeController,
+                    tableMetrics, ReEncryptionThrottle.getInstance(), keyRotationConfig.getPipelineCryptoThreads(),
+                    keyRotationConfig.getPipelineQueueSize()).run();
+        }
+        checkpoint.saveCompleted(name);
+    }
+
+    /**
+     * Re-encryption of a single column of the records of a chunk as one batch. A record whose value fails to
+     * re-encrypt is left as it is and recorded as failed.
+     *
+     * @param records           The records to be re-encrypted.
+     * @param getter            Gets the stored value of the column of a record.
+     * @param setter            Sets the re-encrypted value of the column of a record.
+     * @param table             Name of the table.
+     * @param scope             Scope of the values, which is the name of the table, or null to encrypt them with
+     *                          the new key.
+     * @param keyOf             Describes the key of a record in the logs and the failure report.
+     * @param failedUpdateCount Counter of the failed records.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param <T>               Type of the records of the table.
+     * @return The records which were re-encrypted.
+     * @throws KeyRotationException Exception thrown while setting up the re-encryption of the batch.
+     */
+    private <T> List<T> reEncryptColumn(List<T> records, Function<T, String> getter, BiConsumer<T, String> setter,
+                                        String table, String scope, Function<T, String> keyOf,
+                                        AtomicInteger failedUpdateCount, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        List<String> values = new ArrayList<>(records.size());
+        for (T record : records) {
+            values.add(getter.apply(record));
+        }
+        ReEncryptionBatch batch = reEncryptValues(values, scope, keyRotationConfig);
+        List<T> reEncryptedRecords = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getStatus(i) == ReEncryptionBatch.Status.ROTATED) {
+                setter.accept(records.get(i), batch.getValue(i));
+                reEncryptedRecords.add(records.get(i));
+            } else if (batch.getStatus(i) == ReEncryptionBatch.Status.FAILED) {
+                recordFailure(table, keyOf.apply(records.get(i)), batch.getFailure(i), failedUpdateCount);
             }
-            IdentityDAO.getInstance().updateTOTPSecretsChunks(midChunkList, keyRotationConfig);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = IdentityDAO.getInstance().getTOTPSecretsChunks(startIndex, keyRotationConfig);
         }
+        return reEncryptedRecords;
+    }
+
+    /**
+     * Record a record whose value failed to re-encrypt, which is left as it is, so the rest of the chunk is still
+     * written.
+     *
+     * @param table             Name of the table.
+     * @param key               Key of the record.
+     * @param failure           The exception the value failed with.
+     * @param failedUpdateCount Counter of the failed records.
+     */
+    private void recordFailure(String table, String key, KeyRotationException failure,
+                               AtomicInteger failedUpdateCount) {
+
+        log.error("Error while re-encrypting " + table + " of record with " + key + " ," + failure);
+        FailureReport.getInstance().recordFailure(table, key, failure, failedUpdateCount);
+    }
+
+    /**
+     * Re-encryption of a column of values as one batch. Plaintext values and values already re-encrypted by a
+     * previous or resumed run are skipped, the latter recognised from their key identifier without decrypting them.
+     * A failed value keeps its stored value, and is recorded by the caller along with its record.
+     *
+     * @param values            The stored values.
+     * @param scope             Scope of the values, which is the name of the table, or null to encrypt them with
+     *                          the new key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The re-encrypted values along with the status of each value.
+     * @throws KeyRotationException Exception thrown while setting up the re-encryption of the batch.
+     */
+    private ReEncryptionBatch reEncryptValues(List<String> values, String scope, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        ReEncryptionBatch batch = reEncryptBatch(values, scope, keyRotationConfig);
+        if (log.isDebugEnabled()) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.getStatus(i) == ReEncryptionBatch.Status.ROTATED) {
+                    log.debug("Encrypted value " + values.get(i));
+                    log.debug("Re-encrypted value " + batch.getValue(i));
+                } else if (batch.getStatus(i) == ReEncryptionBatch.Status.ALREADY_ROTATED) {
+                    log.debug("Skipping a value already re-encrypted by a previous run.");
+                }
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Re-encryption of the IDN_IDENTITY_USER_DATA table data.
+     *
+     * @param checkpoint        Progress of the DB re-encryption.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while re-encrypting TOTP data.
+     */
+    private void reEncryptIdentityTOTPData(ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        log.debug("Started re-encryption of the TOTP data...");
+        this.<TOTPSecret>runPipeline(DBConstants.IDN_IDENTITY_USER_DATA, DBConstants.IDN_IDENTITY_USER_DATA,
+                (lastRecord, chunkSize) -> IdentityDAO.getInstance().getTOTPSecretsChunks(lastRecord, chunkSize,
+                        keyRotationConfig),
+                () -> IdentityDAO.getInstance().openTOTPSecretsCursor(keyRotationConfig),
+                records -> reEncryptColumn(records, TOTPSecret::getDataValue, TOTPSecret::setDataValue,
+                        DBConstants.IDN_IDENTITY_USER_DATA, DBConstants.IDN_IDENTITY_USER_DATA,
+                        IdentityDAO.TOTP_SECRET_KEY_OF, IdentityDAO.failedUpdateCount, keyRotationConfig),
+                records -> IdentityDAO.getInstance().updateTOTPSecretsChunks(records, keyRotationConfig),
+                totpSecret -> new String[]{totpSecret.getTenantId(), totpSecret.getUsername(), totpSecret.getDataKey()},
+                key -> new TOTPSecret(key[0], key[1], key[2], null), checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the TOTP data...");
     }
 
     /**
      * Re-encryption of the IDN_OAUTH2_AUTHORIZATION_CODE table data.
      *
+     * @param name              Name of the table or table range.
+     * @param lowerKey          Exclusive lower CODE_ID of the range, or null to start from the beginning of the table.
+     * @param upperKey          Inclusive upper CODE_ID of the range, or null to read up to the end of the table.
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting OAuth2 authorization code data.
      */
-    private void reEncryptOauthAuthData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptOauthAuthData(String name, String lowerKey, String upperKey,
+                                        ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         log.debug("Started re-encryption of the OAuth2 authorization code data...");
-        int startIndex = 0;
-        List<OAuthCode> chunkList =
-                OAuthDAO.getInstance().getOAuthCodeChunks(startIndex, keyRotationConfig);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<OAuthCode> midChunkList = new ArrayList<>();
-            for (OAuthCode oAuthCode : chunkList) {
-                if (!checkPlainText(oAuthCode.getAuthorizationCode())) {
-                    log.debug("Encrypted value " + oAuthCode.getAuthorizationCode());
-                    String reEncryptedValue = symmetricReEncryption(oAuthCode.getAuthorizationCode(),
-                            keyRotationConfig);
-                    oAuthCode.setAuthorizationCode(reEncryptedValue);
-                    log.debug("Re-encrypted value " + oAuthCode.getAuthorizationCode());
-                    midChunkList.add(oAuthCode);
-                }
-            }
-            OAuthDAO.getInstance().updateOAuthCodeChunks(midChunkList, keyRotationConfig);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = OAuthDAO.getInstance().getOAuthCodeChunks(startIndex, keyRotationConfig);
-        }
+        this.<OAuthCode>runPipeline(name, DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE,
+                (lastRecord, chunkSize) -> OAuthDAO.getInstance().getOAuthCodeChunks(
+                        (lastRecord == null) ? lowerKey : lastRecord.getCodeId(), upperKey, chunkSize,
+                        keyRotationConfig),
+                () -> OAuthDAO.getInstance().openOAuthCodeCursor(keyRotationConfig),
+                records -> reEncryptColumn(records, OAuthCode::getAuthorizationCode, OAuthCode::setAuthorizationCode,
+                        DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE, DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE,
+                        OAuthDAO.OAUTH_CODE_KEY_OF, OAuthDAO.failedUpdateCodeCount, keyRotationConfig),
+                records -> OAuthDAO.getInstance().updateOAuthCodeChunks(records, keyRotationConfig),
+                oAuthCode -> new String[]{oAuthCode.getCodeId()},
+                key -> new OAuthCode(key[0], null, null), checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the OAuth2 authorization code data...");
     }
 
     /**
      * Re-encryption of the IDN_OAUTH2_ACCESS_TOKEN table data.
      *
+     * @param name              Name of the table or table range.
+     * @param lowerKey          Exclusive lower TOKEN_ID of the range, or null to start from the beginning of the table.
+     * @param upperKey          Inclusive upper TOKEN_ID of the range, or null to read up to the end of the table.
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting OAuth2 access and refresh token data.
      */
-    private void reEncryptOauthTokenData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptOauthTokenData(String name, String lowerKey, String upperKey,
+                                         ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         log.debug("Started re-encryption of the OAuth2 access and refresh token data...");
-        int startIndex = 0;
-        List<OAuthToken> chunkList =
-                OAuthDAO.getInstance().getOAuthTokenChunks(startIndex, keyRotationConfig);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<OAuthToken> midChunkList = new ArrayList<>();
-            for (OAuthToken oAuthToken : chunkList) {
-                if (!checkPlainText(oAuthToken.getAccessToken()) && !checkPlainText(oAuthToken.getRefreshToken())) {
-                    log.debug("Encrypted access token value " + oAuthToken.getAccessToken());
-                    String accessTokenReEncryptedValue = symmetricReEncryption(oAuthToken.getAccessToken(),
-                            keyRotationConfig);
-                    oAuthToken.setAccessToken(accessTokenReEncryptedValue);
-                    log.debug("Re-encrypted value " + oAuthToken.getAccessToken());
-                    log.debug("Encrypted refresh token value " + oAuthToken.getRefreshToken());
-                    String refreshTokenReEncryptedValue = symmetricReEncryption(oAuthToken.getRefreshToken(),
-                            keyRotationConfig);
-                    oAuthToken.setRefreshToken(refreshTokenReEncryptedValue);
-                    log.debug("Re-encrypted value " + oAuthToken.getRefreshToken());
-                    midChunkList.add(oAuthToken);
-                }
+        this.<OAuthToken>runPipeline(name, DBConstants.IDN_OAUTH2_ACCESS_TOKEN,
+                (lastRecord, chunkSize) -> OAuthDAO.getInstance().getOAuthTokenChunks(
+                        (lastRecord == null) ? lowerKey : lastRecord.getTokenId(), upperKey, chunkSize,
+                        keyRotationConfig),
+                () -> OAuthDAO.getInstance().openOAuthTokenCursor(keyRotationConfig),
+                records -> reEncryptOAuthTokens(records, keyRotationConfig),
+                records -> OAuthDAO.getInstance().updateOAuthTokenChunks(records, keyRotationConfig),
+                oAuthToken -> new String[]{oAuthToken.getTokenId()},
+                key -> new OAuthToken(key[0], null, null, null), checkpoint, keyRotationConfig);
+        log.debug("Finished re-encryption of the OAuth2 access and refresh token data...");
+    }
+
+    /**
+     * Re-encryption of the access and refresh token pairs of a chunk as one batch. A pair with a plaintext token is
+     * left as it is, and a pair whose access token is already under the new key was re-encrypted by a previous run.
+     * A pair with a token failing to re-encrypt is left as it is and recorded as failed.
+     *
+     * @param oAuthTokens       The token pairs to be re-encrypted.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The token pairs which were re-encrypted.
+     * @throws KeyRotationException Exception thrown while setting up the re-encryption of the batch.
+     */
+    private List<OAuthToken> reEncryptOAuthTokens(List<OAuthToken> oAuthTokens, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        List<String> values = new ArrayList<>(oAuthTokens.size() * 2);
+        for (OAuthToken oAuthToken : oAuthTokens) {
+            values.add(oAuthToken.getAccessToken());
+            values.add(oAuthToken.getRefreshToken());
+        }
+        ReEncryptionBatch batch = reEncryptValues(values, DBConstants.IDN_OAUTH2_ACCESS_TOKEN, keyRotationConfig);
+        List<OAuthToken> reEncryptedTokens = new ArrayList<>();
+        for (int i = 0; i < oAuthTokens.size(); i++) {
+            KeyRotationException failure = (batch.getFailure(2 * i) != null) ? batch.getFailure(2 * i) :
+                    batch.getFailure(2 * i + 1);
+            if (failure != null) {
+                OAuthToken oAuthToken = oAuthTokens.get(i);
+                recordFailure(DBConstants.IDN_OAUTH2_ACCESS_TOKEN, OAuthDAO.OAUTH_TOKEN_KEY_OF.apply(oAuthToken),
+                        failure, OAuthDAO.failedUpdateTokenCount);
+            } else if (batch.getStatus(2 * i) == ReEncryptionBatch.Status.ROTATED &&
+                    batch.getStatus(2 * i + 1) != ReEncryptionBatch.Status.PLAINTEXT_SKIPPED) {
+                OAuthToken oAuthToken = oAuthTokens.get(i);
+                oAuthToken.setAccessToken(batch.getValue(2 * i));
+                oAuthToken.setRefreshToken(batch.getValue(2 * i + 1));
+                reEncryptedTokens.add(oAuthToken);
             }
-            OAuthDAO.getInstance().updateOAuthTokenChunks(midChunkList, keyRotationConfig);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = OAuthDAO.getInstance().getOAuthTokenChunks(startIndex, keyRotationConfig);
         }
-        log.debug("Finished re-encryption of the OAuth2 access and refresh token data...");
+        return reEncryptedTokens;
     }
 
     /**
      * Re-encryption of the IDN_OAUTH_CONSUMER_APPS consumer table data.
      *
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting OAuth consumer secret data.
      */
-    private void reEncryptOauthConsumerData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptOauthConsumerData(ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         log.debug("Started re-encryption of the OAuth consumer secret data...");
-        int startIndex = 0;
-        List<OAuthSecret> chunkList =
-                OAuthDAO.getInstance().getOAuthSecretChunks(startIndex, keyRotationConfig);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<OAuthSecret> midChunkList = new ArrayList<>();
-            for (OAuthSecret oAuthSecret : chunkList) {
-                if (!checkPlainText(oAuthSecret.getConsumerSecret())) {
-                    log.debug("Encrypted value " + oAuthSecret.getConsumerSecret());
-                    String reEncryptedValue = symmetricReEncryption(oAuthSecret.getConsumerSecret(),
-                            keyRotationConfig);
-                    oAuthSecret.setConsumerSecret(reEncryptedValue);
-                    log.debug("Re-encrypted value " + oAuthSecret.getConsumerSecret());
-                    midChunkList.add(oAuthSecret);
-                }
-            }
-            OAuthDAO.getInstance().updateOAuthSecretChunks(midChunkList, keyRotationConfig);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = OAuthDAO.getInstance().getOAuthSecretChunks(startIndex, keyRotationConfig);
-        }
+        this.<OAuthSecret>runPipeline(DBConstants.IDN_OAUTH_CONSUMER_APPS, DBConstants.IDN_OAUTH_CONSUMER_APPS,
+                (lastRecord, chunkSize) -> OAuthDAO.getInstance().getOAuthSecretChunks(lastRecord, chunkSize,
+                        keyRotationConfig),
+                () -> OAuthDAO.getInstance().openOAuthSecretCursor(keyRotationConfig),
+                records -> reEncryptColumn(records, OAuthSecret::getConsumerSecret, OAuthSecret::setConsumerSecret,
+                        DBConstants.IDN_OAUTH_CONSUMER_APPS, DBConstants.IDN_OAUTH_CONSUMER_APPS,
+                        OAuthDAO.OAUTH_SECRET_KEY_OF, OAuthDAO.failedUpdateSecretCount, keyRotationConfig),
+                records -> OAuthDAO.getInstance().updateOAuthSecretChunks(records, keyRotationConfig),
+                oAuthSecret -> new String[]{oAuthSecret.getId()},
+                key -> new OAuthSecret(key[0], null, null), checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the OAuth consumer secret data...");
     }
 
     /**
      * Re-encryption of the WF_BPS_PROFILE table data.
      *
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting BPS profile data.
      */
-    private void reEncryptBPSData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptBPSData(ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         log.debug("Started re-encryption of the BPS profile data...");
-        int startIndex = 0;
-        List<BPSPassword> chunkList =
-                BPSProfileDAO.getInstance().getBpsPasswordChunks(startIndex, keyRotationConfig);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<BPSPassword> midChunkList = new ArrayList<>();
-            for (BPSPassword bpsPassword : chunkList) {
-                if (!checkPlainText(bpsPassword.getPassword())) {
-                    log.debug("Encrypted value " + bpsPassword.getPassword());
-                    String reEncryptedValue = symmetricReEncryption(bpsPassword.getPassword(), keyRotationConfig);
-                    bpsPassword.setPassword(reEncryptedValue);
-                    log.debug("Re-encrypted value " + bpsPassword.getPassword());
-                    midChunkList.add(bpsPassword);
-                }
-            }
-            BPSProfileDAO.getInstance().updateBpsPasswordChunks(midChunkList, keyRotationConfig);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = BPSProfileDAO.getInstance().getBpsPasswordChunks(startIndex, keyRotationConfig);
-        }
+        this.<BPSPassword>runPipeline(DBConstants.WF_BPS_PROFILE, DBConstants.WF_BPS_PROFILE,
+                (lastRecord, chunkSize) -> BPSProfileDAO.getInstance().getBpsPasswordChunks(lastRecord, chunkSize,
+                        keyRotationConfig),
+                () -> BPSProfileDAO.getInstance().openBpsPasswordCursor(keyRotationConfig),
+                records -> reEncryptColumn(records, BPSPassword::getPassword, BPSPassword::setPassword,
+                        DBConstants.WF_BPS_PROFILE, DBConstants.WF_BPS_PROFILE, BPSProfileDAO.BPS_PASSWORD_KEY_OF,
+                        BPSProfileDAO.failedUpdateCount, keyRotationConfig),
+                records -> BPSProfileDAO.getInstance().updateBpsPasswordChunks(records, keyRotationConfig),
+                bpsPassword -> new String[]{bpsPassword.getProfileName(), bpsPassword.getTenantId()},
+                key -> new BPSPassword(key[0], null, key[1], null), checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the BPS profile data...");
     }
 
     /**
      * Re-encryption of the WF_REQUEST table data.
      *
+     * @param name              Name of the table or table range.
+     * @param lowerKey          Exclusive lower UUID of the range, or null to start from the beginning of the table.
+     * @param upperKey          Inclusive upper UUID of the range, or null to read up to the end of the table.
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting WF request data.
      */
-    private void reEncryptWFRequestData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptWFRequestData(String name, String lowerKey, String upperKey,
+                                        ReEncryptionCheckpoint checkpoint, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
 
         log.debug("Started re-encryption of the WF request data...");
-        int startIndex = 0;
-        List<WorkflowRequest> chunkList =
-                WorkFlowDAO.getInstance().getWFRequestChunks(startIndex, keyRotationConfig);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<WorkflowRequest> midChunkList = new ArrayList<>();
-            for (WorkflowRequest wfRequest : chunkList) {
-                for (RequestParameter parameter : wfRequest.getRequestParameters()) {
-                    if (DBConstants.CREDENTIAL.equals(parameter.getName()) &&
-                            !checkPlainText(parameter.getValue().toString())) {
-                        log.debug("Encrypted value " + parameter.getValue().toString());
-                        String reEncryptedValue = symmetricReEncryption(parameter.getValue().toString(),
-                                keyRotationConfig);
-                        parameter.setValue(reEncryptedValue);
-                        log.debug("Re-encrypted value " + parameter.getValue().toString());
-                        midChunkList.add(wfRequest);
-                    }
+        this.<WorkflowRequest>runPipeline(name, DBConstants.WF_REQUEST,
+                (lastRecord, chunkSize) -> WorkFlowDAO.getInstance().getWFRequestChunks(
+                        (lastRecord == null) ? lowerKey : lastRecord.getUuid(), upperKey, chunkSize,
+                        keyRotationConfig),
+                () -> WorkFlowDAO.getInstance().openWFRequestCursor(keyRotationConfig),
+                records -> reEncryptWFRequests(records, keyRotationConfig),
+                records -> WorkFlowDAO.getInstance().updateWFRequestChunks(records, keyRotationConfig),
+                wfRequest -> new String[]{wfRequest.getUuid()},
+                key -> {
+                    WorkflowRequest wfRequest = new WorkflowRequest();
+                    wfRequest.setUuid(key[0]);
+                    return wfRequest;
+                }, checkpoint, keyRotationConfig);
+        log.debug("Finished re-encryption of the WF request data...");
+    }
+
+    /**
+     * Re-encryption of the credential parameters of the WF requests of a chunk as one batch. A request with a
+     * credential parameter failing to re-encrypt is left as it is and recorded as failed.
+     *
+     * @param wfRequests        The WF requests to be re-encrypted.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The WF requests of which a credential parameter was re-encrypted.
+     * @throws KeyRotationException Exception thrown while setting up the re-encryption of the batch.
+     */
+    private List<WorkflowRequest> reEncryptWFRequests(List<WorkflowRequest> wfRequests,
+                                                      KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        List<WorkflowRequest> requestsOfValues = new ArrayList<>();
+        List<RequestParameter> parameters = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        for (WorkflowRequest wfRequest : wfRequests) {
+            for (RequestParameter parameter : wfRequest.getRequestParameters()) {
+                if (DBConstants.CREDENTIAL.equals(parameter.getName())) {
+                    requestsOfValues.add(wfRequest);
+                    parameters.add(parameter);
+                    values.add(parameter.getValue().toString());
                 }
             }
-            WorkFlowDAO.getInstance().updateWFRequestChunks(midChunkList, keyRotationConfig);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = WorkFlowDAO.getInstance().getWFRequestChunks(startIndex, keyRotationConfig);
         }
-        log.debug("Finished re-encryption of the WF request data...");
+        ReEncryptionBatch batch = reEncryptValues(values, DBConstants.WF_REQUEST, keyRotationConfig);
+        Set<WorkflowRequest> failedRequests = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getStatus(i) == ReEncryptionBatch.Status.FAILED && failedRequests.add(requestsOfValues.get(i))) {
+                recordFailure(DBConstants.WF_REQUEST, WorkFlowDAO.WF_REQUEST_KEY_OF.apply(requestsOfValues.get(i)),
+                        batch.getFailure(i), WorkFlowDAO.failedUpdateCount);
+            }
+        }
+        List<WorkflowRequest> reEncryptedRequests = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getStatus(i) == ReEncryptionBatch.Status.ROTATED &&
+                    !failedRequests.contains(requestsOfValues.get(i))) {
+                parameters.get(i).setValue(batch.getValue(i));
+                // The parameters of a request are consecutive, so the request is only added with its first one.
+                WorkflowRequest wfRequest = requestsOfValues.get(i);
+                if (reEncryptedRequests.isEmpty() ||
+                        reEncryptedRequests.get(reEncryptedRequests.size() - 1) != wfRequest) {
+                    reEncryptedRequests.add(wfRequest);
+                }
+            }
+        }
+        return reEncryptedRequests;
     }
 
     /**
      * Re-encryption of keystore password in REG_PROPERTY table.
      *
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting keystore password property data.
      */
-    private void reEncryptKeystorePasswordData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptKeystorePasswordData(ReEncryptionCheckpoint checkpoint,
+                                               KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
         log.debug("Started re-encryption of the keystore password property data...");
-        RegistryDAO.updateCount = 0;
-        RegistryDAO.failedUpdateCount = 0;
-        int startIndex = 0;
-        List<RegistryProperty> chunkList =
-                RegistryDAO.getInstance().getRegPropertyDataChunks(startIndex, keyRotationConfig,
-                        KeyRotationConstants.REGISTRY_PASSWORD);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<RegistryProperty> midChunkList = new ArrayList<>();
-            for (RegistryProperty regProperty : chunkList) {
-                if (!checkPlainText(regProperty.getRegValue())) {
-                    log.debug("Encrypted value " + regProperty.getRegValue());
-                    String reEncryptedValue = symmetricReEncryption(regProperty.getRegValue(), keyRotationConfig);
-                    regProperty.setRegValue(reEncryptedValue);
-                    log.debug("Re-encrypted value " + regProperty.getRegValue());
-                    midChunkList.add(regProperty);
-                }
-            }
-            RegistryDAO.getInstance().updateRegPropertyDataChunks(midChunkList, keyRotationConfig,
-                    KeyRotationConstants.REGISTRY_PASSWORD);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList = RegistryDAO.getInstance()
-                    .getRegPropertyDataChunks(startIndex, keyRotationConfig, KeyRotationConstants.REGISTRY_PASSWORD);
-        }
+        reEncryptRegPropertyData(KeyRotationConstants.REGISTRY_PASSWORD, checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the keystore password property data...");
     }
 
     /**
      * Re-encryption of keystore privatekeyPass in REG_PROPERTY table.
      *
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting keystore privatekeyPass property data.
      */
-    private void reEncryptKeystorePrivatekeyPassData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptKeystorePrivatekeyPassData(ReEncryptionCheckpoint checkpoint,
+                                                     KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
         log.debug("Started re-encryption of the keystore privatekeyPass property data...");
-        RegistryDAO.updateCount = 0;
-        RegistryDAO.failedUpdateCount = 0;
-        int startIndex = 0;
-        List<RegistryProperty> chunkList =
-                RegistryDAO.getInstance().getRegPropertyDataChunks(startIndex, keyRotationConfig,
-                        KeyRotationConstants.PRIVATE_KEY_PASS);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<RegistryProperty> midChunkList = new ArrayList<>();
-            for (RegistryProperty regProperty : chunkList) {
-                if (!checkPlainText(regProperty.getRegValue())) {
-                    log.debug("Encrypted value " + regProperty.getRegValue());
-                    String reEncryptedValue = symmetricReEncryption(regProperty.getRegValue(), keyRotationConfig);
-                    regProperty.setRegValue(reEncryptedValue);
-                    log.debug("Re-encrypted value " + regProperty.getRegValue());
-                    midChunkList.add(regProperty);
-                }
-            }
-            RegistryDAO.getInstance().updateRegPropertyDataChunks(midChunkList, keyRotationConfig,
-                    KeyRotationConstants.PRIVATE_KEY_PASS);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList =
-                    RegistryDAO.getInstance().getRegPropertyDataChunks(startIndex, keyRotationConfig,
-                            KeyRotationConstants.PRIVATE_KEY_PASS);
-        }
+        reEncryptRegPropertyData(KeyRotationConstants.PRIVATE_KEY_PASS, checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the keystore privatekeyPass property data...");
     }
 
     /**
      * Re-encryption of subscriber password in REG_PROPERTY table.
      *
+     * @param checkpoint        Progress of the DB re-encryption.
      * @param keyRotationConfig Configuration data needed to perform the task.
      * @throws KeyRotationException Exception thrown while re-encrypting subscriber password property data.
      */
-    private void reEncryptSubscriberPasswordData(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+    private void reEncryptSubscriberPasswordData(ReEncryptionCheckpoint checkpoint,
+                                                 KeyRotationConfig keyRotationConfig) throws KeyRotationException {
 
         log.debug("Started re-encryption of the subscriber password property data...");
-        RegistryDAO.updateCount = 0;
-        RegistryDAO.failedUpdateCount = 0;
-        int startIndex = 0;
-        List<RegistryProperty> chunkList =
-                RegistryDAO.getInstance().getRegPropertyDataChunks(startIndex, keyRotationConfig,
-                        KeyRotationConstants.SUBSCRIBER_PASSWORD);
-        while (CollectionUtils.isNotEmpty(chunkList)) {
-            List<RegistryProperty> midChunkList = new ArrayList<>();
-            for (RegistryProperty regProperty : chunkList) {
-                if (!checkPlainText(regProperty.getRegValue())) {
-                    log.debug("Encrypted value " + regProperty.getRegValue());
-                    String reEncryptedValue = symmetricReEncryption(regProperty.getRegValue(), keyRotationConfig);
-                    regProperty.setRegValue(reEncryptedValue);
-                    log.debug("Re-encrypted value " + regProperty.getRegValue());
-                    midChunkList.add(regProperty);
-                }
-            }
-            RegistryDAO.getInstance().updateRegPropertyDataChunks(midChunkList, keyRotationConfig,
-                    KeyRotationConstants.SUBSCRIBER_PASSWORD);
-            startIndex = startIndex + keyRotationConfig.getChunkSize();
-            chunkList =
-                    RegistryDAO.getInstance()
-                            .getRegPropertyDataChunks(startIndex, keyRotationConfig,
-                                    KeyRotationConstants.SUBSCRIBER_PASSWORD);
-        }
+        reEncryptRegPropertyData(KeyRotationConstants.SUBSCRIBER_PASSWORD, checkpoint, keyRotationConfig);
         log.debug("Finished re-encryption of the subscriber password property data...");
     }
+
+    /**
+     * Re-encryption of a property in REG_PROPERTY table.
+     *
+     * @param property          Name of the registry property.
+     * @param checkpoint        Progress of the DB re-encryption.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while re-encrypting the registry property data.
+     */
+    private void reEncryptRegPropertyData(String property, ReEncryptionCheckpoint checkpoint,
+                                          KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        String name = "REG_PROPERTY " + property;
+        // The counters of a property resumed from the checkpoint hold the progress of the previous run.
+        if (checkpoint.getLastKey(name) == null) {
+            RegistryDAO.updateCount.set(0);
+            RegistryDAO.failedUpdateCount.set(0);
+        }
+        this.<RegistryProperty>runPipeline(name, DBConstants.REG_PROPERTY,
+                (lastRecord, chunkSize) -> RegistryDAO.getInstance().getRegPropertyDataChunks(lastRecord, chunkSize,
+                        keyRotationConfig, property),
+                () -> RegistryDAO.getInstance().openRegPropertyDataCursor(keyRotationConfig, property),
+                records -> reEncryptColumn(records, RegistryProperty::getRegValue, RegistryProperty::setRegValue,
+                        DBConstants.REG_PROPERTY, null, RegistryDAO.REG_PROPERTY_KEY_OF, RegistryDAO.failedUpdateCount,
+                        keyRotationConfig),
+                records -> RegistryDAO.getInstance().updateRegPropertyDataChunks(records, keyRotationConfig,
+                        property),
+                regProperty -> new String[]{regProperty.getRegId(), regProperty.getRegTenantId()},
+                key -> new RegistryProperty(key[0], property, null, key[1]), checkpoint, keyRotationConfig);
+    }
+
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.dao.DBConstants;
+import org.wso2.carbon.identity.keyrotation.dao.DataKeyDAO;
+import org.wso2.carbon.identity.keyrotation.model.DataKey;
+import org.wso2.carbon.identity.keyrotation.model.ParsedCiphertext;
+import org.wso2.carbon.identity.keyrotation.util.EncryptionUtil;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the data keys of the data key envelope. The values of a scope, which is a table, are encrypted
+ * with the data key of the scope, and the data keys are stored in IDN_KEY_ROTATION_DATA_KEY wrapped with the master
+ * key. Rotating the master key only rewraps the data keys, so the values encrypted with them aren't rewritten. The
+ * data keys are loaded and unwrapped once, and a scope is given a data key the first time a value of it is encrypted.
+ */
+public class DataKeyStore {
+
+    private static final Logger log = Logger.getLogger(DataKeyStore.class);
+    private static final DataKeyStore instance = new DataKeyStore();
+    private static final CryptoProvider cryptoProvider = new CryptoProvider();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final Map<String, String> scopeKeyIds = new ConcurrentHashMap<>();
+    private final Map<String, String> secretKeys = new ConcurrentHashMap<>();
+    private final Map<String, DataKey> dataKeys = new ConcurrentHashMap<>();
+    private boolean loaded;
+
+    public DataKeyStore() {
+
+    }
+
+    public static DataKeyStore getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Get the identifier of the data key of the given scope, creating the data key if the scope doesn't have one.
+     *
+     * @param scope             Scope of the values.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Hex encoded identifier of the data key.
+     * @throws KeyRotationException Exception thrown while loading or creating the data key.
+     */
+    public String getScopeKeyId(String scope, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        String keyId = scopeKeyIds.get(scope);
+        return (keyId != null) ? keyId : createDataKey(scope, keyRotationConfig);
+    }
+
+    /**
+     * Get the identifier of the data key of the given scope, without creating one, loading the data keys if they
+     * aren't loaded yet.
+     *
+     * @param scope             Scope of the values.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Hex encoded identifier of the data key, or null if the scope doesn't have one.
+     * @throws KeyRotationException Exception thrown while loading the data keys.
+     */
+    public synchronized String findScopeKeyId(String scope, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        if (!loaded) {
+            load(keyRotationConfig);
+        }
+        return scopeKeyIds.get(scope);
+    }
+
+    /**
+     * Get the data key with the given identifier.
+     *
+     * @param keyId             Hex encoded identifier of the data key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The data key.
+     * @throws KeyRotationException Exception thrown if there is no such data key or while loading the data keys.
+     */
+    public String getSecretKey(String keyId, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        String secretKey = secretKeys.get(keyId);
+        return (secretKey != null) ? secretKey : loadSecretKey(keyId, keyRotationConfig);
+    }
+
+    /**
+     * Rewrap the data keys which aren't wrapped with the new key yet, all in one transaction. The data keys are
+     * reloaded first, so the ones created by another run are rewrapped as well.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while unwrapping, wrapping or updating the data keys.
+     */
+    public synchronized void rewrap(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        load(keyRotationConfig);
+        String kekId = CryptoProvider.getKeyId(keyRotationConfig.getNewSecretKey());
+        List<DataKey> rewrappedKeys = new ArrayList<>();
+        for (DataKey dataKey : dataKeys.values()) {
+            if (!kekId.equals(dataKey.getKekId())) {
+                rewrappedKeys.add(new DataKey(dataKey.getKeyId(), dataKey.getScope(),
+                        wrap(secretKeys.get(dataKey.getKeyId()), keyRotationConfig), kekId));
+            }
+        }
+        if (!rewrappedKeys.isEmpty()) {
+            DataKeyDAO.getInstance().updateDataKeys(rewrappedKeys, keyRotationConfig);
+            for (DataKey dataKey : rewrappedKeys) {
+                dataKeys.put(dataKey.getKeyId(), dataKey);
+            }
+        }
+        log.info("Rewrapped " + rewrappedKeys.size() + " data keys in " + DBConstants.IDN_KEY_ROTATION_DATA_KEY +
+                " with the new key, " + (dataKeys.size() - rewrappedKeys.size()) + " were already wrapped with it.");
+    }
+
+    /**
+     * Load the data keys, if they aren't loaded yet, and get the data key with the given identifier.
+     *
+     * @param keyId             Hex encoded identifier of the data key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The data key.
+     * @throws KeyRotationException Exception thrown if there is no such data key or while loading the data keys.
+     */
+    private synchronized String loadSecretKey(String keyId, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        if (!loaded) {
+            load(keyRotationConfig);
+        }
+        String secretKey = secretKeys.get(keyId);
+        if (secretKey == null) {
+            throw new KeyRotationException("The key with identifier " + keyId + " is neither in the keyring nor a " +
+                    "data key of " + DBConstants.IDN_KEY_ROTATION_DATA_KEY + ".");
+        }
+        return secretKey;
+    }
+
+    /**
+     * Create the data key of the given scope and store it wrapped with the new key. If another run stored a data key
+     * of the scope meanwhile, the data keys are reloaded and that one is used instead.
+     *
+     * @param scope             Scope of the values.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Hex encoded identifier of the data key.
+     * @throws KeyRotationException Exception thrown while loading, wrapping or storing the data key.
+     */
+    private synchronized String createDataKey(String scope, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        if (!loaded) {
+            load(keyRotationConfig);
+        }
+        String keyId = scopeKeyIds.get(scope);
+        if (keyId != null) {
+            return keyId;
+        }
+        byte[] randomBytes = new byte[KeyRotationConstants.DATA_KEY_LENGTH];
+        secureRandom.nextBytes(randomBytes);
+        String secretKey = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+        DataKey dataKey = new DataKey(CryptoProvider.getKeyId(secretKey), scope, wrap(secretKey, keyRotationConfig),
+                CryptoProvider.getKeyId(keyRotationConfig.getNewSecretKey()));
+        if (!DataKeyDAO.getInstance().insertDataKey(dataKey, keyRotationConfig)) {
+            load(keyRotationConfig);
+            keyId = scopeKeyIds.get(scope);
+            if (keyId == null) {
+                throw new KeyRotationException("Error while creating the data key of " + scope + ".");
+            }
+            return keyId;
+        }
+        add(dataKey, secretKey);
+        log.info("Created the data key " + dataKey.getKeyId() + " of " + scope + ".");
+        return dataKey.getKeyId();
+    }
+
+    /**
+     * Load and unwrap all the data keys stored in IDN_KEY_ROTATION_DATA_KEY.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while retrieving or unwrapping the data keys.
+     */
+    private void load(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        for (DataKey dataKey : DataKeyDAO.getInstance().getDataKeys(keyRotationConfig)) {
+            add(dataKey, unwrap(dataKey, keyRotationConfig));
+        }
+        loaded = true;
+        log.debug("Loaded " + dataKeys.size() + " data keys from " + DBConstants.IDN_KEY_ROTATION_DATA_KEY + ".");
+    }
+
+    /**
+     * Add an unwrapped data key to the store.
+     *
+     * @param dataKey   The stored data key.
+     * @param secretKey The unwrapped data key.
+     */
+    private void add(DataKey dataKey, String secretKey) {
+
+        secretKeys.put(dataKey.getKeyId(), secretKey);
+        dataKeys.put(dataKey.getKeyId(), dataKey);
+        scopeKeyIds.put(dataKey.getScope(), dataKey.getKeyId());
+    }
+
+    /**
+     * Wrap a data key with the new key.
+     *
+     * @param secretKey         The data key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Base64 encoded ciphertext of the data key.
+     * @throws KeyRotationException Exception thrown while encrypting the data key.
+     */
+    private String wrap(String secretKey, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        return Base64.getEncoder().encodeToString(
+                cryptoProvider.encrypt(secretKey.getBytes(StandardCharsets.UTF_8), keyRotationConfig));
+    }
+
+    /**
+     * Unwrap a stored data key. A data key is only unwrapped with a master key, that is a key of the keyring or the
+     * new key, and never with another data key.
+     *
+     * @param dataKey           The stored data key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The data key.
+     * @throws KeyRotationException Exception thrown if the master key isn't configured or while decrypting.
+     */
+    private String unwrap(DataKey dataKey, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        ParsedCiphertext parsedCiphertext = EncryptionUtil.parseCiphertext(dataKey.getWrappedKey());
+        String kekId = (parsedCiphertext != null) ? parsedCiphertext.getKeyId() : null;
+        if (kekId == null) {
+            throw new KeyRotationException("The data key " + dataKey.getKeyId() + " of " + dataKey.getScope() +
+                    " isn't wrapped with a master key.");
+        }
+        if (Keyring.getKeyring(keyRotationConfig).indexOf(kekId) < 0 &&
+                !kekId.equals(CryptoProvider.getKeyId(keyRotationConfig.getNewSecretKey()))) {
+            throw new KeyRotationException("The data key " + dataKey.getKeyId() + " of " + dataKey.getScope() +
+                    " is wrapped with the key " + kekId + ", which is neither in the keyring nor the new key.");
+        }
+        return new String(cryptoProvider.decrypt(parsedCiphertext, keyRotationConfig), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.function.Function;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This class holds a crypto backend of a JCE provider. Every thread keeps its own cipher per direction, so the
+ * re-encryption threads don't contend on the provider registry or the cipher lookup. The key specs aren't cached, so
+ * the keys aren't kept by the backends, which live as long as the process. They are created once per batch instead.
+ * A generated IV longer than the nonce of the transformation is folded into it by XOR, which keeps the nonces unique
+ * as long as either the folded or the remaining bytes of the generated IVs are unique.
+ */
+public class JceCryptoBackend implements CryptoBackend {
+
+    private final String name;
+    private final Provider provider;
+    private final String transformation;
+    private final String keyAlgorithm;
+    private final int ivLength;
+    private final Function<byte[], AlgorithmParameterSpec> parameterSpecs;
+    private final ThreadLocal<Cipher> encryptCiphers = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> decryptCiphers = new ThreadLocal<>();
+
+    /**
+     * Create a crypto backend.
+     *
+     * @param name           Name of the backend.
+     * @param provider       The security provider, or null if it isn't available in this JVM.
+     * @param transformation The transformation.
+     * @param keyAlgorithm   Algorithm of the key specs.
+     * @param ivLength       Nonce length of the transformation.
+     * @param parameterSpecs Function creating the cipher parameters from the IV.
+     */
+    public JceCryptoBackend(String name, Provider provider, String transformation, String keyAlgorithm, int ivLength,
+                            Function<byte[], AlgorithmParameterSpec> parameterSpecs) {
+
+        this.name = name;
+        this.provider = provider;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+        this.ivLength = ivLength;
+        this.parameterSpecs = parameterSpecs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getName() {
+
+        return name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getTransformation() {
+
+        return transformation;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cipher getCipher(int opmode) throws NoSuchAlgorithmException, NoSuchPaddingException {
+
+        ThreadLocal<Cipher> ciphers = (opmode == Cipher.ENCRYPT_MODE) ? encryptCiphers : decryptCiphers;
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            if (provider == null) {
+                throw new NoSuchAlgorithmException("The security provider of the " + name + " backend isn't " +
+                        "available.");
+            }
+            cipher = Cipher.getInstance(transformation, provider);
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SecretKeySpec getSecretKey(String secretKey) {
+
+        return new SecretKeySpec(secretKey.getBytes(), keyAlgorithm);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getIv(byte[] iv) {
+
+        if (iv.length <= ivLength) {
+            return iv;
+        }
+        byte[] nonce = new byte[ivLength];
+        for (int i = 0; i < iv.length; i++) {
+            nonce[i % ivLength] ^= iv[i];
+        }
+        return nonce;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AlgorithmParameterSpec getParameterSpec(byte[] iv) {
+
+        return parameterSpecs.apply(iv);
+    }
+}
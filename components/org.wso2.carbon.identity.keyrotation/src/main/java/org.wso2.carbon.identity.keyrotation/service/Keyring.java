@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the keys the stored values may be encrypted with, the old key followed by the retired keys in the
+ * configured order. The keys are told apart by the identifiers recorded in the ciphertexts, which are derived from
+ * the keys, and are logged under their configured labels. A keyring is built from the configuration for each batch,
+ * so the keys are only held as long as the configuration and the batch, and not in a long-lived cache.
+ */
+public class Keyring {
+
+    private static final Logger log = Logger.getLogger(Keyring.class);
+    private static final Set<String> loggedKeyrings = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final List<String> labels = new ArrayList<>();
+    private final List<String> keyIds = new ArrayList<>();
+    private final List<String> secretKeys = new ArrayList<>();
+
+    /**
+     * Build the keyring of the old and retired keys of the given configuration.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The keyring.
+     * @throws KeyRotationException Exception thrown if the retired keys are invalid.
+     */
+    public static Keyring getKeyring(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        return new Keyring(keyRotationConfig.getOldSecretKey(), keyRotationConfig.getRetiredSecretKeys());
+    }
+
+    /**
+     * Create the keyring of the given keys. The retired keys are given as comma separated label=key entries, where
+     * the label may be left out along with the '=' to log the key under its identifier.
+     *
+     * @param oldSecretKey      The old key, or null.
+     * @param retiredSecretKeys The retired keys, or null.
+     * @throws KeyRotationException Exception thrown if the retired keys are invalid.
+     */
+    private Keyring(String oldSecretKey, String retiredSecretKeys) throws KeyRotationException {
+
+        if (StringUtils.isNotBlank(oldSecretKey)) {
+            addKey(KeyRotationConstants.OLD_SECRET_KEY, oldSecretKey);
+        }
+        if (StringUtils.isNotBlank(retiredSecretKeys)) {
+            for (String entry : retiredSecretKeys.split(KeyRotationConstants.RETIRED_SECRET_KEY_SEPARATOR)) {
+                String label = entry.contains("=") ? StringUtils.substringBefore(entry, "=").trim() : null;
+                String secretKey = entry.contains("=") ? StringUtils.substringAfter(entry, "=").trim() : entry.trim();
+                if (secretKey.isEmpty() || "".equals(label)) {
+                    throw new KeyRotationException("Invalid retired secret key entry " + (keyIds.size() + 1) +
+                            ". Expected label=key or key.");
+                }
+                addKey(label, secretKey);
+            }
+        }
+        // Logged once per set of keys, which is told apart by the key identifiers instead of the keys.
+        if (keyIds.size() > 1 && loggedKeyrings.add(String.join(",", keyIds))) {
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < keyIds.size(); i++) {
+                keys.add(labels.get(i).equals(keyIds.get(i)) ? keyIds.get(i) :
+                        labels.get(i) + " (" + keyIds.get(i) + ")");
+            }
+            log.info("Decrypting the values with the keys " + String.join(", ", keys) + ".");
+        }
+    }
+
+    /**
+     * Add a key to the keyring, unless it is already in it.
+     *
+     * @param label     Label of the key, or null to log the key under its identifier.
+     * @param secretKey The key.
+     * @throws KeyRotationException Exception thrown while computing the key identifier.
+     */
+    private void addKey(String label, String secretKey) throws KeyRotationException {
+
+        String keyId = CryptoProvider.getKeyId(secretKey);
+        if (keyIds.contains(keyId)) {
+            // Logged once per keyring and skipped key, like the keys of the keyring.
+            if (loggedKeyrings.add(String.join(",", keyIds) + "=" + keyId)) {
+                log.warn("Skipping the key " + ((label != null) ? label : keyId) + ", which is already in the " +
+                        "keyring.");
+            }
+            return;
+        }
+        labels.add((label != null) ? label : keyId);
+        keyIds.add(keyId);
+        secretKeys.add(secretKey);
+    }
+
+    /**
+     * Get the number of keys of the keyring.
+     *
+     * @return Number of keys.
+     */
+    public int size() {
+
+        return keyIds.size();
+    }
+
+    /**
+     * Get for the label of the key at the given index.
+     *
+     * @param index Index of the key.
+     * @return Label of the key.
+     */
+    public String getLabel(int index) {
+
+        return labels.get(index);
+    }
+
+    /**
+     * Get for the key at the given index.
+     *
+     * @param index Index of the key.
+     * @return The key.
+     */
+    public String getSecretKey(int index) {
+
+        return secretKeys.get(index);
+    }
+
+    /**
+     * Get the index of the key with the given identifier.
+     *
+     * @param keyId Hex encoded key identifier.
+     * @return Index of the key, or -1 if it isn't in the keyring.
+     */
+    public int indexOf(String keyId) {
+
+        return keyIds.indexOf(keyId);
+    }
+}
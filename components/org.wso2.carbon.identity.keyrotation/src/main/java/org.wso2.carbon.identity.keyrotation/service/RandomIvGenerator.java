@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * This class generates random IVs from a deterministic random bit generator per thread, seeded once from the shared
+ * system source, so the threads don't serialize on the system source for every IV. Random 16 byte IVs are unique
+ * with overwhelming probability, but unlike the counter IVs not by construction.
+ */
+public class RandomIvGenerator implements IvGenerator {
+
+    private static final String DRBG_ALGORITHM = "SHA1PRNG";
+    private static final int SEED_LENGTH = 32;
+    private static final SecureRandom seedSource = new SecureRandom();
+    private final ThreadLocal<SecureRandom> randoms = new ThreadLocal<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] generate() {
+
+        SecureRandom random = randoms.get();
+        if (random == null) {
+            random = newRandom();
+            randoms.set(random);
+        }
+        byte[] iv = new byte[KeyRotationConstants.GCM_IV_LENGTH];
+        random.nextBytes(iv);
+        return iv;
+    }
+
+    /**
+     * Create the random bit generator of a thread. The seed is set before the first use, so the generator doesn't
+     * seed itself from a possibly blocking source.
+     *
+     * @return The random bit generator.
+     */
+    private SecureRandom newRandom() {
+
+        byte[] seed = new byte[SEED_LENGTH];
+        seedSource.nextBytes(seed);
+        SecureRandom random;
+        try {
+            random = SecureRandom.getInstance(DRBG_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The " + DRBG_ALGORITHM + " random bit generator isn't available.", e);
+        }
+        random.setSeed(seed);
+        return random;
+    }
+}
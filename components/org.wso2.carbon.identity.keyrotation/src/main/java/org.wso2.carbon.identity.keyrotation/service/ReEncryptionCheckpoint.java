@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the progress of the DB re-encryption in a local file, so that a crashed run can be resumed
+ * instead of starting every table from the beginning. The progress of the committed chunks is kept in memory and
+ * written by a single background flusher once per checkpoint interval, so the writers of the tables don't wait on
+ * the disk. The key ranges and completed tables are written at once. The file is replaced atomically so that a crash
+ * while writing it leaves the previous checkpoint intact.
+ */
+public class ReEncryptionCheckpoint {
+
+    private static final Logger log = Logger.getLogger(ReEncryptionCheckpoint.class);
+    private static final String COMPLETED = ".completed";
+    private static final String LAST_KEY = ".lastKey.";
+    private static final String BOUNDARY = ".boundary.";
+    private static final String BOUNDARY_COUNT = ".boundaries";
+    private static final String COUNTER = "counter.";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final long FLUSHER_TERMINATION_TIMEOUT = 60;
+    private final Path file;
+    private final Map<String, AtomicInteger> counters;
+    private final Properties progress = new Properties();
+    private final Object writeLock = new Object();
+    private final ScheduledExecutorService flusher;
+    private boolean dirty;
+    private volatile KeyRotationException flushFailure;
+
+    /**
+     * Open the checkpoint. When resuming, the progress and counters of the previous run are loaded, otherwise any
+     * previous checkpoint is discarded.
+     *
+     * @param file          Path of the checkpoint file.
+     * @param counters      Counters of the re-encryption, saved along with the progress and restored on resume.
+     * @param resume        True to continue from the checkpoint of the previous run.
+     * @param flushInterval Interval in milliseconds between the writes of the progress, 0 to write it at once.
+     * @throws KeyRotationException Exception thrown while reading or discarding the checkpoint file.
+     */
+    public ReEncryptionCheckpoint(String file, Map<String, AtomicInteger> counters, boolean resume,
+                                  int flushInterval) throws KeyRotationException {
+
+        this.file = Paths.get(file);
+        this.counters = counters;
+        try {
+            if (resume && Files.isRegularFile(this.file)) {
+                try (InputStream inputStream = Files.newInputStream(this.file)) {
+                    progress.load(inputStream);
+                }
+                for (Map.Entry<String, AtomicInteger> counter : counters.entrySet()) {
+                    counter.getValue().set(Integer.parseInt(
+                            progress.getProperty(COUNTER + counter.getKey(), String.valueOf(0))));
+                }
+                log.info("Resuming the DB re-encryption from the checkpoint in " + file + ".");
+            } else {
+                if (resume) {
+                    log.info("No checkpoint found in " + file + ", starting the DB re-encryption from the beginning.");
+                }
+                Files.deleteIfExists(this.file);
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new KeyRotationException("Error while reading the checkpoint file " + file + ".", e);
+        }
+        if (flushInterval > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "re-encryption-checkpoint-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Check whether a table was fully re-encrypted by a previous run.
+     *
+     * @param name Name of the table or table range.
+     * @return True if it is completed.
+     */
+    public synchronized boolean isCompleted(String name) {
+
+        return Boolean.parseBoolean(progress.getProperty(name + COMPLETED));
+    }
+
+    /**
+     * Get the key of the last record committed for a table by a previous run.
+     *
+     * @param name Name of the table or table range.
+     * @return Key columns of the last committed record, or null if there is no progress.
+     */
+    public synchronized String[] getLastKey(String name) {
+
+        List<String> key = new ArrayList<>();
+        String column;
+        while ((column = progress.getProperty(name + LAST_KEY + key.size())) != null) {
+            key.add(column);
+        }
+        return key.isEmpty() ? null : key.toArray(new String[0]);
+    }
+
+    /**
+     * Get the key range boundaries a table was split into by a previous run. A resumed run keeps them, so the
+     * committed keys of each range stay within that range.
+     *
+     * @param table Name of the table.
+     * @return The boundaries, or null if the table wasn't split before.
+     */
+    public synchronized List<String> getBoundaries(String table) {
+
+        if (progress.getProperty(table + BOUNDARY_COUNT) == null) {
+            return null;
+        }
+        List<String> boundaries = new ArrayList<>();
+        int count = Integer.parseInt(progress.getProperty(table + BOUNDARY_COUNT));
+        for (int i = 0; i < count; i++) {
+            boundaries.add(progress.getProperty(table + BOUNDARY + i));
+        }
+        return boundaries;
+    }
+
+    /**
+     * Save the key range boundaries a table is split into.
+     *
+     * @param table      Name of the table.
+     * @param boundaries The boundaries.
+     * @throws KeyRotationException Exception thrown while writing the checkpoint file.
+     */
+    public void saveBoundaries(String table, List<String> boundaries) throws KeyRotationException {
+
+        synchronized (this) {
+            progress.setProperty(table + BOUNDARY_COUNT, String.valueOf(boundaries.size()));
+            for (int i = 0; i < boundaries.size(); i++) {
+                progress.setProperty(table + BOUNDARY + i, boundaries.get(i));
+            }
+        }
+        write();
+    }
+
+    /**
+     * Save the key of the last committed record of a table, along with the current counters. The progress is written
+     * by the flusher, unless there is no checkpoint interval.
+     *
+     * @param name    Name of the table or table range.
+     * @param lastKey Key columns of the last committed record.
+     * @throws KeyRotationException Exception thrown while writing the checkpoint file, or if the flusher failed to
+     *                              write it.
+     */
+    public void saveProgress(String name, String[] lastKey) throws KeyRotationException {
+
+        if (flushFailure != null) {
+            throw flushFailure;
+        }
+        synchronized (this) {
+            for (int i = 0; i < lastKey.length; i++) {
+                progress.setProperty(name + LAST_KEY + i, lastKey[i]);
+            }
+            dirty = true;
+        }
+        if (flusher == null) {
+            write();
+        }
+    }
+
+    /**
+     * Mark a table as fully re-encrypted, along with the current counters.
+     *
+     * @param name Name of the table or table range.
+     * @throws KeyRotationException Exception thrown while writing the checkpoint file.
+     */
+    public void saveCompleted(String name) throws KeyRotationException {
+
+        synchronized (this) {
+            progress.setProperty(name + COMPLETED, Boolean.TRUE.toString());
+        }
+        write();
+    }
+
+    /**
+     * Stop the flusher and write the progress saved since its last write, so that a failed run resumes from the
+     * last committed chunks.
+     */
+    public void close() {
+
+        if (flusher != null) {
+            stopFlusher();
+            flush();
+        }
+    }
+
+    /**
+     * Delete the checkpoint once the DB re-encryption has completed.
+     */
+    public void delete() {
+
+        if (flusher != null) {
+            stopFlusher();
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Error while deleting the checkpoint file " + file + ".", e);
+        }
+    }
+
+    /**
+     * Stop the flusher and wait for a write in progress, so that it can't replace the checkpoint file afterwards.
+     */
+    private void stopFlusher() {
+
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(FLUSHER_TERMINATION_TIMEOUT, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for the checkpoint flusher to stop.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the progress saved since the last write, run by the flusher. A failure is raised by the next save of the
+     * progress.
+     */
+    private void flush() {
+
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+        }
+        try {
+            write();
+        } catch (KeyRotationException e) {
+            log.error("Error while writing the progress of the DB re-encryption to the checkpoint.", e);
+            flushFailure = e;
+        }
+    }
+
+    /**
+     * Write the checkpoint to a temporary file, flush it to the disk and move it over the checkpoint file. The
+     * progress is copied under the lock of the checkpoint, so saving the progress doesn't wait for the disk, and the
+     * writes are serialized so that an older copy never replaces a newer one.
+     *
+     * @throws KeyRotationException Exception thrown while writing the checkpoint file.
+     */
+    private void write() throws KeyRotationException {
+
+        synchronized (writeLock) {
+            Properties snapshot;
+            synchronized (this) {
+                for (Map.Entry<String, AtomicInteger> counter : counters.entrySet()) {
+                    progress.setProperty(COUNTER + counter.getKey(), String.valueOf(counter.getValue().get()));
+                }
+                snapshot = (Properties) progress.clone();
+                dirty = false;
+            }
+            Path tempFile = file.resolveSibling(file.getFileName() + TEMP_FILE_SUFFIX);
+            try {
+                try (FileOutputStream outputStream = new FileOutputStream(tempFile.toFile())) {
+                    snapshot.store(outputStream, "Key rotation DB re-encryption checkpoint");
+                    outputStream.getFD().sync();
+                }
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw new KeyRotationException("Error while writing the checkpoint file " + file + ".", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds the scheduler which runs the DB re-encryption stages on a bounded worker pool while limiting the
+ * number of stages running against each database at the same time.
+ */
+public class ReEncryptionScheduler {
+
+    private static final Logger log = Logger.getLogger(ReEncryptionScheduler.class);
+    private final int threads;
+    private final Map<String, Integer> databaseConcurrency;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param threads             Maximum number of stages running at the same time.
+     * @param databaseConcurrency Maximum number of stages running at the same time against each database.
+     */
+    public ReEncryptionScheduler(int threads, Map<String, Integer> databaseConcurrency) {
+
+        this.threads = Math.max(1, threads);
+        this.databaseConcurrency = databaseConcurrency;
+    }
+
+    /**
+     * Run the given stages. Stages are started in the given order as soon as a worker thread and a permit of their
+     * database are free. Once a stage fails no further stages are started, the running ones are allowed to finish
+     * and the first failure is thrown.
+     *
+     * @param stages Stages to be run.
+     * @throws KeyRotationException Exception thrown by the first failed stage.
+     */
+    public void run(List<ReEncryptionStage> stages) throws KeyRotationException {
+
+        Map<String, Semaphore> permits = new HashMap<>();
+        for (ReEncryptionStage stage : stages) {
+            if (!permits.containsKey(stage.getDatabase())) {
+                Integer limit = databaseConcurrency.get(stage.getDatabase());
+                permits.put(stage.getDatabase(), new Semaphore((limit == null) ? threads : Math.max(1, limit)));
+            }
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "re-encryption-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        List<ReEncryptionStage> pending = new ArrayList<>(stages);
+        KeyRotationException failure = null;
+        int running = 0;
+        try {
+            while (!pending.isEmpty() || running > 0) {
+                if (failure == null) {
+                    Iterator<ReEncryptionStage> iterator = pending.iterator();
+                    while (running < threads && iterator.hasNext()) {
+                        ReEncryptionStage stage = iterator.next();
+                        Semaphore semaphore = permits.get(stage.getDatabase());
+                        if (semaphore.tryAcquire()) {
+                            completionService.submit(() -> runStage(stage, semaphore));
+                            iterator.remove();
+                            running++;
+                        }
+                    }
+                }
+                if (running == 0) {
+                    break;
+                }
+                Future<Void> completed = completionService.take();
+                running--;
+                try {
+                    completed.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = (e.getCause() instanceof KeyRotationException) ?
+                                (KeyRotationException) e.getCause() :
+                                new KeyRotationException("Error while running the re-encryption stage.",
+                                        e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new KeyRotationException("Interrupted while waiting for the re-encryption stages.", e);
+        } finally {
+            executor.shutdown();
+        }
+        if (failure != null) {
+            for (ReEncryptionStage stage : pending) {
+                log.error("Skipped re-encryption stage " + stage.getName() + " due to an earlier failure.");
+            }
+            throw failure;
+        }
+    }
+
+    /**
+     * Run a single stage and release the permit of its database afterwards.
+     *
+     * @param stage     Stage to be run.
+     * @param semaphore Permits of the database of the stage.
+     * @return Nothing.
+     * @throws KeyRotationException Exception thrown while running the stage.
+     */
+    private Void runStage(ReEncryptionStage stage, Semaphore semaphore) throws KeyRotationException {
+
+        long startTime = System.currentTimeMillis();
+        log.info("Started re-encryption stage " + stage.getName() + " on the " + stage.getDatabase() + "...");
+        try {
+            stage.getTask().execute();
+            log.info("Finished re-encryption stage " + stage.getName() + " in " +
+                    (System.currentTimeMillis() - startTime) + " ms.");
+            return null;
+        } catch (KeyRotationException | RuntimeException e) {
+            log.error("Failed re-encryption stage " + stage.getName() + " after " +
+                    (System.currentTimeMillis() - startTime) + " ms.", e);
+            throw e;
+        } finally {
+            semaphore.release();
+        }
+    }
+}
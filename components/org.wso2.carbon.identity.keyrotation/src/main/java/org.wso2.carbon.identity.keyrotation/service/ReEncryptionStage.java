@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+/**
+ * This class holds a unit of DB re-encryption work which can be scheduled independently of the other units.
+ */
+public class ReEncryptionStage {
+
+    private final String name;
+    private final String database;
+    private final Task task;
+
+    /**
+     * Re-encryption work executed by a stage.
+     */
+    public interface Task {
+
+        /**
+         * Execute the re-encryption work of the stage.
+         *
+         * @throws KeyRotationException Exception thrown while re-encrypting the stage data.
+         */
+        void execute() throws KeyRotationException;
+    }
+
+    public ReEncryptionStage(String name, String database, Task task) {
+
+        this.name = name;
+        this.database = database;
+        this.task = task;
+    }
+
+    /**
+     * Get for the stage name.
+     *
+     * @return Name of the stage.
+     */
+    public String getName() {
+
+        return name;
+    }
+
+    /**
+     * Get for the database the stage works on.
+     *
+     * @return Database of the stage.
+     */
+    public String getDatabase() {
+
+        return database;
+    }
+
+    /**
+     * Get for the re-encryption work of the stage.
+     *
+     * @return Task of the stage.
+     */
+    public Task getTask() {
+
+        return task;
+    }
+}
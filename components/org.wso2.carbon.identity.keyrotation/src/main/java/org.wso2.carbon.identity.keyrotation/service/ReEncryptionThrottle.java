@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds the throttle of the DB re-encryption, which the writers of all the tables pass before writing a
+ * chunk, so that the re-encryption can run against a live database. The rows and chunks written per second are
+ * kept within the configured budgets, scaled by the time-of-day profile covering the current time. A chunk whose
+ * write takes longer than the maximum commit latency pauses every writer, and the pause doubles on each further slow
+ * chunk until a chunk is written within the latency again.
+ */
+public class ReEncryptionThrottle {
+
+    private static final Logger log = Logger.getLogger(ReEncryptionThrottle.class);
+    private static final ReEncryptionThrottle instance = new ReEncryptionThrottle();
+    private static final int MAX_BACKOFF_FACTOR = 64;
+    private static final long PAUSE_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int FULL_BUDGET = 100;
+    private volatile boolean enabled;
+    private List<Profile> profiles = Collections.emptyList();
+    private int maxRowsPerSecond;
+    private int maxBatchesPerSecond;
+    private long maxCommitLatencyNanos;
+    private long initialBackoffNanos;
+    private long backoffNanos;
+    private long pausedUntilNanos;
+    private long nextRowNanos;
+    private long nextBatchNanos;
+    private int percent = FULL_BUDGET;
+
+    /**
+     * A time-of-day profile, running the re-encryption at a percentage of its budgets between two times of the day.
+     */
+    private static class Profile {
+
+        private final LocalTime start;
+        private final LocalTime end;
+        private final int percent;
+
+        Profile(LocalTime start, LocalTime end, int percent) {
+
+            this.start = start;
+            this.end = end;
+            this.percent = percent;
+        }
+
+        boolean covers(LocalTime time) {
+
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+    }
+
+    public ReEncryptionThrottle() {
+
+    }
+
+    public static ReEncryptionThrottle getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Configure the throttle for a DB re-encryption run, discarding the state of a previous run.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown if the throttle profiles are invalid.
+     */
+    public synchronized void configure(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        profiles = parseProfiles(keyRotationConfig.getThrottleProfiles());
+        maxRowsPerSecond = keyRotationConfig.getMaxRowsPerSecond();
+        maxBatchesPerSecond = keyRotationConfig.getMaxBatchesPerSecond();
+        maxCommitLatencyNanos = TimeUnit.MILLISECONDS.toNanos(keyRotationConfig.getMaxCommitLatency());
+        initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(keyRotationConfig.getLatencyBackoffTime());
+        backoffNanos = 0;
+        pausedUntilNanos = 0;
+        nextRowNanos = 0;
+        nextBatchNanos = 0;
+        percent = FULL_BUDGET;
+        enabled = maxRowsPerSecond > 0 || maxBatchesPerSecond > 0 || maxCommitLatencyNanos > 0 ||
+                !profiles.isEmpty();
+        if (enabled) {
+            log.info(String.format("Throttling the DB re-encryption to %s rows and %s chunks per second, with a " +
+                            "maximum commit latency of %s and %d time-of-day profiles.",
+                    (maxRowsPerSecond > 0) ? maxRowsPerSecond : "unlimited",
+                    (maxBatchesPerSecond > 0) ? maxBatchesPerSecond : "unlimited",
+                    (maxCommitLatencyNanos > 0) ? keyRotationConfig.getMaxCommitLatency() + " ms" : "none",
+                    profiles.size()));
+        }
+        if (maxRowsPerSecond == 0 && maxBatchesPerSecond == 0) {
+            for (Profile profile : profiles) {
+                if (profile.percent > 0 && profile.percent < FULL_BUDGET) {
+                    log.warn(String.format("The throttle profile %s-%s=%d has no effect, as a profile only scales " +
+                                    "the %s and %s budgets and neither is set. Only profiles of 0 pause the DB " +
+                                    "re-encryption without a budget.", profile.start, profile.end, profile.percent,
+                            KeyRotationConstants.MAX_ROWS_PER_SECOND, KeyRotationConstants.MAX_BATCHES_PER_SECOND));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until a chunk may be written. Waits while the re-encryption is paused, then reserves the chunk and its
+     * rows in the budgets and waits until they are due.
+     *
+     * @param rows Number of rows of the chunk.
+     * @throws InterruptedException Exception thrown if interrupted while waiting.
+     */
+    public void acquire(int rows) throws InterruptedException {
+
+        if (!enabled) {
+            return;
+        }
+        long pauseNanos = getPauseNanos();
+        while (pauseNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(pauseNanos, PAUSE_CHECK_NANOS));
+            pauseNanos = getPauseNanos();
+        }
+        TimeUnit.NANOSECONDS.sleep(reserve(rows));
+    }
+
+    /**
+     * Check the write time of a chunk against the maximum commit latency. A slow chunk pauses the re-encryption,
+     * unless it was started before the current pause, as the chunks written in parallel when the database slowed
+     * down would otherwise extend the pause one after the other.
+     *
+     * @param name       Name of the table.
+     * @param startNanos Time the write of the chunk started.
+     * @param writeNanos Time spent writing the chunk.
+     */
+    public void chunkWritten(String name, long startNanos, long writeNanos) {
+
+        if (!enabled || maxCommitLatencyNanos == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (writeNanos <= maxCommitLatencyNanos) {
+                if (backoffNanos > 0 && startNanos - pausedUntilNanos >= 0) {
+                    backoffNanos = 0;
+                    log.info("Commit latency of the DB re-encryption is back within the limit.");
+                }
+                return;
+            }
+            if (backoffNanos > 0 && startNanos - pausedUntilNanos < 0) {
+                return;
+            }
+            backoffNanos = (backoffNanos == 0) ? initialBackoffNanos :
+                    Math.min(2 * backoffNanos, MAX_BACKOFF_FACTOR * initialBackoffNanos);
+            pausedUntilNanos = System.nanoTime() + backoffNanos;
+            log.warn(String.format("Writing a chunk of %s took %d ms, above the maximum commit latency of %d ms. " +
+                            "Pausing the DB re-encryption for %d ms.", name,
+                    TimeUnit.NANOSECONDS.toMillis(writeNanos), TimeUnit.NANOSECONDS.toMillis(maxCommitLatencyNanos),
+                    TimeUnit.NANOSECONDS.toMillis(backoffNanos)));
+        }
+    }
+
+    /**
+     * Get the remaining time of the current pause, either after a slow chunk or by a profile with no budget.
+     *
+     * @return Remaining pause time, or 0 if the re-encryption is not paused.
+     */
+    private synchronized long getPauseNanos() {
+
+        long pauseNanos = pausedUntilNanos - System.nanoTime();
+        if (pauseNanos > 0) {
+            return pauseNanos;
+        }
+        return (getPercent() == 0) ? PAUSE_CHECK_NANOS : 0;
+    }
+
+    /**
+     * Reserve a chunk and its rows in the budgets. Budgets left unused while idle are not saved up for later.
+     *
+     * @param rows Number of rows of the chunk.
+     * @return Time to wait until the chunk is due.
+     */
+    private synchronized long reserve(int rows) {
+
+        long now = System.nanoTime();
+        int currentPercent = Math.max(1, getPercent());
+        long dueNanos = now;
+        if (maxRowsPerSecond > 0) {
+            long rowStart = (nextRowNanos - now > 0) ? nextRowNanos : now;
+            nextRowNanos = rowStart + intervalNanos(rows, maxRowsPerSecond, currentPercent);
+            dueNanos = rowStart;
+        }
+        if (maxBatchesPerSecond > 0) {
+            long batchStart = (nextBatchNanos - now > 0) ? nextBatchNanos : now;
+            nextBatchNanos = batchStart + intervalNanos(1, maxBatchesPerSecond, currentPercent);
+            dueNanos = (batchStart - dueNanos > 0) ? batchStart : dueNanos;
+        }
+        return dueNanos - now;
+    }
+
+    /**
+     * Get the time taken by the given amount of a budget.
+     *
+     * @param amount    Amount of the budget.
+     * @param perSecond Budget per second.
+     * @param percent   Percentage of the budget in use.
+     * @return Time taken by the amount.
+     */
+    private static long intervalNanos(int amount, int perSecond, int percent) {
+
+        return (long) (amount * (double) TimeUnit.SECONDS.toNanos(1) * FULL_BUDGET / ((double) perSecond * percent));
+    }
+
+    /**
+     * Get the percentage of the budgets of the profile covering the current time, logging each change.
+     *
+     * @return Percentage of the budgets.
+     */
+    private int getPercent() {
+
+        int newPercent = FULL_BUDGET;
+        LocalTime now = LocalTime.now();
+        for (Profile profile : profiles) {
+            if (profile.covers(now)) {
+                newPercent = profile.percent;
+                break;
+            }
+        }
+        if (newPercent != percent) {
+            log.info((newPercent == 0) ? "Pausing the DB re-encryption for the current throttle profile." :
+                    "Running the DB re-encryption at " + newPercent + "% of its budgets for the current throttle " +
+                            "profile.");
+            percent = newPercent;
+        }
+        return newPercent;
+    }
+
+    /**
+     * Parse the time-of-day profiles, given as comma separated start-end=percent entries.
+     *
+     * @param throttleProfiles The profiles, or null.
+     * @return The parsed profiles.
+     * @throws KeyRotationException Exception thrown if a profile is invalid.
+     */
+    private static List<Profile> parseProfiles(String throttleProfiles) throws KeyRotationException {
+
+        List<Profile> profiles = new ArrayList<>();
+        if (StringUtils.isBlank(throttleProfiles)) {
+            return profiles;
+        }
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(KeyRotationConstants.THROTTLE_PROFILE_TIME_FORMAT);
+        for (String entry : throttleProfiles.split(KeyRotationConstants.THROTTLE_PROFILE_SEPARATOR)) {
+            String[] range = StringUtils.split(StringUtils.substringBefore(entry, "="), "-");
+            String percent = StringUtils.substringAfter(entry, "=").trim();
+            String message = "Invalid throttle profile: " + entry.trim() + ". Expected start-end=percent, e.g. " +
+                    "08:00-18:00=10.";
+            if (range.length != 2 || percent.isEmpty() || !StringUtils.isNumeric(percent)) {
+                throw new KeyRotationException(message);
+            }
+            try {
+                int profilePercent = Integer.parseInt(percent);
+                if (profilePercent > FULL_BUDGET) {
+                    throw new KeyRotationException(message);
+                }
+                profiles.add(new Profile(LocalTime.parse(range[0].trim(), formatter),
+                        LocalTime.parse(range[1].trim(), formatter), profilePercent));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new KeyRotationException(message, e);
+            }
+        }
+        return profiles;
+    }
+}
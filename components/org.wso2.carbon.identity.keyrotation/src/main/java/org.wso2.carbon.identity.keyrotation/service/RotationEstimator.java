@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.log4j.Logger;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.dao.BPSProfileDAO;
+import org.wso2.carbon.identity.keyrotation.dao.DBConstants;
+import org.wso2.carbon.identity.keyrotation.dao.IdentityDAO;
+import org.wso2.carbon.identity.keyrotation.dao.OAuthDAO;
+import org.wso2.carbon.identity.keyrotation.dao.RegistryDAO;
+import org.wso2.carbon.identity.keyrotation.dao.RowCountDAO;
+import org.wso2.carbon.identity.keyrotation.dao.WorkFlowDAO;
+import org.wso2.carbon.identity.keyrotation.model.BPSPassword;
+import org.wso2.carbon.identity.keyrotation.model.OAuthCode;
+import org.wso2.carbon.identity.keyrotation.model.OAuthSecret;
+import org.wso2.carbon.identity.keyrotation.model.OAuthToken;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
+import org.wso2.carbon.identity.keyrotation.model.RegistryProperty;
+import org.wso2.carbon.identity.keyrotation.model.TOTPSecret;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+import org.wso2.carbon.identity.workflow.mgt.bean.RequestParameter;
+import org.wso2.carbon.identity.workflow.mgt.dto.WorkflowRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.reEncryptBatch;
+
+/**
+ * This class holds the estimate mode of the DB re-encryption, which forecasts the duration and volume of a run
+ * without writing to the DB. The rows of each table are counted, a few chunks are read at the configured chunk size
+ * to time a DB round-trip, and the values of each sampled chunk are re-encrypted in memory as one batch, the way the
+ * run re-encrypts a chunk, to time the crypto and measure the rewritten ciphertext. The forecast assumes that writing
+ * a chunk takes as long as reading one, and that the read, re-encrypt and write steps of a table overlap in its
+ * pipeline.
+ */
+public class RotationEstimator {
+
+    private static final Logger log = Logger.getLogger(RotationEstimator.class);
+    private static final RotationEstimator instance = new RotationEstimator();
+    private static final int ROUND_TRIPS = 5;
+
+    /**
+     * Measurements of the sample of a table.
+     */
+    private static class TableEstimate {
+
+        private final String name;
+        private final long rowCount;
+        private int sampledRows;
+        private int rowsToReEncrypt;
+        private int reEncryptedValues;
+        private int plainTextValues;
+        private int rotatedValues;
+        private int failedValues;
+        private long cryptoNanos;
+        private long cipherBytes;
+        private int roundTrips;
+        private long roundTripNanos;
+
+        TableEstimate(String name, long rowCount) {
+
+            this.name = name;
+            this.rowCount = rowCount;
+        }
+
+        long getRowsToReEncrypt() {
+
+            return (sampledRows == 0) ? 0 : Math.round((double) rowCount * rowsToReEncrypt / sampledRows);
+        }
+
+        long getBytesRewritten() {
+
+            return (rowsToReEncrypt == 0) ? 0 : Math.round((double) getRowsToReEncrypt() * cipherBytes /
+                    rowsToReEncrypt);
+        }
+
+        long getChunks(int chunkSize) {
+
+            return (rowCount + chunkSize - 1) / chunkSize;
+        }
+
+        long getWriteTransactions(int chunkSize) {
+
+            return Math.min(getChunks(chunkSize), getRowsToReEncrypt());
+        }
+
+        long getDurationNanos(KeyRotationConfig keyRotationConfig) {
+
+            int chunkSize = keyRotationConfig.getChunkSize();
+            long chunkNanos = (roundTrips == 0) ? 0 : roundTripNanos / roundTrips;
+            long readNanos = getChunks(chunkSize) * chunkNanos;
+            long writeNanos = getWriteTransactions(chunkSize) * chunkNanos;
+            long reEncryptNanos = (sampledRows == 0) ? 0 : Math.round((double) rowCount * cryptoNanos / sampledRows /
+                    keyRotationConfig.getPipelineCryptoThreads());
+            long durationNanos = Math.max(readNanos, Math.max(reEncryptNanos, writeNanos));
+            if (keyRotationConfig.getMaxRowsPerSecond() > 0) {
+                durationNanos = Math.max(durationNanos, TimeUnit.SECONDS.toNanos(1) * getRowsToReEncrypt() /
+                        keyRotationConfig.getMaxRowsPerSecond());
+            }
+            if (keyRotationConfig.getMaxBatchesPerSecond() > 0) {
+                durationNanos = Math.max(durationNanos, TimeUnit.SECONDS.toNanos(1) *
+                        getWriteTransactions(chunkSize) / keyRotationConfig.getMaxBatchesPerSecond());
+            }
+            return durationNanos;
+        }
+    }
+
+    public RotationEstimator() {
+
+    }
+
+    public static RotationEstimator getInstance() {
+
+        return instance;
+    }
+
+    /**
+     * Estimate the DB re-encryption of the identity and registry DB data and log the forecast of each table.
+     *
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while reading the identity and registry DB data.
+     */
+    public void estimate(KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        log.info("Started estimating the re-encryption of identity and registry DB data. Nothing is written to the " +
+                "DB...");
+        RowCountDAO rowCountDAO = RowCountDAO.getInstance();
+        List<TableEstimate> estimates = new ArrayList<>();
+        if (KeyRotationConstants.DATA_KEY_ENVELOPE_REWRAP_ONLY.equals(keyRotationConfig.getDataKeyEnvelope())) {
+            log.info("Skipping the identity DB tables, whose values are encrypted with the rewrapped data keys.");
+        } else {
+            estimateIdentityTables(estimates, rowCountDAO, keyRotationConfig);
+        }
+        for (String property : Arrays.asList(KeyRotationConstants.REGISTRY_PASSWORD,
+                KeyRotationConstants.PRIVATE_KEY_PASS, KeyRotationConstants.SUBSCRIBER_PASSWORD)) {
+            estimates.add(this.<RegistryProperty>estimateTable("REG_PROPERTY " + property, null,
+                    rowCountDAO.getRegRowCount(DBConstants.COUNT_REG_PROPERTY_DATA, keyRotationConfig, property),
+                    (lastRecord, chunkSize) -> RegistryDAO.getInstance().getRegPropertyDataChunks(lastRecord,
+                            chunkSize, keyRotationConfig, property),
+                    regProperty -> Collections.singletonList(regProperty.getRegValue()), keyRotationConfig));
+        }
+        report(estimates, keyRotationConfig);
+        log.info("Finished estimating the re-encryption of identity and registry DB data.");
+    }
+
+    /**
+     * Estimate the DB re-encryption of the identity DB tables.
+     *
+     * @param estimates         Measurements of the samples, the ones of the identity DB tables are added to.
+     * @param rowCountDAO       Counts the rows of the tables.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @throws KeyRotationException Exception thrown while reading the identity DB data.
+     */
+    private void estimateIdentityTables(List<TableEstimate> estimates, RowCountDAO rowCountDAO,
+                                        KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        estimates.add(this.<TOTPSecret>estimateTable(DBConstants.IDN_IDENTITY_USER_DATA,
+                getScope(DBConstants.IDN_IDENTITY_USER_DATA, keyRotationConfig),
+                rowCountDAO.getIdnRowCount(DBConstants.COUNT_TOTP_SECRET, keyRotationConfig, DBConstants.SECRET_KEY,
+                        DBConstants.VERIFIED_SECRET_KEY),
+                (lastRecord, chunkSize) -> IdentityDAO.getInstance().getTOTPSecretsChunks(lastRecord, chunkSize,
+                        keyRotationConfig),
+                totpSecret -> Collections.singletonList(totpSecret.getDataValue()), keyRotationConfig));
+        estimates.add(this.<OAuthCode>estimateTable(DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE,
+                getScope(DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE, keyRotationConfig),
+                rowCountDAO.getIdnRowCount(String.format(DBConstants.COUNT_ROWS,
+                        DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE), keyRotationConfig),
+                (lastRecord, chunkSize) -> OAuthDAO.getInstance().getOAuthCodeChunks(
+                        (lastRecord == null) ? null : lastRecord.getCodeId(), null, chunkSize, keyRotationConfig),
+                oAuthCode -> Collections.singletonList(oAuthCode.getAuthorizationCode()), keyRotationConfig));
+        estimates.add(this.<OAuthToken>estimateTable(DBConstants.IDN_OAUTH2_ACCESS_TOKEN,
+                getScope(DBConstants.IDN_OAUTH2_ACCESS_TOKEN, keyRotationConfig),
+                rowCountDAO.getIdnRowCount(String.format(DBConstants.COUNT_ROWS, DBConstants.IDN_OAUTH2_ACCESS_TOKEN),
+                        keyRotationConfig),
+                (lastRecord, chunkSize) -> OAuthDAO.getInstance().getOAuthTokenChunks(
+                        (lastRecord == null) ? null : lastRecord.getTokenId(), null, chunkSize, keyRotationConfig),
+                oAuthToken -> Arrays.asList(oAuthToken.getAccessToken(), oAuthToken.getRefreshToken()),
+                keyRotationConfig));
+        estimates.add(this.<OAuthSecret>estimateTable(DBConstants.IDN_OAUTH_CONSUMER_APPS,
+                getScope(DBConstants.IDN_OAUTH_CONSUMER_APPS, keyRotationConfig),
+                rowCountDAO.getIdnRowCount(String.format(DBConstants.COUNT_ROWS, DBConstants.IDN_OAUTH_CONSUMER_APPS),
+                        keyRotationConfig),
+                (lastRecord, chunkSize) -> OAuthDAO.getInstance().getOAuthSecretChunks(lastRecord, chunkSize,
+                        keyRotationConfig),
+                oAuthSecret -> Collections.singletonList(oAuthSecret.getConsumerSecret()), keyRotationConfig));
+        estimates.add(this.<BPSPassword>estimateTable(DBConstants.WF_BPS_PROFILE,
+                getScope(DBConstants.WF_BPS_PROFILE, keyRotationConfig),
+                rowCountDAO.getIdnRowCount(String.format(DBConstants.COUNT_ROWS, DBConstants.WF_BPS_PROFILE),
+                        keyRotationConfig),
+                (lastRecord, chunkSize) -> BPSProfileDAO.getInstance().getBpsPasswordChunks(lastRecord, chunkSize,
+                        keyRotationConfig),
+                bpsPassword -> Collections.singletonList(bpsPassword.getPassword()), keyRotationConfig));
+        estimates.add(this.<WorkflowRequest>estimateTable(DBConstants.WF_REQUEST,
+                getScope(DBConstants.WF_REQUEST, keyRotationConfig),
+                rowCountDAO.getIdnRowCount(String.format(DBConstants.COUNT_ROWS, DBConstants.WF_REQUEST),
+                        keyRotationConfig),
+                (lastRecord, chunkSize) -> WorkFlowDAO.getInstance().getWFRequestChunks(
+                        (lastRecord == null) ? null : lastRecord.getUuid(), null, chunkSize, keyRotationConfig),
+                this::getCredentials, keyRotationConfig));
+    }
+
+    /**
+     * Count and sample a table. The first chunks are read at the configured chunk size to time the DB round-trip,
+     * and the rest of the sample is read in a single chunk.
+     *
+     * @param name              Name of the table.
+     * @param scope             Scope the values are re-encrypted in, or null to encrypt them with the new key.
+     * @param rowCount          Number of rows to be read by the re-encryption.
+     * @param reader            Reads the chunks of the table.
+     * @param valuesOf          Gets the encrypted values of a record.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param <T>               Type of the records of the table.
+     * @return Measurements of the sample.
+     * @throws KeyRotationException Exception thrown while reading the table.
+     */
+    private <T> TableEstimate estimateTable(String name, String scope, long rowCount,
+                                            ChunkPipeline.ChunkReader<T> reader, Function<T, List<String>> valuesOf,
+                                            KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        log.debug("Sampling " + name + " of " + rowCount + " rows...");
+        TableEstimate estimate = new TableEstimate(name, rowCount);
+        int sampleSize = keyRotationConfig.getEstimateSampleSize();
+        T lastRecord = null;
+        while (estimate.sampledRows < sampleSize) {
+            boolean roundTrip = estimate.roundTrips < ROUND_TRIPS;
+            int chunkSize = roundTrip ? Math.min(keyRotationConfig.getChunkSize(), sampleSize - estimate.sampledRows) :
+                    sampleSize - estimate.sampledRows;
+            long startTime = System.nanoTime();
+            List<T> chunk = reader.read(lastRecord, chunkSize);
+            if (CollectionUtils.isEmpty(chunk)) {
+                break;
+            }
+            if (roundTrip) {
+                estimate.roundTrips++;
+                estimate.roundTripNanos += System.nanoTime() - startTime;
+            }
+            sample(estimate, chunk, valuesOf, scope, keyRotationConfig);
+            lastRecord = chunk.get(chunk.size() - 1);
+        }
+        return estimate;
+    }
+
+    /**
+     * Re-encrypt the values of a sampled chunk in memory as one batch, timing the crypto and measuring the new
+     * ciphertext. A record is counted as to be re-encrypted if any of its values is rotated.
+     *
+     * @param estimate          Measurements of the sample.
+     * @param chunk             The sampled records.
+     * @param valuesOf          Gets the encrypted values of a record.
+     * @param scope             Scope the values are re-encrypted in, or null to encrypt them with the new key.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param <T>               Type of the records of the table.
+     * @throws KeyRotationException Exception thrown while setting up the re-encryption of the batch.
+     */
+    private <T> void sample(TableEstimate estimate, List<T> chunk, Function<T, List<String>> valuesOf, String scope,
+                            KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        List<String> values = new ArrayList<>();
+        int[] valueCounts = new int[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            List<String> recordValues = valuesOf.apply(chunk.get(i));
+            valueCounts[i] = recordValues.size();
+            values.addAll(recordValues);
+        }
+        long startTime = System.nanoTime();
+        ReEncryptionBatch batch = reEncryptBatch(values, scope, keyRotationConfig);
+        estimate.cryptoNanos += System.nanoTime() - startTime;
+        estimate.sampledRows += chunk.size();
+        int index = 0;
+        for (int valueCount : valueCounts) {
+            boolean reEncrypted = false;
+            for (int end = index + valueCount; index < end; index++) {
+                ReEncryptionBatch.Status status = batch.getStatus(index);
+                if (status == ReEncryptionBatch.Status.ROTATED) {
+                    estimate.cipherBytes += batch.getValue(index).length();
+                    estimate.reEncryptedValues++;
+                    reEncrypted = true;
+                } else if (status == ReEncryptionBatch.Status.PLAINTEXT_SKIPPED) {
+                    estimate.plainTextValues++;
+                } else if (status == ReEncryptionBatch.Status.ALREADY_ROTATED) {
+                    estimate.rotatedValues++;
+                } else {
+                    log.debug("Error while re-encrypting a sampled value of " + estimate.name + ".",
+                            batch.getFailure(index));
+                    estimate.failedValues++;
+                }
+            }
+            if (reEncrypted) {
+                estimate.rowsToReEncrypt++;
+            }
+        }
+    }
+
+    /**
+     * Get the scope the values of a table are re-encrypted in. With the data key envelope, the run encrypts the
+     * values with the data key of the table, so the values already encrypted with it are counted as already rotated.
+     * The estimate doesn't create data keys, hence the values of a table without one are estimated as encrypted with
+     * the new key, which takes as long.
+     *
+     * @param table             Name of the table.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The scope, or null to encrypt the values with the new key.
+     * @throws KeyRotationException Exception thrown while loading the data keys.
+     */
+    private static String getScope(String table, KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        if (KeyRotationConstants.DATA_KEY_ENVELOPE_DISABLED.equals(keyRotationConfig.getDataKeyEnvelope())) {
+            return table;
+        }
+        return (DataKeyStore.getInstance().findScopeKeyId(table, keyRotationConfig) != null) ? table : null;
+    }
+
+    /**
+     * Log the forecast of each table and of the whole run.
+     *
+     * @param estimates         Measurements of the samples.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     */
+    private void report(List<TableEstimate> estimates, KeyRotationConfig keyRotationConfig) {
+
+        int chunkSize = keyRotationConfig.getChunkSize();
+        long totalNanos = 0;
+        long totalBytes = 0;
+        long totalTransactions = 0;
+        for (TableEstimate estimate : estimates) {
+            long durationNanos = estimate.getDurationNanos(keyRotationConfig);
+            totalNanos += durationNanos;
+            totalBytes += estimate.getBytesRewritten();
+            totalTransactions += estimate.getWriteTransactions(chunkSize);
+            log.info(String.format("%s: %d rows, about %d to re-encrypt in %d chunks and %d write transactions, " +
+                            "%s rewritten, taking about %s.", estimate.name, estimate.rowCount,
+                    estimate.getRowsToReEncrypt(), estimate.getChunks(chunkSize),
+                    estimate.getWriteTransactions(chunkSize), formatBytes(estimate.getBytesRewritten()),
+                    formatDuration(durationNanos)));
+            log.info(String.format("%s sample: %d rows re-encrypted in %.3f ms per row, %d values re-encrypted, %d " +
+                            "plain text, %d already rotated, %d failed, %.1f ms per chunk round-trip.",
+                    estimate.name, estimate.sampledRows, (estimate.sampledRows == 0) ? 0 :
+                            estimate.cryptoNanos / 1e6 / estimate.sampledRows, estimate.reEncryptedValues,
+                    estimate.plainTextValues,
+                    estimate.rotatedValues, estimate.failedValues, (estimate.roundTrips == 0) ? 0 :
+                            estimate.roundTripNanos / 1e6 / estimate.roundTrips));
+        }
+        log.info(String.format("Total: %s rewritten in %d write transactions, taking about %s if the tables are " +
+                "re-encrypted one after the other.", formatBytes(totalBytes), totalTransactions,
+                formatDuration(totalNanos)));
+    }
+
+    /**
+     * Format a duration for the report.
+     *
+     * @param nanos The duration.
+     * @return The formatted duration.
+     */
+    private static String formatDuration(long nanos) {
+
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        if (seconds >= 3600) {
+            return String.format("%dh %02dm", seconds / 3600, (seconds / 60) % 60);
+        } else if (seconds >= 60) {
+            return String.format("%dm %02ds", seconds / 60, seconds % 60);
+        }
+        return String.format("%.1f s", nanos / 1e9);
+    }
+
+    /**
+     * Format a number of bytes for the report.
+     *
+     * @param bytes The number of bytes.
+     * @return The formatted number of bytes.
+     */
+    private static String formatBytes(long bytes) {
+
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int exponent = (int) (Math.log(bytes) / Math.log(1024));
+        return String.format("%.1f %sB", bytes / Math.pow(1024, exponent), "KMGTPE".charAt(exponent - 1));
+    }
+
+    /**
+     * Get the credential parameter values of a WF request.
+     *
+     * @param wfRequest The WF request.
+     * @return The credential values.
+     */
+    private List<String> getCredentials(WorkflowRequest wfRequest) {
+
+        List<String> credentials = new ArrayList<>();
+        for (RequestParameter parameter : wfRequest.getRequestParameters()) {
+            if (DBConstants.CREDENTIAL.equals(parameter.getName()) && parameter.getValue() != null) {
+                credentials.add(parameter.getValue().toString());
+            }
+        }
+        return credentials;
+    }
+}
@@ -22,22 +22,26 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.log4j.Logger;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
 import org.wso2.carbon.identity.keyrotation.dao.DBConstants;
+import org.wso2.carbon.identity.keyrotation.dao.FailureReport;
 import org.wso2.carbon.identity.keyrotation.dao.IdentityDAO;
 import org.wso2.carbon.identity.keyrotation.dao.OAuthDAO;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
 import org.wso2.carbon.identity.keyrotation.model.TempOAuthCode;
 import org.wso2.carbon.identity.keyrotation.model.TempOAuthScope;
 import org.wso2.carbon.identity.keyrotation.model.TempOAuthToken;
 import org.wso2.carbon.identity.keyrotation.model.TempTOTPSecret;
 import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.checkPlainText;
-import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.symmetricReEncryption;
+import static org.wso2.carbon.identity.keyrotation.util.EncryptionUtil.reEncryptBatch;
 
 /**
- * This class holds the synced data re-encryption service.
+ * This class holds the synced data re-encryption service. A synced record with a value failing to re-encrypt isn't
+ * transformed, and is recorded as failed, so the other synced records are still transformed.
  */
 public class SyncedDataKeyRotator {
 
@@ -105,29 +109,44 @@ public class SyncedDataKeyRotator {
         List<TempTOTPSecret> records = IdentityDAO.getInstance().getTempTOTPSecrets(totpIndex, keyRotationConfig);
         while (CollectionUtils.isNotEmpty(records)) {
             TempTOTPSecret record = records.get(0);
-            log.debug("RECORD " + record.getSyncId());
+            if (log.isDebugEnabled()) {
+                log.debug("RECORD " + record.getSyncId());
+            }
             if (record.getSynced() == 0) {
                 TempTOTPSecret latestRecord =
                         IdentityDAO.getInstance().getTempTOTPLatest(record, keyRotationConfig).get(0);
-                log.debug("latestRecord " + latestRecord.getSyncId());
+                if (log.isDebugEnabled()) {
+                    log.debug("latestRecord " + latestRecord.getSyncId());
+                }
                 List<TempTOTPSecret> previousSimilarRecords =
                         IdentityDAO.getInstance().getTempTOTPPrevious(latestRecord, keyRotationConfig);
                 for (TempTOTPSecret previousSimilarRecord : previousSimilarRecords) {
                     previousSimilarRecord.setSynced(1);
-                    log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    if (log.isDebugEnabled()) {
+                        log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    }
                 }
                 IdentityDAO.getInstance().updateTOTPPreviousSimilarRecords(previousSimilarRecords, keyRotationConfig);
+                boolean failed = false;
                 if ((DBConstants.SECRET_KEY.equals(latestRecord.getDataKey()) ||
                         DBConstants.VERIFIED_SECRET_KEY.equals(latestRecord.getDataKey())) &&
-                        latestRecord.getAvailability() == 1 &&
-                        !checkPlainText(latestRecord.getDataValue())) {
-                    log.debug("SYNC_ID " + totpIndex + " " + latestRecord.getSyncId());
-                    log.debug("Encrypted value " + latestRecord.getDataValue());
-                    String reEncryptedValue = symmetricReEncryption(latestRecord.getDataValue(), keyRotationConfig);
-                    latestRecord.setDataValue(reEncryptedValue);
-                    log.debug("Re-encrypted value " + latestRecord.getDataValue());
+                        latestRecord.getAvailability() == 1) {
+                    ReEncryptionBatch batch = reEncryptValues(DBConstants.IDN_IDENTITY_USER_DATA,
+                            latestRecord.getSyncId(), IdentityDAO.failedInsertCount, keyRotationConfig,
+                            latestRecord.getDataValue());
+                    failed = batch.getFirstFailure() != null;
+                    if (batch.getStatus(0) == ReEncryptionBatch.Status.ROTATED) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("SYNC_ID " + totpIndex + " " + latestRecord.getSyncId());
+                            log.debug("Encrypted value " + latestRecord.getDataValue());
+                        }
+                        latestRecord.setDataValue(batch.getValue(0));
+                        if (log.isDebugEnabled()) {
+                            log.debug("Re-encrypted value " + latestRecord.getDataValue());
+                        }
+                    }
                 }
-                if (latestRecord.getAvailability() == 1) {
+                if (latestRecord.getAvailability() == 1 && !failed) {
                     int updatedRecords = IdentityDAO.getInstance().updateTOTPSecret(latestRecord, keyRotationConfig);
                     if (updatedRecords == 0) {
                         IdentityDAO.getInstance().insertTOTPSecret(latestRecord, keyRotationConfig);
@@ -153,27 +172,42 @@ public class SyncedDataKeyRotator {
         List<TempOAuthCode> records = OAuthDAO.getInstance().getTempOAuthCode(codeIndex, keyRotationConfig);
         while (CollectionUtils.isNotEmpty(records)) {
             TempOAuthCode record = records.get(0);
-            log.debug("RECORD " + record.getSyncId());
+            if (log.isDebugEnabled()) {
+                log.debug("RECORD " + record.getSyncId());
+            }
             if (record.getSynced() == 0) {
                 TempOAuthCode latestRecord =
                         OAuthDAO.getInstance().getTempOAuthCodeLatest(record, keyRotationConfig).get(0);
-                log.debug("latestRecord " + latestRecord.getSyncId());
+                if (log.isDebugEnabled()) {
+                    log.debug("latestRecord " + latestRecord.getSyncId());
+                }
                 List<TempOAuthCode> previousSimilarRecords =
                         OAuthDAO.getInstance().getTempOAuthCodePrevious(latestRecord, keyRotationConfig);
                 for (TempOAuthCode previousSimilarRecord : previousSimilarRecords) {
                     previousSimilarRecord.setSynced(1);
-                    log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    if (log.isDebugEnabled()) {
+                        log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    }
                 }
                 OAuthDAO.getInstance().updateCodePreviousSimilarRecords(previousSimilarRecords, keyRotationConfig);
-                if (latestRecord.getAvailability() == 1 && !checkPlainText(latestRecord.getAuthorizationCode())) {
-                    log.debug("SYNC_ID " + codeIndex + " " + latestRecord.getSyncId());
-                    log.debug("Encrypted value " + latestRecord.getAuthorizationCode());
-                    String reEncryptedValue =
-                            symmetricReEncryption(latestRecord.getAuthorizationCode(), keyRotationConfig);
-                    latestRecord.setAuthorizationCode(reEncryptedValue);
-                    log.debug("Re-encrypted value " + latestRecord.getAuthorizationCode());
-                }
+                boolean failed = false;
                 if (latestRecord.getAvailability() == 1) {
+                    ReEncryptionBatch batch = reEncryptValues(DBConstants.IDN_OAUTH2_AUTHORIZATION_CODE,
+                            latestRecord.getSyncId(), OAuthDAO.failedInsertCodeCount, keyRotationConfig,
+                            latestRecord.getAuthorizationCode());
+                    failed = batch.getFirstFailure() != null;
+                    if (batch.getStatus(0) == ReEncryptionBatch.Status.ROTATED) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("SYNC_ID " + codeIndex + " " + latestRecord.getSyncId());
+                            log.debug("Encrypted value " + latestRecord.getAuthorizationCode());
+                        }
+                        latestRecord.setAuthorizationCode(batch.getValue(0));
+                        if (log.isDebugEnabled()) {
+                            log.debug("Re-encrypted value " + latestRecord.getAuthorizationCode());
+                        }
+                    }
+                }
+                if (latestRecord.getAvailability() == 1 && !failed) {
                     int updatedRecords = OAuthDAO.getInstance().updateOAuthCode(latestRecord, keyRotationConfig);
                     if (updatedRecords == 0) {
                         OAuthDAO.getInstance().insertOAuthCode(latestRecord, keyRotationConfig);
@@ -199,33 +233,48 @@ public class SyncedDataKeyRotator {
         List<TempOAuthToken> records = OAuthDAO.getInstance().getTempOAuthToken(tokenIndex, keyRotationConfig);
         while (CollectionUtils.isNotEmpty(records)) {
             TempOAuthToken record = records.get(0);
-            log.debug("RECORD " + record.getSyncId());
+            if (log.isDebugEnabled()) {
+                log.debug("RECORD " + record.getSyncId());
+            }
             if (record.getSynced() == 0) {
                 TempOAuthToken latestRecord =
                         OAuthDAO.getInstance().getTempOAuthTokenLatest(record, keyRotationConfig).get(0);
-                log.debug("latestRecord " + latestRecord.getSyncId());
+                if (log.isDebugEnabled()) {
+                    log.debug("latestRecord " + latestRecord.getSyncId());
+                }
                 List<TempOAuthToken> previousSimilarRecords =
                         OAuthDAO.getInstance().getTempOAuthTokenPrevious(latestRecord, keyRotationConfig);
                 for (TempOAuthToken previousSimilarRecord : previousSimilarRecords) {
                     previousSimilarRecord.setSynced(1);
-                    log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    if (log.isDebugEnabled()) {
+                        log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    }
                 }
                 OAuthDAO.getInstance().updateTokenPreviousSimilarRecords(previousSimilarRecords, keyRotationConfig);
-                if (latestRecord.getAvailability() == 1 && !checkPlainText(latestRecord.getAccessToken()) &&
-                        !checkPlainText(latestRecord.getRefreshToken())) {
-                    log.debug("SYNC_ID " + tokenIndex + " " + latestRecord.getSyncId());
-                    log.debug("Encrypted access token value " + latestRecord.getAccessToken());
-                    String accessTokenReEncryptedValue =
-                            symmetricReEncryption(latestRecord.getAccessToken(), keyRotationConfig);
-                    latestRecord.setAccessToken(accessTokenReEncryptedValue);
-                    log.debug("Re-encrypted value " + latestRecord.getAccessToken());
-                    log.debug("Encrypted refresh token value " + latestRecord.getRefreshToken());
-                    String refreshTokenReEncryptedValue =
-                            symmetricReEncryption(latestRecord.getRefreshToken(), keyRotationConfig);
-                    latestRecord.setRefreshToken(refreshTokenReEncryptedValue);
-                    log.debug("Re-encrypted value " + latestRecord.getRefreshToken());
-                }
+                boolean failed = false;
                 if (latestRecord.getAvailability() == 1) {
+                    // A token pair with a plaintext token is left as it is, and a pair whose access token is already
+                    // under the new key was re-encrypted before.
+                    ReEncryptionBatch batch = reEncryptValues(DBConstants.IDN_OAUTH2_ACCESS_TOKEN,
+                            latestRecord.getSyncId(), OAuthDAO.failedInsertTokenCount, keyRotationConfig,
+                            latestRecord.getAccessToken(), latestRecord.getRefreshToken());
+                    failed = batch.getFirstFailure() != null;
+                    if (batch.getStatus(0) == ReEncryptionBatch.Status.ROTATED &&
+                            batch.getStatus(1) != ReEncryptionBatch.Status.PLAINTEXT_SKIPPED) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("SYNC_ID " + tokenIndex + " " + latestRecord.getSyncId());
+                            log.debug("Encrypted access token value " + latestRecord.getAccessToken());
+                            log.debug("Encrypted refresh token value " + latestRecord.getRefreshToken());
+                        }
+                        latestRecord.setAccessToken(batch.getValue(0));
+                        latestRecord.setRefreshToken(batch.getValue(1));
+                        if (log.isDebugEnabled()) {
+                            log.debug("Re-encrypted access token value " + latestRecord.getAccessToken());
+                            log.debug("Re-encrypted refresh token value " + latestRecord.getRefreshToken());
+                        }
+                    }
+                }
+                if (latestRecord.getAvailability() == 1 && !failed) {
                     int updatedRecords = OAuthDAO.getInstance().updateOAuthToken(latestRecord, keyRotationConfig);
                     if (updatedRecords == 0) {
                         OAuthDAO.getInstance().insertOAuthToken(latestRecord, keyRotationConfig);
@@ -251,16 +300,22 @@ public class SyncedDataKeyRotator {
         List<TempOAuthScope> records = OAuthDAO.getInstance().getTempOAuthScope(scopeIndex, keyRotationConfig);
         while (CollectionUtils.isNotEmpty(records)) {
             TempOAuthScope record = records.get(0);
-            log.debug("RECORD " + record.getSyncId());
+            if (log.isDebugEnabled()) {
+                log.debug("RECORD " + record.getSyncId());
+            }
             if (record.getSynced() == 0) {
                 TempOAuthScope latestRecord =
                         OAuthDAO.getInstance().getTempOAuthScopeLatest(record, keyRotationConfig).get(0);
-                log.debug("latestRecord " + latestRecord.getSyncId());
+                if (log.isDebugEnabled()) {
+                    log.debug("latestRecord " + latestRecord.getSyncId());
+                }
                 List<TempOAuthScope> previousSimilarRecords =
                         OAuthDAO.getInstance().getTempOAuthScopePrevious(latestRecord, keyRotationConfig);
                 for (TempOAuthScope previousSimilarRecord : previousSimilarRecords) {
                     previousSimilarRecord.setSynced(1);
-                    log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    if (log.isDebugEnabled()) {
+                        log.debug("previousSimilarRecords " + previousSimilarRecord.getSyncId());
+                    }
                 }
                 OAuthDAO.getInstance().updateScopePreviousSimilarRecords(previousSimilarRecords, keyRotationConfig);
                 if (latestRecord.getAvailability() == 1) {
@@ -276,4 +331,30 @@ public class SyncedDataKeyRotator {
             records = OAuthDAO.getInstance().getTempOAuthScope(scopeIndex, keyRotationConfig);
         }
     }
+
+    /**
+     * Re-encryption of the values of a synced record as one batch. A record with a failed value is recorded as
+     * failed.
+     *
+     * @param scope             Name of the table the record is synced to.
+     * @param syncId            Sync id of the record.
+     * @param failedInsertCount Counter of the records which failed to transform.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @param values            The stored values of the record.
+     * @return The re-encrypted values along with the status of each value.
+     * @throws KeyRotationException Exception thrown while setting up the re-encryption of the batch.
+     */
+    private ReEncryptionBatch reEncryptValues(String scope, int syncId, AtomicInteger failedInsertCount,
+                                              KeyRotationConfig keyRotationConfig, String... values)
+            throws KeyRotationException {
+
+        ReEncryptionBatch batch = reEncryptBatch(Arrays.asList(values), scope, keyRotationConfig);
+        KeyRotationException failure = batch.getFirstFailure();
+        if (failure != null) {
+            String key = "sync id: " + syncId;
+            log.error("Error while re-encrypting " + scope + " of synced record with " + key + " ," + failure);
+            FailureReport.getInstance().recordFailure(scope, key, failure, failedInsertCount);
+        }
+        return batch;
+    }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.uuid.generator.UUIDGeneratorManager;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * This class generates the IVs from time based UUIDs, the same way as the identity server. The UUID generator
+ * serializes its callers on a shared clock and sequence, so it limits the throughput of concurrent encryption.
+ */
+public class TimeBasedIvGenerator implements IvGenerator {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] generate() {
+
+        byte[] iv = new byte[KeyRotationConstants.GCM_IV_LENGTH];
+        UUID timeBasedUUID = UUIDGeneratorManager.getTimeBasedUUIDGenerator().generate();
+        ByteBuffer byteBuffer = ByteBuffer.wrap(iv);
+        byteBuffer.putLong(timeBasedUUID.getMostSignificantBits());
+        byteBuffer.putLong(timeBasedUUID.getLeastSignificantBits());
+        return byteBuffer.array();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class holds a Base64 codec working on caller supplied arrays, so the re-encryption can decode and encode the
+ * stored values in the per-thread buffers of ReEncryptionBuffers instead of allocating an array per value. It uses
+ * the standard alphabet with padding and no line breaks, as the stored values are written.
+ */
+public class Base64Codec {
+
+    private static final int QUANTUM_CHARS = 4;
+    private static final int QUANTUM_BYTES = 3;
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final byte PADDING = '=';
+
+    /**
+     * Get the 6 bit value of a Base64 character.
+     *
+     * @param character The character.
+     * @return The value, or -1 if the character isn't in the Base64 alphabet.
+     */
+    public static int getValue(int character) {
+
+        if (character >= 'A' && character <= 'Z') {
+            return character - 'A';
+        }
+        if (character >= 'a' && character <= 'z') {
+            return character - 'a' + 26;
+        }
+        if (character >= '0' && character <= '9') {
+            return character - '0' + 52;
+        }
+        if (character == '+') {
+            return 62;
+        }
+        if (character == '/') {
+            return 63;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the largest number of bytes a value of the given number of Base64 characters decodes to.
+     *
+     * @param length Number of characters.
+     * @return Number of bytes.
+     */
+    public static int getMaxDecodedLength(int length) {
+
+        return (length + QUANTUM_CHARS - 1) / QUANTUM_CHARS * QUANTUM_BYTES;
+    }
+
+    /**
+     * Get the number of Base64 characters, including the padding, the given number of bytes encodes to.
+     *
+     * @param length Number of bytes.
+     * @return Number of characters.
+     */
+    public static int getEncodedLength(int length) {
+
+        return (length + QUANTUM_BYTES - 1) / QUANTUM_BYTES * QUANTUM_CHARS;
+    }
+
+    /**
+     * Decode a Base64 value, skipping the whitespace. The padding is optional.
+     *
+     * @param value       The Base64 value.
+     * @param destination Array of at least getMaxDecodedLength bytes to decode into.
+     * @return Number of decoded bytes, or -1 if the value isn't valid Base64.
+     */
+    public static int decode(String value, byte[] destination) {
+
+        int position = 0;
+        int bits = 0;
+        int bitCount = 0;
+        int padding = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char current = value.charAt(i);
+            if (current == ' ' || current == '\t' || current == '\n' || current == '\r') {
+                continue;
+            }
+            if (current == PADDING) {
+                padding++;
+                continue;
+            }
+            int sextet = getValue(current);
+            if (sextet < 0 || padding > 0) {
+                return -1;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                destination[position++] = (byte) (bits >> bitCount);
+            }
+        }
+        return (bitCount >= 6 || padding > 2) ? -1 : position;
+    }
+
+    /**
+     * Decode a Base64 value the way the MIME decoder does, skipping the characters which aren't in the alphabet and
+     * stopping at the padding.
+     *
+     * @param source      Array holding the value.
+     * @param start       Offset of the first character.
+     * @param end         Offset after the last character.
+     * @param destination Array of at least getMaxDecodedLength bytes to decode into.
+     * @return Number of decoded bytes, or -1 if the value isn't valid Base64.
+     */
+    public static int decodeMime(byte[] source, int start, int end, byte[] destination) {
+
+        int position = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = start; i < end && source[i] != PADDING; i++) {
+            int sextet = getValue(source[i]);
+            if (sextet < 0) {
+                continue;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                destination[position++] = (byte) (bits >> bitCount);
+            }
+        }
+        return bitCount >= 6 ? -1 : position;
+    }
+
+    /**
+     * Count the bytes a value decodes to the way decodeMime decodes it.
+     *
+     * @param source Array holding the value.
+     * @param start  Offset of the first character.
+     * @param end    Offset after the last character.
+     * @return Number of decoded bytes.
+     */
+    public static int getMimeDecodedLength(byte[] source, int start, int end) {
+
+        int sextets = 0;
+        for (int i = start; i < end && source[i] != PADDING; i++) {
+            if (getValue(source[i]) >= 0) {
+                sextets++;
+            }
+        }
+        return sextets * 6 / 8;
+    }
+
+    /**
+     * Encode bytes to Base64 with padding.
+     *
+     * @param source      Array holding the bytes.
+     * @param offset      Offset of the first byte.
+     * @param length      Number of bytes.
+     * @param destination Array to encode into, with room for getEncodedLength characters from the position.
+     * @param position    Offset of the first character in the destination.
+     * @return Offset after the last encoded character.
+     */
+    public static int encode(byte[] source, int offset, int length, byte[] destination, int position) {
+
+        int end = offset + length;
+        int i = offset;
+        for (; i + QUANTUM_BYTES <= end; i += QUANTUM_BYTES) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8 | (source[i + 2] & 0xFF);
+            destination[position++] = ALPHABET[bits >>> 18];
+            destination[position++] = ALPHABET[(bits >>> 12) & 0x3F];
+            destination[position++] = ALPHABET[(bits >>> 6) & 0x3F];
+            destination[position++] = ALPHABET[bits & 0x3F];
+        }
+        if (i < end) {
+            int bits = (source[i] & 0xFF) << 16 | ((i + 1 < end) ? (source[i + 1] & 0xFF) << 8 : 0);
+            destination[position++] = ALPHABET[bits >>> 18];
+            destination[position++] = ALPHABET[(bits >>> 12) & 0x3F];
+            destination[position++] = (i + 1 < end) ? ALPHABET[(bits >>> 6) & 0x3F] : PADDING;
+            destination[position++] = PADDING;
+        }
+        return position;
+    }
+}
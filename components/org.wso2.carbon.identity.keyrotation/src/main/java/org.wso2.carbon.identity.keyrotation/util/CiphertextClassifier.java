@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.util;
+
+/**
+ * This class holds a classifier telling self contained ciphertexts apart from plaintext values. Every ciphertext is
+ * stored as Base64, and its first decoded bytes are either the compact envelope header or the opening brace of the
+ * legacy JSON envelope, so most plaintext values are rejected from the characters and the first Base64 quantum alone,
+ * without decoding the value or throwing an exception. Only the candidates are decoded in full, to check the compact
+ * header or that the value is a single JSON object.
+ */
+public class CiphertextClassifier {
+
+    private static final int BASE64_QUANTUM_CHARS = 4;
+    private static final int WHITESPACE_LENGTH = -2;
+    private static final int BASE64_QUANTUM_BYTES = 3;
+    // The compact header up to the IV length byte, rounded up to whole Base64 quanta.
+    private static final int COMPACT_HEADER_BYTES = 3 + KeyRotationConstants.KEY_ID_LENGTH + 1;
+    private static final int COMPACT_HEADER_CHARS = (COMPACT_HEADER_BYTES + BASE64_QUANTUM_BYTES - 1) /
+            BASE64_QUANTUM_BYTES * BASE64_QUANTUM_CHARS;
+    private static final int COMPACT_MIN_BYTES = COMPACT_HEADER_BYTES + KeyRotationConstants.GCM_IV_LENGTH +
+            KeyRotationConstants.GCM_TAG_LENGTH;
+
+    /**
+     * The shape of a stored value as decided by the classifier.
+     */
+    public enum ValueType {
+
+        PLAINTEXT,
+        COMPACT_ENVELOPE,
+        LEGACY_ENVELOPE
+    }
+
+    /**
+     * To classify a stored value.
+     *
+     * @param fieldValue The stored value.
+     * @return The shape of the value.
+     */
+    public static ValueType classify(String fieldValue) {
+
+        if (!hasCiphertextPrefix(fieldValue)) {
+            return ValueType.PLAINTEXT;
+        }
+        byte[] value = ReEncryptionBuffers.getInstance().get(ReEncryptionBuffers.VALUE,
+                Base64Codec.getMaxDecodedLength(fieldValue.length()));
+        int length = Base64Codec.decode(fieldValue, value);
+        if (length < 0) {
+            return ValueType.PLAINTEXT;
+        }
+        if (KeyRotationServiceUtils.isCompactCiphertext(value, length)) {
+            return ValueType.COMPACT_ENVELOPE;
+        }
+        return LegacyEnvelopeParser.isJsonObject(value, length) ? ValueType.LEGACY_ENVELOPE : ValueType.PLAINTEXT;
+    }
+
+    /**
+     * To check if a stored value may be a ciphertext from its characters and first decoded bytes only. A value
+     * passing the check still has to be decoded to tell if it's a ciphertext, but a value failing it is plaintext.
+     * Values with line breaks are passed on to the full check once their other characters are checked, as the
+     * lenient Base64 decoding of the envelopes skips them.
+     *
+     * @param fieldValue The stored value.
+     * @return False if the value is plaintext.
+     */
+    public static boolean hasCiphertextPrefix(String fieldValue) {
+
+        int length = getBase64Length(fieldValue);
+        if (length == WHITESPACE_LENGTH) {
+            return true;
+        }
+        if (length < BASE64_QUANTUM_CHARS) {
+            return false;
+        }
+        int firstByte = decodeByte(fieldValue, 0);
+        if (firstByte == (KeyRotationConstants.COMPACT_ENVELOPE_MAGIC & 0xFF)) {
+            return isCompactHeader(fieldValue, length);
+        }
+        return firstByte == '{' || firstByte == ' ' || firstByte == '\t' || firstByte == '\n' || firstByte == '\r';
+    }
+
+    /**
+     * To check if a stored value is a self contained ciphertext in either envelope.
+     *
+     * @param fieldValue The stored value.
+     * @return True if the value is a ciphertext.
+     */
+    public static boolean isCiphertext(String fieldValue) {
+
+        return classify(fieldValue) != ValueType.PLAINTEXT;
+    }
+
+    /**
+     * Get the number of Base64 characters of a value, including the padding. The whitespace is skipped.
+     *
+     * @param fieldValue The stored value.
+     * @return The number of characters, WHITESPACE_LENGTH if the value holds whitespace, or -1 if the value holds
+     * any other character which isn't Base64, if the padding isn't at the end or if the number of characters isn't a
+     * whole number of Base64 quanta.
+     */
+    private static int getBase64Length(String fieldValue) {
+
+        if (fieldValue == null) {
+            return -1;
+        }
+        int length = 0;
+        int padding = 0;
+        boolean whitespace = false;
+        for (int i = 0; i < fieldValue.length(); i++) {
+            char current = fieldValue.charAt(i);
+            if (Character.isWhitespace(current)) {
+                whitespace = true;
+                continue;
+            }
+            if (current == '=') {
+                padding++;
+            } else if (padding > 0 || Base64Codec.getValue(current) < 0) {
+                return -1;
+            }
+            length++;
+        }
+        if (padding > 2 || length % BASE64_QUANTUM_CHARS != 0) {
+            return -1;
+        }
+        return whitespace ? WHITESPACE_LENGTH : length;
+    }
+
+    /**
+     * Decode the header of a compact envelope from its first Base64 characters and check it, together with the
+     * decoded length of the whole value.
+     *
+     * @param fieldValue The stored value.
+     * @param length     The number of Base64 characters of the value.
+     * @return True if the value has a valid compact envelope header.
+     */
+    private static boolean isCompactHeader(String fieldValue, int length) {
+
+        int padding = fieldValue.endsWith("==") ? 2 : fieldValue.endsWith("=") ? 1 : 0;
+        if (length < COMPACT_HEADER_CHARS ||
+                length / BASE64_QUANTUM_CHARS * BASE64_QUANTUM_BYTES - padding < COMPACT_MIN_BYTES) {
+            return false;
+        }
+        return decodeByte(fieldValue, 1) == KeyRotationConstants.COMPACT_ENVELOPE_VERSION &&
+                decodeByte(fieldValue, 2) == KeyRotationConstants.KEY_ID_LENGTH &&
+                decodeByte(fieldValue, COMPACT_HEADER_BYTES - 1) == KeyRotationConstants.GCM_IV_LENGTH;
+    }
+
+    /**
+     * Decode a single byte of a Base64 value from the two characters holding its bits.
+     *
+     * @param fieldValue The Base64 value, which must be valid up to the byte.
+     * @param index      Index of the decoded byte.
+     * @return The unsigned value of the decoded byte.
+     */
+    private static int decodeByte(String fieldValue, int index) {
+
+        int quantum = index / BASE64_QUANTUM_BYTES * BASE64_QUANTUM_CHARS;
+        int offset = index % BASE64_QUANTUM_BYTES;
+        int high = Base64Codec.getValue(fieldValue.charAt(quantum + offset));
+        int low = Base64Codec.getValue(fieldValue.charAt(quantum + offset + 1));
+        // The bits of a byte are split as 6+2, 4+4 or 2+6 between two characters.
+        return ((high << (2 + 2 * offset)) | (low >> (4 - 2 * offset))) & 0xFF;
+    }
+}
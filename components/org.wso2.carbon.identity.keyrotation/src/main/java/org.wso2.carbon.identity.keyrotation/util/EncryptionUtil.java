@@ -18,22 +18,46 @@
 
 package org.wso2.carbon.identity.keyrotation.util;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonParseException;
-import org.apache.axiom.om.util.Base64;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
-import org.wso2.carbon.identity.keyrotation.model.CipherMetaData;
+import org.wso2.carbon.identity.keyrotation.model.ParsedCiphertext;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
 import org.wso2.carbon.identity.keyrotation.service.CryptoProvider;
 
-import java.nio.charset.Charset;
+import java.util.List;
 
 /**
- * This class holds the re-encryption mechanism.
+ * This class holds the re-encryption mechanism. A stored value is Base64 decoded and parsed once by parseCiphertext,
+ * and the parsed ciphertext is reused to classify, check the key of and re-encrypt the value. The value is decoded,
+ * decrypted, encrypted and encoded in the per-thread ReEncryptionBuffers, so only the parsed IV and cipher and the
+ * re-encrypted column value are allocated per value.
  */
 public class EncryptionUtil {
 
-    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private static final CryptoProvider cryptoProvider = new CryptoProvider();
+
+    /**
+     * Parse a stored value in either the compact or the legacy envelope.
+     *
+     * @param fieldValue The stored value.
+     * @return The parsed ciphertext, or null if the value is plaintext.
+     */
+    public static ParsedCiphertext parseCiphertext(String fieldValue) {
+
+        if (!CiphertextClassifier.hasCiphertextPrefix(fieldValue)) {
+            return null;
+        }
+        byte[] value = ReEncryptionBuffers.getInstance().get(ReEncryptionBuffers.VALUE,
+                Base64Codec.getMaxDecodedLength(fieldValue.length()));
+        int length = Base64Codec.decode(fieldValue, value);
+        if (length < 0) {
+            return null;
+        }
+        if (KeyRotationServiceUtils.isCompactCiphertext(value, length)) {
+            return KeyRotationServiceUtils.parseCompactCiphertext(value, length);
+        }
+        // Plaintext data stored in the db isn't a JSON object.
+        return LegacyEnvelopeParser.parse(value, length);
+    }
 
     /**
      * Re-encryption mechanism needed for the key rotation task.
@@ -46,32 +70,95 @@ public class EncryptionUtil {
     public static String symmetricReEncryption(String cipher, KeyRotationConfig keyRotationConfig)
             throws KeyRotationException {
 
-        CryptoProvider cryptoProvider = new CryptoProvider();
-        byte[] refactoredCipher = cryptoProvider.reFactorCipherText(Base64.decode(cipher));
-        byte[] plainText = cryptoProvider.decrypt(refactoredCipher, keyRotationConfig);
-        byte[] cipherText = cryptoProvider.encrypt(plainText, keyRotationConfig);
-        return Base64.encode(cipherText);
+        ParsedCiphertext parsedCiphertext = parseCiphertext(cipher);
+        if (parsedCiphertext == null) {
+            throw new KeyRotationException("The value to be re-encrypted isn't encrypted.");
+        }
+        return symmetricReEncryption(parsedCiphertext, keyRotationConfig);
+    }
+
+    /**
+     * Re-encryption mechanism of an already parsed ciphertext.
+     *
+     * @param parsedCiphertext  The parsed ciphertext needed to perform re-encryption on.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return Ciphertext that gets decrypted from the old key and encrypted using the new key.
+     * @throws KeyRotationException Exception thrown while performing re-encryption.
+     */
+    public static String symmetricReEncryption(ParsedCiphertext parsedCiphertext, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        return cryptoProvider.reEncrypt(parsedCiphertext, keyRotationConfig);
     }
 
     /**
-     * To check if stored field value is encrypted or not.
+     * Re-encryption of a column of stored values as one batch.
+     *
+     * @param values            The stored values.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The re-encrypted values along with the status of each value.
+     * @throws KeyRotationException Exception thrown while setting up the batch.
+     */
+    public static ReEncryptionBatch reEncryptBatch(List<String> values, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        return cryptoProvider.reEncryptBatch(values, keyRotationConfig);
+    }
+
+    /**
+     * Re-encryption of a column of stored values of the given scope as one batch, with the data key of the scope if
+     * the data key envelope is enabled.
+     *
+     * @param values            The stored values.
+     * @param scope             Scope of the values.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return The re-encrypted values along with the status of each value.
+     * @throws KeyRotationException Exception thrown while setting up the batch.
+     */
+    public static ReEncryptionBatch reEncryptBatch(List<String> values, String scope,
+                                                   KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        return cryptoProvider.reEncryptBatch(values, scope, keyRotationConfig);
+    }
+
+    /**
+     * To check if a ciphertext was already re-encrypted with the new key, by comparing the key identifier recorded in
+     * its metadata instead of decrypting it.
+     *
+     * @param cipher            The ciphertext.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return True if the ciphertext was encrypted with the new key.
+     * @throws KeyRotationException Exception thrown while computing the key identifier.
+     */
+    public static boolean isEncryptedWithNewKey(String cipher, KeyRotationConfig keyRotationConfig)
+            throws KeyRotationException {
+
+        ParsedCiphertext parsedCiphertext = parseCiphertext(cipher);
+        return parsedCiphertext != null && isEncryptedWithNewKey(parsedCiphertext, keyRotationConfig);
+    }
+
+    /**
+     * To check if an already parsed ciphertext was re-encrypted with the new key.
+     *
+     * @param parsedCiphertext  The parsed ciphertext.
+     * @param keyRotationConfig Configuration data needed to perform the task.
+     * @return True if the ciphertext was encrypted with the new key.
+     * @throws KeyRotationException Exception thrown while computing the key identifier.
+     */
+    public static boolean isEncryptedWithNewKey(ParsedCiphertext parsedCiphertext,
+                                                KeyRotationConfig keyRotationConfig) throws KeyRotationException {
+
+        return CryptoProvider.getKeyId(keyRotationConfig.getNewSecretKey()).equals(parsedCiphertext.getKeyId());
+    }
+
+    /**
+     * To check if stored field value is encrypted or not, in either the compact or the legacy envelope.
      *
      * @param fieldValue The field value that needs to be checked whether it is encrypted or not.
      * @return Boolean value.
      */
     public static boolean checkPlainText(String fieldValue) {
 
-        String fieldValueStr = new String(Base64.decode(fieldValue), Charset.defaultCharset());
-        try {
-            CipherMetaData cipherMetaData = gson.fromJson(fieldValueStr, CipherMetaData.class);
-            if (cipherMetaData == null) {
-                // To capture plaintext data stored in the db through this condition.
-                return true;
-            }
-        } catch (JsonParseException e) {
-            // To capture plaintext data stored in the db through this exception.
-            return true;
-        }
-        return false;
+        return !CiphertextClassifier.isCiphertext(fieldValue);
     }
 }
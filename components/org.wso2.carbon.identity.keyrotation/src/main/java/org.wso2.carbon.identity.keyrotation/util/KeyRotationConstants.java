@@ -24,6 +24,8 @@ package org.wso2.carbon.identity.keyrotation.util;
 public class KeyRotationConstants {
 
     public static final String PROPERTY_FILE_NAME = "properties.yaml";
+    public static final String ESTIMATE_OPTION = "--estimate";
+    public static final String BENCHMARK_OPTION = "--benchmark";
     public static final String DEFAULT_PROPERTY_FILE_PATH = "components/org.wso2.carbon.identity" +
             ".keyrotation/src/main/resources/properties.yaml";
 
@@ -40,6 +42,54 @@ public class KeyRotationConstants {
     public static final String NEW_REG_USERNAME = "newRegUsername";
     public static final String NEW_REG_PASSWORD = "newRegPassword";
     public static final String CHUNK_SIZE = "chunkSize";
+    public static final String DB_REENCRYPTION_THREADS = "dbReEncryptionThreads";
+    public static final String NEW_IDN_DB_MAX_CONCURRENCY = "newIdnDBMaxConcurrency";
+    public static final String NEW_REG_DB_MAX_CONCURRENCY = "newRegDBMaxConcurrency";
+    public static final String TABLE_PARTITIONS = "tablePartitions";
+    public static final String PIPELINE_CRYPTO_THREADS = "pipelineCryptoThreads";
+    public static final String PIPELINE_QUEUE_SIZE = "pipelineQueueSize";
+    public static final String ENABLE_STREAMING_READ = "enableStreamingRead";
+    public static final String STREAM_FETCH_SIZE = "streamFetchSize";
+    public static final String DB_POOL_MIN_SIZE = "dbPoolMinSize";
+    public static final String DB_POOL_MAX_SIZE = "dbPoolMaxSize";
+    public static final String DB_POOL_VALIDATION_TIMEOUT = "dbPoolValidationTimeout";
+    public static final String DB_POOL_STATEMENT_CACHE_SIZE = "dbPoolStatementCacheSize";
+    public static final String CHECKPOINT_FILE = "checkpointFile";
+    public static final String ENABLE_RESUME = "enableResume";
+    public static final String CHECKPOINT_INTERVAL = "checkpointInterval";
+    public static final String DEFAULT_CHECKPOINT_FILE = "keyrotation-checkpoint.properties";
+    public static final String FAILURE_REPORT_FILE = "failureReportFile";
+    public static final String DEFAULT_FAILURE_REPORT_FILE = "keyrotation-failures.csv";
+    public static final String ENABLE_STAGING_TABLE_UPDATE = "enableStagingTableUpdate";
+    public static final String ENABLE_COMPACT_ENVELOPE = "enableCompactEnvelope";
+    public static final String IV_GENERATOR = "ivGenerator";
+    public static final String IV_GENERATOR_TIME_BASED = "timeBased";
+    public static final String IV_GENERATOR_COUNTER = "counter";
+    public static final String IV_GENERATOR_RANDOM = "random";
+    public static final String ENCRYPT_BACKEND = "encryptBackend";
+    public static final String DECRYPT_BACKEND = "decryptBackend";
+    public static final String CRYPTO_BACKEND_BC_AES_GCM = "bcAesGcm";
+    public static final String CRYPTO_BACKEND_JCE_AES_GCM = "jceAesGcm";
+    public static final String CRYPTO_BACKEND_BC_CHACHA20_POLY1305 = "bcChaCha20Poly1305";
+    public static final String CRYPTO_BACKEND_JCE_CHACHA20_POLY1305 = "jceChaCha20Poly1305";
+    public static final String RE_ENCRYPT_BATCH_THREADS = "reEncryptBatchThreads";
+    public static final String RETIRED_SECRET_KEYS = "retiredSecretKeys";
+    public static final String DATA_KEY_ENVELOPE = "dataKeyEnvelope";
+    public static final String DATA_KEY_ENVELOPE_DISABLED = "disabled";
+    public static final String DATA_KEY_ENVELOPE_ENABLED = "enabled";
+    public static final String DATA_KEY_ENVELOPE_REWRAP_ONLY = "rewrapOnly";
+    public static final String ENABLE_ADAPTIVE_CHUNK_SIZE = "enableAdaptiveChunkSize";
+    public static final String MIN_CHUNK_SIZE = "minChunkSize";
+    public static final String MAX_CHUNK_SIZE = "maxChunkSize";
+    public static final String TARGET_CHUNK_TIME = "targetChunkTime";
+    public static final String ENABLE_JMX_METRICS = "enableJmxMetrics";
+    public static final String PROMETHEUS_PORT = "prometheusPort";
+    public static final String MAX_ROWS_PER_SECOND = "maxRowsPerSecond";
+    public static final String MAX_BATCHES_PER_SECOND = "maxBatchesPerSecond";
+    public static final String MAX_COMMIT_LATENCY = "maxCommitLatency";
+    public static final String LATENCY_BACKOFF_TIME = "latencyBackoffTime";
+    public static final String THROTTLE_PROFILES = "throttleProfiles";
+    public static final String ESTIMATE_SAMPLE_SIZE = "estimateSampleSize";
     public static final String ENABLE_DB_MIGRATOR = "enableDBMigrator";
     public static final String ENABLE_CONFIG_MIGRATOR = "enableConfigMigrator";
     public static final String ENABLE_SYNC_MIGRATOR = "enableSyncMigrator";
@@ -106,11 +156,37 @@ public class KeyRotationConstants {
     public static final String REG_VALUE = "REG_VALUE";
     public static final String REG_TENANT_ID = "REG_TENANT_ID";
 
+    public static final String KEY_ID = "KEY_ID";
+    public static final String WRAPPED_KEY = "WRAPPED_KEY";
+    public static final String KEK_ID = "KEK_ID";
+
     public static final String USERSTORE_PROPERTY = "Property";
     public static final String PUBLISHER_PROPERTY = "property";
 
     public static final int GCM_IV_LENGTH = 16;
     public static final String JAVA_SECURITY_API_PROVIDER = "BC";
+    public static final String JCE_SECURITY_API_PROVIDER = "SunJCE";
+    public static final String CHACHA20_ALGORITHM = "ChaCha20";
+    public static final String CHACHA20_POLY1305_TRANSFORMATION = "ChaCha20-Poly1305";
+    public static final int CHACHA20_NONCE_LENGTH = 12;
+    public static final int BENCHMARK_ITERATIONS = 20000;
+    public static final int BENCHMARK_VALUE_LENGTH = 64;
+    // Smallest number of values a batch thread is given, below which the batch isn't split over the threads.
+    public static final int RE_ENCRYPT_BATCH_MIN_SLICE = 64;
+    public static final String KEY_ID_DIGEST_ALGORITHM = "SHA-256";
+    public static final String JMX_METRICS_OBJECT_NAME = "org.wso2.carbon.identity.keyrotation:type=TableMetrics,name=";
+    public static final String PROMETHEUS_METRICS_PATH = "/metrics";
+    public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final int KEY_ID_LENGTH = 8;
+    // Random bytes of a data key, which encode to a key string of 32 characters.
+    public static final int DATA_KEY_LENGTH = 24;
+    public static final int GCM_TAG_LENGTH = 16;
+    // Can't start a JSON envelope, which always starts with '{'.
+    public static final byte COMPACT_ENVELOPE_MAGIC = (byte) 0xCE;
+    public static final byte COMPACT_ENVELOPE_VERSION = 1;
+    public static final String THROTTLE_PROFILE_SEPARATOR = ",";
+    public static final String RETIRED_SECRET_KEY_SEPARATOR = ",";
+    public static final String THROTTLE_PROFILE_TIME_FORMAT = "HH:mm";
 
     public static final String REGISTRY_PASSWORD = "password";
     public static final String PRIVATE_KEY_PASS = "privatekeyPass";
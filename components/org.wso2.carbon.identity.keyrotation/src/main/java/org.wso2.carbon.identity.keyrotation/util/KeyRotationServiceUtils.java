@@ -24,11 +24,13 @@ import org.apache.axiom.om.util.Base64;
 import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
 import org.wso2.carbon.identity.keyrotation.model.CipherInitializationVector;
 import org.wso2.carbon.identity.keyrotation.model.CipherMetaData;
+import org.wso2.carbon.identity.keyrotation.model.ParsedCiphertext;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -41,6 +43,14 @@ import java.nio.file.Paths;
 public class KeyRotationServiceUtils {
 
     private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private static final byte[] INNER_CIPHER = "{\"cipher\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INNER_IV = "\",\"initializationVector\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OUTER_CIPHER = "{\"c\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OUTER_TRANSFORMATION = "\",\"t\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OUTER_IV = "\",\"iv\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OUTER_KEY_ID = "\",\"kid\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_END = "\"}".getBytes(StandardCharsets.US_ASCII);
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     /**
      * Creates and returns a self contained cipherText with IV.
@@ -75,6 +85,205 @@ public class KeyRotationServiceUtils {
         return cipherMetaData;
     }
 
+    /**
+     * Writes a self contained ciphertext in the legacy envelope, producing the same JSON as Gson does for the
+     * CipherMetaData holding the Base64 encoded CipherInitializationVector, without building either of them. The inner
+     * JSON is written into the INNER buffer and the envelope into the ENVELOPE buffer of the given buffers.
+     *
+     * @param cipherText       Array holding the ciphertext.
+     * @param cipherTextLength Length of the ciphertext.
+     * @param iv               The Initialization Vector.
+     * @param keyId            Hex encoded identifier of the key the cipher was encrypted with.
+     * @param transformation   The transformation the cipher was encrypted with.
+     * @param buffers          Buffers of the current thread.
+     * @return Length of the envelope in the ENVELOPE buffer.
+     */
+    public static int writeSelfContainedCiphertext(byte[] cipherText, int cipherTextLength, byte[] iv, String keyId,
+                                                   String transformation, ReEncryptionBuffers buffers) {
+
+        int encodedIvLength = Base64Codec.getEncodedLength(iv.length);
+        int innerLength = INNER_CIPHER.length + Base64Codec.getEncodedLength(cipherTextLength) + INNER_IV.length +
+                encodedIvLength + JSON_END.length;
+        byte[] inner = buffers.get(ReEncryptionBuffers.INNER, innerLength);
+        int position = put(INNER_CIPHER, inner, 0);
+        position = Base64Codec.encode(cipherText, 0, cipherTextLength, inner, position);
+        position = put(INNER_IV, inner, position);
+        position = Base64Codec.encode(iv, 0, iv.length, inner, position);
+        put(JSON_END, inner, position);
+
+        int envelopeLength = OUTER_CIPHER.length + Base64Codec.getEncodedLength(innerLength) +
+                OUTER_TRANSFORMATION.length + transformation.length() + OUTER_IV.length + encodedIvLength +
+                OUTER_KEY_ID.length + keyId.length() + JSON_END.length;
+        byte[] envelope = buffers.get(ReEncryptionBuffers.ENVELOPE, envelopeLength);
+        position = put(OUTER_CIPHER, envelope, 0);
+        position = Base64Codec.encode(inner, 0, innerLength, envelope, position);
+        position = put(OUTER_TRANSFORMATION, envelope, position);
+        position = put(transformation, envelope, position);
+        position = put(OUTER_IV, envelope, position);
+        position = Base64Codec.encode(iv, 0, iv.length, envelope, position);
+        position = put(OUTER_KEY_ID, envelope, position);
+        position = put(keyId, envelope, position);
+        return put(JSON_END, envelope, position);
+    }
+
+    /**
+     * Creates and returns a ciphertext in the compact envelope, laid out as the magic byte, the version, the key
+     * identifier length and bytes, the IV length and bytes, followed by the cipher. It replaces the two nested Base64
+     * encoded JSON documents of the legacy envelope with a single binary header.
+     *
+     * @param cipherText The ciphertext.
+     * @param iv         The Initialization Vector.
+     * @param keyId      Hex encoded identifier of the key the cipher was encrypted with.
+     * @return The ciphertext in the compact envelope.
+     */
+    public static byte[] createCompactCiphertext(byte[] cipherText, byte[] iv, String keyId) {
+
+        byte[] envelope = new byte[getCompactCiphertextLength(cipherText.length, iv, keyId)];
+        writeCompactCiphertext(cipherText, cipherText.length, iv, keyId, envelope);
+        return envelope;
+    }
+
+    /**
+     * Get the length of a ciphertext in the compact envelope.
+     *
+     * @param cipherTextLength Length of the ciphertext.
+     * @param iv               The Initialization Vector.
+     * @param keyId            Hex encoded identifier of the key the cipher was encrypted with.
+     * @return Length of the envelope.
+     */
+    public static int getCompactCiphertextLength(int cipherTextLength, byte[] iv, String keyId) {
+
+        return 4 + keyId.length() / 2 + iv.length + cipherTextLength;
+    }
+
+    /**
+     * Writes a ciphertext in the compact envelope into the given array.
+     *
+     * @param cipherText       Array holding the ciphertext.
+     * @param cipherTextLength Length of the ciphertext.
+     * @param iv               The Initialization Vector.
+     * @param keyId            Hex encoded identifier of the key the cipher was encrypted with.
+     * @param envelope         Array of at least getCompactCiphertextLength bytes to write into.
+     * @return Length of the envelope.
+     */
+    public static int writeCompactCiphertext(byte[] cipherText, int cipherTextLength, byte[] iv, String keyId,
+                                             byte[] envelope) {
+
+        int position = 0;
+        envelope[position++] = KeyRotationConstants.COMPACT_ENVELOPE_MAGIC;
+        envelope[position++] = KeyRotationConstants.COMPACT_ENVELOPE_VERSION;
+        envelope[position++] = (byte) (keyId.length() / 2);
+        for (int i = 0; i < keyId.length(); i += 2) {
+            envelope[position++] = (byte) (Character.digit(keyId.charAt(i), 16) << 4 |
+                    Character.digit(keyId.charAt(i + 1), 16));
+        }
+        envelope[position++] = (byte) iv.length;
+        System.arraycopy(iv, 0, envelope, position, iv.length);
+        position += iv.length;
+        System.arraycopy(cipherText, 0, envelope, position, cipherTextLength);
+        return position + cipherTextLength;
+    }
+
+    /**
+     * To check if a stored value is a ciphertext in the compact envelope. Besides the magic byte and the version, the
+     * header lengths must match the key identifier, IV and authentication tag lengths, so a legacy JSON envelope or
+     * a plaintext value isn't mistaken for one.
+     *
+     * @param value The Base64 decoded stored value.
+     * @return True if the value is in the compact envelope.
+     */
+    public static boolean isCompactCiphertext(byte[] value) {
+
+        return isCompactCiphertext(value, value.length);
+    }
+
+    /**
+     * To check if a stored value held by the first bytes of an array is a ciphertext in the compact envelope.
+     *
+     * @param value  The array holding the Base64 decoded stored value.
+     * @param length Length of the value.
+     * @return True if the value is in the compact envelope.
+     */
+    public static boolean isCompactCiphertext(byte[] value, int length) {
+
+        int ivLengthOffset = 3 + KeyRotationConstants.KEY_ID_LENGTH;
+        return length >= ivLengthOffset + 1 + KeyRotationConstants.GCM_IV_LENGTH +
+                KeyRotationConstants.GCM_TAG_LENGTH &&
+                value[0] == KeyRotationConstants.COMPACT_ENVELOPE_MAGIC &&
+                value[1] == KeyRotationConstants.COMPACT_ENVELOPE_VERSION &&
+                value[2] == KeyRotationConstants.KEY_ID_LENGTH &&
+                value[ivLengthOffset] == KeyRotationConstants.GCM_IV_LENGTH;
+    }
+
+    /**
+     * Reads the key identifier, IV and cipher of a ciphertext in the compact envelope.
+     *
+     * @param value The Base64 decoded stored value, which must be in the compact envelope.
+     * @return The ParsedCiphertext object.
+     */
+    public static ParsedCiphertext parseCompactCiphertext(byte[] value) {
+
+        return parseCompactCiphertext(value, value.length);
+    }
+
+    /**
+     * Reads the key identifier, IV and cipher of a ciphertext in the compact envelope held by the first bytes of an
+     * array.
+     *
+     * @param value  The array holding the Base64 decoded stored value, which must be in the compact envelope.
+     * @param length Length of the value.
+     * @return The ParsedCiphertext object.
+     */
+    public static ParsedCiphertext parseCompactCiphertext(byte[] value, int length) {
+
+        int keyIdLength = value[2];
+        char[] keyId = new char[2 * keyIdLength];
+        for (int i = 0; i < keyIdLength; i++) {
+            keyId[2 * i] = HEX_DIGITS[(value[3 + i] >> 4) & 0xF];
+            keyId[2 * i + 1] = HEX_DIGITS[value[3 + i] & 0xF];
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(value, 3 + keyIdLength, length - 3 - keyIdLength);
+        byte[] iv = new byte[byteBuffer.get()];
+        byteBuffer.get(iv);
+        byte[] cipherText = new byte[byteBuffer.remaining()];
+        byteBuffer.get(cipherText);
+        ParsedCiphertext parsedCiphertext = new ParsedCiphertext();
+        parsedCiphertext.setKeyId(new String(keyId));
+        parsedCiphertext.setIv(iv);
+        parsedCiphertext.setCipherText(cipherText);
+        return parsedCiphertext;
+    }
+
+    /**
+     * Copy bytes into an array.
+     *
+     * @param bytes       The bytes.
+     * @param destination Array to copy into.
+     * @param position    Offset to copy to.
+     * @return Offset after the copied bytes.
+     */
+    private static int put(byte[] bytes, byte[] destination, int position) {
+
+        System.arraycopy(bytes, 0, destination, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    /**
+     * Copy the characters of an ASCII string into an array.
+     *
+     * @param value       The string.
+     * @param destination Array to copy into.
+     * @param position    Offset to copy to.
+     * @return Offset after the copied characters.
+     */
+    private static int put(String value, byte[] destination, int position) {
+
+        for (int i = 0; i < value.length(); i++) {
+            destination[position++] = (byte) value.charAt(i);
+        }
+        return position;
+    }
+
     /**
      * To load the configurations of the properties.yaml file of the provided path.
      *
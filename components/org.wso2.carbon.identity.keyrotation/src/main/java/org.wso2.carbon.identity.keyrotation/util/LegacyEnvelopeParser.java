@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.util;
+
+import org.wso2.carbon.identity.keyrotation.model.ParsedCiphertext;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * This class holds a parser of the legacy JSON envelope, written by Gson from CipherMetaData and holding the Base64
+ * encoded CipherInitializationVector JSON in its c field. The parser reads the few string fields of those fixed shapes
+ * straight from the bytes instead of running a reflective Gson parse. The inner JSON is decoded into the per-thread
+ * buffers of ReEncryptionBuffers, so only the decoded IV, cipher and key identifier are allocated. Gson escapes the
+ * '=' padding of Base64 as a unicode escape unless HTML escaping is disabled, so escaped values are unescaped before
+ * decoding.
+ */
+public class LegacyEnvelopeParser {
+
+    private static final byte[] CIPHER_META_DATA_CIPHER = "c".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CIPHER_META_DATA_KEY_ID = "kid".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CIPHER_META_DATA_TRANSFORMATION = "t".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] KNOWN_TRANSFORMATIONS = {KeyRotationConstants.TRANSFORMATION,
+            KeyRotationConstants.CHACHA20_POLY1305_TRANSFORMATION};
+    private static final byte[][] KNOWN_TRANSFORMATION_BYTES = {
+            KeyRotationConstants.TRANSFORMATION.getBytes(StandardCharsets.US_ASCII),
+            KeyRotationConstants.CHACHA20_POLY1305_TRANSFORMATION.getBytes(StandardCharsets.US_ASCII)};
+    private static final byte[] CIPHER_IV_CIPHER = "cipher".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CIPHER_IV_IV = "initializationVector".getBytes(StandardCharsets.US_ASCII);
+    private static final Base64.Decoder decoder = Base64.getMimeDecoder();
+
+    /**
+     * Parse a stored value in the legacy envelope, reading the key identifier and transformation of the outer
+     * CipherMetaData and the IV and cipher of the inner CipherInitializationVector.
+     *
+     * @param value The Base64 decoded stored value.
+     * @return The parsed ciphertext, or null if the value isn't a JSON object and therefore not encrypted.
+     */
+    public static ParsedCiphertext parse(byte[] value) {
+
+        return parse(value, value.length);
+    }
+
+    /**
+     * Parse a stored value in the legacy envelope held by the first bytes of an array.
+     *
+     * @param value  The array holding the Base64 decoded stored value.
+     * @param length Length of the value.
+     * @return The parsed ciphertext, or null if the value isn't a JSON object and therefore not encrypted.
+     */
+    public static ParsedCiphertext parse(byte[] value, int length) {
+
+        int[] fields = findStringFields(value, length, CIPHER_META_DATA_CIPHER, CIPHER_META_DATA_KEY_ID,
+                CIPHER_META_DATA_TRANSFORMATION);
+        if (fields == null) {
+            return null;
+        }
+        ParsedCiphertext parsedCiphertext = null;
+        if (fields[0] >= 0) {
+            if (indexOfEscape(value, fields[0], fields[1]) < 0) {
+                byte[] inner = ReEncryptionBuffers.getInstance().get(ReEncryptionBuffers.INNER,
+                        Base64Codec.getMaxDecodedLength(fields[1] - fields[0]));
+                int innerLength = Base64Codec.decodeMime(value, fields[0], fields[1], inner);
+                if (innerLength >= 0) {
+                    parsedCiphertext = parseInner(inner, innerLength);
+                }
+            } else {
+                byte[] cipherInitializationVector = decodeField(value, fields[0], fields[1]);
+                if (cipherInitializationVector != null) {
+                    parsedCiphertext = parseInner(cipherInitializationVector);
+                }
+            }
+        }
+        if (parsedCiphertext == null) {
+            parsedCiphertext = new ParsedCiphertext();
+        }
+        if (fields[2] >= 0) {
+            parsedCiphertext.setKeyId(new String(unescape(value, fields[2], fields[3]), StandardCharsets.US_ASCII));
+        }
+        if (fields[4] >= 0) {
+            parsedCiphertext.setTransformation(readTransformation(value, fields[4], fields[5]));
+        }
+        return parsedCiphertext;
+    }
+
+    /**
+     * Read the t field of the outer CipherMetaData JSON. The transformations of the crypto backends are returned as
+     * their constants, so reading them doesn't allocate a string per value.
+     *
+     * @param value The Base64 decoded stored value.
+     * @param start Offset of the first byte of the field value.
+     * @param end   Offset after the last byte of the field value.
+     * @return The transformation.
+     */
+    private static String readTransformation(byte[] value, int start, int end) {
+
+        for (int i = 0; i < KNOWN_TRANSFORMATIONS.length; i++) {
+            if (equals(value, start, end, KNOWN_TRANSFORMATION_BYTES[i])) {
+                return KNOWN_TRANSFORMATIONS[i];
+            }
+        }
+        return new String(unescape(value, start, end), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Read the Base64 decoded c field of the outer CipherMetaData JSON, which is the inner CipherInitializationVector
+     * JSON.
+     *
+     * @param value The Base64 decoded stored value.
+     * @return The decoded c field, or null if the value isn't a JSON object with a c string field.
+     */
+    public static byte[] parseCipherField(byte[] value) {
+
+        int[] fields = findStringFields(value, value.length, CIPHER_META_DATA_CIPHER);
+        if (fields == null || fields[0] < 0) {
+            return null;
+        }
+        return decodeField(value, fields[0], fields[1]);
+    }
+
+    /**
+     * To check if a stored value is a JSON object, and therefore a ciphertext in the legacy envelope, without
+     * decoding any of its fields.
+     *
+     * @param value The Base64 decoded stored value.
+     * @return True if the value is a single JSON object.
+     */
+    public static boolean isJsonObject(byte[] value) {
+
+        return isJsonObject(value, value.length);
+    }
+
+    /**
+     * To check if a stored value held by the first bytes of an array is a JSON object.
+     *
+     * @param value  The array holding the Base64 decoded stored value.
+     * @param length Length of the value.
+     * @return True if the value is a single JSON object.
+     */
+    public static boolean isJsonObject(byte[] value, int length) {
+
+        return findStringFields(value, length) != null;
+    }
+
+    /**
+     * Parse the inner CipherInitializationVector JSON of the legacy envelope.
+     *
+     * @param cipherInitializationVector The inner JSON.
+     * @return The parsed IV and cipher, or null if the inner JSON isn't a JSON object.
+     */
+    public static ParsedCiphertext parseInner(byte[] cipherInitializationVector) {
+
+        return parseInner(cipherInitializationVector, cipherInitializationVector.length);
+    }
+
+    /**
+     * Parse the inner CipherInitializationVector JSON of the legacy envelope held by the first bytes of an array.
+     *
+     * @param cipherInitializationVector The array holding the inner JSON.
+     * @param length                     Length of the inner JSON.
+     * @return The parsed IV and cipher, or null if the inner JSON isn't a JSON object.
+     */
+    public static ParsedCiphertext parseInner(byte[] cipherInitializationVector, int length) {
+
+        int[] fields = findStringFields(cipherInitializationVector, length, CIPHER_IV_CIPHER, CIPHER_IV_IV);
+        if (fields == null) {
+            return null;
+        }
+        ParsedCiphertext parsedCiphertext = new ParsedCiphertext();
+        if (fields[0] >= 0) {
+            parsedCiphertext.setCipherText(decodeField(cipherInitializationVector, fields[0], fields[1]));
+        }
+        if (fields[2] >= 0) {
+            parsedCiphertext.setIv(decodeField(cipherInitializationVector, fields[2], fields[3]));
+        }
+        return parsedCiphertext;
+    }
+
+    /**
+     * Find the string values of the given top level fields of a JSON object in a single pass. Values of other types
+     * and nested values are skipped.
+     *
+     * @param json   The JSON bytes.
+     * @param length Length of the JSON.
+     * @param names  Names of the fields.
+     * @return The start and end offsets of the value of each field, between the quotes, with -1 for the fields which
+     * aren't present or aren't strings, or null if the bytes aren't a single JSON object.
+     */
+    private static int[] findStringFields(byte[] json, int length, byte[]... names) {
+
+        int[] fields = new int[names.length * 2];
+        Arrays.fill(fields, -1);
+        int position = skipWhitespace(json, length, 0);
+        if (position >= length || json[position] != '{') {
+            return null;
+        }
+        position = skipWhitespace(json, length, position + 1);
+        if (position < length && json[position] == '}') {
+            return skipWhitespace(json, length, position + 1) == length ? fields : null;
+        }
+        while (position < length && json[position] == '"') {
+            int nameStart = position + 1;
+            int nameEnd = skipString(json, length, position);
+            if (nameEnd < 0) {
+                return null;
+            }
+            position = skipWhitespace(json, length, nameEnd + 1);
+            if (position >= length || json[position] != ':') {
+                return null;
+            }
+            position = skipWhitespace(json, length, position + 1);
+            int valueEnd = skipValue(json, length, position);
+            if (valueEnd < 0) {
+                return null;
+            }
+            if (json[position] == '"') {
+                for (int i = 0; i < names.length; i++) {
+                    if (equals(json, nameStart, nameEnd, names[i])) {
+                        fields[2 * i] = position + 1;
+                        fields[2 * i + 1] = valueEnd - 1;
+                    }
+                }
+            }
+            position = skipWhitespace(json, length, valueEnd);
+            if (position >= length) {
+                return null;
+            }
+            if (json[position] == '}') {
+                return skipWhitespace(json, length, position + 1) == length ? fields : null;
+            }
+            if (json[position] != ',') {
+                return null;
+            }
+            position = skipWhitespace(json, length, position + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Skip a JSON value.
+     *
+     * @param json     The JSON bytes.
+     * @param length   Length of the JSON.
+     * @param position Offset of the first byte of the value.
+     * @return Offset after the value, or -1 if it's malformed.
+     */
+    private static int skipValue(byte[] json, int length, int position) {
+
+        if (position >= length) {
+            return -1;
+        }
+        if (json[position] == '"') {
+            int end = skipString(json, length, position);
+            return end < 0 ? -1 : end + 1;
+        }
+        int depth = 0;
+        while (position < length) {
+            byte current = json[position];
+            if (current == '"') {
+                position = skipString(json, length, position);
+                if (position < 0) {
+                    return -1;
+                }
+            } else if (current == '{' || current == '[') {
+                depth++;
+            } else if (current == '}' || current == ']') {
+                if (depth == 0) {
+                    return position;
+                }
+                depth--;
+            } else if (current == ',' && depth == 0) {
+                return position;
+            }
+            position++;
+        }
+        return depth == 0 ? position : -1;
+    }
+
+    /**
+     * Skip a JSON string.
+     *
+     * @param json     The JSON bytes.
+     * @param length   Length of the JSON.
+     * @param position Offset of the opening quote.
+     * @return Offset of the closing quote, or -1 if the string isn't terminated.
+     */
+    private static int skipString(byte[] json, int length, int position) {
+
+        for (int i = position + 1; i < length; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip the JSON whitespace.
+     *
+     * @param json     The JSON bytes.
+     * @param length   Length of the JSON.
+     * @param position Offset to start from.
+     * @return Offset of the first byte which isn't whitespace.
+     */
+    private static int skipWhitespace(byte[] json, int length, int position) {
+
+        while (position < length && (json[position] == ' ' || json[position] == '\t' ||
+                json[position] == '\n' || json[position] == '\r')) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Compare a field name with the given name without decoding it.
+     *
+     * @param json  The JSON bytes.
+     * @param start Offset of the first byte of the field name.
+     * @param end   Offset after the last byte of the field name.
+     * @param name  The name to compare with.
+     * @return True if the names are equal.
+     */
+    private static boolean equals(byte[] json, int start, int end, byte[] name) {
+
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (json[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Base64 decode a string value, unescaping it first only if it holds an escape sequence.
+     *
+     * @param json  The JSON bytes.
+     * @param start Offset of the first byte of the value.
+     * @param end   Offset after the last byte of the value.
+     * @return The decoded value, or null if it isn't valid Base64.
+     */
+    private static byte[] decodeField(byte[] json, int start, int end) {
+
+        if (indexOfEscape(json, start, end) < 0) {
+            byte[] decoded = new byte[Base64Codec.getMimeDecodedLength(json, start, end)];
+            return (Base64Codec.decodeMime(json, start, end, decoded) < 0) ? null : decoded;
+        }
+        ByteBuffer encoded = ByteBuffer.wrap(unescape(json, start, end));
+        ByteBuffer decoded;
+        try {
+            decoded = decoder.decode(encoded);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (decoded.arrayOffset() == 0 && decoded.remaining() == decoded.array().length) {
+            return decoded.array();
+        }
+        byte[] bytes = new byte[decoded.remaining()];
+        decoded.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Find the first escape sequence of a string value.
+     *
+     * @param json  The JSON bytes.
+     * @param start Offset of the first byte of the value.
+     * @param end   Offset after the last byte of the value.
+     * @return Offset of the backslash, or -1 if the value holds no escape sequence.
+     */
+    private static int indexOfEscape(byte[] json, int start, int end) {
+
+        for (int i = start; i < end; i++) {
+            if (json[i] == '\\') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Unescape a string value. Only the escapes of the ASCII characters which Base64, hex and Gson can produce are
+     * expected, so a unicode escape is narrowed to a single byte.
+     *
+     * @param json  The JSON bytes.
+     * @param start Offset of the first byte of the value.
+     * @param end   Offset after the last byte of the value.
+     * @return The unescaped value.
+     */
+    private static byte[] unescape(byte[] json, int start, int end) {
+
+        byte[] unescaped = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte current = json[i];
+            if (current == '\\' && i + 1 < end) {
+                byte escaped = json[++i];
+                if (escaped == 'u' && i + 4 < end) {
+                    int codePoint = 0;
+                    for (int j = i + 1; j <= i + 4; j++) {
+                        codePoint = (codePoint << 4) | Character.digit(json[j], 16);
+                    }
+                    current = (byte) codePoint;
+                    i += 4;
+                } else if (escaped == 'n') {
+                    current = '\n';
+                } else if (escaped == 'r') {
+                    current = '\r';
+                } else if (escaped == 't') {
+                    current = '\t';
+                } else {
+                    current = escaped;
+                }
+            }
+            unescaped[length++] = current;
+        }
+        return length == unescaped.length ? unescaped : Arrays.copyOf(unescaped, length);
+    }
+}
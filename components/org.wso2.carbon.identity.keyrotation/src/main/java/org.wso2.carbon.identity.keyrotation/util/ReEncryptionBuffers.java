@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.util;
+
+/**
+ * This class holds the scratch buffers of the re-encryption of a thread. The stored value is decoded, decrypted,
+ * encrypted and enveloped in these buffers and only the re-encrypted column value is materialized, so re-encrypting
+ * millions of rows doesn't allocate a handful of arrays per value. Each buffer grows to the largest value seen by the
+ * thread, and a buffer grown past MAX_POOLED_LENGTH for an unusually large value is dropped again afterwards. The
+ * contents of a buffer are only valid until the next call asking for the same buffer on the thread.
+ */
+public class ReEncryptionBuffers {
+
+    public static final int VALUE = 0;
+    public static final int INNER = 1;
+    public static final int PLAIN_TEXT = 2;
+    public static final int CIPHER_TEXT = 3;
+    public static final int ENVELOPE = 4;
+    public static final int ENCODED = 5;
+    private static final int BUFFER_COUNT = 6;
+    private static final int INITIAL_LENGTH = 512;
+    private static final int MAX_POOLED_LENGTH = 64 * 1024;
+    private static final ThreadLocal<ReEncryptionBuffers> instances = new ThreadLocal<>();
+    private final byte[][] buffers = new byte[BUFFER_COUNT][];
+
+    /**
+     * Get the buffers of the current thread.
+     *
+     * @return The buffers.
+     */
+    public static ReEncryptionBuffers getInstance() {
+
+        ReEncryptionBuffers instance = instances.get();
+        if (instance == null) {
+            instance = new ReEncryptionBuffers();
+            instances.set(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Get a buffer of at least the given length. A buffer longer than MAX_POOLED_LENGTH is only kept until a shorter
+     * one is asked for.
+     *
+     * @param buffer One of the buffer constants of this class.
+     * @param length Minimum length of the buffer.
+     * @return The buffer.
+     */
+    public byte[] get(int buffer, int length) {
+
+        byte[] bytes = buffers[buffer];
+        if (bytes == null || bytes.length < length ||
+                (bytes.length > MAX_POOLED_LENGTH && length <= MAX_POOLED_LENGTH)) {
+            int pooledLength = (bytes == null) ? INITIAL_LENGTH : Math.min(bytes.length * 2, MAX_POOLED_LENGTH);
+            bytes = new byte[Math.max(length, pooledLength)];
+            buffers[buffer] = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the buffer handed out last, holding the bytes written into it since.
+     *
+     * @param buffer One of the buffer constants of this class.
+     * @return The buffer.
+     */
+    public byte[] get(int buffer) {
+
+        return buffers[buffer];
+    }
+}
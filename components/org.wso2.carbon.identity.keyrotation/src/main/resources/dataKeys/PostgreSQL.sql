@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+-- The data keys are needed to decrypt the values encrypted with them, hence the table must never be dropped.
+CREATE TABLE IF NOT EXISTS IDN_KEY_ROTATION_DATA_KEY (
+                                           KEY_ID VARCHAR(16) NOT NULL,
+                                           SCOPE VARCHAR(255) NOT NULL,
+                                           WRAPPED_KEY VARCHAR(2048) NOT NULL,
+                                           KEK_ID VARCHAR(16) NOT NULL,
+                                           PRIMARY KEY (KEY_ID),
+                                           UNIQUE (SCOPE)
+);
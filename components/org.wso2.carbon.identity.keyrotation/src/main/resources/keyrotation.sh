@@ -17,10 +17,12 @@
 # under the License.
 #
 
-# Run the key-rotation java client using the provided path for properties.yaml file
+# Run the key-rotation java client using the provided path for properties.yaml file. Any further arguments, such as
+# --estimate, are passed on to the client.
 
 clear
 jar="$1"
 file="$2"
-java -jar "$jar" "$file"
+shift 2
+java -jar "$jar" "$file" "$@"
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of ConnectionPool against an in-memory H2 database, covering the reset of a returned connection and the
+ * validation of the connections idle for longer than POOL_VALIDATION_BYPASS_MILLIS.
+ */
+public class ConnectionPoolTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:connectionPool;DB_CLOSE_DELAY=-1";
+    private ConnectionPool connectionPool;
+
+    @Before
+    public void createPool() throws SQLException {
+
+        connectionPool = new ConnectionPool("test DB", DB_URL, "sa", "sa", 1, 1, 5, 20);
+    }
+
+    @After
+    public void closePool() {
+
+        connectionPool.close();
+    }
+
+    @Test
+    public void testReset() throws SQLException {
+
+        int defaultTransactionIsolation;
+        try (Connection connection = connectionPool.getConnection()) {
+            assertFalse(connection.isReadOnly());
+            defaultTransactionIsolation = connection.getTransactionIsolation();
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        }
+        try (Connection connection = connectionPool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+            assertFalse(connection.isReadOnly());
+            assertEquals(defaultTransactionIsolation, connection.getTransactionIsolation());
+        }
+    }
+
+    @Test
+    public void testValidationAfterIdle() throws SQLException, InterruptedException {
+
+        Connection physicalConnection;
+        try (Connection connection = connectionPool.getConnection()) {
+            physicalConnection = connection.unwrap(Connection.class);
+        }
+        // Reused as is when returned just now.
+        try (Connection connection = connectionPool.getConnection()) {
+            assertSame(physicalConnection, connection.unwrap(Connection.class));
+        }
+
+        // A connection broken while idle is discarded once it has been idle for longer than the bypass window.
+        physicalConnection.close();
+        Thread.sleep(DBConstants.POOL_VALIDATION_BYPASS_MILLIS + 100);
+        try (Connection connection = connectionPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            assertNotSame(physicalConnection, connection.unwrap(Connection.class));
+            assertTrue(resultSet.next());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.dao;
+
+import org.apache.axiom.om.util.Base64;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of KeyRangeDAO against an in-memory H2 database, covering the sampled boundaries and the failure to sample
+ * them, which fails the run instead of re-encrypting the table as a single range.
+ */
+public class KeyRangeDAOTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:keyRanges;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String DB_USERNAME = "sa";
+    private static final String TABLE = "IDN_OAUTH2_ACCESS_TOKEN";
+    private static final String KEY_COLUMN = "TOKEN_ID";
+
+    @BeforeClass
+    public static void createTable() throws SQLException {
+
+        try (Connection connection = DriverManager.getConnection(DB_URL, DB_USERNAME, DB_USERNAME);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + TABLE + " (" + KEY_COLUMN + " VARCHAR(255) PRIMARY KEY)");
+            try (PreparedStatement preparedStatement = connection.prepareStatement("INSERT INTO " + TABLE +
+                    " VALUES (?)")) {
+                for (int i = 0; i < 12; i++) {
+                    preparedStatement.setString(1, String.format("token-%02d", i));
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+            }
+        }
+    }
+
+    @After
+    public void closePools() {
+
+        DataSourceManager.getInstance().close();
+    }
+
+    @Test
+    public void testBoundaries() throws KeyRotationException {
+
+        assertEquals(Arrays.asList("token-02", "token-05", "token-08"),
+                KeyRangeDAO.getInstance().getKeyRangeBoundaries(TABLE, KEY_COLUMN, 4, createConfig()));
+        assertEquals(Collections.emptyList(),
+                KeyRangeDAO.getInstance().getKeyRangeBoundaries(TABLE, KEY_COLUMN, 13, createConfig()));
+    }
+
+    @Test
+    public void testSamplingError() {
+
+        try {
+            KeyRangeDAO.getInstance().getKeyRangeBoundaries(TABLE, "MISSING_COLUMN", 4, createConfig());
+            fail("The boundaries were sampled on a missing column.");
+        } catch (KeyRotationException e) {
+            assertTrue(e.getMessage().contains(TABLE));
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+    }
+
+    private static KeyRotationConfig createConfig() {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setNewIdnDBUrl(DB_URL);
+        keyRotationConfig.setNewIdnUsername(DB_USERNAME);
+        keyRotationConfig.setNewIdnPassword(Base64.encode(DB_USERNAME.getBytes(StandardCharsets.UTF_8)));
+        return keyRotationConfig;
+    }
+}
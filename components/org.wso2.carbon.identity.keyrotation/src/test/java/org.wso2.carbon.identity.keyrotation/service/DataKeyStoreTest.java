@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.axiom.om.util.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.dao.DataSourceManager;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
+import org.wso2.carbon.identity.keyrotation.util.EncryptionUtil;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of DataKeyStore against an in-memory H2 database, covering the creation of the data keys, wrapping them with
+ * the new key, unwrapping them with the keys of the keyring and rewrapping them when the master key is rotated.
+ */
+public class DataKeyStoreTest {
+
+    private static final String OLD_SECRET_KEY = "03BAFEB27A8E871CAD83C5CD4E771DAB";
+    private static final String NEW_SECRET_KEY = "b988c775c435f05c3da1fbecfe76c1e7";
+    private static final String THIRD_SECRET_KEY = "0123456789abcdef0123456789abcdef";
+    private static final String SCOPE = "IDN_OAUTH2_ACCESS_TOKEN";
+    private static final String DB_USERNAME = "sa";
+    private static int dbCount;
+    private String dbUrl;
+
+    @Before
+    public void createDataKeyTable() throws SQLException {
+
+        // A database per test, as the data keys of a store are loaded once.
+        dbUrl = "jdbc:h2:mem:dataKeys" + (++dbCount) + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        try (Connection connection = DriverManager.getConnection(dbUrl, DB_USERNAME, DB_USERNAME);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IDN_KEY_ROTATION_DATA_KEY (KEY_ID VARCHAR(16) NOT NULL, SCOPE " +
+                    "VARCHAR(255) NOT NULL, WRAPPED_KEY VARCHAR(2048) NOT NULL, KEK_ID VARCHAR(16) NOT NULL, " +
+                    "PRIMARY KEY (KEY_ID), UNIQUE (SCOPE))");
+        }
+    }
+
+    @After
+    public void closePools() {
+
+        DataSourceManager.getInstance().close();
+    }
+
+    @Test
+    public void testCreateDataKey() throws KeyRotationException, SQLException {
+
+        KeyRotationConfig keyRotationConfig = createConfig(OLD_SECRET_KEY, NEW_SECRET_KEY);
+        DataKeyStore dataKeyStore = new DataKeyStore();
+        String keyId = dataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig);
+        assertEquals(keyId, dataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig));
+        assertEquals(1, countDataKeys());
+        assertEquals(CryptoProvider.getKeyId(NEW_SECRET_KEY), getKekId(SCOPE));
+        assertEquals(CryptoProvider.getKeyId(NEW_SECRET_KEY),
+                EncryptionUtil.parseCiphertext(getWrappedKey(SCOPE)).getKeyId());
+        String secretKey = dataKeyStore.getSecretKey(keyId, keyRotationConfig);
+        assertEquals(keyId, CryptoProvider.getKeyId(secretKey));
+
+        DataKeyStore loadedDataKeyStore = new DataKeyStore();
+        assertEquals(keyId, loadedDataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig));
+        assertEquals(secretKey, loadedDataKeyStore.getSecretKey(keyId, keyRotationConfig));
+        assertEquals(1, countDataKeys());
+    }
+
+    @Test
+    public void testFindScopeKeyIdDoesNotCreate() throws KeyRotationException, SQLException {
+
+        KeyRotationConfig keyRotationConfig = createConfig(OLD_SECRET_KEY, NEW_SECRET_KEY);
+        DataKeyStore dataKeyStore = new DataKeyStore();
+        assertNull(dataKeyStore.findScopeKeyId(SCOPE, keyRotationConfig));
+        assertEquals(0, countDataKeys());
+        String keyId = dataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig);
+        assertEquals(keyId, dataKeyStore.findScopeKeyId(SCOPE, keyRotationConfig));
+        assertEquals(keyId, new DataKeyStore().findScopeKeyId(SCOPE, keyRotationConfig));
+    }
+
+    @Test
+    public void testCreateDataKeyInsertedMeanwhile() throws KeyRotationException, SQLException {
+
+        KeyRotationConfig keyRotationConfig = createConfig(OLD_SECRET_KEY, NEW_SECRET_KEY);
+        DataKeyStore dataKeyStore = new DataKeyStore();
+        assertNull(dataKeyStore.findScopeKeyId(SCOPE, keyRotationConfig));
+        DataKeyStore otherDataKeyStore = new DataKeyStore();
+        String keyId = otherDataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig);
+
+        // The insert conflicts with the data key of the other store, which is then loaded and used instead.
+        assertEquals(keyId, dataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig));
+        assertEquals(otherDataKeyStore.getSecretKey(keyId, keyRotationConfig),
+                dataKeyStore.getSecretKey(keyId, keyRotationConfig));
+        assertEquals(1, countDataKeys());
+    }
+
+    @Test
+    public void testUnwrapWithKeyring() throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = createConfig(OLD_SECRET_KEY, NEW_SECRET_KEY);
+        String keyId = new DataKeyStore().getScopeKeyId(SCOPE, keyRotationConfig);
+        String secretKey = new DataKeyStore().getSecretKey(keyId, keyRotationConfig);
+
+        // Unwrapped with the old key, and with a retired key.
+        assertEquals(secretKey, new DataKeyStore().getSecretKey(keyId, createConfig(NEW_SECRET_KEY,
+                THIRD_SECRET_KEY)));
+        KeyRotationConfig retiredConfig = createConfig(THIRD_SECRET_KEY, THIRD_SECRET_KEY);
+        retiredConfig.setRetiredSecretKeys("previous=" + NEW_SECRET_KEY);
+        assertEquals(secretKey, new DataKeyStore().getSecretKey(keyId, retiredConfig));
+
+        // Never unwrapped with a key which is neither in the keyring nor the new key.
+        try {
+            new DataKeyStore().getSecretKey(keyId, createConfig(THIRD_SECRET_KEY, THIRD_SECRET_KEY));
+            fail("The data key was unwrapped without its master key.");
+        } catch (KeyRotationException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnknownKeyId() throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = createConfig(OLD_SECRET_KEY, NEW_SECRET_KEY);
+        new DataKeyStore().getScopeKeyId(SCOPE, keyRotationConfig);
+        try {
+            new DataKeyStore().getSecretKey(CryptoProvider.getKeyId(THIRD_SECRET_KEY), keyRotationConfig);
+            fail("A data key was returned for an unknown key identifier.");
+        } catch (KeyRotationException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRewrap() throws KeyRotationException, SQLException {
+
+        // The shared store is the one the re-encryption encrypts the values with.
+        DataKeyStore dataKeyStore = DataKeyStore.getInstance();
+        KeyRotationConfig keyRotationConfig = createConfig(OLD_SECRET_KEY, NEW_SECRET_KEY);
+        ReEncryptionBatch batch = EncryptionUtil.reEncryptBatch(createValues(), SCOPE, keyRotationConfig);
+        String keyId = dataKeyStore.getScopeKeyId(SCOPE, keyRotationConfig);
+        String secretKey = dataKeyStore.getSecretKey(keyId, keyRotationConfig);
+        List<String> rotatedValues = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(ReEncryptionBatch.Status.ROTATED, batch.getStatus(i));
+            assertEquals(keyId, EncryptionUtil.parseCiphertext(batch.getValue(i)).getKeyId());
+            rotatedValues.add(batch.getValue(i));
+        }
+
+        KeyRotationConfig rotatedConfig = createConfig(NEW_SECRET_KEY, THIRD_SECRET_KEY);
+        dataKeyStore.rewrap(rotatedConfig);
+        String wrappedKey = getWrappedKey(SCOPE);
+        assertEquals(CryptoProvider.getKeyId(THIRD_SECRET_KEY), getKekId(SCOPE));
+        assertEquals(CryptoProvider.getKeyId(THIRD_SECRET_KEY),
+                EncryptionUtil.parseCiphertext(wrappedKey).getKeyId());
+        assertEquals(keyId, dataKeyStore.getScopeKeyId(SCOPE, rotatedConfig));
+        assertEquals(secretKey, new DataKeyStore().getSecretKey(keyId, createConfig(THIRD_SECRET_KEY,
+                THIRD_SECRET_KEY)));
+
+        // The values encrypted with the data key are left as they are, and a data key is rewrapped only once.
+        batch = EncryptionUtil.reEncryptBatch(rotatedValues, SCOPE, rotatedConfig);
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(ReEncryptionBatch.Status.ALREADY_ROTATED, batch.getStatus(i));
+        }
+        dataKeyStore.rewrap(rotatedConfig);
+        assertEquals(wrappedKey, getWrappedKey(SCOPE));
+        assertEquals(1, countDataKeys());
+    }
+
+    private KeyRotationConfig createConfig(String oldSecretKey, String newSecretKey) {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(oldSecretKey);
+        keyRotationConfig.setNewSecretKey(newSecretKey);
+        keyRotationConfig.setDataKeyEnvelope(KeyRotationConstants.DATA_KEY_ENVELOPE_ENABLED);
+        keyRotationConfig.setNewIdnDBUrl(dbUrl);
+        keyRotationConfig.setNewIdnUsername(DB_USERNAME);
+        keyRotationConfig.setNewIdnPassword(Base64.encode(DB_USERNAME.getBytes(StandardCharsets.UTF_8)));
+        return keyRotationConfig;
+    }
+
+    private static List<String> createValues() throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(OLD_SECRET_KEY);
+        keyRotationConfig.setNewSecretKey(OLD_SECRET_KEY);
+        CryptoProvider cryptoProvider = new CryptoProvider();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] cleartext = ("secret-value-" + i).getBytes(StandardCharsets.UTF_8);
+            values.add(Base64.encode(cryptoProvider.encrypt(cleartext, keyRotationConfig)));
+        }
+        return values;
+    }
+
+    private int countDataKeys() throws SQLException {
+
+        try (Connection connection = DriverManager.getConnection(dbUrl, DB_USERNAME, DB_USERNAME);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM IDN_KEY_ROTATION_DATA_KEY")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private String getKekId(String scope) throws SQLException {
+
+        return getColumn(KeyRotationConstants.KEK_ID, scope);
+    }
+
+    private String getWrappedKey(String scope) throws SQLException {
+
+        return getColumn(KeyRotationConstants.WRAPPED_KEY, scope);
+    }
+
+    private String getColumn(String column, String scope) throws SQLException {
+
+        try (Connection connection = DriverManager.getConnection(dbUrl, DB_USERNAME, DB_USERNAME);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT " + column + " FROM IDN_KEY_ROTATION_DATA_KEY " +
+                     "WHERE SCOPE='" + scope + "'")) {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.model.ParsedCiphertext;
+import org.wso2.carbon.identity.keyrotation.util.EncryptionUtil;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.crypto.AEADBadTagException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of Keyring, covering the lookup of the keys by their identifiers, the keys skipped as duplicates and the
+ * decryption of the values without a key identifier, which tries the keys of the keyring in their configured order.
+ */
+public class KeyringTest {
+
+    private static final String OLD_SECRET_KEY = "03BAFEB27A8E871CAD83C5CD4E771DAB";
+    private static final String NEW_SECRET_KEY = "b988c775c435f05c3da1fbecfe76c1e7";
+    private static final String FIRST_RETIRED_KEY = "0123456789abcdef0123456789abcdef";
+    private static final String SECOND_RETIRED_KEY = "fedcba9876543210fedcba9876543210";
+    private static final String UNKNOWN_KEY = "00112233445566778899aabbccddeeff";
+    private static final byte[] CLEARTEXT = "secret-value".getBytes(StandardCharsets.UTF_8);
+    private final CryptoProvider cryptoProvider = new CryptoProvider();
+    private final List<LoggingEvent> events = new ArrayList<>();
+    private final AppenderSkeleton appender = new AppenderSkeleton() {
+
+        @Override
+        protected void append(LoggingEvent event) {
+
+            events.add(event);
+        }
+
+        @Override
+        public void close() {
+
+        }
+
+        @Override
+        public boolean requiresLayout() {
+
+            return false;
+        }
+    };
+    private Level cryptoProviderLevel;
+
+    @Before
+    public void addAppender() {
+
+        Logger.getLogger(Keyring.class).addAppender(appender);
+        Logger cryptoProviderLog = Logger.getLogger(CryptoProvider.class);
+        cryptoProviderLevel = cryptoProviderLog.getLevel();
+        cryptoProviderLog.setLevel(Level.DEBUG);
+        cryptoProviderLog.setAdditivity(false);
+        cryptoProviderLog.addAppender(appender);
+    }
+
+    @After
+    public void removeAppender() {
+
+        Logger.getLogger(Keyring.class).removeAppender(appender);
+        Logger cryptoProviderLog = Logger.getLogger(CryptoProvider.class);
+        cryptoProviderLog.setLevel(cryptoProviderLevel);
+        cryptoProviderLog.setAdditivity(true);
+        cryptoProviderLog.removeAppender(appender);
+    }
+
+    @Test
+    public void testLookupByKeyId() throws KeyRotationException {
+
+        Keyring keyring = Keyring.getKeyring(createConfig("first=" + FIRST_RETIRED_KEY + ", " + SECOND_RETIRED_KEY));
+        assertEquals(3, keyring.size());
+        String[] secretKeys = {OLD_SECRET_KEY, FIRST_RETIRED_KEY, SECOND_RETIRED_KEY};
+        for (int i = 0; i < secretKeys.length; i++) {
+            assertEquals(i, keyring.indexOf(CryptoProvider.getKeyId(secretKeys[i])));
+            assertEquals(secretKeys[i], keyring.getSecretKey(i));
+        }
+        assertEquals(KeyRotationConstants.OLD_SECRET_KEY, keyring.getLabel(0));
+        assertEquals("first", keyring.getLabel(1));
+        assertEquals(CryptoProvider.getKeyId(SECOND_RETIRED_KEY), keyring.getLabel(2));
+        assertEquals(-1, keyring.indexOf(CryptoProvider.getKeyId(NEW_SECRET_KEY)));
+    }
+
+    @Test
+    public void testInvalidRetiredKey() {
+
+        for (String retiredSecretKeys : Arrays.asList("first=", "=" + FIRST_RETIRED_KEY,
+                FIRST_RETIRED_KEY + ",," + SECOND_RETIRED_KEY)) {
+            try {
+                Keyring.getKeyring(createConfig(retiredSecretKeys));
+                fail("The retired keys " + retiredSecretKeys + " were accepted.");
+            } catch (KeyRotationException e) {
+                assertTrue(e.getMessage().startsWith("Invalid retired secret key entry"));
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicateKeyLoggedOnce() throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = createConfig("first=" + FIRST_RETIRED_KEY + ",again=" +
+                OLD_SECRET_KEY);
+        for (int i = 0; i < 5; i++) {
+            Keyring keyring = Keyring.getKeyring(keyRotationConfig);
+            assertEquals(2, keyring.size());
+            assertEquals(-1, Arrays.asList(keyring.getLabel(0), keyring.getLabel(1)).indexOf("again"));
+        }
+        List<String> warnings = getMessages(Level.WARN);
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).contains("again"));
+    }
+
+    @Test
+    public void testDecryptWithRecordedKeyId() throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = createConfig("first=" + FIRST_RETIRED_KEY + "," + SECOND_RETIRED_KEY);
+        assertArrayEquals(CLEARTEXT, cryptoProvider.decrypt(encrypt(SECOND_RETIRED_KEY, true), keyRotationConfig));
+        assertTrue(getMessages(Level.DEBUG).isEmpty());
+        try {
+            cryptoProvider.decrypt(encrypt(UNKNOWN_KEY, true), keyRotationConfig);
+            fail("A value of a key which isn't in the keyring was decrypted.");
+        } catch (KeyRotationException e) {
+            assertTrue(e.getMessage().contains(CryptoProvider.getKeyId(UNKNOWN_KEY)));
+        }
+    }
+
+    @Test
+    public void testDecryptTriesKeysInOrder() throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = createConfig("first=" + FIRST_RETIRED_KEY + "," + SECOND_RETIRED_KEY);
+        assertArrayEquals(CLEARTEXT, cryptoProvider.decrypt(encrypt(OLD_SECRET_KEY, false), keyRotationConfig));
+        assertTrue(getMessages(Level.DEBUG).isEmpty());
+
+        assertArrayEquals(CLEARTEXT, cryptoProvider.decrypt(encrypt(SECOND_RETIRED_KEY, false),
+                keyRotationConfig));
+        List<String> skippedKeys = getMessages(Level.DEBUG);
+        assertEquals(2, skippedKeys.size());
+        assertTrue(skippedKeys.get(0).contains(KeyRotationConstants.OLD_SECRET_KEY));
+        assertTrue(skippedKeys.get(1).contains("first"));
+
+        try {
+            cryptoProvider.decrypt(encrypt(UNKNOWN_KEY, false), keyRotationConfig);
+            fail("A value of a key which isn't in the keyring was decrypted.");
+        } catch (KeyRotationException e) {
+            assertTrue(e.getCause() instanceof AEADBadTagException);
+        }
+    }
+
+    private KeyRotationConfig createConfig(String retiredSecretKeys) {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(OLD_SECRET_KEY);
+        keyRotationConfig.setNewSecretKey(NEW_SECRET_KEY);
+        keyRotationConfig.setRetiredSecretKeys(retiredSecretKeys);
+        return keyRotationConfig;
+    }
+
+    /**
+     * Encrypt the cleartext with the given key, leaving out the key identifier to write the value the way the
+     * identity server does.
+     *
+     * @param secretKey The key.
+     * @param keyId     True to record the key identifier in the value.
+     * @return The parsed value.
+     * @throws KeyRotationException Exception thrown while encrypting.
+     */
+    private ParsedCiphertext encrypt(String secretKey, boolean keyId) throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(secretKey);
+        keyRotationConfig.setNewSecretKey(secretKey);
+        ParsedCiphertext parsedCiphertext = EncryptionUtil.parseCiphertext(java.util.Base64.getEncoder()
+                .encodeToString(cryptoProvider.encrypt(CLEARTEXT, keyRotationConfig)));
+        if (!keyId) {
+            parsedCiphertext.setKeyId(null);
+        }
+        events.clear();
+        return parsedCiphertext;
+    }
+
+    private List<String> getMessages(Level level) {
+
+        List<String> messages = new ArrayList<>();
+        for (LoggingEvent event : events) {
+            if (event.getLevel().equals(level)) {
+                messages.add(event.getRenderedMessage());
+            }
+        }
+        return messages;
+    }
+}
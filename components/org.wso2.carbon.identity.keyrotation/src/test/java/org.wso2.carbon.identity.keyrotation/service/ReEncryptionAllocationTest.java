@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.axiom.om.util.Base64;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
+import org.wso2.carbon.identity.keyrotation.util.EncryptionUtil;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the memory allocated per value by the batch re-encryption, measured with the allocated bytes of the
+ * current thread. Most of what a value allocates is allocated inside the JCE providers, so the whole batch is held to
+ * a ceiling above it, and parsing the stored values, which is done in the per-thread buffers, to a tight one.
+ */
+public class ReEncryptionAllocationTest {
+
+    private static final String OLD_SECRET_KEY = "03BAFEB27A8E871CAD83C5CD4E771DAB";
+    private static final String NEW_SECRET_KEY = "b988c775c435f05c3da1fbecfe76c1e7";
+    private static final int BATCH_SIZE = 1000;
+    private static final int WARM_UP_RUNS = 30;
+    private static final int MEASURED_RUNS = 20;
+    private static final long MAX_BATCH_BYTES_PER_VALUE = 5 * 1024;
+    private static final long MAX_PARSE_BYTES_PER_VALUE = 384;
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    @BeforeClass
+    public static void getThreadMXBean() {
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void testLegacyEnvelopeAllocation() throws KeyRotationException {
+
+        assertAllocation(false);
+    }
+
+    @Test
+    public void testCompactEnvelopeAllocation() throws KeyRotationException {
+
+        assertAllocation(true);
+    }
+
+    private static void assertAllocation(boolean compactEnvelope) throws KeyRotationException {
+
+        List<String> values = createValues(compactEnvelope);
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(OLD_SECRET_KEY);
+        keyRotationConfig.setNewSecretKey(NEW_SECRET_KEY);
+        keyRotationConfig.setEnableCompactEnvelope(compactEnvelope);
+        keyRotationConfig.setReEncryptBatchThreads(1);
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            ReEncryptionBatch batch = EncryptionUtil.reEncryptBatch(values, keyRotationConfig);
+            assertEquals(ReEncryptionBatch.Status.ROTATED, batch.getStatus(BATCH_SIZE - 1));
+            parseValues(values);
+        }
+        long start = getAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            EncryptionUtil.reEncryptBatch(values, keyRotationConfig);
+        }
+        long batchBytes = (getAllocatedBytes() - start) / ((long) MEASURED_RUNS * BATCH_SIZE);
+        start = getAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            parseValues(values);
+        }
+        long parseBytes = (getAllocatedBytes() - start) / ((long) MEASURED_RUNS * BATCH_SIZE);
+
+        String envelope = compactEnvelope ? "compact" : "legacy";
+        assertTrue("Re-encrypting a " + envelope + " value allocated " + batchBytes + " bytes.",
+                batchBytes <= MAX_BATCH_BYTES_PER_VALUE);
+        assertTrue("Parsing a " + envelope + " value allocated " + parseBytes + " bytes.",
+                parseBytes <= MAX_PARSE_BYTES_PER_VALUE);
+    }
+
+    private static List<String> createValues(boolean compactEnvelope) throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(OLD_SECRET_KEY);
+        keyRotationConfig.setNewSecretKey(OLD_SECRET_KEY);
+        keyRotationConfig.setEnableCompactEnvelope(compactEnvelope);
+        CryptoProvider cryptoProvider = new CryptoProvider();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            byte[] cleartext = ("secret-value-" + i + "-abcdefghijklmnop").getBytes(StandardCharsets.UTF_8);
+            values.add(Base64.encode(cryptoProvider.encrypt(cleartext, keyRotationConfig)));
+        }
+        return values;
+    }
+
+    private static void parseValues(List<String> values) {
+
+        for (String value : values) {
+            EncryptionUtil.parseCiphertext(value);
+        }
+    }
+
+    private static long getAllocatedBytes() {
+
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.service;
+
+import org.apache.axiom.om.util.Base64;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.model.ReEncryptionBatch;
+import org.wso2.carbon.identity.keyrotation.util.EncryptionUtil;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationConstants;
+import org.wso2.carbon.identity.keyrotation.util.KeyRotationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests of ReEncryptionBatch and the batch re-encryption of CryptoProvider, on a mixed batch of values to rotate,
+ * plaintext and null values, values already encrypted with the new key and poisoned values, re-encrypted both in a
+ * single slice and split over several threads.
+ */
+public class ReEncryptionBatchTest {
+
+    private static final String OLD_SECRET_KEY = "03BAFEB27A8E871CAD83C5CD4E771DAB";
+    private static final String NEW_SECRET_KEY = "b988c775c435f05c3da1fbecfe76c1e7";
+    private static final String RETIRED_SECRET_KEY = "0123456789abcdef0123456789abcdef";
+    private static final String UNKNOWN_SECRET_KEY = "00112233445566778899aabbccddeeff";
+    private static final CryptoProvider cryptoProvider = new CryptoProvider();
+    private static final List<String> values = new ArrayList<>();
+    private static final List<ReEncryptionBatch.Status> expectedStatuses = new ArrayList<>();
+    private static final List<String> cleartexts = new ArrayList<>();
+
+    @BeforeClass
+    public static void createValues() throws KeyRotationException {
+
+        add(encrypt("rotated-legacy", OLD_SECRET_KEY, false), ReEncryptionBatch.Status.ROTATED, "rotated-legacy");
+        add(null, ReEncryptionBatch.Status.PLAINTEXT_SKIPPED, null);
+        add(encrypt("rotated-compact", OLD_SECRET_KEY, true), ReEncryptionBatch.Status.ROTATED, "rotated-compact");
+        add("plain-password", ReEncryptionBatch.Status.PLAINTEXT_SKIPPED, null);
+        add(encrypt("already-rotated", NEW_SECRET_KEY, false), ReEncryptionBatch.Status.ALREADY_ROTATED, null);
+        add(poison(encrypt("poisoned", OLD_SECRET_KEY, true)), ReEncryptionBatch.Status.FAILED, null);
+        add(encrypt("rotated-retired", RETIRED_SECRET_KEY, true), ReEncryptionBatch.Status.ROTATED,
+                "rotated-retired");
+        add("", ReEncryptionBatch.Status.PLAINTEXT_SKIPPED, null);
+        add(encrypt("already-rotated-compact", NEW_SECRET_KEY, true), ReEncryptionBatch.Status.ALREADY_ROTATED,
+                null);
+        add(encrypt("unknown-key", UNKNOWN_SECRET_KEY, false), ReEncryptionBatch.Status.FAILED, null);
+    }
+
+    @Test
+    public void testBatchModel() {
+
+        ReEncryptionBatch batch = new ReEncryptionBatch(Arrays.asList("a", null, "c"));
+        assertEquals(3, batch.size());
+        assertNull(batch.getFirstFailure());
+        batch.setRotated(0, "rotated");
+        batch.setStatus(1, ReEncryptionBatch.Status.PLAINTEXT_SKIPPED);
+        KeyRotationException failure = new KeyRotationException("failed");
+        batch.setFailed(2, failure);
+        assertEquals("rotated", batch.getValue(0));
+        assertEquals(ReEncryptionBatch.Status.ROTATED, batch.getStatus(0));
+        assertNull(batch.getValue(1));
+        assertEquals(ReEncryptionBatch.Status.PLAINTEXT_SKIPPED, batch.getStatus(1));
+        assertEquals("c", batch.getValue(2));
+        assertEquals(ReEncryptionBatch.Status.FAILED, batch.getStatus(2));
+        assertNull(batch.getFailure(0));
+        assertSame(failure, batch.getFailure(2));
+        assertSame(failure, batch.getFirstFailure());
+    }
+
+    @Test
+    public void testMixedBatch() throws KeyRotationException {
+
+        ReEncryptionBatch batch = EncryptionUtil.reEncryptBatch(values, createConfig(4));
+        assertBatch(batch, values.size());
+        assertSame(batch.getFailure(expectedStatuses.indexOf(ReEncryptionBatch.Status.FAILED)),
+                batch.getFirstFailure());
+    }
+
+    @Test
+    public void testMultiSliceBatch() throws KeyRotationException {
+
+        // Enough values for four slices, with a remainder so that the last slice is shorter.
+        int size = 4 * KeyRotationConstants.RE_ENCRYPT_BATCH_MIN_SLICE + 3;
+        List<String> batchValues = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batchValues.add(values.get(i % values.size()));
+        }
+        ReEncryptionBatch batch = EncryptionUtil.reEncryptBatch(batchValues, createConfig(4));
+        assertBatch(batch, size);
+        assertSame(batch.getFailure(expectedStatuses.indexOf(ReEncryptionBatch.Status.FAILED)),
+                batch.getFirstFailure());
+
+        // Every value is encrypted with its own IV, whichever thread re-encrypted it.
+        Set<String> rotatedValues = new HashSet<>();
+        int rotatedCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (batch.getStatus(i) == ReEncryptionBatch.Status.ROTATED) {
+                rotatedValues.add(batch.getValue(i));
+                rotatedCount++;
+            }
+        }
+        assertEquals(rotatedCount, rotatedValues.size());
+
+        ReEncryptionBatch singleSliceBatch = EncryptionUtil.reEncryptBatch(batchValues, createConfig(1));
+        for (int i = 0; i < size; i++) {
+            assertEquals(singleSliceBatch.getStatus(i), batch.getStatus(i));
+        }
+    }
+
+    /**
+     * Assert the status of every value of a batch of the test values repeated, that the rotated values are
+     * encrypted with the new key and decrypt to their cleartext, and that the other values are left as stored.
+     *
+     * @param batch The re-encrypted batch.
+     * @param size  Number of values of the batch.
+     * @throws KeyRotationException Exception thrown while decrypting a rotated value.
+     */
+    private static void assertBatch(ReEncryptionBatch batch, int size) throws KeyRotationException {
+
+        assertEquals(size, batch.size());
+        String newKeyId = CryptoProvider.getKeyId(NEW_SECRET_KEY);
+        for (int i = 0; i < size; i++) {
+            int index = i % values.size();
+            ReEncryptionBatch.Status status = expectedStatuses.get(index);
+            assertEquals("Status of value " + i, status, batch.getStatus(i));
+            if (status == ReEncryptionBatch.Status.ROTATED) {
+                assertEquals(newKeyId, EncryptionUtil.parseCiphertext(batch.getValue(i)).getKeyId());
+                assertArrayEquals(cleartexts.get(index).getBytes(StandardCharsets.UTF_8),
+                        cryptoProvider.decrypt(EncryptionUtil.parseCiphertext(batch.getValue(i)), NEW_SECRET_KEY));
+            } else {
+                assertEquals(values.get(index), batch.getValue(i));
+            }
+            if (status == ReEncryptionBatch.Status.FAILED) {
+                assertNotNull(batch.getFailure(i));
+            } else {
+                assertNull(batch.getFailure(i));
+            }
+        }
+    }
+
+    private static KeyRotationConfig createConfig(int reEncryptBatchThreads) {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(OLD_SECRET_KEY);
+        keyRotationConfig.setNewSecretKey(NEW_SECRET_KEY);
+        keyRotationConfig.setRetiredSecretKeys(RETIRED_SECRET_KEY);
+        keyRotationConfig.setReEncryptBatchThreads(reEncryptBatchThreads);
+        return keyRotationConfig;
+    }
+
+    private static void add(String value, ReEncryptionBatch.Status status, String cleartext) {
+
+        values.add(value);
+        expectedStatuses.add(status);
+        cleartexts.add(cleartext);
+    }
+
+    private static String encrypt(String cleartext, String secretKey, boolean compactEnvelope)
+            throws KeyRotationException {
+
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(secretKey);
+        keyRotationConfig.setNewSecretKey(secretKey);
+        keyRotationConfig.setEnableCompactEnvelope(compactEnvelope);
+        return Base64.encode(cryptoProvider.encrypt(cleartext.getBytes(StandardCharsets.UTF_8), keyRotationConfig));
+    }
+
+    /**
+     * Poison a ciphertext by flipping a bit of its authentication tag, so it is still taken for a ciphertext but
+     * fails to decrypt.
+     *
+     * @param value The stored value.
+     * @return The poisoned value.
+     */
+    private static String poison(String value) {
+
+        byte[] cipherText = Base64.decode(value);
+        cipherText[cipherText.length - 1] ^= 1;
+        return Base64.encode(cipherText);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.carbon.identity.keyrotation.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.axiom.om.util.Base64;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.wso2.carbon.identity.keyrotation.config.model.KeyRotationConfig;
+import org.wso2.carbon.identity.keyrotation.model.CipherMetaData;
+import org.wso2.carbon.identity.keyrotation.service.CryptoProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of CiphertextClassifier, checking that the classification from the Base64 prefix agrees with a full decode of
+ * the value followed by the Gson parse the classifier replaced, on a corpus of ciphertexts, plaintext values and
+ * values built to just miss the checks of the prefix.
+ */
+public class CiphertextClassifierTest {
+
+    private static final String SECRET_KEY = "03BAFEB27A8E871CAD83C5CD4E771DAB";
+    private static final int CORPUS_SIZE = 200;
+    private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+    private static final List<String> legacyCiphertexts = new ArrayList<>();
+    private static final List<String> compactCiphertexts = new ArrayList<>();
+    private static final List<String> plaintexts = new ArrayList<>();
+
+    @BeforeClass
+    public static void createCorpus() throws KeyRotationException {
+
+        CryptoProvider cryptoProvider = new CryptoProvider();
+        KeyRotationConfig keyRotationConfig = new KeyRotationConfig();
+        keyRotationConfig.setOldSecretKey(SECRET_KEY);
+        keyRotationConfig.setNewSecretKey(SECRET_KEY);
+        Random random = new Random(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            byte[] cleartext = ("secret-" + i).getBytes(StandardCharsets.UTF_8);
+            keyRotationConfig.setEnableCompactEnvelope(false);
+            legacyCiphertexts.add(Base64.encode(cryptoProvider.encrypt(cleartext, keyRotationConfig)));
+            keyRotationConfig.setEnableCompactEnvelope(true);
+            compactCiphertexts.add(Base64.encode(cryptoProvider.encrypt(cleartext, keyRotationConfig)));
+
+            byte[] randomBytes = new byte[1 + random.nextInt(60)];
+            random.nextBytes(randomBytes);
+            plaintexts.add(Base64.encode(randomBytes));
+            randomBytes[0] = KeyRotationConstants.COMPACT_ENVELOPE_MAGIC;
+            plaintexts.add(Base64.encode(randomBytes));
+            randomBytes[0] = '{';
+            plaintexts.add(Base64.encode(randomBytes));
+            plaintexts.add("password" + i);
+            plaintexts.add(Long.toHexString(random.nextLong()).toUpperCase());
+            plaintexts.add(encode("[" + i + "]"));
+            plaintexts.add(encode("\"" + i + "\""));
+        }
+        // Identity server values, written by Gson with HTML escaping, which escapes the Base64 padding in the JSON.
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            byte[] iv = new byte[KeyRotationConstants.GCM_IV_LENGTH];
+            byte[] cipherText = new byte[KeyRotationConstants.GCM_TAG_LENGTH + i % 7];
+            random.nextBytes(iv);
+            random.nextBytes(cipherText);
+            CipherMetaData cipherMetaData = new CipherMetaData();
+            cipherMetaData.setCipherText(KeyRotationServiceUtils.getSelfContainedCiphertextWithIv(cipherText, iv));
+            legacyCiphertexts.add(encode(new Gson().toJson(cipherMetaData)));
+        }
+        plaintexts.addAll(Arrays.asList("", "admin", "abcd", "ab=cd===", "e30=", "IHt9", "W10=", "bnVsbA=="));
+    }
+
+    @Test
+    public void testCorpusAgreesWithFullDecode() {
+
+        List<String> corpus = new ArrayList<>();
+        corpus.addAll(legacyCiphertexts);
+        corpus.addAll(compactCiphertexts);
+        corpus.addAll(plaintexts);
+        for (String value : corpus) {
+            assertAgrees(value);
+        }
+    }
+
+    @Test
+    public void testCiphertexts() {
+
+        for (String value : legacyCiphertexts) {
+            assertClassified(CiphertextClassifier.ValueType.LEGACY_ENVELOPE, value);
+        }
+        for (String value : compactCiphertexts) {
+            assertClassified(CiphertextClassifier.ValueType.COMPACT_ENVELOPE, value);
+        }
+    }
+
+    @Test
+    public void testBraceWithoutJsonObject() {
+
+        for (String json : Arrays.asList("{", "{not json", "{\"c\":", "{\"c\":\"e30=\"", "{\"c\":\"e30=\"} {}",
+                "{\"c\":\"e30=\"}]", "{{}}", "{\"c\" \"e30=\"}")) {
+            assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, encode(json));
+        }
+    }
+
+    @Test
+    public void testLengthNotWholeQuanta() {
+
+        for (String value : Arrays.asList(legacyCiphertexts.get(0), compactCiphertexts.get(0))) {
+            String unpadded = value.replace("=", "");
+            if (unpadded.length() % 4 != 0) {
+                assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, unpadded);
+            }
+            assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, value.substring(0, value.length() - 1));
+            assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, value + "A");
+            assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, value + "AB");
+        }
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, "e30");
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, "e30==");
+    }
+
+    @Test
+    public void testWhitespace() {
+
+        String legacy = legacyCiphertexts.get(0);
+        String compact = compactCiphertexts.get(0);
+        assertClassified(CiphertextClassifier.ValueType.LEGACY_ENVELOPE,
+                legacy.substring(0, 40) + "\n" + legacy.substring(40));
+        assertClassified(CiphertextClassifier.ValueType.LEGACY_ENVELOPE,
+                legacy.substring(0, 40) + "\r\n" + legacy.substring(40, 80) + "\r\n" + legacy.substring(80));
+        assertClassified(CiphertextClassifier.ValueType.COMPACT_ENVELOPE,
+                compact.substring(0, 4) + "\n" + compact.substring(4));
+        assertClassified(CiphertextClassifier.ValueType.LEGACY_ENVELOPE, encode(" \n" + decode(legacy)));
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, "hello world");
+        assertClassified(CiphertextClassifier.ValueType.LEGACY_ENVELOPE, "e3\n0= ");
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, "e30\n");
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, "e30=\ne30=");
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, "e$30= ");
+        assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, encode(" \t\r\n"));
+    }
+
+    @Test
+    public void testCompactMagicWithTruncatedHeader() {
+
+        byte[] compact = Base64.decode(compactCiphertexts.get(0));
+        int headerLength = 3 + KeyRotationConstants.KEY_ID_LENGTH + 1;
+        int minLength = headerLength + KeyRotationConstants.GCM_IV_LENGTH + KeyRotationConstants.GCM_TAG_LENGTH;
+        for (int length = 1; length < minLength; length++) {
+            assertClassified(CiphertextClassifier.ValueType.PLAINTEXT,
+                    Base64.encode(Arrays.copyOf(compact, length)));
+        }
+        assertClassified(CiphertextClassifier.ValueType.COMPACT_ENVELOPE,
+                Base64.encode(Arrays.copyOf(compact, minLength)));
+        for (int index : new int[]{1, 2, headerLength - 1}) {
+            byte[] forged = compact.clone();
+            forged[index]++;
+            assertClassified(CiphertextClassifier.ValueType.PLAINTEXT, Base64.encode(forged));
+        }
+    }
+
+    /**
+     * Assert that a value is classified as expected, and that the classification agrees with the full decode.
+     *
+     * @param expected The expected shape of the value.
+     * @param value    The stored value.
+     */
+    private static void assertClassified(CiphertextClassifier.ValueType expected, String value) {
+
+        assertEquals("Classification of " + value, expected, CiphertextClassifier.classify(value));
+        assertAgrees(value);
+    }
+
+    /**
+     * Assert that the classifier agrees with the full decode of a value, and that a value the full decode takes for
+     * a ciphertext passes the prefix check.
+     *
+     * @param value The stored value.
+     */
+    private static void assertAgrees(String value) {
+
+        boolean ciphertext = isCiphertextByFullDecode(value);
+        assertEquals("Classification of " + value, ciphertext, CiphertextClassifier.isCiphertext(value));
+        assertEquals("Plaintext check of " + value, !ciphertext, EncryptionUtil.checkPlainText(value));
+        if (ciphertext) {
+            assertTrue("Prefix check of " + value, CiphertextClassifier.hasCiphertextPrefix(value));
+        }
+    }
+
+    /**
+     * To check if a value is a ciphertext by decoding it in full and parsing it with Gson, the way the values were
+     * told apart before the classifier. The value is decoded strictly once its whitespace is removed, and has to be
+     * a whole number of Base64 quanta.
+     *
+     * @param value The stored value.
+     * @return True if the value is a ciphertext.
+     */
+    private static boolean isCiphertextByFullDecode(String value) {
+
+        StringBuilder base64 = new StringBuilder();
+        for (char character : value.toCharArray()) {
+            if (!Character.isWhitespace(character)) {
+                base64.append(character);
+            }
+        }
+        if (base64.length() % 4 != 0) {
+            return false;
+        }
+        byte[] decoded;
+        try {
+            decoded = java.util.Base64.getDecoder().decode(base64.toString());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (KeyRotationServiceUtils.isCompactCiphertext(decoded)) {
+            return true;
+        }
+        try {
+            return gson.fromJson(new String(decoded, StandardCharsets.UTF_8), CipherMetaData.class) != null;
+        } catch (JsonParseException e) {
+            return false;
+        }
+    }
+
+    private static String encode(String value) {
+
+        return Base64.encode(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+
+        return new String(Base64.decode(value), StandardCharsets.UTF_8);
+    }
+}